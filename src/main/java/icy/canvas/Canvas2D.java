@@ -49,7 +49,12 @@ import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import javax.swing.BorderFactory;
@@ -85,12 +90,14 @@ import icy.preferences.XMLPreferences;
 import icy.resource.ResourceUtil;
 import icy.resource.icon.IcyIcon;
 import icy.roi.ROI;
+import icy.roi.ROI.ROIPainter;
 import icy.roi.ROI2D;
 import icy.roi.ROI3D;
 import icy.sequence.DimensionId;
 import icy.sequence.Sequence;
 import icy.sequence.SequenceEvent.SequenceEventType;
 import icy.system.thread.SingleProcessor;
+import icy.type.point.Point5D;
 import icy.type.rectangle.Rectangle2DUtil;
 import icy.type.rectangle.Rectangle5D;
 import icy.util.EventUtil;
@@ -114,6 +121,26 @@ public class Canvas2D extends IcyCanvas2D implements ROITaskListener
     private static final long serialVersionUID = 8850168605044063031L;
 
     static final int ICON_SIZE = 20;
+    /**
+     * Margin (in canvas pixel) used when retrieving ROI from sequence spatial index
+     */
+    static final int ROI_INDEX_MARGIN = 16;
+    /**
+     * Minimum number of visible ROI to use the static ROI raster cache
+     */
+    static final int ROI_CACHE_THRESHOLD = 256;
+    /**
+     * Maximum number of static ROI drawn outside the ROI raster cache before we rebuild it
+     */
+    static final int ROI_CACHE_MAX_UNCACHED = 64;
+    /**
+     * Margin (ratio of visible area) added around visible area for the ROI raster cache
+     */
+    static final double ROI_CACHE_MARGIN_RATIO = 0.25d;
+    /**
+     * Maximum size (in pixel) of ROI raster cache
+     */
+    static final long ROI_CACHE_MAX_PIXELS = 16 * 1024 * 1024;
     static final int ICON_TARGET_SIZE = 20;
 
     static final Image ICON_CENTER_IMAGE = ResourceUtil.ICON_CENTER_IMAGE;
@@ -805,10 +832,198 @@ public class Canvas2D extends IcyCanvas2D implements ROITaskListener
             }
         }
 
+        /**
+         * Raster cache of static ROI layers.<br>
+         * When many ROIs have to be painted, ROIs which are not in interaction (not selected, focused or in creation)
+         * are rendered once in an image covering the visible area (plus margin) at the current zoom level.<br>
+         * The cache is only rebuilt when a cached ROI changed (see {@link ROI#getDisplayModCount()}) or is no more
+         * static, when ROI layers are added / removed / modified or when zoom level, position or visible area changed.
+         */
+        public class ROICache
+        {
+            /**
+             * cached image (image space region at given scale)
+             */
+            private BufferedImage image;
+            private Rectangle2D region;
+            private double scale;
+            private int posZ;
+            private int posT;
+            /**
+             * cached ROI with their display modification count at render time
+             */
+            private final Map<ROI, Integer> rois;
+            /**
+             * internal
+             */
+            private volatile boolean invalid;
+
+            public ROICache()
+            {
+                super();
+
+                image = null;
+                region = null;
+                rois = new HashMap<ROI, Integer>();
+                invalid = true;
+            }
+
+            public void invalidCache()
+            {
+                invalid = true;
+            }
+
+            /**
+             * Release cache resources
+             */
+            public void clear()
+            {
+                image = null;
+                region = null;
+                rois.clear();
+                invalid = true;
+            }
+
+            /**
+             * Returns <code>true</code> if the specified ROI is part of the cached image.
+             */
+            public boolean isCached(ROI roi)
+            {
+                return rois.containsKey(roi);
+            }
+
+            /**
+             * Validate the cache for the specified graphics context and layers (rebuild it if needed).<br>
+             * Returns <code>false</code> if the cache cannot be used.
+             */
+            public boolean validate(Graphics2D g, Sequence seq, List<Layer> layers, Rectangle clip)
+            {
+                final double s = getZoomBucket(Math.max(Math.abs(getScaleX()), Math.abs(getScaleY())));
+
+                // not usable
+                if (Double.isNaN(s))
+                {
+                    clear();
+                    return false;
+                }
+
+                boolean valid = !invalid && (image != null) && (s == scale) && (posZ == getPositionZ())
+                        && (posT == getPositionT()) && region.contains(clip);
+
+                if (valid)
+                {
+                    // check that cached ROI did not changed and are still static (selection / focus state is not
+                    // part of the display modification count)
+                    for (Entry<ROI, Integer> entry : rois.entrySet())
+                    {
+                        final ROI roi = entry.getKey();
+
+                        if ((roi.getDisplayModCount() != entry.getValue().intValue()) || !isCacheableROI(roi))
+                        {
+                            valid = false;
+                            break;
+                        }
+                    }
+                }
+
+                if (!valid)
+                    return rebuild(seq, layers, clip, s);
+
+                return true;
+            }
+
+            private boolean rebuild(Sequence seq, List<Layer> layers, Rectangle clip, double s)
+            {
+                // cache area = visible area plus margin so small pan don't require a rebuild
+                final double mx = clip.width * ROI_CACHE_MARGIN_RATIO;
+                final double my = clip.height * ROI_CACHE_MARGIN_RATIO;
+                final Rectangle2D r = new Rectangle2D.Double(clip.x - mx, clip.y - my, clip.width + (2 * mx),
+                        clip.height + (2 * my));
+                final int w = (int) Math.ceil(r.getWidth() * s);
+                final int h = (int) Math.ceil(r.getHeight() * s);
+
+                // too large (or empty) --> don't use cache
+                if ((w <= 0) || (h <= 0) || (((long) w * (long) h) > ROI_CACHE_MAX_PIXELS))
+                {
+                    clear();
+                    return false;
+                }
+
+                final Set<ROI> candidates = getROIsIn(seq, r.getX(), r.getY(), r.getWidth(), r.getHeight());
+                final BufferedImage img;
+
+                // try to reuse previous image
+                if ((image != null) && (image.getWidth() == w) && (image.getHeight() == h))
+                {
+                    img = image;
+                    final Graphics2D g = img.createGraphics();
+                    g.setComposite(AlphaComposite.Clear);
+                    g.fillRect(0, 0, w, h);
+                    g.dispose();
+                }
+                else
+                    img = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+
+                final Graphics2D g = img.createGraphics();
+
+                g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+                g.scale(s, s);
+                g.translate(-r.getX(), -r.getY());
+                g.setClip(r);
+
+                rois.clear();
+
+                // draw them in inverse order to have first painter event at top
+                for (int i = layers.size() - 1; i >= 0; i--)
+                {
+                    final Layer layer = layers.get(i);
+                    final ROI roi = getCacheableROI(layer);
+
+                    if ((roi != null) && candidates.contains(roi))
+                    {
+                        // store modification count before drawing
+                        rois.put(roi, Integer.valueOf(roi.getDisplayModCount()));
+                        drawLayer(g, seq, layer);
+                    }
+                }
+
+                g.dispose();
+
+                image = img;
+                region = r;
+                scale = s;
+                posZ = getPositionZ();
+                posT = getPositionT();
+                invalid = false;
+
+                return true;
+            }
+
+            /**
+             * Draw the cached image
+             */
+            public void paint(Graphics2D g)
+            {
+                final Graphics2D g2 = (Graphics2D) g.create();
+
+                g2.setComposite(AlphaComposite.SrcOver);
+                g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g2.translate(region.getX(), region.getY());
+                g2.scale(1d / scale, 1d / scale);
+                g2.drawImage(image, 0, 0, null);
+
+                g2.dispose();
+            }
+        }
+
         /**
          * Image cache
          */
         final ImageCache imageCache;
+        /**
+         * Static ROI cache
+         */
+        final ROICache roiCache;
 
         /**
          * internals
@@ -841,6 +1056,7 @@ public class Canvas2D extends IcyCanvas2D implements ROITaskListener
             super();
 
             imageCache = new ImageCache();
+            roiCache = new ROICache();
             actived = false;
             handlingMouseMoveEvent = false;
             startDragPosition = null;
@@ -1167,10 +1383,8 @@ public class Canvas2D extends IcyCanvas2D implements ROITaskListener
 
                 if (seq != null)
                 {
-                    final List<ROI> rois = seq.getROIs();
-
                     // we have some rois ?
-                    if (rois.size() > 0)
+                    if (seq.hasROI())
                     {
                         final Rectangle2D area = canvasToImage(getAreaSelection());
                         // 5D area
@@ -1180,7 +1394,12 @@ public class Canvas2D extends IcyCanvas2D implements ROITaskListener
                         seq.beginUpdate();
                         try
                         {
-                            for (ROI roi : rois)
+                            // unselect ROI outside area
+                            for (ROI roi : seq.getSelectedROIs())
+                                if (!roi.intersects(area5d))
+                                    roi.setSelected(false);
+                            // only ROI from spatial index can intersect area
+                            for (ROI roi : seq.getROIIndex().getROIs(area5d))
                                 roi.setSelected(roi.intersects(area5d));
                         }
                         finally
@@ -1482,6 +1701,17 @@ public class Canvas2D extends IcyCanvas2D implements ROITaskListener
          * Draw specified image layer and others layers on specified {@link Graphics2D} object.
          */
         void drawImageAndLayers(Graphics2D g, Layer imageLayer)
+        {
+            drawImageAndLayers(g, imageLayer, false);
+        }
+
+        /**
+         * Draw specified image layer and others layers on specified {@link Graphics2D} object.
+         * 
+         * @param useROICache
+         *        use the static ROI raster cache if possible (should be used only for view painting)
+         */
+        void drawImageAndLayers(Graphics2D g, Layer imageLayer, boolean useROICache)
         {
             final Sequence seq = getSequence();
             final Layer defaultImageLayer = getImageLayer();
@@ -1490,6 +1720,20 @@ public class Canvas2D extends IcyCanvas2D implements ROITaskListener
             if (isLayersVisible())
             {
                 final List<Layer> layers = getLayers(true);
+                final Rectangle clip = g.getClipBounds();
+                // only paint ROI intersecting the painted area
+                final Set<ROI> rois;
+
+                if ((seq != null) && (clip != null) && seq.hasROI())
+                    rois = getROIsIn(seq, clip.x, clip.y, clip.width, clip.height);
+                else
+                    rois = null;
+
+                // use raster cache for static ROI when we have many ROIs to draw
+                final boolean useCache = useROICache && (rois != null) && (rois.size() >= ROI_CACHE_THRESHOLD)
+                        && roiCache.validate(g, seq, layers, clip);
+                boolean cacheDrawn = false;
+                int uncached = 0;
 
                 // draw them in inverse order to have first painter event at top
                 for (int i = layers.size() - 1; i >= 0; i--)
@@ -1499,9 +1743,33 @@ public class Canvas2D extends IcyCanvas2D implements ROITaskListener
                     // replace the default image layer by the specified one
                     if (layer == defaultImageLayer)
                         drawLayer(g, seq, imageLayer);
-                    else
-                        drawLayer(g, seq, layer);
+                    else if ((rois == null) || isLayerConcerned(layer, seq, rois))
+                    {
+                        final ROI roi = useCache ? getCacheableROI(layer) : null;
+
+                        if ((roi != null) && roiCache.isCached(roi))
+                        {
+                            // draw cached ROI image instead of first cached ROI layer
+                            if (!cacheDrawn)
+                            {
+                                roiCache.paint(g);
+                                cacheDrawn = true;
+                            }
+                        }
+                        else
+                        {
+                            // static ROI not yet cached
+                            if (roi != null)
+                                uncached++;
+
+                            drawLayer(g, seq, layer);
+                        }
+                    }
                 }
+
+                // too many static ROI are not cached --> rebuild cache on next paint
+                if (uncached > ROI_CACHE_MAX_UNCACHED)
+                    roiCache.invalidCache();
             }
             else
                 // display image layer only
@@ -1540,7 +1808,7 @@ public class Canvas2D extends IcyCanvas2D implements ROITaskListener
                 g2.transform(getTransform());
 
                 // draw image and layers
-                drawImageAndLayers(g2, getImageLayer());
+                drawImageAndLayers(g2, getImageLayer(), true);
 
                 g2.dispose();
             }
@@ -2741,6 +3009,109 @@ public class Canvas2D extends IcyCanvas2D implements ROITaskListener
         return MathUtil.formatRadianAngle(getRotationZ());
     }
 
+    /**
+     * Returns sequence ROIs which may intersect the specified image region at current Z and T position (uses the
+     * sequence ROI spatial index).<br>
+     * A small margin is added around the region so ROI stroke, anchors and name are still considered.
+     */
+    protected Set<ROI> getROIsIn(Sequence seq, double x, double y, double w, double h)
+    {
+        final double margin = ROI_INDEX_MARGIN / Math.min(getScaleX(), getScaleY());
+        final int z = getPositionZ();
+        final int t = getPositionT();
+        final Rectangle5D region = new Rectangle5D.Double(x - margin, y - margin,
+                (z == -1) ? Double.NEGATIVE_INFINITY : z, (t == -1) ? Double.NEGATIVE_INFINITY : t,
+                Double.NEGATIVE_INFINITY, w + (2 * margin), h + (2 * margin),
+                (z == -1) ? Double.POSITIVE_INFINITY : 1d, (t == -1) ? Double.POSITIVE_INFINITY : 1d,
+                Double.POSITIVE_INFINITY);
+
+        return new HashSet<ROI>(seq.getROIIndex().getROIs(region));
+    }
+
+    /**
+     * Returns <code>false</code> if the specified layer is a ROI layer which can be ignored as its ROI is not part of
+     * the given ROI set (retrieved from {@link #getROIsIn(Sequence, double, double, double, double)}).<br>
+     * ROI in interaction (selected, focused or in creation) are never ignored.
+     */
+    protected static boolean isLayerConcerned(Layer layer, Sequence seq, Set<ROI> rois)
+    {
+        final Overlay overlay = layer.getOverlay();
+
+        // not a ROI layer
+        if (!(overlay instanceof ROIPainter))
+            return true;
+
+        final ROI roi = ((ROIPainter) overlay).getROI();
+
+        if (roi.isSelected() || roi.isFocused() || roi.isCreating())
+            return true;
+
+        // ROI not indexed (not attached to sequence) --> keep it
+        return rois.contains(roi) || !seq.getROIIndex().contains(roi);
+    }
+
+    /**
+     * Returns the ROI of the specified layer if it can be drawn from the static ROI raster cache (2D ROI visible and
+     * not in interaction), <code>null</code> otherwise.
+     */
+    protected static ROI getCacheableROI(Layer layer)
+    {
+        final Overlay overlay = layer.getOverlay();
+
+        if (!(overlay instanceof ROIPainter) || !layer.isVisible())
+            return null;
+
+        final ROI roi = ((ROIPainter) overlay).getROI();
+
+        if (!isCacheableROI(roi))
+            return null;
+
+        return roi;
+    }
+
+    /**
+     * Returns <code>true</code> if the specified ROI can be drawn from the static ROI raster cache (2D ROI not in
+     * interaction).
+     */
+    protected static boolean isCacheableROI(ROI roi)
+    {
+        // only static 2D ROI (name is drawn in canvas coordinates)
+        return (roi instanceof ROI2D) && !roi.isSelected() && !roi.isFocused() && !roi.isCreating()
+                && !roi.getShowName();
+    }
+
+    /**
+     * Returns the zoom level (half power of 2 step, greater or equal to specified scale) used by the static ROI
+     * raster cache, or <code>NaN</code> if scale is not valid.
+     */
+    protected static double getZoomBucket(double scale)
+    {
+        if (!(scale > 0d) || Double.isInfinite(scale))
+            return Double.NaN;
+
+        return Math.pow(2d, Math.ceil(2d * Math.log(scale) / Math.log(2d)) / 2d);
+    }
+
+    @Override
+    protected List<Layer> getMouseEventLayers(Point5D.Double pt)
+    {
+        final List<Layer> layers = super.getMouseEventLayers(pt);
+        final Sequence seq = getSequence();
+
+        if ((seq == null) || (pt == null) || !seq.hasROI())
+            return layers;
+
+        // only ROI near mouse position need to receive the event
+        final Set<ROI> rois = getROIsIn(seq, pt.getX(), pt.getY(), 0d, 0d);
+        final List<Layer> result = new ArrayList<Layer>(layers.size());
+
+        for (Layer layer : layers)
+            if (isLayerConcerned(layer, seq, rois))
+                result.add(layer);
+
+        return result;
+    }
+
     @Override
     protected void setPositionCInternal(int c)
     {
@@ -3306,6 +3677,13 @@ public class Canvas2D extends IcyCanvas2D implements ROITaskListener
             // layer refresh
             if (canvasView != null)
             {
+                final String property = event.getProperty();
+
+                // ROI layer display changed --> static ROI cache need to be rebuilt
+                if ((event.getSource().getOverlay() instanceof ROIPainter)
+                        && (Layer.PROPERTY_OPACITY.equals(property) || Layer.PROPERTY_VISIBLE.equals(property)))
+                    canvasView.roiCache.invalidCache();
+
                 canvasView.layersChanged();
                 canvasView.refresh();
             }
@@ -3320,6 +3698,10 @@ public class Canvas2D extends IcyCanvas2D implements ROITaskListener
         // layer refresh
         if (canvasView != null)
         {
+            // ROI removed --> static ROI cache need to be rebuilt
+            if ((type == SequenceEventType.REMOVED) && (overlay instanceof ROIPainter))
+                canvasView.roiCache.invalidCache();
+
             canvasView.layersChanged();
             canvasView.refresh();
         }
@@ -3273,6 +3273,20 @@ public abstract class IcyCanvas extends JPanel
         return imageToCanvasDeltaC(value) + getOffsetC();
     }
 
+    /**
+     * Returns the layers which should receive a mouse event occurring at the specified image position (sorted on
+     * layer priority).<br>
+     * By default all layers are returned, canvas implementation can override it to filter out layers which cannot
+     * be concerned by the event (overlay far from mouse position for instance).
+     * 
+     * @param pt
+     *        mouse image position
+     */
+    protected List<Layer> getMouseEventLayers(Point5D.Double pt)
+    {
+        return getLayers(true);
+    }
+
     /**
      * Helper to forward mouse press event to the overlays.
      * 
@@ -3286,7 +3300,7 @@ public abstract class IcyCanvas extends JPanel
         final boolean globalVisible = isLayersVisible();
 
         // send mouse event to overlays after so mouse canvas position is ok
-        for (Layer layer : getLayers(true))
+        for (Layer layer : getMouseEventLayers(pt))
         {
             if ((globalVisible && layer.isVisible()) || layer.getReceiveMouseEventOnHidden())
                 layer.getOverlay().mousePressed(event, pt, this);
@@ -3317,7 +3331,7 @@ public abstract class IcyCanvas extends JPanel
         final boolean globalVisible = isLayersVisible();
 
         // send mouse event to overlays after so mouse canvas position is ok
-        for (Layer layer : getLayers(true))
+        for (Layer layer : getMouseEventLayers(pt))
         {
             if ((globalVisible && layer.isVisible()) || layer.getReceiveMouseEventOnHidden())
                 layer.getOverlay().mouseReleased(event, pt, this);
@@ -3348,7 +3362,7 @@ public abstract class IcyCanvas extends JPanel
         final boolean globalVisible = isLayersVisible();
 
         // send mouse event to overlays after so mouse canvas position is ok
-        for (Layer layer : getLayers(true))
+        for (Layer layer : getMouseEventLayers(pt))
         {
             if ((globalVisible && layer.isVisible()) || layer.getReceiveMouseEventOnHidden())
                 layer.getOverlay().mouseClick(event, pt, this);
@@ -3379,7 +3393,7 @@ public abstract class IcyCanvas extends JPanel
         final boolean globalVisible = isLayersVisible();
 
         // send mouse event to overlays after so mouse canvas position is ok
-        for (Layer layer : getLayers(true))
+        for (Layer layer : getMouseEventLayers(pt))
         {
             if ((globalVisible && layer.isVisible()) || layer.getReceiveMouseEventOnHidden())
                 layer.getOverlay().mouseMove(event, pt, this);
@@ -3410,7 +3424,7 @@ public abstract class IcyCanvas extends JPanel
         final boolean globalVisible = isLayersVisible();
 
         // send mouse event to overlays after so mouse canvas position is ok
-        for (Layer layer : getLayers(true))
+        for (Layer layer : getMouseEventLayers(pt))
         {
             if ((globalVisible && layer.isVisible()) || layer.getReceiveMouseEventOnHidden())
                 layer.getOverlay().mouseDrag(event, pt, this);
@@ -3441,7 +3455,7 @@ public abstract class IcyCanvas extends JPanel
         final boolean globalVisible = isLayersVisible();
 
         // send mouse event to overlays after so mouse canvas position is ok
-        for (Layer layer : getLayers(true))
+        for (Layer layer : getMouseEventLayers(pt))
         {
             if ((globalVisible && layer.isVisible()) || layer.getReceiveMouseEventOnHidden())
                 layer.getOverlay().mouseEntered(event, pt, this);
@@ -3472,7 +3486,7 @@ public abstract class IcyCanvas extends JPanel
         final boolean globalVisible = isLayersVisible();
 
         // send mouse event to overlays after so mouse canvas position is ok
-        for (Layer layer : getLayers(true))
+        for (Layer layer : getMouseEventLayers(pt))
         {
             if ((globalVisible && layer.isVisible()) || layer.getReceiveMouseEventOnHidden())
                 layer.getOverlay().mouseExited(event, pt, this);
@@ -3503,7 +3517,7 @@ public abstract class IcyCanvas extends JPanel
         final boolean globalVisible = isLayersVisible();
 
         // send mouse event to overlays after so mouse canvas position is ok
-        for (Layer layer : getLayers(true))
+        for (Layer layer : getMouseEventLayers(pt))
         {
             if ((globalVisible && layer.isVisible()) || layer.getReceiveMouseEventOnHidden())
                 layer.getOverlay().mouseWheelMoved(event, pt, this);
@@ -28,6 +28,7 @@ import icy.painter.OverlayWrapper;
 import icy.painter.Painter;
 import icy.painter.WeakOverlayListener;
 import icy.roi.ROI;
+import icy.roi.ROI.ROIPainter;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
@@ -295,8 +296,14 @@ public class Layer implements OverlayListener, Comparable<Layer>
     public ROI getAttachedROI()
     {
         if (roi == null)
-            // search for attached ROI
-            roi = new WeakReference<ROI>(Icy.getMainInterface().getROI(overlay));
+        {
+            // ROI overlay ? directly get the attached ROI
+            if (overlay instanceof ROIPainter)
+                roi = new WeakReference<ROI>(((ROIPainter) overlay).getROI());
+            else
+                // search for attached ROI
+                roi = new WeakReference<ROI>(Icy.getMainInterface().getROI(overlay));
+        }
 
         return roi.get();
     }
@@ -38,6 +38,7 @@ import icy.common.exception.UnsupportedFormatException;
 import icy.file.SequenceFileSticher.SequenceFileGroup;
 import icy.file.SequenceFileSticher.SequenceIdent;
 import icy.file.SequenceFileSticher.SequencePosition;
+import icy.file.chunk.ChunkedImage;
 import icy.gui.dialog.ImporterSelectionDialog;
 import icy.gui.dialog.SeriesSelectionDialog;
 import icy.gui.frame.progress.FailedAnnounceFrame;
@@ -48,6 +49,7 @@ import icy.image.IcyBufferedImage;
 import icy.image.ImagePosition;
 import icy.image.ImageProvider;
 import icy.image.cache.ImageCache;
+import icy.image.cache.ThumbnailCache;
 import icy.main.Icy;
 import icy.plugin.PluginDescriptor;
 import icy.plugin.PluginLauncher;
@@ -74,6 +76,7 @@ import loci.formats.meta.MetadataStore;
 import loci.formats.ome.OMEXMLMetadataImpl;
 import ome.xml.meta.OMEXMLMetadata;
 import plugins.kernel.importer.LociImporterPlugin;
+import plugins.kernel.importer.MappedImporterPlugin;
 
 /**
  * Sequence / Image loader class.
@@ -173,10 +176,11 @@ public class Loader
     // HashSet<String>(CollectionUtil.asList(new String[] {
     // "xml", "txt", "pdf", "xls", "doc", "docx", "rtf", "exe", "wav", "mp3", "app"}));
     /**
-     * XML, XLS and TXT file can be image metadata files used to open the whole image, accept it !
+     * XML, XLS and TXT file can be image metadata files used to open the whole image, accept it !<br>
+     * Chunk files of chunked images are only accessed through their header file.
      */
-    private final static Set<String> nonImageExtensions = new HashSet<String>(
-            CollectionUtil.asList(new String[] {"pdf", "doc", "docx", "rtf", "exe", "wav", "mp3", "app"}));
+    private final static Set<String> nonImageExtensions = new HashSet<String>(CollectionUtil.asList(
+            new String[] {"pdf", "doc", "docx", "rtf", "exe", "wav", "mp3", "app", ChunkedImage.CHUNK_EXTENSION}));
 
     private final static Set<String> nonMetaExtensions = new HashSet<String>(CollectionUtil.asList(new String[] {"jpg", "png", "bmp", "avi"}));
 
@@ -504,8 +508,13 @@ public class Loader
         {
             try
             {
-                // add the importer
-                result.add((SequenceFileImporter) PluginLauncher.create(plugin));
+                final SequenceFileImporter importer = (SequenceFileImporter) PluginLauncher.create(plugin);
+
+                // memory mapped importer first as it only accepts files it can directly serve
+                if (importer instanceof MappedImporterPlugin)
+                    result.add(0, importer);
+                else
+                    result.add(importer);
             }
             catch (Throwable t)
             {
@@ -1280,7 +1289,9 @@ public class Loader
 
     /**
      * Returns a thumbnail of the specified image file path.<br>
-     * It can return <code>null</code> if the specified file is not a valid or supported image file.
+     * It can return <code>null</code> if the specified file is not a valid or supported image file.<br>
+     * The thumbnail is retrieved from the thumbnail cache when the file didn't change since last time (see
+     * {@link ThumbnailCache}).
      * 
      * @param importer
      *        Importer used to open and load the thumbnail from the image file.
@@ -1294,11 +1305,20 @@ public class Loader
     public static IcyBufferedImage loadThumbnail(SequenceFileImporter importer, String path, int series)
             throws UnsupportedFormatException, IOException, InterruptedException
     {
+        final IcyBufferedImage cached = ThumbnailCache.getUpToDate(path, series);
+
+        if (cached != null)
+            return cached;
+
         if (importer.open(path, 0))
         {
             try
             {
-                return importer.getThumbnail(series);
+                final IcyBufferedImage result = importer.getThumbnail(series);
+
+                ThumbnailCache.put(path, series, result);
+
+                return result;
             }
             finally
             {
@@ -1310,7 +1330,7 @@ public class Loader
     }
 
     /**
-     * Returns a thumbnail of the specified image file path.
+     * Returns a thumbnail of the specified image file path (retrieved from the thumbnail cache when possible).
      * 
      * @param path
      *        image file path.
@@ -1321,9 +1341,13 @@ public class Loader
      */
     public static IcyBufferedImage loadThumbnail(String path, int series) throws UnsupportedFormatException, IOException, InterruptedException
     {
-        IcyBufferedImage result;
+        IcyBufferedImage result = ThumbnailCache.getUpToDate(path, series);
         UnsupportedFormatException lastError = null;
 
+        // no need to find importer
+        if (result != null)
+            return result;
+
         for (SequenceFileImporter importer : getSequenceFileImporters(path))
         {
             try
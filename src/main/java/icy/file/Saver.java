@@ -18,16 +18,33 @@
  */
 package icy.file;
 
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.text.DecimalFormat;
-
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import icy.common.exception.UnsupportedFormatException;
+import icy.file.chunk.ChunkedImage;
 import icy.gui.frame.progress.FailedAnnounceFrame;
 import icy.gui.frame.progress.FileFrame;
 import icy.gui.menu.ApplicationMenu;
 import icy.image.IcyBufferedImage;
 import icy.image.IcyBufferedImageUtil;
+import icy.image.ImageProvider;
+import icy.image.cache.ImageCache;
 import icy.image.colormodel.IcyColorModel;
 import icy.image.lut.LUT;
 import icy.main.Icy;
@@ -36,15 +53,25 @@ import icy.preferences.GeneralPreferences;
 import icy.roi.ROI;
 import icy.sequence.MetaDataUtil;
 import icy.sequence.Sequence;
+import icy.sequence.SequenceIdImporter;
+import icy.sequence.VolumetricImage;
 import icy.system.IcyExceptionHandler;
+import icy.system.SystemUtil;
+import icy.system.thread.Processor;
 import icy.type.DataType;
+import icy.type.collection.array.Array1DUtil;
+import icy.type.collection.array.ArrayUtil;
+import icy.type.collection.array.ByteArrayConvert;
 import icy.util.OMEUtil;
 import icy.util.StringUtil;
 import loci.common.services.ServiceException;
 import loci.formats.FormatException;
 import loci.formats.IFormatWriter;
 import loci.formats.UnknownFormatException;
+import loci.formats.meta.IPyramidStore;
+import loci.formats.meta.MetadataConverter;
 import loci.formats.meta.MetadataRetrieve;
+import loci.formats.ome.OMEPyramidStore;
 import loci.formats.out.APNGWriter;
 import loci.formats.out.AVIWriter;
 import loci.formats.out.JPEG2000Writer;
@@ -52,6 +79,7 @@ import loci.formats.out.JPEGWriter;
 import loci.formats.out.OMETiffWriter;
 import loci.formats.out.TiffWriter;
 import ome.xml.meta.OMEXMLMetadata;
+import ome.xml.model.primitives.PositiveInteger;
 
 /**
  * Sequence / Image saver class.<br>
@@ -64,6 +92,96 @@ import ome.xml.meta.OMEXMLMetadata;
  */
 public class Saver
 {
+    /**
+     * Maximum number of planes prepared in advance (fetched, converted and encoded) while the writer is saving previous
+     * ones (it can be reduced depending the plane size, see {@link #getPipelineSize(long)}).
+     */
+    private static final int SAVE_PIPELINE_SIZE = Math.max(2, SystemUtil.getNumberOfCPUs() * 2);
+    /**
+     * Maximum part of the free memory used by planes in the save pipeline.
+     */
+    private static final double SAVE_PIPELINE_MEMORY_RATIO = 0.25d;
+    /**
+     * Tile size used for pyramidal OME-TIFF export
+     */
+    public static final int PYRAMID_TILE_SIZE = 512;
+
+    /**
+     * Convert a plane to 8 bits gray or RGB image (done in parallel).
+     */
+    private static class PlaneConverter implements Callable<IcyBufferedImage>
+    {
+        final IcyBufferedImage image;
+        final int imageType;
+        final LUT lut;
+
+        public PlaneConverter(IcyBufferedImage image, int imageType, LUT lut)
+        {
+            super();
+
+            this.image = image;
+            this.imageType = imageType;
+            this.lut = lut;
+        }
+
+        @Override
+        public IcyBufferedImage call() throws InterruptedException
+        {
+            if (image == null)
+                return null;
+
+            // image receiver
+            final BufferedImage imgOut = new BufferedImage(image.getSizeX(), image.getSizeY(), imageType);
+
+            return IcyBufferedImage.createFrom(IcyBufferedImageUtil.toBufferedImage(image, imgOut, lut));
+        }
+    }
+
+    /**
+     * Fetch (force lazy loading), convert and encode a plane into raw bytes ready to be written (done in parallel).
+     */
+    private static class PlaneEncoder implements Callable<byte[][]>
+    {
+        final Sequence sequence;
+        final int t;
+        final int z;
+        final boolean separateChannel;
+        final boolean littleEndian;
+
+        public PlaneEncoder(Sequence sequence, int t, int z, boolean separateChannel, boolean littleEndian)
+        {
+            super();
+
+            this.sequence = sequence;
+            this.t = t;
+            this.z = z;
+            this.separateChannel = separateChannel;
+            this.littleEndian = littleEndian;
+        }
+
+        @Override
+        public byte[][] call()
+        {
+            final IcyBufferedImage image = sequence.getImage(t, z);
+
+            if (image == null)
+                return null;
+
+            // separated channel data
+            if (separateChannel)
+            {
+                final byte[][] result = new byte[image.getSizeC()][];
+
+                for (int c = 0; c < result.length; c++)
+                    result[c] = image.getRawData(c, littleEndian);
+
+                return result;
+            }
+
+            return new byte[][] {image.getRawData(littleEndian)};
+        }
+    }
+
     /**
      * @deprecated use {@link OMEUtil#generateMetaData(int, int, int, int, int, DataType, boolean)} instead
      */
@@ -663,6 +781,25 @@ public class Saver
      *        add the saved sequence to recent opened sequence list
      */
     public static void save(IFormatWriter formatWriter, Sequence sequence, File file, int fps, boolean multipleFile, boolean showProgress, boolean addToRecent)
+    {
+        save(formatWriter, sequence, file, fps, multipleFile, 1, showProgress, addToRecent);
+    }
+
+    /**
+     * Save the specified sequence in the specified file.<br>
+     * Same as {@link #save(IFormatWriter, Sequence, File, int, boolean, boolean, boolean)} except that image can be
+     * saved as a tiled pyramidal OME-TIFF (sub resolution levels stored in SubIFDs) for fast display of large
+     * images.<br>
+     * Sub resolutions are computed while the full resolution is written, band by band, so a whole resolution level
+     * is never kept in memory.
+     * 
+     * @param pyramidLevels
+     *        number of resolution levels to save (1 = full resolution only, 0 = automatic: down to a single tile).<br>
+     *        Only supported by the OME-TIFF writer (ignored otherwise).
+     * @see #save(IFormatWriter, Sequence, File, int, boolean, boolean, boolean)
+     */
+    public static void save(IFormatWriter formatWriter, Sequence sequence, File file, int fps, boolean multipleFile, int pyramidLevels,
+            boolean showProgress, boolean addToRecent)
     {
         final String filePath = FileUtil.cleanPath(FileUtil.getGenericPath(file.getAbsolutePath()));
         final int sizeT = sequence.getSizeT();
@@ -722,16 +859,6 @@ public class Saver
 
                 final String filePathWithoutExt = fileBaseDirectory + FileUtil.separator + fileName;
 
-                // directory already exist ?
-                if (FileUtil.exists(fileBaseDirectory))
-                {
-                    // we are probably overwriting original image so we need to load all data
-                    sequence.setVolatile(false);
-                    sequence.loadAllData();
-                    // release image provider so we can overwrite file
-                    sequence.setImageProvider(null);
-                }
-
                 // create output directory
                 FileUtil.createDir(fileBaseDirectory);
 
@@ -747,8 +874,9 @@ public class Saver
                             filename += "_z" + decimalFormat.format(z);
                         filename += fileExt;
 
-                        // save as single image file
-                        save(writer, sequence, filename, t, z, fps, saveFrame);
+                        // save as single image file (existing file is replaced only once fully written)
+                        if (saveOrReplace(writer, sequence, filename, fileBaseDirectory, t, z, fps, pyramidLevels, saveFrame) == null)
+                            return;
                     }
                 }
 
@@ -780,24 +908,15 @@ public class Saver
                 else
                     fixedFilePath = filePath + "." + iff.getExtensions()[0];
 
-                // file already exist ?
-                if (FileUtil.exists(fixedFilePath))
-                {
-                    // we are probably overwriting original image so we need to load all data
-                    sequence.setVolatile(false);
-                    sequence.loadAllData();
-                    // release image provider so we can overwrite file
-                    sequence.setImageProvider(null);
-                    // eventually force releasing importer
-                    System.gc();
-                }
-
                 // default name used --> use filename
                 if (sequence.isDefaultName())
                     sequence.setName(FileUtil.getFileName(filePath, false));
 
-                // save whole sequence into a single file
-                savedSequence = save(writer, sequence, fixedFilePath, -1, -1, fps, saveFrame);
+                // save whole sequence into a single file (existing file is replaced only once fully written)
+                savedSequence = saveOrReplace(writer, sequence, fixedFilePath, fixedFilePath, -1, -1, fps, pyramidLevels, saveFrame);
+                // canceled while overwriting --> original file is preserved
+                if (savedSequence == null)
+                    return;
 
                 // we set filename on actual saved Sequence
                 savedSequence.setFilename(filePath);
@@ -961,6 +1080,236 @@ public class Saver
                 force);
     }
 
+    /**
+     * Same as {@link #save(IFormatWriter, Sequence, String, int, int, int, FileFrame)} except that if the destination
+     * file already exists the data is first written (plane by plane) in a temporary file of the same directory which
+     * then replaces the original file.<br>
+     * That way a virtual Sequence can keep lazily loading its data from the file we are overwriting and we never need
+     * to load the whole Sequence in memory: when the saved file contains exactly the Sequence data the Sequence is then
+     * attached to it so data not yet loaded is lazily read from the new file.
+     * 
+     * @param sourcePath
+     *        file or directory which is overwritten (used to detect if the Sequence data comes from it)
+     * @return Actual saved Sequence or <code>null</code> if the operation was canceled while overwriting (original
+     *         file is then preserved)
+     */
+    private static Sequence saveOrReplace(IFormatWriter writer, Sequence sequence, String filePath, String sourcePath, int posT, int posZ, int fps,
+            int pyramidLevels, FileFrame saveFrame)
+            throws ServiceException, FormatException, IOException, IllegalArgumentException, InterruptedException
+    {
+        // new file --> direct save
+        if (!FileUtil.exists(filePath))
+            return save(writer, sequence, filePath, posT, posZ, fps, pyramidLevels, saveFrame);
+
+        final String tempPath = getTemporaryPath(filePath);
+        Sequence result = null;
+
+        try
+        {
+            result = save(writer, sequence, tempPath, posT, posZ, fps, pyramidLevels, saveFrame);
+
+            // canceled --> keep original file
+            if ((saveFrame != null) && saveFrame.isCancelRequested())
+                result = null;
+            else
+            {
+                // Sequence data may still be (lazily) loaded from the file we are replacing
+                if (isProvidedFrom(sequence, sourcePath))
+                {
+                    // saved file contains the whole Sequence data ? --> we will lazily load remaining data from it
+                    final boolean attach = (result == sequence) && (posT < 0) && (posZ < 0) && filePath.equals(sourcePath)
+                            && (getImageFileFormat(writer, ImageFileFormat.TIFF) == ImageFileFormat.TIFF) && canAttachToFile(sequence, tempPath);
+
+                    // otherwise load remaining data (stay in image cache for virtual sequence)
+                    if (!attach)
+                        sequence.loadAllData();
+
+                    // release importer
+                    sequence.setImageProvider(null);
+                    // eventually force releasing importer
+                    System.gc();
+
+                    replaceFile(tempPath, filePath);
+
+                    if (attach && !attachToFile(sequence, filePath))
+                        throw new IOException("Cannot reopen saved file '" + filePath + "' to load remaining data, sequence should be reopened.");
+                }
+                else
+                    replaceFile(tempPath, filePath);
+            }
+        }
+        finally
+        {
+            // failed or canceled --> remove temporary file
+            if (result == null)
+                FileUtil.delete(tempPath, false);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns a temporary file path located in the same directory as the specified file and with the same extension
+     * (so we can atomically move it in place of the original file).
+     */
+    private static String getTemporaryPath(String filePath)
+    {
+        final String directory = FileUtil.getDirectory(filePath);
+        final String name = FileUtil.getFileName(filePath, true);
+        String result;
+
+        do
+            result = directory + "~" + Long.toHexString(System.nanoTime()) + "_" + name;
+        while (FileUtil.exists(result));
+
+        return result;
+    }
+
+    /**
+     * Returns <code>false</code> if we are sure the Sequence data is not provided from the specified file or directory.
+     */
+    private static boolean isProvidedFrom(Sequence sequence, String path)
+    {
+        final ImageProvider imageProvider = sequence.getImageProvider();
+
+        if (imageProvider == null)
+            return false;
+
+        if (imageProvider instanceof SequenceIdImporter)
+        {
+            final String opened = ((SequenceIdImporter) imageProvider).getOpened();
+
+            if (!StringUtil.isEmpty(opened))
+            {
+                final String openedPath = FileUtil.getGenericPath(new File(opened).getAbsolutePath());
+                final String genericPath = FileUtil.getGenericPath(new File(path).getAbsolutePath());
+
+                return openedPath.equalsIgnoreCase(genericPath) || openedPath.startsWith(genericPath + "/");
+            }
+        }
+
+        // can't know --> assume yes
+        return true;
+    }
+
+    /**
+     * Open the specified file with a compatible importer and returns it if it contains the Sequence data (same
+     * dimension and data type), returns <code>null</code> otherwise.
+     */
+    private static SequenceFileImporter openSequenceFile(Sequence sequence, String path) throws InterruptedException
+    {
+        final SequenceFileImporter importer = Loader.getSequenceFileImporter(path, true);
+
+        if (importer == null)
+            return null;
+
+        try
+        {
+            if (importer.open(path, 0))
+            {
+                final OMEXMLMetadata metadata = importer.getOMEXMLMetaData();
+
+                if ((MetaDataUtil.getNumSeries(metadata) > 0) && (MetaDataUtil.getSizeX(metadata, 0) == sequence.getSizeX())
+                        && (MetaDataUtil.getSizeY(metadata, 0) == sequence.getSizeY()) && (MetaDataUtil.getSizeC(metadata, 0) == sequence.getSizeC())
+                        && (MetaDataUtil.getSizeZ(metadata, 0) == sequence.getSizeZ()) && (MetaDataUtil.getSizeT(metadata, 0) == sequence.getSizeT())
+                        && (MetaDataUtil.getDataType(metadata, 0) == sequence.getDataType_()))
+                    return importer;
+            }
+
+            importer.close();
+        }
+        catch (UnsupportedFormatException e)
+        {
+            // can't use it
+        }
+        catch (IOException e)
+        {
+            // can't use it
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns <code>true</code> if the Sequence can be attached to the specified saved file (see
+     * {@link #attachToFile(Sequence, String)}).
+     */
+    private static boolean canAttachToFile(Sequence sequence, String path) throws InterruptedException
+    {
+        final SequenceFileImporter importer = openSequenceFile(sequence, path);
+
+        if (importer == null)
+            return false;
+
+        try
+        {
+            importer.close();
+        }
+        catch (IOException e)
+        {
+            // ignore
+        }
+
+        return true;
+    }
+
+    /**
+     * Attach the Sequence to the specified saved file (containing exactly the Sequence data) so image data not yet loaded
+     * will be lazily loaded from it.
+     */
+    private static boolean attachToFile(Sequence sequence, String path) throws InterruptedException
+    {
+        final SequenceFileImporter importer = openSequenceFile(sequence, path);
+
+        if (importer == null)
+            return false;
+
+        // saved file has the Sequence dimension and XYCZT order
+        for (int t = 0; t < sequence.getSizeT(); t++)
+        {
+            final VolumetricImage volume = sequence.getVolumetricImage(t);
+
+            if (volume != null)
+            {
+                // don't force data loading here
+                for (Entry<Integer, IcyBufferedImage> entry : volume.getImages().entrySet())
+                    entry.getValue().setImageSourceInfo(importer, 0, 0, null, t, entry.getKey().intValue(), -1);
+            }
+        }
+
+        sequence.resetOriginInformation();
+        sequence.setImageProvider(importer);
+
+        return true;
+    }
+
+    /**
+     * Replace <code>dst</code> file by <code>src</code> file (atomically if supported by the file system).
+     */
+    private static void replaceFile(String src, String dst) throws IOException
+    {
+        final Path srcPath = Paths.get(src);
+        final Path dstPath = Paths.get(dst);
+
+        try
+        {
+            try
+            {
+                Files.move(srcPath, dstPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException e)
+            {
+                Files.move(srcPath, dstPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        catch (IOException e)
+        {
+            // destination may be temporary locked (Windows) --> use the more tolerant rename (retry for a while)
+            if (!FileUtil.rename(src, dst, true))
+                throw new IOException("Cannot replace '" + dst + "' by saved file '" + src + "'", e);
+        }
+    }
+
     /**
      * Save the specified sequence in the specified file using the given writer.<br>
      * If posT or/and posZ are defined then only a sub part of the original Sequence is saved.
@@ -977,6 +1326,8 @@ public class Saver
      *        slice index to save (-1 to save all slice from input sequence)
      * @param fps
      *        frame rate for AVI writer
+     * @param pyramidLevels
+     *        number of resolution levels for pyramidal OME-TIFF (1 = no pyramid, 0 = automatic)
      * @param saveFrame
      *        progress frame for save operation (can be null)
      * @return Actual saved Sequence (can be different from input one if conversion was needed)
@@ -986,8 +1337,8 @@ public class Saver
      * @throws InterruptedException
      * @throws IllegalArgumentException
      */
-    private static Sequence save(IFormatWriter writer, Sequence sequence, String filePath, int posT, int posZ, int fps, FileFrame saveFrame)
-            throws ServiceException, FormatException, IOException, IllegalArgumentException, InterruptedException
+    private static Sequence save(IFormatWriter writer, Sequence sequence, String filePath, int posT, int posZ, int fps, int pyramidLevels,
+            FileFrame saveFrame) throws ServiceException, FormatException, IOException, IllegalArgumentException, InterruptedException
     {
         // TODO: temporary fix for the "incorrect close operation" bug in Bio-Formats
         // with OME TIF writer, remove it when fixed.
@@ -1043,8 +1394,10 @@ public class Saver
 
         // convert Sequence in good format for specified writer
         final Sequence compatibleSequence = getCompatibleSequenceForWriter(writer, sequence, adjT, adjZ);
-        // get channel separation flag
-        final boolean separateChannel = getSeparateChannelFlag(saveFormat, compatibleSequence.getColorModel());
+        // pyramid is only supported by OME-TIFF writer
+        final boolean pyramid = (pyramidLevels != 1) && (writer instanceof OMETiffWriter);
+        // get channel separation flag (pyramid tiles are always written per channel)
+        final boolean separateChannel = pyramid || getSeparateChannelFlag(saveFormat, compatibleSequence.getColorModel());
         // prepare metadata
         final OMEXMLMetadata metadata = MetaDataUtil.generateMetaData(compatibleSequence, separateChannel);
 
@@ -1087,6 +1440,11 @@ public class Saver
         if ((saveFormat == ImageFileFormat.AVI) && (fps != 0))
             // cannot use writer.setFramesPerSecond(fps) anymore, need to properly set the time interval in metadata
             MetaDataUtil.setTimeInterval(metadata, 0, 1d / (double) fps);
+
+        // tiled pyramidal OME-TIFF
+        if (pyramid)
+            return savePyramid((OMETiffWriter) writer, compatibleSequence, metadata, filePath, tMin, tMax, zMin, zMax, pyramidLevels,
+                    saveFrame);
         
         // generate metadata
         writer.setMetadataRetrieve((MetadataRetrieve) metadata);
@@ -1103,49 +1461,217 @@ public class Saver
         writer.setWriteSequentially(true);
 
         final int sizeC = compatibleSequence.getSizeC();
+        final int numPlane = separateChannel ? sizeC : 1;
         // get endianess
         final boolean littleEndian = !writer.getMetadataRetrieve().getPixelsBinDataBigEndian(0, 0).booleanValue();
-        byte[] data = null;
+        // plane data and its encoded copy are both retained while in the pipeline
+        final int pipelineSize = getPipelineSize(2L * compatibleSequence.getSizeX() * compatibleSequence.getSizeY() * sizeC
+                * compatibleSequence.getDataType_().getSize());
+        // single image --> no need to use the pipeline
+        final Processor processor = ((tMin == tMax) && (zMin == zMax)) ? null : createSaveProcessor(pipelineSize);
+        // planes being prepared (in write order)
+        final LinkedList<Future<byte[][]>> pending = new LinkedList<Future<byte[][]>>();
+        int imageIndex = 0;
 
         try
         {
-            int imageIndex = 0;
             // XYCZT order is important here (see metadata)
             for (int t = tMin; t <= tMax; t++)
             {
                 for (int z = zMin; z <= zMax; z++)
                 {
-                    // interrupt process (partial save)
-                    if ((saveFrame != null) && saveFrame.isCancelRequested())
-                        return compatibleSequence;
+                    final PlaneEncoder encoder = new PlaneEncoder(compatibleSequence, t, z, separateChannel, littleEndian);
 
-                    final IcyBufferedImage image = compatibleSequence.getImage(t, z);
+                    if (processor == null)
+                    {
+                        writePlane(writer, encoder.call(), imageIndex, numPlane);
+                        imageIndex += numPlane;
 
-                    // separated channel data
-                    if (separateChannel)
+                        if (saveFrame != null)
+                            saveFrame.incPosition();
+                    }
+                    else
                     {
-                        for (int c = 0; c < sizeC; c++)
+                        // pipeline is full --> write the oldest plane first (backpressure)
+                        while (pending.size() >= pipelineSize)
                         {
-                            if (image != null)
+                            // interrupt process (partial save)
+                            if ((saveFrame != null) && saveFrame.isCancelRequested())
+                                return compatibleSequence;
+
+                            writePlane(writer, pending.removeFirst(), imageIndex, numPlane);
+                            imageIndex += numPlane;
+
+                            if (saveFrame != null)
+                                saveFrame.incPosition();
+                        }
+
+                        pending.add(processor.submit(encoder));
+                    }
+                }
+            }
+
+            // write remaining planes
+            while (!pending.isEmpty())
+            {
+                // interrupt process (partial save)
+                if ((saveFrame != null) && saveFrame.isCancelRequested())
+                    return compatibleSequence;
+
+                writePlane(writer, pending.removeFirst(), imageIndex, numPlane);
+                imageIndex += numPlane;
+
+                if (saveFrame != null)
+                    saveFrame.incPosition();
+            }
+        }
+        finally
+        {
+            if (processor != null)
+            {
+                // cancel planes still in preparation (canceled or failed save)
+                for (Future<byte[][]> future : pending)
+                    future.cancel(true);
+                processor.shutdownNow();
+            }
+
+            // always close writer after a file has been saved
+            writer.close();
+        }
+
+        return compatibleSequence;
+    }
+
+    /**
+     * Save the specified planes as a tiled pyramidal OME-TIFF (sub resolutions stored in SubIFDs).<br>
+     * OME-TIFF stores resolution levels one after the other so sub resolution tiles are computed while the full
+     * resolution is written and kept in a temporary chunked image until their level is written.
+     */
+    private static Sequence savePyramid(OMETiffWriter writer, Sequence sequence, OMEXMLMetadata metadata, String filePath, int tMin, int tMax,
+            int zMin, int zMax, int pyramidLevels, FileFrame saveFrame)
+            throws ServiceException, FormatException, IOException, InterruptedException
+    {
+        final int sizeX = sequence.getSizeX();
+        final int sizeY = sequence.getSizeY();
+        final int sizeC = sequence.getSizeC();
+        final int numPlanes = ((tMax - tMin) + 1) * ((zMax - zMin) + 1) * sizeC;
+        int levels = (pyramidLevels > 0) ? pyramidLevels : getPyramidLevels(sizeX, sizeY, PYRAMID_TILE_SIZE);
+
+        // no empty level
+        while ((levels > 1) && ((Math.min(sizeX, sizeY) >> (levels - 1)) == 0))
+            levels--;
+
+        final IPyramidStore store = getPyramidStore(metadata);
+
+        // declare sub resolutions
+        for (int r = 1; r < levels; r++)
+        {
+            store.setResolutionSizeX(new PositiveInteger(Integer.valueOf(sizeX >> r)), 0, r);
+            store.setResolutionSizeY(new PositiveInteger(Integer.valueOf(sizeY >> r)), 0, r);
+        }
+
+        // pyramid adds up to 1/3 of the full resolution size
+        if (((MetaDataUtil.getDataSize(metadata, 0, 0) * 4) / 3) > 2000000000L)
+            writer.setBigTiff(true);
+
+        writer.setMetadataRetrieve((MetadataRetrieve) store);
+        writer.setInterleaved(false);
+
+        final int tileW = writer.setTileSizeX(Math.min(sizeX, PYRAMID_TILE_SIZE));
+        final int tileH = writer.setTileSizeY(Math.min(sizeY, PYRAMID_TILE_SIZE));
+
+        writer.setId(filePath);
+        writer.setSeries(0);
+        writer.setWriteSequentially(true);
+
+        final boolean littleEndian = !writer.getMetadataRetrieve().getPixelsBinDataBigEndian(0, 0).booleanValue();
+        final boolean signed = sequence.isSignedDataType();
+        final Processor processor = new Processor(-1, SystemUtil.getNumberOfCPUs());
+        // sub resolution tiles waiting for their level to be written (one plane per T)
+        final ChunkedImage scratch;
+
+        if (levels > 1)
+            scratch = new ChunkedImage(getTemporaryPath(FileUtil.setExtension(filePath, "." + ChunkedImage.FILE_EXTENSION)), sizeX, sizeY, 1,
+                    1, numPlanes, sequence.getDataType_(), tileW, tileH, 1, levels, 1);
+        else
+            scratch = null;
+
+        processor.setThreadName("Pyramid builder");
+
+        if (saveFrame != null)
+        {
+            saveFrame.setLength(numPlanes * levels);
+            saveFrame.setPosition(0);
+        }
+
+        try
+        {
+            int planeIndex = 0;
+
+            // full resolution (XYCZT order is important here, see metadata)
+            for (int t = tMin; t <= tMax; t++)
+            {
+                for (int z = zMin; z <= zMax; z++)
+                {
+                    for (int c = 0; c < sizeC; c++)
+                    {
+                        // interrupt process (partial save)
+                        if ((saveFrame != null) && saveFrame.isCancelRequested())
+                            return sequence;
+
+                        final Object data = sequence.getDataXY(t, z, c);
+                        final PyramidBuilder builder = (scratch != null) ? new PyramidBuilder(scratch, planeIndex, signed, processor) : null;
+
+                        // write a band of tiles then build sub resolutions from it
+                        for (int y = 0; y < sizeY; y += tileH)
+                        {
+                            final int h = Math.min(tileH, sizeY - y);
+
+                            for (int x = 0; x < sizeX; x += tileW)
                             {
-                                // avoid multiple allocation
-                                data = image.getRawData(c, data, 0, littleEndian);
-                                writer.saveBytes(imageIndex, data);
+                                final int w = Math.min(tileW, sizeX - x);
+
+                                writer.saveBytes(planeIndex, getTileBytes(data, sizeX, x, y, w, h, littleEndian), x, y, w, h);
                             }
 
-                            imageIndex++;
+                            if (builder != null)
+                                builder.push(0, data, y, h);
                         }
+
+                        planeIndex++;
+
+                        if (saveFrame != null)
+                            saveFrame.incPosition();
                     }
-                    else
+                }
+            }
+
+            // then sub resolutions
+            for (int r = 1; r < levels; r++)
+            {
+                final int sizeXR = scratch.getSizeX(r);
+                final int sizeYR = scratch.getSizeY(r);
+
+                writer.setResolution(r);
+
+                for (int p = 0; p < numPlanes; p++)
+                {
+                    // interrupt process (partial save)
+                    if ((saveFrame != null) && saveFrame.isCancelRequested())
+                        return sequence;
+
+                    for (int y = 0; y < sizeYR; y += tileH)
                     {
-                        if (image != null)
+                        final int h = Math.min(tileH, sizeYR - y);
+                        // chunks of the band are read in parallel
+                        final Object band = scratch.readRegion(r, new Rectangle(0, y, sizeXR, h), 0, p, 0, processor);
+
+                        for (int x = 0; x < sizeXR; x += tileW)
                         {
-                            // avoid multiple allocation
-                            data = image.getRawData(data, 0, littleEndian);
-                            writer.saveBytes(imageIndex, data);
-                        }
+                            final int w = Math.min(tileW, sizeXR - x);
 
-                        imageIndex++;
+                            writer.saveBytes(p, getTileBytes(band, sizeXR, x, 0, w, h, littleEndian), x, y, w, h);
+                        }
                     }
 
                     if (saveFrame != null)
@@ -1155,11 +1681,265 @@ public class Saver
         }
         finally
         {
+            processor.shutdownNow();
             // always close writer after a file has been saved
             writer.close();
+
+            if (scratch != null)
+                scratch.clearData();
         }
 
-        return compatibleSequence;
+        return sequence;
+    }
+
+    /**
+     * Build sub resolution levels of a plane from full resolution bands of tiles (pushed in order).<br>
+     * Only one band per level is kept in memory, completed bands are stored in the scratch image then used to build
+     * the next level.
+     */
+    private static class PyramidBuilder
+    {
+        final ChunkedImage scratch;
+        final int planeIndex;
+        final boolean signed;
+        final Processor processor;
+        final int levels;
+        final int bandHeight;
+        // current band for each level
+        final Object[] bands;
+        // number of rows in current band for each level
+        final int[] bandRows;
+        // current band index for each level
+        final int[] bandIndexes;
+
+        PyramidBuilder(ChunkedImage scratch, int planeIndex, boolean signed, Processor processor)
+        {
+            super();
+
+            this.scratch = scratch;
+            this.planeIndex = planeIndex;
+            this.signed = signed;
+            this.processor = processor;
+
+            levels = scratch.getNumLevels();
+            bandHeight = scratch.getChunkSizeY();
+            bands = new Object[levels];
+            bandRows = new int[levels];
+            bandIndexes = new int[levels];
+        }
+
+        /**
+         * Push <code>height</code> rows (starting at row <code>row</code>) of the specified level data so they are
+         * down scaled into the next level.
+         */
+        void push(int level, Object data, int row, int height) throws IOException, InterruptedException
+        {
+            final int next = level + 1;
+
+            if (next >= levels)
+                return;
+
+            final int w = scratch.getSizeX(level);
+            final int dh = height / 2;
+
+            if (dh > 0)
+            {
+                if (bands[next] == null)
+                    bands[next] = Array1DUtil.createArray(scratch.getDataType(), scratch.getSizeX(next) * bandHeight);
+
+                downscale(data, w, row, dh * 2, bands[next], bandRows[next]);
+                bandRows[next] += dh;
+            }
+
+            // band complete or end of level reached
+            if ((bandRows[next] > 0) && ((bandRows[next] == bandHeight)
+                    || (((bandIndexes[next] * bandHeight) + bandRows[next]) == scratch.getSizeY(next))))
+                flush(next);
+        }
+
+        /**
+         * Store the current band of the specified level and build the next level from it.
+         */
+        void flush(int level) throws IOException, InterruptedException
+        {
+            final Object band = bands[level];
+            final int rows = bandRows[level];
+
+            scratch.writeChunkRow(level, planeIndex, 0, 0, bandIndexes[level], new Object[] {band}, rows, processor);
+            push(level, band, 0, rows);
+
+            // band buffer is reused
+            bandRows[level] = 0;
+            bandIndexes[level]++;
+        }
+
+        /**
+         * Down scale by 2 the given rows of source into destination (computed in parallel by columns of tiles).
+         */
+        void downscale(final Object src, final int srcW, final int srcRow, final int height, final Object dst, final int dstRow)
+                throws IOException, InterruptedException
+        {
+            final int dstW = srcW / 2;
+            // need even width
+            final int blockW = Math.max(2, scratch.getChunkSizeX() & ~1);
+            final List<Future<Object>> futures = new ArrayList<Future<Object>>();
+
+            for (int x = 0; (x + 1) < srcW; x += blockW)
+            {
+                final int sx = x;
+                final int sw = Math.min(blockW, srcW - x);
+
+                futures.add(processor.submit(new Callable<Object>()
+                {
+                    @Override
+                    public Object call()
+                    {
+                        final Object block = Array1DUtil.createArray(scratch.getDataType(), sw * height);
+
+                        for (int r = 0; r < height; r++)
+                            System.arraycopy(src, ((srcRow + r) * srcW) + sx, block, r * sw, sw);
+
+                        final Object result = IcyBufferedImageUtil.downscaleBy2(block, sw, height, signed, true);
+                        final int rw = sw / 2;
+
+                        for (int r = 0; r < (height / 2); r++)
+                            System.arraycopy(result, r * rw, dst, ((dstRow + r) * dstW) + (sx / 2), rw);
+
+                        return null;
+                    }
+                }));
+            }
+
+            try
+            {
+                for (Future<Object> future : futures)
+                    getResult(future);
+            }
+            finally
+            {
+                for (Future<Object> future : futures)
+                    future.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of resolution levels needed for the image to fit in a single tile.
+     */
+    private static int getPyramidLevels(int sizeX, int sizeY, int tileSize)
+    {
+        int result = 1;
+        int size = Math.max(sizeX, sizeY);
+
+        while (size > tileSize)
+        {
+            size /= 2;
+            result++;
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns metadata supporting resolution levels description (converted copy if needed).
+     */
+    private static IPyramidStore getPyramidStore(OMEXMLMetadata metadata)
+    {
+        if (metadata instanceof IPyramidStore)
+            return (IPyramidStore) metadata;
+
+        final OMEPyramidStore result = new OMEPyramidStore();
+
+        MetadataConverter.convertMetadata((MetadataRetrieve) metadata, result);
+
+        return result;
+    }
+
+    /**
+     * Returns raw bytes of the specified tile of plane data.
+     */
+    private static byte[] getTileBytes(Object data, int sizeX, int x, int y, int w, int h, boolean littleEndian)
+    {
+        final int rowBytes = w * ArrayUtil.getDataType(data).getSize();
+        final byte[] result = new byte[rowBytes * h];
+
+        for (int r = 0; r < h; r++)
+            ByteArrayConvert.toByteArray(data, ((y + r) * sizeX) + x, result, r * rowBytes, w, littleEndian);
+
+        return result;
+    }
+
+    /**
+     * Wait for the specified task to complete and returns its result.
+     */
+    private static <T> T getResult(Future<T> future) throws IOException, InterruptedException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (ExecutionException e)
+        {
+            final Throwable cause = e.getCause();
+
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof InterruptedException)
+                throw (InterruptedException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+
+            throw new IOException("Cannot prepare image data to save", cause);
+        }
+    }
+
+    /**
+     * Returns the number of planes which can be prepared in advance in the save pipeline so in-flight planes use at most
+     * {@link #SAVE_PIPELINE_MEMORY_RATIO} of the free memory.
+     * 
+     * @param planeSize
+     *        memory used by a plane in preparation (in bytes)
+     */
+    private static int getPipelineSize(long planeSize)
+    {
+        final long budget = (long) (SystemUtil.getJavaFreeMemory() * SAVE_PIPELINE_MEMORY_RATIO);
+
+        return (int) Math.max(1L, Math.min(SAVE_PIPELINE_SIZE, budget / Math.max(1L, planeSize)));
+    }
+
+    /**
+     * Create the processor used to prepare planes to save.
+     */
+    private static Processor createSaveProcessor(int pipelineSize)
+    {
+        final Processor result = new Processor(pipelineSize, Math.min(pipelineSize, SystemUtil.getNumberOfCPUs()));
+        result.setThreadName("Image saver");
+        return result;
+    }
+
+    /**
+     * Wait for the specified plane preparation to complete then write it.
+     */
+    private static void writePlane(IFormatWriter writer, Future<byte[][]> plane, int imageIndex, int numPlane)
+            throws FormatException, IOException, InterruptedException
+    {
+        writePlane(writer, getResult(plane), imageIndex, numPlane);
+    }
+
+    /**
+     * Write the specified plane data (<code>null</code> if no image).
+     */
+    private static void writePlane(IFormatWriter writer, byte[][] data, int imageIndex, int numPlane)
+            throws FormatException, IOException
+    {
+        // no image (keep plane index coherent)
+        if (data == null)
+            return;
+
+        for (int i = 0; i < numPlane; i++)
+            writer.saveBytes(imageIndex + i, data[i]);
     }
 
     /**
@@ -1236,20 +2016,55 @@ public class Saver
 
         // wanted image type
         final int imageType = (sizeC > 1) ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_BYTE_GRAY;
-        // image receiver
-        final BufferedImage imgOut = new BufferedImage(sequence.getSizeX(), sequence.getSizeY(), imageType);
         // conversion LUT (use default sequence one)
         final LUT lut = sequence.getDefaultLUT();
 
+        // keep converted data in image cache for virtual sequence (bounded memory usage)
+        final boolean virtual = sequence.isVolatile() && ImageCache.isEnabled();
         // create compatible sequence (preserve user name here)
         final Sequence result = new Sequence(OMEUtil.createOMEXMLMetadata(sequence.getOMEXMLMetadata(), false));
+        // source plane data and converted plane (4 bytes per pixel at most) are both retained while in the pipeline
+        final int pipelineSize = getPipelineSize((long) sequence.getSizeX() * sequence.getSizeY() * ((sizeC * dataType.getSize()) + 4L));
+        // single image --> no need to use the pipeline
+        final Processor processor = ((tMin == tMax) && (zMin == zMax)) ? null : createSaveProcessor(pipelineSize);
+        // planes being converted (in T, Z order)
+        final LinkedList<Future<IcyBufferedImage>> pending = new LinkedList<Future<IcyBufferedImage>>();
+        final int numZ = (zMax - zMin) + 1;
+        int done = 0;
 
         result.beginUpdate();
         try
         {
             for (int t = tMin; t <= tMax; t++)
+            {
                 for (int z = zMin; z <= zMax; z++)
-                    result.setImage(t, z, IcyBufferedImageUtil.toBufferedImage(sequence.getImage(t, z), imgOut, lut));
+                {
+                    final PlaneConverter converter = new PlaneConverter(sequence.getImage(t, z), imageType, lut);
+
+                    if (processor == null)
+                        setConvertedImage(result, t, z, converter.call(), virtual);
+                    else
+                    {
+                        // pipeline is full --> wait for the oldest plane first (backpressure)
+                        while (pending.size() >= pipelineSize)
+                        {
+                            setConvertedImage(result, tMin + (done / numZ), zMin + (done % numZ),
+                                    getConvertedImage(pending.removeFirst()), virtual);
+                            done++;
+                        }
+
+                        pending.add(processor.submit(converter));
+                    }
+                }
+            }
+
+            // get remaining planes
+            while (!pending.isEmpty())
+            {
+                setConvertedImage(result, tMin + (done / numZ), zMin + (done % numZ),
+                        getConvertedImage(pending.removeFirst()), virtual);
+                done++;
+            }
 
             // preserve ROI and overlays (for XML metadata preservation)
             for (ROI roi : sequence.getROIs())
@@ -1275,9 +2090,45 @@ public class Saver
         }
         finally
         {
+            if (processor != null)
+            {
+                // cancel planes still in conversion (interrupted)
+                for (Future<IcyBufferedImage> future : pending)
+                    future.cancel(true);
+                processor.shutdownNow();
+            }
+
             result.endUpdate();
         }
 
         return result;
     }
+
+    private static void setConvertedImage(Sequence sequence, int t, int z, IcyBufferedImage image, boolean virtual)
+    {
+        sequence.setImage(t, z, image);
+        if (virtual && (image != null))
+            sequence.getImage(t, z).setVolatile(true);
+    }
+
+    private static IcyBufferedImage getConvertedImage(Future<IcyBufferedImage> plane) throws InterruptedException
+    {
+        try
+        {
+            return plane.get();
+        }
+        catch (ExecutionException e)
+        {
+            final Throwable cause = e.getCause();
+
+            if (cause instanceof InterruptedException)
+                throw (InterruptedException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+
+            throw new IllegalArgumentException("Cannot convert image", cause);
+        }
+    }
 }
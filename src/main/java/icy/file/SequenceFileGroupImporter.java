@@ -24,9 +24,16 @@ import java.io.IOException;
 import java.nio.channels.ClosedByInterruptException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import javax.swing.filechooser.FileFilter;
 
@@ -37,11 +44,15 @@ import icy.file.SequenceFileSticher.SequencePosition;
 import icy.file.SequenceFileSticher.SequenceType;
 import icy.gui.dialog.LoaderDialog;
 import icy.image.AbstractImageProvider;
+import icy.image.AsyncImageProviderAdapter;
 import icy.image.IcyBufferedImage;
+import icy.image.ImageRequest;
 import icy.image.ImageUtil;
 import icy.image.colormap.IcyColorMap;
 import icy.sequence.MetaDataUtil;
 import icy.system.IcyExceptionHandler;
+import icy.system.SystemUtil;
+import icy.system.thread.Processor;
 import icy.type.collection.CollectionUtil;
 import icy.type.collection.array.Array1DUtil;
 import icy.util.OMEUtil;
@@ -61,7 +72,18 @@ import plugins.kernel.importer.LociImporterPlugin;
  */
 public class SequenceFileGroupImporter extends AbstractImageProvider implements SequenceFileImporter
 {
+    /**
+     * Maximum number of opened internal importers (limit number of opened files)
+     */
     static final int MAX_IMPORTER = 16;
+    /**
+     * Maximum number of importers concurrently reading the same file
+     */
+    static final int MAX_IMPORTER_PER_FILE = 2;
+    /**
+     * Number of threads used to read tiles of a stitched image in parallel
+     */
+    static final int TILE_READER_THREADS = Math.max(2, Math.min(MAX_IMPORTER / 2, SystemUtil.getNumberOfCPUs()));
 
     class FileCursor
     {
@@ -113,9 +135,25 @@ public class SequenceFileGroupImporter extends AbstractImageProvider implements
     protected int indSMul;
 
     /**
-     * Shared importer for multi threading
+     * Shared importer for multi threading (idle importers in least recently used order)
      */
     protected final Map<String, SequenceFileImporter> importersPool;
+    /**
+     * Number of importers currently in use for each path (access protected by importersPool lock)
+     */
+    protected final Map<String, Integer> importersInUse;
+    /**
+     * Total number of importers currently in use (access protected by importersPool lock)
+     */
+    protected int numImporterInUse;
+    /**
+     * Asynchronous image reader processor (read operations are scheduled by the importer itself)
+     */
+    protected Processor asyncReaderProcessor;
+    /**
+     * Tile reader processor (used to read tiles of stitched image in parallel)
+     */
+    protected Processor tileReaderProcessor;
 
     public SequenceFileGroupImporter()
     {
@@ -125,7 +163,11 @@ public class SequenceFileGroupImporter extends AbstractImageProvider implements
         currentMetadata = null;
         // default
         ordering = true;
-        importersPool = new HashMap<String, SequenceFileImporter>();
+        importersPool = new LinkedHashMap<String, SequenceFileImporter>(16, 0.75f, true);
+        importersInUse = new HashMap<String, Integer>();
+        numImporterInUse = 0;
+        asyncReaderProcessor = null;
+        tileReaderProcessor = null;
     }
 
     public void setOrdering(boolean ordering)
@@ -339,6 +381,8 @@ public class SequenceFileGroupImporter extends AbstractImageProvider implements
 
     /**
      * Return an opened importer for given path.<br>
+     * At most {@link #MAX_IMPORTER_PER_FILE} importers can be used at same time for a given path (the method waits for
+     * an importer to be released if needed).<br>
      * Note that you should call {@link #releaseImporter(String, SequenceFileImporter)} when you're done with it.
      * 
      * @throws IOException
@@ -352,37 +396,59 @@ public class SequenceFileGroupImporter extends AbstractImageProvider implements
         if (StringUtil.isEmpty(path))
             return null;
 
-        try
+        SequenceFileImporter result;
+        SequenceFileImporter recycled = null;
+
+        synchronized (importersPool)
         {
-            final int numImporter;
-            SequenceFileImporter result;
+            // limit concurrent access to the same file
+            while (getNumImporterInUse(path) >= MAX_IMPORTER_PER_FILE)
+                importersPool.wait();
+
+            importersInUse.put(path, Integer.valueOf(getNumImporterInUse(path) + 1));
+            numImporterInUse++;
 
-            synchronized (importersPool)
+            result = importersPool.remove(path);
+
+            // no available importer for this path and we have already enough importers ? --> recycle the least
+            // recently used one (we don't want to have too much opened files)
+            if ((result == null) && ((importersPool.size() + numImporterInUse) > MAX_IMPORTER) && !importersPool.isEmpty())
             {
-                numImporter = importersPool.size();
-                result = importersPool.remove(path);
+                final Iterator<SequenceFileImporter> it = importersPool.values().iterator();
+
+                recycled = it.next();
+                it.remove();
             }
+        }
 
+        try
+        {
             // no available importer for this path ?
             if (result == null)
             {
-                // we have already enough importers (we don't want to create too much of them)
-                if (numImporter >= MAX_IMPORTER)
+                if (recycled != null)
                 {
-                    // recycle first importer found one
-                    result = getImporter(getFirstImporterPath());
-
-                    // correctly
-                    if (result != null)
-                        openImporter(result, path);
+                    try
+                    {
+                        // open recycled importer for this path
+                        if (openImporter(recycled, path))
+                        {
+                            result = recycled;
+                            recycled = null;
+                        }
+                    }
+                    finally
+                    {
+                        // failed to re-open it
+                        if (recycled != null)
+                            closeImporter(recycled);
+                    }
                 }
 
                 // need to create a new importer
                 if (result == null)
                     result = createImporter(path);
             }
-
-            return result;
         }
         catch (InstantiationException e)
         {
@@ -394,6 +460,14 @@ public class SequenceFileGroupImporter extends AbstractImageProvider implements
             // better to re-throw as RuntimeException
             throw new RuntimeException(e.getMessage());
         }
+        finally
+        {
+            // failed to get an importer ? --> release usage
+            if (result == null)
+                releaseImporter(path, null);
+        }
+
+        return result;
     }
 
     /**
@@ -403,10 +477,62 @@ public class SequenceFileGroupImporter extends AbstractImageProvider implements
      */
     public void releaseImporter(String path, SequenceFileImporter importer)
     {
+        SequenceFileImporter toClose = null;
+
         synchronized (importersPool)
         {
-            // it's better to specify path instead of using SequenceFileImporter.getOpened() as internally format can change
-            importersPool.put(path, importer);
+            final int numInUse = getNumImporterInUse(path) - 1;
+
+            if (numInUse > 0)
+                importersInUse.put(path, Integer.valueOf(numInUse));
+            else
+                importersInUse.remove(path);
+            numImporterInUse--;
+
+            if (importer != null)
+            {
+                // already have an idle importer for this path or too many importers ? --> close it
+                if (importersPool.containsKey(path) || ((importersPool.size() + numImporterInUse) >= MAX_IMPORTER))
+                    toClose = importer;
+                else
+                    // it's better to specify path instead of using SequenceFileImporter.getOpened() as internally format
+                    // can change
+                    importersPool.put(path, importer);
+            }
+
+            // wake up threads waiting for this path
+            importersPool.notifyAll();
+        }
+
+        if (toClose != null)
+            closeImporter(toClose);
+    }
+
+    /**
+     * Returns number of importers currently in use for the given path (should be called with importersPool lock)
+     */
+    protected int getNumImporterInUse(String path)
+    {
+        final Integer result = importersInUse.get(path);
+
+        if (result == null)
+            return 0;
+
+        return result.intValue();
+    }
+
+    /**
+     * Close the given importer, ignoring error
+     */
+    protected static void closeImporter(SequenceFileImporter importer)
+    {
+        try
+        {
+            importer.close();
+        }
+        catch (IOException e)
+        {
+            // just ignore
         }
     }
 
@@ -538,6 +664,21 @@ public class SequenceFileGroupImporter extends AbstractImageProvider implements
     @Override
     public void close() throws IOException
     {
+        synchronized (this)
+        {
+            // cancel pending asynchronous reads
+            if (asyncReaderProcessor != null)
+            {
+                AsyncImageProviderAdapter.shutdown(asyncReaderProcessor);
+                asyncReaderProcessor = null;
+            }
+            if (tileReaderProcessor != null)
+            {
+                tileReaderProcessor.shutdownNow();
+                tileReaderProcessor = null;
+            }
+        }
+
         closeInternalsImporters();
 
         // release position indexes array
@@ -590,10 +731,17 @@ public class SequenceFileGroupImporter extends AbstractImageProvider implements
 
                 if (imp != null)
                 {
-                    // create from original metadata
-                    result = OMEUtil.createOMEXMLMetadata(imp.getOMEXMLMetaData(), 0);
-                    // set name
-                    MetaDataUtil.setName(result, 0, name);
+                    try
+                    {
+                        // create from original metadata
+                        result = OMEUtil.createOMEXMLMetadata(imp.getOMEXMLMetaData(), 0);
+                        // set name
+                        MetaDataUtil.setName(result, 0, name);
+                    }
+                    finally
+                    {
+                        releaseImporter(position.getPath(), imp);
+                    }
                 }
             }
         }
@@ -704,6 +852,9 @@ public class SequenceFileGroupImporter extends AbstractImageProvider implements
             }
         }
 
+        // plane positions directly modified
+        MetaDataUtil.invalidatePlaneIndex(resultPixels);
+
         return result;
     }
 
@@ -844,15 +995,31 @@ public class SequenceFileGroupImporter extends AbstractImageProvider implements
         // deltas to put tile to region origin
         final int dx = -finalRegion.x;
         final int dy = -finalRegion.y;
+        final Rectangle fullRegion = region;
+        final List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(tiles.size());
 
-        // each tile represent a single image
-        for (TileIndex tile : tiles)
+        // tiles are read in parallel (each tile represent a single image)
+        for (final TileIndex tile : tiles)
+        {
+            tasks.add(new Callable<Object>()
+            {
+                @Override
+                public Object call() throws Exception
+                {
+                    return getPixelsInternal(positions[cursor.index + tile.index], series, resolution, tile.region.intersection(fullRegion),
+                            cursor.internalZ, cursor.internalT, cursor.internalC);
+                }
+            });
+        }
+
+        final List<Future<Object>> futures = submitTileReads(tasks);
+
+        for (int i = 0; i < tiles.size(); i++)
         {
             // adjusted tile region
-            final Rectangle tileRegion = tile.region.intersection(region);
+            final Rectangle tileRegion = tiles.get(i).region.intersection(region);
             // get tile pixels
-            final Object pixels = getPixelsInternal(positions[cursor.index + tile.index], series, resolution, tileRegion, cursor.internalZ, cursor.internalT,
-                    cursor.internalC);
+            final Object pixels = getTileResult(futures, i);
 
             // cannot retrieve pixels for this tile ? --> ignore
             if (pixels == null)
@@ -940,15 +1107,31 @@ public class SequenceFileGroupImporter extends AbstractImageProvider implements
         // deltas to put tile to region origin
         final int dx = -finalRegion.x;
         final int dy = -finalRegion.y;
+        final Rectangle fullRegion = region;
+        final List<Callable<IcyBufferedImage>> tasks = new ArrayList<Callable<IcyBufferedImage>>(tiles.size());
 
-        // each tile represent a single image
-        for (TileIndex tile : tiles)
+        // tiles are read in parallel (each tile represent a single image)
+        for (final TileIndex tile : tiles)
+        {
+            tasks.add(new Callable<IcyBufferedImage>()
+            {
+                @Override
+                public IcyBufferedImage call() throws Exception
+                {
+                    return getImageInternal(positions[cursor.index + tile.index], series, resolution, tile.region.intersection(fullRegion),
+                            cursor.internalZ, cursor.internalT, cursor.internalC);
+                }
+            });
+        }
+
+        final List<Future<IcyBufferedImage>> futures = submitTileReads(tasks);
+
+        for (int i = 0; i < tiles.size(); i++)
         {
             // adjusted tile region
-            final Rectangle tileRegion = tile.region.intersection(region);
-            // get tile pixels
-            final IcyBufferedImage image = getImageInternal(positions[cursor.index + tile.index], series, resolution, tileRegion, cursor.internalZ,
-                    cursor.internalT, cursor.internalC);
+            final Rectangle tileRegion = tiles.get(i).region.intersection(region);
+            // get tile image (copy is done here as image data modification is not thread safe)
+            final IcyBufferedImage image = getTileResult(futures, i);
 
             // cannot retrieve pixels for this tile ? --> ignore
             if (image == null)
@@ -1020,6 +1203,125 @@ public class SequenceFileGroupImporter extends AbstractImageProvider implements
         return IcyBufferedImage.createFrom(result);
     }
 
+    /**
+     * Returns the processor used to read tiles of stitched image in parallel (created on first call and kept until
+     * {@link #close()}).
+     */
+    protected synchronized Processor getTileReaderProcessor()
+    {
+        if (tileReaderProcessor == null)
+        {
+            // tile reading is mainly I/O bound, concurrent access to a same file is limited by getImporter(..)
+            tileReaderProcessor = new Processor(-1, TILE_READER_THREADS);
+            tileReaderProcessor.setThreadName("Group tile reader");
+        }
+
+        return tileReaderProcessor;
+    }
+
+    /**
+     * Submit the given tile read tasks to the tile reader processor.
+     */
+    protected <T> List<Future<T>> submitTileReads(List<Callable<T>> tasks)
+    {
+        final Processor processor = getTileReaderProcessor();
+        final List<Future<T>> result = new ArrayList<Future<T>>(tasks.size());
+
+        for (Callable<T> task : tasks)
+            result.add(processor.submit(task));
+
+        return result;
+    }
+
+    /**
+     * Wait for the specified tile read task and returns its result.<br>
+     * All remaining tasks are canceled if the task failed or if the current thread is interrupted.
+     */
+    protected static <T> T getTileResult(List<Future<T>> futures, int index)
+            throws UnsupportedFormatException, IOException, InterruptedException
+    {
+        boolean done = false;
+
+        try
+        {
+            final T result = futures.get(index).get();
+            done = true;
+            return result;
+        }
+        catch (ExecutionException e)
+        {
+            final Throwable cause = e.getCause();
+
+            if (cause instanceof UnsupportedFormatException)
+                throw (UnsupportedFormatException) cause;
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof InterruptedException)
+                throw (InterruptedException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+
+            throw new IOException("Cannot read image tile", cause);
+        }
+        finally
+        {
+            if (!done)
+            {
+                // don't interrupt running tasks (would close importer channels)
+                for (int i = index + 1; i < futures.size(); i++)
+                    futures.get(i).cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Returns the processor used for asynchronous image reading (created on first call and kept until
+     * {@link #close()}).
+     */
+    protected synchronized Processor getAsyncReaderProcessor()
+    {
+        if (asyncReaderProcessor == null)
+        {
+            asyncReaderProcessor = new Processor(-1, Math.max(1, SystemUtil.getNumberOfCPUs() / 2));
+            asyncReaderProcessor.setThreadName("Async group image reader");
+        }
+
+        return asyncReaderProcessor;
+    }
+
+    @Override
+    public CompletableFuture<Object> getPixelsAsync(int series, int resolution, Rectangle region, int z, int t, int c)
+    {
+        return AsyncImageProviderAdapter.getPixelsAsync(this, getAsyncReaderProcessor(), series, resolution, region, z, t, c);
+    }
+
+    @Override
+    public CompletableFuture<IcyBufferedImage> getImageAsync(int series, int resolution, Rectangle region, int z, int t, int c)
+    {
+        return AsyncImageProviderAdapter.getImageAsync(this, getAsyncReaderProcessor(), series, resolution, region, z, t, c);
+    }
+
+    @Override
+    public List<CompletableFuture<IcyBufferedImage>> getImagesAsync(List<ImageRequest> requests)
+    {
+        // read requests grouped by file so successive reads reuse the same opened importer
+        return AsyncImageProviderAdapter.getImagesAsync(this, getAsyncReaderProcessor(), requests, new Comparator<ImageRequest>()
+        {
+            @Override
+            public int compare(ImageRequest r1, ImageRequest r2)
+            {
+                final int result = getPath(r1.z, r1.t, Math.max(0, r1.c)).compareTo(getPath(r2.z, r2.t, Math.max(0, r2.c)));
+
+                if (result == 0)
+                    return ImageRequest.LOCALITY_ORDER.compare(r1, r2);
+
+                return result;
+            }
+        });
+    }
+
     @SuppressWarnings("resource")
     @Override
     public IcyBufferedImage getThumbnail(int series) throws UnsupportedFormatException, IOException, InterruptedException
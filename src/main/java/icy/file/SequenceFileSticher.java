@@ -39,10 +39,14 @@ import javax.imageio.ImageTypeSpecifier;
 import javax.imageio.stream.ImageInputStream;
 
 import icy.gui.frame.progress.FileFrame;
+import icy.plugin.PluginDescriptor;
+import icy.plugin.PluginLauncher;
+import icy.plugin.PluginLoader;
 import icy.sequence.DimensionId;
 import icy.sequence.MetaDataUtil;
 import icy.sequence.SequenceIdImporter;
 import icy.system.IcyExceptionHandler;
+import icy.system.SystemUtil;
 import icy.system.thread.Processor;
 import icy.type.DataType;
 import icy.util.StringUtil;
@@ -57,6 +61,11 @@ import plugins.kernel.importer.LociImporterPlugin;
  */
 public class SequenceFileSticher
 {
+    /**
+     * Number of files identified in parallel (mainly I/O bound so we can use more threads than CPU)
+     */
+    public static final int IDENT_THREADS = Math.min(16, Math.max(4, SystemUtil.getNumberOfCPUs() * 2));
+
     public static class SequenceType
     {
         public boolean minimumMeta;
@@ -1676,45 +1685,59 @@ public class SequenceFileSticher
         }
 
         final Map<SequenceIdent, SequenceFileGroup> result = new HashMap<SequenceIdent, SequenceFileGroup>();
+        // single pool for the whole identification process (waiting queue is only made of tiny tasks)
+        final Processor processor = new Processor(-1, IDENT_THREADS);
 
-        // add FilePosition grouped by base path to group
-        for (List<FilePosition> positions : pathPositionsMap.values())
-        {
-            final Processor processor = new Processor(positions.size(), Processor.DEFAULT_MAX_PROCESSING);
-            final List<Future<SequenceIdent>> tasks = new ArrayList<>();
+        processor.setThreadName("File identification");
 
-            // add tasks
-            for (FilePosition pos : positions)
-                tasks.add(processor.submit(new SequenceIdentGetter(importer, new SequencePosition(pos), true)));
+        if (loadingFrame != null)
+            loadingFrame.setAction("Identifying files...");
 
-            boolean exception = false;
-            for (Future<SequenceIdent> task : tasks)
+        try
+        {
+            // add FilePosition grouped by base path to group
+            for (List<FilePosition> positions : pathPositionsMap.values())
             {
-                try
-                {
-                    // build groups
-                    addToGroup(result, task.get(), importer);
-                }
-                catch (InterruptedException ex)
-                {
-                    // stop now
-                    processor.removeAllWaitingTasks();
-                    processor.shutdownNow();
+                final List<Future<SequenceIdent>> tasks = new ArrayList<>();
 
-                    // re-throw it
-                    throw new InterruptedException("Files grouping process interrupted");
-                }
-                catch (ExecutionException e)
+                // add tasks
+                for (FilePosition pos : positions)
+                    tasks.add(processor.submit(new SequenceIdentGetter(importer, new SequencePosition(pos), true)));
+
+                boolean exception = false;
+                for (Future<SequenceIdent> task : tasks)
                 {
-                    // display it only once
-                    if (!exception)
+                    try
                     {
-                        e.getCause().printStackTrace();
-                        exception = true;
+                        // build groups
+                        addToGroup(result, task.get(), importer);
+                    }
+                    catch (InterruptedException ex)
+                    {
+                        // stop now
+                        processor.removeAllWaitingTasks();
+
+                        // re-throw it
+                        throw new InterruptedException("Files grouping process interrupted");
+                    }
+                    catch (ExecutionException e)
+                    {
+                        // display it only once
+                        if (!exception)
+                        {
+                            e.getCause().printStackTrace();
+                            exception = true;
+                        }
                     }
                 }
             }
         }
+        finally
+        {
+            processor.shutdownNow();
+            // persist identification results for next time
+            SequenceIdentCache.save();
+        }
 
         /*
          * if (loadingFrame != null)
@@ -2099,13 +2122,21 @@ public class SequenceFileSticher
     {
         final String path = position.getPath();
 
+        // already identified (and file unchanged since) ?
+        final SequenceIdent cached = getCachedSequenceIdent(importer, position, minimumMetadata);
+        if (cached != null)
+            return cached;
+
         // we want minimal metadata ?
         if (minimumMetadata)
         {
             // try the fast method
             final SequenceType type = getSequenceTypeFast(path);
             if (type != null)
+            {
+                SequenceIdentCache.put(path, type, null);
                 return new SequenceIdent(position, type, importer);
+            }
         }
 
         // try to open the image
@@ -2142,6 +2173,8 @@ public class SequenceFileSticher
             // can compute hash code
             type.computeHashCode();
 
+            SequenceIdentCache.put(path, type, imp);
+
             return new SequenceIdent(position, type, imp);
         }
         catch (Throwable t)
@@ -2168,6 +2201,49 @@ public class SequenceFileSticher
         }
     }
 
+    /**
+     * Build and return sequence ident for specified {@link SequencePosition} from the identification cache (see
+     * {@link SequenceIdentCache}), returns <code>null</code> if the file is not cached or changed since.
+     */
+    private static SequenceIdent getCachedSequenceIdent(SequenceFileImporter importer, SequencePosition position,
+            boolean minimumMetadata)
+    {
+        final SequenceIdentCache.CacheEntry entry = SequenceIdentCache.get(position.getPath(), minimumMetadata);
+
+        if (entry == null)
+            return null;
+
+        SequenceFileImporter imp = importer;
+
+        // file was identified by another importer ? --> create it
+        if ((entry.importer != null) && ((imp == null) || !StringUtil.equals(imp.getClass().getName(), entry.importer)))
+        {
+            final PluginDescriptor plugin = PluginLoader.getPlugin(entry.importer);
+
+            // importer not anymore available
+            if (plugin == null)
+                return null;
+
+            try
+            {
+                imp = (SequenceFileImporter) PluginLauncher.create(plugin);
+            }
+            catch (Throwable t)
+            {
+                return null;
+            }
+
+            // same settings as tryOpen(..)
+            if (imp instanceof LociImporterPlugin)
+            {
+                ((LociImporterPlugin) imp).setGroupFiles(false);
+                ((LociImporterPlugin) imp).setReadOriginalMetadata(false);
+            }
+        }
+
+        return new SequenceIdent(position, entry.getType(minimumMetadata), imp);
+    }
+
     private static boolean cleanPositions(Collection<FilePosition> filePositions, DimensionId dim)
     {
         // remove fixed dim
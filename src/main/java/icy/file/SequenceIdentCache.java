@@ -0,0 +1,332 @@
+/*
+ * Copyright 2010-2018 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.file;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import icy.file.SequenceFileSticher.SequenceType;
+import icy.system.IcyExceptionHandler;
+import icy.type.DataType;
+import icy.util.StringUtil;
+import icy.util.XMLUtil;
+
+/**
+ * Persistent cache of image file identification (dimensions and data type) used by {@link SequenceFileSticher} so
+ * grouping files of a large folder does not require to open each file again.<br>
+ * Entries are keyed by file path and are only valid while the file size and last modification date are unchanged.
+ * 
+ * @author Stephane
+ */
+public class SequenceIdentCache
+{
+    /**
+     * Maximum number of cached file (least recently used are removed first)
+     */
+    public static final int MAX_ENTRIES = 200000;
+
+    private static final String CACHE_FILENAME = "icy_ident_cache.xml";
+
+    private static final String ID_FILES = "files";
+    private static final String ID_FILE = "file";
+    private static final String ID_PATH = "path";
+    private static final String ID_SIZE = "size";
+    private static final String ID_MODIFIED = "modified";
+    private static final String ID_IMPORTER = "importer";
+    private static final String ID_SIZE_X = "sizeX";
+    private static final String ID_SIZE_Y = "sizeY";
+    private static final String ID_SIZE_Z = "sizeZ";
+    private static final String ID_SIZE_T = "sizeT";
+    private static final String ID_SIZE_C = "sizeC";
+    private static final String ID_DATATYPE = "dataType";
+    private static final String ID_MINIMUM_META = "minimumMeta";
+    private static final String ID_PIXEL_SIZE_X = "pixelSizeX";
+    private static final String ID_PIXEL_SIZE_Y = "pixelSizeY";
+    private static final String ID_PIXEL_SIZE_Z = "pixelSizeZ";
+    private static final String ID_TIME_INTERVAL = "timeInterval";
+
+    static class CacheEntry
+    {
+        final long size;
+        final long modified;
+        /**
+         * class name of the importer which identified the file (<code>null</code> if identified without importer)
+         */
+        final String importer;
+        final SequenceType type;
+
+        CacheEntry(long size, long modified, String importer, SequenceType type)
+        {
+            super();
+
+            this.size = size;
+            this.modified = modified;
+            this.importer = importer;
+            this.type = type;
+        }
+
+        /**
+         * Returns a new {@link SequenceType} from cached information
+         */
+        SequenceType getType(boolean minimumMetadata)
+        {
+            final SequenceType result = new SequenceType();
+
+            result.sizeX = type.sizeX;
+            result.sizeY = type.sizeY;
+            result.sizeZ = type.sizeZ;
+            result.sizeT = type.sizeT;
+            result.sizeC = type.sizeC;
+            result.dataType = type.dataType;
+
+            if (!minimumMetadata)
+            {
+                result.minimumMeta = false;
+                result.pixelSizeX = type.pixelSizeX;
+                result.pixelSizeY = type.pixelSizeY;
+                result.pixelSizeZ = type.pixelSizeZ;
+                result.timeInterval = type.timeInterval;
+            }
+
+            result.computeHashCode();
+
+            return result;
+        }
+    }
+
+    private static final Map<String, CacheEntry> entries = new LinkedHashMap<String, CacheEntry>(1024, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Entry<String, CacheEntry> eldest)
+        {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private static boolean loaded = false;
+    private static boolean modified = false;
+
+    /**
+     * Returns cached identification of the specified file or <code>null</code> if the file is not in the cache or if
+     * it changed since it was cached.
+     * 
+     * @param minimumMetadata
+     *        if <code>false</code> we also need optional metadata (pixel size, time interval)
+     */
+    static CacheEntry get(String path, boolean minimumMetadata)
+    {
+        final File file = new File(path);
+        final long lastModified = file.lastModified();
+
+        // file does not exist
+        if (lastModified == 0L)
+            return null;
+
+        final CacheEntry result;
+
+        synchronized (entries)
+        {
+            load();
+            result = entries.get(path);
+        }
+
+        if ((result == null) || (result.size != file.length()) || (result.modified != lastModified))
+            return null;
+        if (!minimumMetadata && result.type.minimumMeta)
+            return null;
+
+        return result;
+    }
+
+    /**
+     * Store identification of the specified file.
+     * 
+     * @param importer
+     *        importer which identified the file (can be <code>null</code>)
+     */
+    static void put(String path, SequenceType type, SequenceFileImporter importer)
+    {
+        if ((type == null) || (type.dataType == null))
+            return;
+
+        final File file = new File(path);
+        final long lastModified = file.lastModified();
+
+        if (lastModified == 0L)
+            return;
+
+        final CacheEntry entry = new CacheEntry(file.length(), lastModified,
+                (importer != null) ? importer.getClass().getName() : null, type);
+
+        synchronized (entries)
+        {
+            load();
+
+            final CacheEntry previous = entries.get(path);
+
+            // don't lose optional metadata
+            if ((previous != null) && (previous.size == entry.size) && (previous.modified == entry.modified)
+                    && !previous.type.minimumMeta && type.minimumMeta)
+                return;
+
+            entries.put(path, entry);
+            modified = true;
+        }
+    }
+
+    /**
+     * Clear the cache.
+     */
+    public static void clear()
+    {
+        synchronized (entries)
+        {
+            entries.clear();
+            loaded = true;
+            modified = true;
+        }
+
+        save();
+    }
+
+    /**
+     * Save the cache file if it changed since last save.
+     */
+    public static void save()
+    {
+        final Document doc;
+
+        synchronized (entries)
+        {
+            if (!modified)
+                return;
+
+            doc = XMLUtil.createDocument(true);
+            final Element node = XMLUtil.addElement(XMLUtil.getRootElement(doc), ID_FILES);
+
+            for (Entry<String, CacheEntry> e : entries.entrySet())
+            {
+                final CacheEntry entry = e.getValue();
+                final SequenceType type = entry.type;
+                final Element fileNode = XMLUtil.addElement(node, ID_FILE);
+
+                XMLUtil.setAttributeValue(fileNode, ID_PATH, e.getKey());
+                XMLUtil.setAttributeLongValue(fileNode, ID_SIZE, entry.size);
+                XMLUtil.setAttributeLongValue(fileNode, ID_MODIFIED, entry.modified);
+                if (entry.importer != null)
+                    XMLUtil.setAttributeValue(fileNode, ID_IMPORTER, entry.importer);
+                XMLUtil.setAttributeIntValue(fileNode, ID_SIZE_X, type.sizeX);
+                XMLUtil.setAttributeIntValue(fileNode, ID_SIZE_Y, type.sizeY);
+                XMLUtil.setAttributeIntValue(fileNode, ID_SIZE_Z, type.sizeZ);
+                XMLUtil.setAttributeIntValue(fileNode, ID_SIZE_T, type.sizeT);
+                XMLUtil.setAttributeIntValue(fileNode, ID_SIZE_C, type.sizeC);
+                XMLUtil.setAttributeValue(fileNode, ID_DATATYPE, type.dataType.toString());
+                XMLUtil.setAttributeBooleanValue(fileNode, ID_MINIMUM_META, type.minimumMeta);
+
+                if (!type.minimumMeta)
+                {
+                    XMLUtil.setAttributeDoubleValue(fileNode, ID_PIXEL_SIZE_X, type.pixelSizeX);
+                    XMLUtil.setAttributeDoubleValue(fileNode, ID_PIXEL_SIZE_Y, type.pixelSizeY);
+                    XMLUtil.setAttributeDoubleValue(fileNode, ID_PIXEL_SIZE_Z, type.pixelSizeZ);
+                    XMLUtil.setAttributeDoubleValue(fileNode, ID_TIME_INTERVAL, type.timeInterval);
+                }
+            }
+
+            modified = false;
+        }
+
+        // write outside lock
+        if (!XMLUtil.saveDocument(doc, getCachePath()))
+            System.out.println("Warning: can't save file identification cache.");
+    }
+
+    /**
+     * Load cache file if not already done (should be called with entries lock)
+     */
+    private static void load()
+    {
+        if (loaded)
+            return;
+
+        loaded = true;
+
+        final String path = getCachePath();
+
+        if (!FileUtil.exists(path))
+            return;
+
+        try
+        {
+            final Document doc = XMLUtil.loadDocument(path);
+            final Element node = (doc != null) ? XMLUtil.getElement(XMLUtil.getRootElement(doc), ID_FILES) : null;
+
+            if (node == null)
+                return;
+
+            for (Element fileNode : XMLUtil.getElements(node, ID_FILE))
+            {
+                final String filePath = XMLUtil.getAttributeValue(fileNode, ID_PATH, null);
+                final DataType dataType = DataType.getDataType(XMLUtil.getAttributeValue(fileNode, ID_DATATYPE, ""));
+
+                if (StringUtil.isEmpty(filePath) || (dataType == null))
+                    continue;
+
+                final SequenceType type = new SequenceType();
+
+                type.sizeX = XMLUtil.getAttributeIntValue(fileNode, ID_SIZE_X, 0);
+                type.sizeY = XMLUtil.getAttributeIntValue(fileNode, ID_SIZE_Y, 0);
+                type.sizeZ = XMLUtil.getAttributeIntValue(fileNode, ID_SIZE_Z, 0);
+                type.sizeT = XMLUtil.getAttributeIntValue(fileNode, ID_SIZE_T, 0);
+                type.sizeC = XMLUtil.getAttributeIntValue(fileNode, ID_SIZE_C, 0);
+                type.dataType = dataType;
+                type.minimumMeta = XMLUtil.getAttributeBooleanValue(fileNode, ID_MINIMUM_META, true);
+
+                if (!type.minimumMeta)
+                {
+                    type.pixelSizeX = XMLUtil.getAttributeDoubleValue(fileNode, ID_PIXEL_SIZE_X, 0d);
+                    type.pixelSizeY = XMLUtil.getAttributeDoubleValue(fileNode, ID_PIXEL_SIZE_Y, 0d);
+                    type.pixelSizeZ = XMLUtil.getAttributeDoubleValue(fileNode, ID_PIXEL_SIZE_Z, 0d);
+                    type.timeInterval = XMLUtil.getAttributeDoubleValue(fileNode, ID_TIME_INTERVAL, 0d);
+                }
+
+                type.computeHashCode();
+
+                entries.put(filePath,
+                        new CacheEntry(XMLUtil.getAttributeLongValue(fileNode, ID_SIZE, -1L),
+                                XMLUtil.getAttributeLongValue(fileNode, ID_MODIFIED, -1L),
+                                XMLUtil.getAttributeValue(fileNode, ID_IMPORTER, null), type));
+            }
+        }
+        catch (Exception e)
+        {
+            System.out.println("Warning: can't reload file identification cache.");
+            IcyExceptionHandler.showErrorMessage(e, false, false);
+        }
+    }
+
+    private static String getCachePath()
+    {
+        return FileUtil.getTempDirectory() + FileUtil.separator + CACHE_FILENAME;
+    }
+}
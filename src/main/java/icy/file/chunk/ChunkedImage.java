@@ -0,0 +1,884 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.file.chunk;
+
+import java.awt.Rectangle;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import icy.common.exception.UnsupportedFormatException;
+import icy.file.FileUtil;
+import icy.system.thread.Processor;
+import icy.type.DataType;
+import icy.type.collection.array.Array1DUtil;
+import icy.type.collection.array.ArrayUtil;
+import icy.util.StringUtil;
+import icy.util.XMLUtil;
+
+/**
+ * Chunked N-dimensional image storage (Zarr / N5 like).<br>
+ * An image is described by a small XML header file (<code>.icyc</code>) and its data is stored in a sibling
+ * directory (<code>.chunks</code>) where each chunk is an independent file:<br>
+ * <code>&lt;name&gt;.chunks/&lt;level&gt;/&lt;t&gt;/&lt;c&gt;/&lt;z&gt;/&lt;y&gt;/&lt;x&gt;.chunk</code><br>
+ * <br>
+ * A chunk covers <code>chunkSizeX * chunkSizeY * chunkSizeZ</code> samples of a single channel and frame (edge chunks
+ * are padded) so any chunk can be located in O(1) and chunks can be read or written concurrently.<br>
+ * Each chunk is compressed independently (deflate, or raw when it does not help) and missing chunks are read as 0.<br>
+ * Level <code>n</code> (multi scale) is the image downscaled by <code>2^n</code> in X and Y.
+ * 
+ * @author Stephane
+ */
+public class ChunkedImage
+{
+    public static final String FILE_EXTENSION = "icyc";
+    public static final String DATA_EXTENSION = "chunks";
+    public static final String CHUNK_EXTENSION = "chunk";
+
+    public static final int VERSION = 1;
+
+    /**
+     * Chunk codec (first byte of the chunk file)
+     */
+    public static final int CODEC_RAW = 0;
+    public static final int CODEC_DEFLATE = 1;
+
+    protected static final String ID_IMAGE = "chunkedimage";
+    protected static final String ID_VERSION = "version";
+    protected static final String ID_SIZE_X = "sizex";
+    protected static final String ID_SIZE_Y = "sizey";
+    protected static final String ID_SIZE_C = "sizec";
+    protected static final String ID_SIZE_Z = "sizez";
+    protected static final String ID_SIZE_T = "sizet";
+    protected static final String ID_DATATYPE = "datatype";
+    protected static final String ID_CHUNK_X = "chunkx";
+    protected static final String ID_CHUNK_Y = "chunky";
+    protected static final String ID_CHUNK_Z = "chunkz";
+    protected static final String ID_LEVELS = "levels";
+    protected static final String ID_COMPRESSION = "compression";
+    protected static final String ID_NAME = "name";
+    protected static final String ID_PIXEL_SIZE_X = "pixelsizex";
+    protected static final String ID_PIXEL_SIZE_Y = "pixelsizey";
+    protected static final String ID_PIXEL_SIZE_Z = "pixelsizez";
+    protected static final String ID_TIME_INTERVAL = "timeinterval";
+    protected static final String ID_CHANNEL = "channel";
+    protected static final String ID_INDEX = "index";
+
+    protected final String path;
+    protected final String dataPath;
+    protected final int sizeX;
+    protected final int sizeY;
+    protected final int sizeC;
+    protected final int sizeZ;
+    protected final int sizeT;
+    protected final DataType dataType;
+    protected final int chunkSizeX;
+    protected final int chunkSizeY;
+    protected final int chunkSizeZ;
+    protected final int numLevels;
+    /**
+     * Deflate compression level (0 = no compression)
+     */
+    protected final int compression;
+
+    protected String name;
+    protected double pixelSizeX;
+    protected double pixelSizeY;
+    protected double pixelSizeZ;
+    protected double timeInterval;
+    protected final String[] channelNames;
+
+    /**
+     * Create a new chunked image description (use {@link #writeHeader()} to save it).
+     * 
+     * @param path
+     *        header file path
+     * @param numLevels
+     *        number of resolution level (1 means full resolution only)
+     * @param compression
+     *        deflate compression level (0 to 9, 0 means no compression)
+     */
+    public ChunkedImage(String path, int sizeX, int sizeY, int sizeC, int sizeZ, int sizeT, DataType dataType,
+            int chunkSizeX, int chunkSizeY, int chunkSizeZ, int numLevels, int compression)
+    {
+        super();
+
+        if ((sizeX <= 0) || (sizeY <= 0) || (sizeC <= 0) || (sizeZ <= 0) || (sizeT <= 0))
+            throw new IllegalArgumentException("ChunkedImage: invalid image size");
+        if ((chunkSizeX <= 0) || (chunkSizeY <= 0) || (chunkSizeZ <= 0))
+            throw new IllegalArgumentException("ChunkedImage: invalid chunk size");
+        if (((long) chunkSizeX * chunkSizeY * chunkSizeZ * dataType.getSize()) > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("ChunkedImage: chunk size is too large");
+        if (dataType.getJavaType() == DataType.LONG)
+            throw new IllegalArgumentException("ChunkedImage: " + dataType + " data type not supported");
+
+        this.path = FileUtil.getGenericPath(path);
+        this.dataPath = FileUtil.setExtension(this.path, "." + DATA_EXTENSION);
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        this.sizeC = sizeC;
+        this.sizeZ = sizeZ;
+        this.sizeT = sizeT;
+        this.dataType = dataType;
+        this.chunkSizeX = chunkSizeX;
+        this.chunkSizeY = chunkSizeY;
+        this.chunkSizeZ = Math.min(chunkSizeZ, sizeZ);
+        this.numLevels = Math.max(1, numLevels);
+        this.compression = Math.max(0, Math.min(9, compression));
+
+        name = FileUtil.getFileName(this.path, false);
+        pixelSizeX = 1d;
+        pixelSizeY = 1d;
+        pixelSizeZ = 1d;
+        timeInterval = 0.1d;
+        channelNames = new String[sizeC];
+    }
+
+    /**
+     * Open the chunked image described by the specified header file.
+     * 
+     * @throws UnsupportedFormatException
+     *         if the file is not a valid chunked image header
+     */
+    public static ChunkedImage open(String path) throws UnsupportedFormatException
+    {
+        final Document doc = XMLUtil.loadDocument(path);
+        final Element node = (doc != null) ? XMLUtil.getElement(XMLUtil.getRootElement(doc), ID_IMAGE) : null;
+
+        if (node == null)
+            throw new UnsupportedFormatException(path + " is not a chunked image file.");
+
+        final int version = XMLUtil.getAttributeIntValue(node, ID_VERSION, 0);
+        final DataType dataType = DataType.getDataType(XMLUtil.getAttributeValue(node, ID_DATATYPE, ""));
+
+        if ((version <= 0) || (version > VERSION))
+            throw new UnsupportedFormatException(path + ": unsupported chunked image version (" + version + ").");
+        if (dataType == null)
+            throw new UnsupportedFormatException(path + ": unsupported data type.");
+
+        final ChunkedImage result;
+
+        try
+        {
+            result = new ChunkedImage(path, XMLUtil.getAttributeIntValue(node, ID_SIZE_X, 0),
+                    XMLUtil.getAttributeIntValue(node, ID_SIZE_Y, 0), XMLUtil.getAttributeIntValue(node, ID_SIZE_C, 0),
+                    XMLUtil.getAttributeIntValue(node, ID_SIZE_Z, 0), XMLUtil.getAttributeIntValue(node, ID_SIZE_T, 0),
+                    dataType, XMLUtil.getAttributeIntValue(node, ID_CHUNK_X, 0),
+                    XMLUtil.getAttributeIntValue(node, ID_CHUNK_Y, 0), XMLUtil.getAttributeIntValue(node, ID_CHUNK_Z, 0),
+                    XMLUtil.getAttributeIntValue(node, ID_LEVELS, 1), XMLUtil.getAttributeIntValue(node, ID_COMPRESSION, 0));
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new UnsupportedFormatException(path + ": " + e.getMessage(), e);
+        }
+
+        result.name = XMLUtil.getAttributeValue(node, ID_NAME, result.name);
+        result.pixelSizeX = XMLUtil.getAttributeDoubleValue(node, ID_PIXEL_SIZE_X, 1d);
+        result.pixelSizeY = XMLUtil.getAttributeDoubleValue(node, ID_PIXEL_SIZE_Y, 1d);
+        result.pixelSizeZ = XMLUtil.getAttributeDoubleValue(node, ID_PIXEL_SIZE_Z, 1d);
+        result.timeInterval = XMLUtil.getAttributeDoubleValue(node, ID_TIME_INTERVAL, 0.1d);
+
+        for (Element channel : XMLUtil.getElements(node, ID_CHANNEL))
+        {
+            final int c = XMLUtil.getAttributeIntValue(channel, ID_INDEX, -1);
+
+            if ((c >= 0) && (c < result.sizeC))
+                result.channelNames[c] = XMLUtil.getAttributeValue(channel, ID_NAME, null);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns <code>true</code> if the specified file is a chunked image header file.
+     */
+    public static boolean isChunkedImageFile(String path)
+    {
+        if (!FileUtil.getFileExtension(path, false).toLowerCase().equals(FILE_EXTENSION))
+            return false;
+
+        try
+        {
+            open(path);
+            return true;
+        }
+        catch (UnsupportedFormatException e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Save the header file.
+     */
+    public void writeHeader() throws IOException
+    {
+        final Document doc = XMLUtil.createDocument(true);
+        final Element node = XMLUtil.addElement(XMLUtil.getRootElement(doc), ID_IMAGE);
+
+        XMLUtil.setAttributeIntValue(node, ID_VERSION, VERSION);
+        XMLUtil.setAttributeIntValue(node, ID_SIZE_X, sizeX);
+        XMLUtil.setAttributeIntValue(node, ID_SIZE_Y, sizeY);
+        XMLUtil.setAttributeIntValue(node, ID_SIZE_C, sizeC);
+        XMLUtil.setAttributeIntValue(node, ID_SIZE_Z, sizeZ);
+        XMLUtil.setAttributeIntValue(node, ID_SIZE_T, sizeT);
+        XMLUtil.setAttributeValue(node, ID_DATATYPE, dataType.toString());
+        XMLUtil.setAttributeIntValue(node, ID_CHUNK_X, chunkSizeX);
+        XMLUtil.setAttributeIntValue(node, ID_CHUNK_Y, chunkSizeY);
+        XMLUtil.setAttributeIntValue(node, ID_CHUNK_Z, chunkSizeZ);
+        XMLUtil.setAttributeIntValue(node, ID_LEVELS, numLevels);
+        XMLUtil.setAttributeIntValue(node, ID_COMPRESSION, compression);
+        XMLUtil.setAttributeValue(node, ID_NAME, name);
+        XMLUtil.setAttributeDoubleValue(node, ID_PIXEL_SIZE_X, pixelSizeX);
+        XMLUtil.setAttributeDoubleValue(node, ID_PIXEL_SIZE_Y, pixelSizeY);
+        XMLUtil.setAttributeDoubleValue(node, ID_PIXEL_SIZE_Z, pixelSizeZ);
+        XMLUtil.setAttributeDoubleValue(node, ID_TIME_INTERVAL, timeInterval);
+
+        for (int c = 0; c < sizeC; c++)
+        {
+            if (!StringUtil.isEmpty(channelNames[c]))
+            {
+                final Element channel = XMLUtil.addElement(node, ID_CHANNEL);
+
+                XMLUtil.setAttributeIntValue(channel, ID_INDEX, c);
+                XMLUtil.setAttributeValue(channel, ID_NAME, channelNames[c]);
+            }
+        }
+
+        if (!XMLUtil.saveDocument(doc, path))
+            throw new IOException("Cannot write chunked image header " + path);
+    }
+
+    /**
+     * Delete all chunks data.
+     */
+    public void clearData()
+    {
+        final File dir = new File(dataPath);
+
+        if (dir.exists())
+            FileUtil.delete(dir, true);
+    }
+
+    public String getPath()
+    {
+        return path;
+    }
+
+    public String getDataPath()
+    {
+        return dataPath;
+    }
+
+    public int getSizeX()
+    {
+        return sizeX;
+    }
+
+    public int getSizeY()
+    {
+        return sizeY;
+    }
+
+    public int getSizeC()
+    {
+        return sizeC;
+    }
+
+    public int getSizeZ()
+    {
+        return sizeZ;
+    }
+
+    public int getSizeT()
+    {
+        return sizeT;
+    }
+
+    public DataType getDataType()
+    {
+        return dataType;
+    }
+
+    public int getChunkSizeX()
+    {
+        return chunkSizeX;
+    }
+
+    public int getChunkSizeY()
+    {
+        return chunkSizeY;
+    }
+
+    public int getChunkSizeZ()
+    {
+        return chunkSizeZ;
+    }
+
+    public int getNumLevels()
+    {
+        return numLevels;
+    }
+
+    public int getCompression()
+    {
+        return compression;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public void setName(String value)
+    {
+        name = value;
+    }
+
+    public double getPixelSizeX()
+    {
+        return pixelSizeX;
+    }
+
+    public void setPixelSizeX(double value)
+    {
+        pixelSizeX = value;
+    }
+
+    public double getPixelSizeY()
+    {
+        return pixelSizeY;
+    }
+
+    public void setPixelSizeY(double value)
+    {
+        pixelSizeY = value;
+    }
+
+    public double getPixelSizeZ()
+    {
+        return pixelSizeZ;
+    }
+
+    public void setPixelSizeZ(double value)
+    {
+        pixelSizeZ = value;
+    }
+
+    public double getTimeInterval()
+    {
+        return timeInterval;
+    }
+
+    public void setTimeInterval(double value)
+    {
+        timeInterval = value;
+    }
+
+    public String getChannelName(int c)
+    {
+        return channelNames[c];
+    }
+
+    public void setChannelName(int c, String value)
+    {
+        channelNames[c] = value;
+    }
+
+    /**
+     * Returns image width at the specified resolution level.
+     */
+    public int getSizeX(int level)
+    {
+        return Math.max(1, sizeX >> level);
+    }
+
+    /**
+     * Returns image height at the specified resolution level.
+     */
+    public int getSizeY(int level)
+    {
+        return Math.max(1, sizeY >> level);
+    }
+
+    /**
+     * Returns the number of Z chunks.
+     */
+    public int getNumChunkZ()
+    {
+        return (sizeZ + (chunkSizeZ - 1)) / chunkSizeZ;
+    }
+
+    /**
+     * Returns the file path of the specified chunk.
+     */
+    public String getChunkPath(int level, int t, int c, int cz, int cy, int cx)
+    {
+        return dataPath + "/" + level + "/" + t + "/" + c + "/" + cz + "/" + cy + "/" + cx + "." + CHUNK_EXTENSION;
+    }
+
+    /**
+     * Returns the number of samples in a chunk.
+     */
+    public int getChunkLength()
+    {
+        return chunkSizeX * chunkSizeY * chunkSizeZ;
+    }
+
+    /**
+     * Read the specified chunk (XYZ order, <code>chunkSizeX * chunkSizeY * chunkSizeZ</code> samples).<br>
+     * Returns <code>null</code> if the chunk has never been written.
+     */
+    public Object readChunk(int level, int t, int c, int cz, int cy, int cx) throws IOException
+    {
+        final File file = new File(getChunkPath(level, t, c, cz, cy, cx));
+
+        if (!file.exists())
+            return null;
+
+        final byte[] bytes = Files.readAllBytes(file.toPath());
+
+        if (bytes.length == 0)
+            throw new IOException("Empty chunk file: " + file.getPath());
+
+        final int len = getChunkLength() * dataType.getSize();
+        final ByteBuffer buffer;
+
+        switch (bytes[0])
+        {
+            case CODEC_RAW:
+                if ((bytes.length - 1) != len)
+                    throw new IOException("Invalid chunk size: " + file.getPath());
+                buffer = ByteBuffer.wrap(bytes, 1, len);
+                break;
+
+            case CODEC_DEFLATE:
+            {
+                final byte[] data = new byte[len];
+                final Inflater inflater = new Inflater();
+
+                try
+                {
+                    inflater.setInput(bytes, 1, bytes.length - 1);
+                    int off = 0;
+                    while ((off < len) && !inflater.finished())
+                    {
+                        final int n = inflater.inflate(data, off, len - off);
+
+                        if ((n == 0) && (inflater.needsInput() || inflater.needsDictionary()))
+                            break;
+
+                        off += n;
+                    }
+
+                    if (off != len)
+                        throw new IOException("Invalid chunk size: " + file.getPath());
+                }
+                catch (DataFormatException e)
+                {
+                    throw new IOException("Corrupted chunk: " + file.getPath(), e);
+                }
+                finally
+                {
+                    inflater.end();
+                }
+
+                buffer = ByteBuffer.wrap(data);
+                break;
+            }
+
+            default:
+                throw new IOException("Unknown chunk codec (" + bytes[0] + "): " + file.getPath());
+        }
+
+        return fromBytes(buffer.slice().order(ByteOrder.BIG_ENDIAN), dataType, getChunkLength());
+    }
+
+    /**
+     * Write the specified chunk (see {@link #readChunk(int, int, int, int, int, int)} for data layout).<br>
+     * The chunk is first written in a temporary file then renamed so readers never see a partial chunk.
+     */
+    public void writeChunk(int level, int t, int c, int cz, int cy, int cx, Object data) throws IOException
+    {
+        final byte[] raw = toBytes(data, dataType);
+        byte[] encoded = null;
+
+        if (compression > 0)
+        {
+            final Deflater deflater = new Deflater(compression);
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2);
+            final byte[] buf = new byte[64 * 1024];
+
+            try
+            {
+                out.write(CODEC_DEFLATE);
+                deflater.setInput(raw);
+                deflater.finish();
+                while (!deflater.finished())
+                    out.write(buf, 0, deflater.deflate(buf));
+            }
+            finally
+            {
+                deflater.end();
+            }
+
+            // keep compressed data only if it helps
+            if (out.size() < raw.length)
+                encoded = out.toByteArray();
+        }
+
+        final File file = new File(getChunkPath(level, t, c, cz, cy, cx));
+        final File tmp = new File(file.getPath() + ".tmp");
+
+        FileUtil.ensureParentDirExist(file);
+
+        final FileOutputStream out = new FileOutputStream(tmp);
+
+        try
+        {
+            if (encoded != null)
+                out.write(encoded);
+            else
+            {
+                out.write(CODEC_RAW);
+                out.write(raw);
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Read the specified XY region of a plane at the given resolution level.<br>
+     * Chunks are read in parallel with the given processor (can be <code>null</code>).
+     * 
+     * @param region
+     *        region to read (resolution level coordinates), <code>null</code> means the whole plane
+     */
+    public Object readRegion(final int level, Rectangle region, final int z, final int t, final int c,
+            Processor processor) throws IOException, InterruptedException
+    {
+        final Rectangle r = (region == null) ? new Rectangle(getSizeX(level), getSizeY(level))
+                : region.intersection(new Rectangle(getSizeX(level), getSizeY(level)));
+        final Object result = Array1DUtil.createArray(dataType, Math.max(0, r.width * r.height));
+
+        if (r.isEmpty())
+            return result;
+
+        final int minCX = r.x / chunkSizeX;
+        final int maxCX = (r.x + r.width - 1) / chunkSizeX;
+        final int minCY = r.y / chunkSizeY;
+        final int maxCY = (r.y + r.height - 1) / chunkSizeY;
+        final int cz = z / chunkSizeZ;
+        final List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+
+        for (int cy = minCY; cy <= maxCY; cy++)
+        {
+            for (int cx = minCX; cx <= maxCX; cx++)
+            {
+                final int fcx = cx;
+                final int fcy = cy;
+
+                tasks.add(new Callable<Object>()
+                {
+                    @Override
+                    public Object call() throws Exception
+                    {
+                        final Object chunk = readChunk(level, t, c, cz, fcy, fcx);
+
+                        // missing chunk --> keep 0
+                        if (chunk != null)
+                            copyFromChunk(chunk, fcx, fcy, z - (cz * chunkSizeZ), result, r);
+
+                        return null;
+                    }
+                });
+            }
+        }
+
+        execute(tasks, processor);
+
+        return result;
+    }
+
+    /**
+     * Write the specified Z chunk row of planes at the given resolution level.<br>
+     * Chunks are written in parallel with the given processor (can be <code>null</code>).
+     * 
+     * @param planes
+     *        planes data (full resolution level XY size) for Z from <code>cz * chunkSizeZ</code>, can contains less
+     *        than <code>chunkSizeZ</code> planes for the last Z chunk
+     */
+    public void writePlanes(final int level, final int t, final int c, final int cz, final Object[] planes,
+            Processor processor) throws IOException, InterruptedException
+    {
+        final int w = getSizeX(level);
+        final int h = getSizeY(level);
+        final int numCX = (w + (chunkSizeX - 1)) / chunkSizeX;
+        final int numCY = (h + (chunkSizeY - 1)) / chunkSizeY;
+        final List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+
+        for (int cy = 0; cy < numCY; cy++)
+        {
+            for (int cx = 0; cx < numCX; cx++)
+            {
+                final int fcx = cx;
+                final int fcy = cy;
+
+                tasks.add(new Callable<Object>()
+                {
+                    @Override
+                    public Object call() throws Exception
+                    {
+                        writeChunk(level, t, c, cz, fcy, fcx,
+                                copyToChunk(planes, w, Math.min(h, (fcy + 1) * chunkSizeY), fcx, fcy, 0));
+                        return null;
+                    }
+                });
+            }
+        }
+
+        execute(tasks, processor);
+    }
+
+    /**
+     * Write a single row of chunks (Y chunk index <code>cy</code>) of the specified Z chunk row of planes at the given
+     * resolution level, so a plane can be written band by band without having it entirely in memory.<br>
+     * Chunks are written in parallel with the given processor (can be <code>null</code>).
+     * 
+     * @param rows
+     *        band data (resolution level X size) for Z from <code>cz * chunkSizeZ</code>, first row is
+     *        <code>cy * chunkSizeY</code>
+     * @param numRows
+     *        number of rows in band data (can be lower than <code>chunkSizeY</code> for the last chunk row)
+     */
+    public void writeChunkRow(final int level, final int t, final int c, final int cz, final int cy, final Object[] rows,
+            final int numRows, Processor processor) throws IOException, InterruptedException
+    {
+        final int w = getSizeX(level);
+        final int numCX = (w + (chunkSizeX - 1)) / chunkSizeX;
+        final int chunkY = cy * chunkSizeY;
+        final List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+
+        for (int cx = 0; cx < numCX; cx++)
+        {
+            final int fcx = cx;
+
+            tasks.add(new Callable<Object>()
+            {
+                @Override
+                public Object call() throws Exception
+                {
+                    writeChunk(level, t, c, cz, cy, fcx, copyToChunk(rows, w, chunkY + numRows, fcx, cy, chunkY));
+                    return null;
+                }
+            });
+        }
+
+        execute(tasks, processor);
+    }
+
+    /**
+     * Copy the intersection of the specified chunk (for the given Z in chunk) and the region into result.
+     */
+    protected void copyFromChunk(Object chunk, int cx, int cy, int zInChunk, Object result, Rectangle region)
+    {
+        final int chunkX = cx * chunkSizeX;
+        final int chunkY = cy * chunkSizeY;
+        final int startX = Math.max(region.x, chunkX);
+        final int endX = Math.min(region.x + region.width, chunkX + chunkSizeX);
+        final int startY = Math.max(region.y, chunkY);
+        final int endY = Math.min(region.y + region.height, chunkY + chunkSizeY);
+        final int zOff = zInChunk * chunkSizeX * chunkSizeY;
+
+        for (int y = startY; y < endY; y++)
+            System.arraycopy(chunk, zOff + ((y - chunkY) * chunkSizeX) + (startX - chunkX), result,
+                    ((y - region.y) * region.width) + (startX - region.x), endX - startX);
+    }
+
+    /**
+     * Build the specified chunk from planes data (edge chunks are padded with 0).
+     * 
+     * @param endY
+     *        end row (exclusive) of the chunk data
+     * @param offsetY
+     *        row of the first line in planes data
+     */
+    protected Object copyToChunk(Object[] planes, int w, int endY, int cx, int cy, int offsetY)
+    {
+        final Object result = Array1DUtil.createArray(dataType, getChunkLength());
+        final int chunkX = cx * chunkSizeX;
+        final int chunkY = cy * chunkSizeY;
+        final int len = Math.min(w - chunkX, chunkSizeX);
+
+        for (int z = 0; z < Math.min(planes.length, chunkSizeZ); z++)
+        {
+            final int zOff = z * chunkSizeX * chunkSizeY;
+
+            for (int y = chunkY; y < endY; y++)
+                System.arraycopy(planes[z], ((y - offsetY) * w) + chunkX, result, zOff + ((y - chunkY) * chunkSizeX), len);
+        }
+
+        return result;
+    }
+
+    /**
+     * Execute the given tasks (in parallel if a processor is specified) and wait for their completion.
+     */
+    protected static void execute(List<Callable<Object>> tasks, Processor processor)
+            throws IOException, InterruptedException
+    {
+        if ((processor == null) || (tasks.size() == 1))
+        {
+            for (Callable<Object> task : tasks)
+            {
+                try
+                {
+                    task.call();
+                }
+                catch (IOException e)
+                {
+                    throw e;
+                }
+                catch (InterruptedException e)
+                {
+                    throw e;
+                }
+                catch (Exception e)
+                {
+                    throw new IOException(e);
+                }
+            }
+
+            return;
+        }
+
+        final List<Future<Object>> futures = new ArrayList<Future<Object>>(tasks.size());
+
+        try
+        {
+            for (Callable<Object> task : tasks)
+                futures.add(processor.submit(task));
+
+            for (Future<Object> future : futures)
+            {
+                try
+                {
+                    future.get();
+                }
+                catch (ExecutionException e)
+                {
+                    if (e.getCause() instanceof IOException)
+                        throw (IOException) e.getCause();
+
+                    throw new IOException(e.getCause());
+                }
+            }
+        }
+        finally
+        {
+            // error or interruption --> cancel remaining tasks
+            for (Future<Object> future : futures)
+                future.cancel(false);
+        }
+    }
+
+    /**
+     * Convert typed array to big endian bytes.
+     */
+    protected static byte[] toBytes(Object data, DataType dataType)
+    {
+        final int len = ArrayUtil.getLength(data);
+        final ByteBuffer result = ByteBuffer.allocate(len * dataType.getSize()).order(ByteOrder.BIG_ENDIAN);
+
+        switch (dataType.getJavaType())
+        {
+            case BYTE:
+                result.put((byte[]) data);
+                break;
+            case SHORT:
+                result.asShortBuffer().put((short[]) data);
+                break;
+            case INT:
+                result.asIntBuffer().put((int[]) data);
+                break;
+            case FLOAT:
+                result.asFloatBuffer().put((float[]) data);
+                break;
+            case DOUBLE:
+                result.asDoubleBuffer().put((double[]) data);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported data type: " + dataType);
+        }
+
+        return result.array();
+    }
+
+    /**
+     * Convert big endian bytes to typed array.
+     */
+    protected static Object fromBytes(ByteBuffer buffer, DataType dataType, int len)
+    {
+        final Object result = Array1DUtil.createArray(dataType, len);
+
+        switch (dataType.getJavaType())
+        {
+            case BYTE:
+                buffer.get((byte[]) result);
+                break;
+            case SHORT:
+                buffer.asShortBuffer().get((short[]) result);
+                break;
+            case INT:
+                buffer.asIntBuffer().get((int[]) result);
+                break;
+            case FLOAT:
+                buffer.asFloatBuffer().get((float[]) result);
+                break;
+            case DOUBLE:
+                buffer.asDoubleBuffer().get((double[]) result);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported data type: " + dataType);
+        }
+
+        return result;
+    }
+}
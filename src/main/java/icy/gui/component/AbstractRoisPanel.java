@@ -23,6 +23,7 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Image;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
@@ -52,8 +53,12 @@ import javax.swing.JScrollPane;
 import javax.swing.KeyStroke;
 import javax.swing.ListSelectionModel;
 import javax.swing.ScrollPaneConstants;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
+import javax.swing.event.RowSorterEvent;
+import javax.swing.event.RowSorterListener;
 import javax.swing.table.AbstractTableModel;
 import javax.swing.table.JTableHeader;
 import javax.swing.table.TableColumn;
@@ -89,6 +94,7 @@ import icy.plugin.interface_.PluginROIDescriptor;
 import icy.preferences.XMLPreferences;
 import icy.roi.ROI;
 import icy.roi.ROIDescriptor;
+import icy.roi.ROIDescriptorCache;
 import icy.roi.ROIEvent;
 import icy.roi.ROIEvent.ROIEventType;
 import icy.roi.ROIListener;
@@ -97,7 +103,9 @@ import icy.sequence.Sequence;
 import icy.sequence.SequenceEvent;
 import icy.sequence.SequenceEvent.SequenceEventSourceType;
 import icy.system.IcyExceptionHandler;
+import icy.system.SystemUtil;
 import icy.system.thread.InstanceProcessor;
+import icy.system.thread.Processor;
 import icy.system.thread.ThreadUtil;
 import icy.type.rectangle.Rectangle5D;
 import icy.util.ClassUtil;
@@ -152,6 +160,15 @@ public abstract class AbstractRoisPanel extends ExternalizablePanel
     protected static final String ID_PROPERTY_ORDER = "order";
     protected static final String ID_PROPERTY_VISIBLE = "visible";
 
+    /**
+     * minimum interval (in ms) between 2 table refreshes when publishing computed descriptor results
+     */
+    protected static final long PUBLISH_INTERVAL = 100L;
+    /**
+     * maximum number of ROI results a descriptor computation task processes before yielding its thread
+     */
+    protected static final int COMPUTE_BATCH_SIZE = 32;
+
     // default row comparator
     protected static Comparator<Object> comparator = new Comparator<Object>()
     {
@@ -252,13 +269,23 @@ public abstract class AbstractRoisPanel extends ExternalizablePanel
     protected final Runnable tableDataRefresher;
     protected final Runnable tableSelectionRefresher;
     protected final Runnable columnInfoListRefresher;
+    protected final Runnable tableDataPublisher;
     protected final InstanceProcessor processor;
+    protected final InstanceProcessor publishProcessor;
+    /**
+     * thread pool used to compute descriptors (shared by all descriptor computers)
+     */
+    protected final Processor descriptorProcessor;
 
     protected DescriptorComputer primaryDescriptorComputer;
     protected DescriptorComputer basicDescriptorComputer;
     protected DescriptorComputer advancedDescriptorComputer;
 
-    protected long lastTableDataRefresh;
+    /**
+     * ROI results of the table rows currently visible (computed first)
+     */
+    protected volatile Set<ROIResults> visibleRoiResults;
+    protected volatile long lastTableDataRefresh;
 
     /**
      * Create a new ROI table panel.<br>
@@ -282,6 +309,7 @@ public abstract class AbstractRoisPanel extends ExternalizablePanel
         modifySelection = new Semaphore(1);
         columnInfoList = new ArrayList<ColumnInfo>();
 
+        visibleRoiResults = new HashSet<ROIResults>();
         lastTableDataRefresh = 0L;
 
         initialize();
@@ -326,6 +354,14 @@ public abstract class AbstractRoisPanel extends ExternalizablePanel
                 refreshTableDataInternal();
             }
         };
+        tableDataPublisher = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                publishTableDataInternal();
+            }
+        };
         tableSelectionRefresher = new Runnable()
         {
             @Override
@@ -370,13 +406,16 @@ public abstract class AbstractRoisPanel extends ExternalizablePanel
         processor = new InstanceProcessor();
         processor.setThreadName("ROI panel GUI refresher");
         processor.setKeepAliveTime(30, TimeUnit.SECONDS);
+        publishProcessor = new InstanceProcessor();
+        publishProcessor.setThreadName("ROI panel descriptor results publisher");
+        publishProcessor.setKeepAliveTime(30, TimeUnit.SECONDS);
+        descriptorProcessor = new Processor(-1, SystemUtil.getNumberOfCPUs(), Processor.MIN_PRIORITY);
+        descriptorProcessor.setThreadName("ROI descriptor calculator");
+        descriptorProcessor.setKeepAliveTime(30, TimeUnit.SECONDS);
 
         primaryDescriptorComputer = new DescriptorComputer(DescriptorType.PRIMARY);
         basicDescriptorComputer = new DescriptorComputer(DescriptorType.BASIC);
         advancedDescriptorComputer = new DescriptorComputer(DescriptorType.EXTERNAL);
-        primaryDescriptorComputer.start();
-        basicDescriptorComputer.start();
-        advancedDescriptorComputer.start();
 
         // update descriptors list (this rebuild the column model of the tree table)
         refreshDescriptorList();
@@ -443,13 +482,34 @@ public abstract class AbstractRoisPanel extends ExternalizablePanel
         roiSelectionModel.addListSelectionListener(this);
         roiSelectionModel.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
 
-        roiTable.setRowSorter(new ROITableSortController<ROITableModel>());
+        final ROITableSortController<ROITableModel> sortController = new ROITableSortController<ROITableModel>();
+        // visible rows may change on sort
+        sortController.addRowSorterListener(new RowSorterListener()
+        {
+            @Override
+            public void sorterChanged(RowSorterEvent e)
+            {
+                refreshVisibleRoiResults();
+            }
+        });
+        roiTable.setRowSorter(sortController);
 
         final JPanel middlePanel = new JPanel(new BorderLayout(0, 0));
+        final JScrollPane scrollPane = new JScrollPane(roiTable, ScrollPaneConstants.VERTICAL_SCROLLBAR_ALWAYS,
+                ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
+
+        // visible rows change on scroll and resize
+        scrollPane.getViewport().addChangeListener(new ChangeListener()
+        {
+            @Override
+            public void stateChanged(ChangeEvent e)
+            {
+                refreshVisibleRoiResults();
+            }
+        });
 
         middlePanel.add(roiTable.getTableHeader(), BorderLayout.NORTH);
-        middlePanel.add(new JScrollPane(roiTable, ScrollPaneConstants.VERTICAL_SCROLLBAR_ALWAYS,
-                ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER), BorderLayout.CENTER);
+        middlePanel.add(scrollPane, BorderLayout.CENTER);
 
         final IcyButton settingButton = new IcyButton(RoiActions.settingAction);
         settingButton.setHideActionText(true);
@@ -611,6 +671,57 @@ public abstract class AbstractRoisPanel extends ExternalizablePanel
         nameFilter.setText(name);
     }
 
+    /**
+     * Returns the data version (see {@link ROIDescriptorCache#getDataVersion(Sequence, ROI, ROIDescriptor)}) of each
+     * descriptor of the plugin for the specified ROI or <code>null</code> if the plugin results can't be cached.
+     */
+    protected static Map<ROIDescriptor, Long> getCacheDataVersions(PluginROIDescriptor plugin, ROI roi, Sequence seq)
+    {
+        final List<ROIDescriptor> descriptors = plugin.getDescriptors();
+
+        if ((seq == null) || (descriptors == null) || descriptors.isEmpty())
+            return null;
+
+        final Map<ROIDescriptor, Long> result = new HashMap<ROIDescriptor, Long>();
+
+        for (ROIDescriptor descriptor : descriptors)
+        {
+            // all results of the plugin should be cacheable
+            if (!ROIDescriptorCache.isCacheable(descriptor, roi))
+                return null;
+
+            result.put(descriptor, Long.valueOf(ROIDescriptorCache.getDataVersion(seq, roi, descriptor)));
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns cached results for the specified descriptors data versions or <code>null</code> if any of them is
+     * missing.
+     */
+    protected static Map<ROIDescriptor, Object> getCachedResults(Sequence seq, ROI roi, int channel,
+            Map<ROIDescriptor, Long> dataVersions)
+    {
+        if (dataVersions == null)
+            return null;
+
+        final ROIDescriptorCache cache = seq.getROIDescriptorCache();
+        final Map<ROIDescriptor, Object> result = new HashMap<ROIDescriptor, Object>();
+
+        for (Entry<ROIDescriptor, Long> entry : dataVersions.entrySet())
+        {
+            final Object value = cache.get(roi, entry.getKey(), channel, entry.getValue().longValue());
+
+            if (value == null)
+                return null;
+
+            result.put(entry.getKey(), value);
+        }
+
+        return result;
+    }
+
     protected boolean computeROIResults(ROIResults roiResults, Sequence seq, ColumnInfo columnInfo)
     {
         final Map<ColumnInfo, DescriptorResult> results = roiResults.descriptorResults;
@@ -636,24 +747,51 @@ public abstract class AbstractRoisPanel extends ExternalizablePanel
 
             if (plugin != null)
             {
-                final Map<ROIDescriptor, Object> newResults;
+                Map<ROIDescriptor, Object> newResults;
 
                 try
                 {
-                    // need computation per channel ?
-                    if (descriptor.separateChannel())
+                    // get versions before computation so a change during computation invalidates the results
+                    final long roiVersion = roiResults.roi.getContentVersion();
+                    final Map<ROIDescriptor, Long> dataVersions = getCacheDataVersions(plugin, roiResults.roi, seq);
+
+                    // try to get results from cache first
+                    newResults = getCachedResults(seq, roiResults.roi, columnInfo.channel, dataVersions);
+
+                    if (newResults == null)
                     {
-                        // retrieve the ROI for this channel
-                        final ROI roi = roiResults.getRoiForChannel(columnInfo.channel);
+                        // need computation per channel ?
+                        if (descriptor.separateChannel())
+                        {
+                            // retrieve the ROI for this channel
+                            final ROI roi = roiResults.getRoiForChannel(columnInfo.channel);
+
+                            if (roi == null)
+                                throw new UnsupportedOperationException(
+                                        "Can't retrieve sub ROI for channel " + columnInfo.channel);
 
-                        if (roi == null)
-                            throw new UnsupportedOperationException(
-                                    "Can't retrieve sub ROI for channel " + columnInfo.channel);
+                            newResults = plugin.compute(roi, seq);
+                        }
+                        else
+                            newResults = plugin.compute(roiResults.roi, seq);
 
-                        newResults = plugin.compute(roi, seq);
+                        // ROI and data didn't changed during computation --> store results in cache
+                        if ((dataVersions != null) && (roiResults.roi.getContentVersion() == roiVersion)
+                                && dataVersions.equals(getCacheDataVersions(plugin, roiResults.roi, seq)))
+                        {
+                            final ROIDescriptorCache cache = seq.getROIDescriptorCache();
+
+                            for (Entry<ROIDescriptor, Object> entryNewResult : newResults.entrySet())
+                            {
+                                final Long dataVersion = dataVersions.get(entryNewResult.getKey());
+
+                                if (dataVersion != null)
+                                    cache.put(roiResults.roi, roiVersion, entryNewResult.getKey(),
+                                            columnInfo.channel, seq, dataVersion.longValue(),
+                                            entryNewResult.getValue());
+                            }
+                        }
                     }
-                    else
-                        newResults = plugin.compute(roiResults.roi, seq);
 
                     for (Entry<ROIDescriptor, Object> entryNewResult : newResults.entrySet())
                     {
@@ -1000,19 +1138,6 @@ public abstract class AbstractRoisPanel extends ExternalizablePanel
                 cancelDescriptorComputation(roiResults);
         }
 
-        // interrupt current descriptor processings
-        primaryDescriptorComputer.interrupt();
-        basicDescriptorComputer.interrupt();
-        advancedDescriptorComputer.interrupt();
-
-        // restart descriptor processing threads
-        primaryDescriptorComputer = new DescriptorComputer(DescriptorType.PRIMARY);
-        basicDescriptorComputer = new DescriptorComputer(DescriptorType.BASIC);
-        advancedDescriptorComputer = new DescriptorComputer(DescriptorType.EXTERNAL);
-        primaryDescriptorComputer.start();
-        basicDescriptorComputer.start();
-        advancedDescriptorComputer.start();
-
         // set new ROI set
         roiSet = newRoiSet;
 
@@ -1119,13 +1244,16 @@ public abstract class AbstractRoisPanel extends ExternalizablePanel
         if (cleanedEvents.isEmpty())
             return;
 
+        boolean changed = false;
+
         // notify ROI results that sequence has changed
         for (ROIResults roiResults : allRoiResults)
             for (SequenceEvent event : cleanedEvents)
-                roiResults.sequenceChanged(event);
+                changed |= roiResults.sequenceChanged(event);
 
-        // refresh table data
-        refreshTableData();
+        // refresh table data only if some results need to be recomputed
+        if (changed)
+            refreshTableData();
     }
 
     public void refreshTableDataStructure()
@@ -1167,6 +1295,9 @@ public abstract class AbstractRoisPanel extends ExternalizablePanel
                         }
                     }
 
+                    // rows changed
+                    refreshVisibleRoiResults();
+
                     // selection to restore ?
                     if (!newSelectedRois.isEmpty())
                         setSelectedRoisInternal(newSelectedRois);
@@ -1193,20 +1324,7 @@ public abstract class AbstractRoisPanel extends ExternalizablePanel
 
     protected void refreshTableDataInternal()
     {
-        final long time = System.currentTimeMillis();
-        final boolean hasPendingTask = primaryDescriptorComputer.hasPendingComputation()
-                && basicDescriptorComputer.hasPendingComputation()
-                && advancedDescriptorComputer.hasPendingComputation();
-
-        // still pending descriptor task ?
-        if (hasPendingTask)
-        {
-            // avoid too much table data update
-            if ((time - lastTableDataRefresh) < 200)
-                return;
-        }
-
-        lastTableDataRefresh = time;
+        lastTableDataRefresh = System.currentTimeMillis();
 
         // don't eat too much time on data structure refresh
         ThreadUtil.sleep(1);
@@ -1246,6 +1364,69 @@ public abstract class AbstractRoisPanel extends ExternalizablePanel
         refreshRoiNumbers();
     }
 
+    /**
+     * Publish computed descriptor results in the table.<br>
+     * Results computed until the table is effectively refreshed are published together (at most one refresh every
+     * {@link #PUBLISH_INTERVAL} ms).
+     */
+    protected void publishTableData()
+    {
+        publishProcessor.submit(true, tableDataPublisher);
+    }
+
+    protected void publishTableDataInternal()
+    {
+        final long delay = (lastTableDataRefresh + PUBLISH_INTERVAL) - System.currentTimeMillis();
+
+        // wait a bit so results computed in the meantime are published with the same table refresh
+        if (delay > 0)
+            ThreadUtil.sleep(delay);
+
+        refreshTableDataInternal();
+    }
+
+    /**
+     * Update the set of ROI results visible in the table (should be called from EDT).
+     */
+    protected void refreshVisibleRoiResults()
+    {
+        final Set<ROIResults> newVisibleRoiResults = new HashSet<ROIResults>();
+        final Rectangle visibleRect = roiTable.getVisibleRect();
+        final List<ROIResults> entries = filteredRoiResultsList;
+
+        if (!visibleRect.isEmpty())
+        {
+            final int first = roiTable.rowAtPoint(visibleRect.getLocation());
+            int last = roiTable.rowAtPoint(new Point(visibleRect.x, (visibleRect.y + visibleRect.height) - 1));
+
+            // table shorter than viewport
+            if (last == -1)
+                last = roiTable.getRowCount() - 1;
+
+            if (first != -1)
+            {
+                for (int i = first; i <= last; i++)
+                {
+                    final int index = roiTable.convertRowIndexToModel(i);
+
+                    if ((index >= 0) && (index < entries.size()))
+                        newVisibleRoiResults.add(entries.get(index));
+                }
+            }
+        }
+
+        visibleRoiResults = newVisibleRoiResults;
+
+        // not yet initialized
+        if (advancedDescriptorComputer == null)
+            return;
+
+        // pending computations for visible rows go first
+        primaryDescriptorComputer.prioritize(newVisibleRoiResults);
+        basicDescriptorComputer.prioritize(newVisibleRoiResults);
+        advancedDescriptorComputer.prioritize(newVisibleRoiResults);
+    }
+
     public void refreshTableSelection()
     {
         processor.submit(true, tableSelectionRefresher);
@@ -2080,9 +2261,12 @@ public abstract class AbstractRoisPanel extends ExternalizablePanel
          * 
          * @param event
          *        Sequence change event
+         * @return <code>true</code> if at least one result has been invalidated
          */
-        public void sequenceChanged(SequenceEvent event)
+        public boolean sequenceChanged(SequenceEvent event)
         {
+            boolean result = false;
+
             final Object[] entries;
 
             synchronized (descriptorResults)
@@ -2096,44 +2280,69 @@ public abstract class AbstractRoisPanel extends ExternalizablePanel
                 final ColumnInfo key = entry.getKey();
                 final ROIDescriptor descriptor = key.descriptor;
 
+                final DescriptorResult descriptorResult = entry.getValue();
+
                 // need to recompute this descriptor ?
-                if (descriptor.needRecompute(event))
+                if ((descriptorResult != null) && !descriptorResult.isOutdated() && descriptor.needRecompute(event))
                 {
-                    final DescriptorResult result = entry.getValue();
-
                     // mark as outdated
-                    if (result != null)
-                        result.setOutdated(true);
+                    descriptorResult.setOutdated(true);
+                    result = true;
                 }
             }
+
+            return result;
         }
     }
 
-    protected class DescriptorComputer extends Thread
+    /**
+     * Computes descriptors of a given type for the requested ROI results.<br>
+     * Computation tasks are executed in the shared descriptor thread pool: each task takes pending ROI results
+     * (visible rows first) until there is no more work or its batch is done, in which case it is resubmitted so other
+     * descriptor types get a chance to run.
+     */
+    protected class DescriptorComputer implements Runnable
     {
         protected final LinkedHashSet<ROIResults> resultsToCompute;
+        /**
+         * pending ROI results of visible rows
+         */
+        protected final LinkedHashSet<ROIResults> priorityResultsToCompute;
+        /**
+         * ROI results being computed (with computing thread)
+         */
+        protected final Map<ROIResults, Thread> computingResults;
         protected final DescriptorType type;
+        protected final int maxTasks;
+        protected int numTasks;
 
         public DescriptorComputer(DescriptorType type)
         {
-            super("ROI " + type.toString() + " descriptor calculator");
+            super();
 
             resultsToCompute = new LinkedHashSet<AbstractRoisPanel.ROIResults>(256);
+            priorityResultsToCompute = new LinkedHashSet<AbstractRoisPanel.ROIResults>(64);
+            computingResults = new HashMap<AbstractRoisPanel.ROIResults, Thread>();
             this.type = type;
-
-            setPriority(Thread.MIN_PRIORITY);
+            maxTasks = SystemUtil.getNumberOfCPUs();
+            numTasks = 0;
         }
 
         public boolean hasPendingComputation()
         {
-            return resultsToCompute.size() > 0;
+            synchronized (resultsToCompute)
+            {
+                return !resultsToCompute.isEmpty() || !priorityResultsToCompute.isEmpty()
+                        || !computingResults.isEmpty();
+            }
         }
 
         public boolean hasPendingComputation(ROIResults results)
         {
             synchronized (resultsToCompute)
             {
-                return resultsToCompute.contains(results);
+                return resultsToCompute.contains(results) || priorityResultsToCompute.contains(results)
+                        || computingResults.containsKey(results);
             }
         }
 
@@ -2141,8 +2350,32 @@ public abstract class AbstractRoisPanel extends ExternalizablePanel
         {
             synchronized (resultsToCompute)
             {
-                resultsToCompute.add(results);
-                resultsToCompute.notifyAll();
+                // already pending
+                if (priorityResultsToCompute.contains(results))
+                    return;
+
+                if (visibleRoiResults.contains(results))
+                {
+                    resultsToCompute.remove(results);
+                    priorityResultsToCompute.add(results);
+                }
+                else
+                    resultsToCompute.add(results);
+
+                startTasks();
+            }
+        }
+
+        /**
+         * Move pending computations of the specified ROI results in front of the queue.
+         */
+        public void prioritize(Set<ROIResults> results)
+        {
+            synchronized (resultsToCompute)
+            {
+                for (ROIResults roiResults : results)
+                    if (resultsToCompute.remove(roiResults))
+                        priorityResultsToCompute.add(roiResults);
             }
         }
 
@@ -2151,7 +2384,12 @@ public abstract class AbstractRoisPanel extends ExternalizablePanel
             synchronized (resultsToCompute)
             {
                 resultsToCompute.remove(roiResults);
-                resultsToCompute.notifyAll();
+                priorityResultsToCompute.remove(roiResults);
+
+                // interrupt current computation
+                final Thread thread = computingResults.get(roiResults);
+                if (thread != null)
+                    thread.interrupt();
             }
         }
 
@@ -2159,18 +2397,13 @@ public abstract class AbstractRoisPanel extends ExternalizablePanel
         {
             synchronized (resultsToCompute)
             {
-                final Iterator<ROIResults> it = resultsToCompute.iterator();
-
-                while (it.hasNext())
-                {
-                    final ROIResults roiResults = it.next();
-
-                    // remove all results for this ROI
-                    if (roiResults.roi == roi)
-                        it.remove();
-                }
+                removeResults(resultsToCompute, roi);
+                removeResults(priorityResultsToCompute, roi);
 
-                resultsToCompute.notifyAll();
+                // interrupt current computations
+                for (Entry<ROIResults, Thread> entry : computingResults.entrySet())
+                    if (entry.getKey().roi == roi)
+                        entry.getValue().interrupt();
             }
         }
 
@@ -2179,45 +2412,134 @@ public abstract class AbstractRoisPanel extends ExternalizablePanel
             synchronized (resultsToCompute)
             {
                 resultsToCompute.clear();
-                resultsToCompute.notifyAll();
+                priorityResultsToCompute.clear();
+            }
+        }
+
+        private void removeResults(Set<ROIResults> results, ROI roi)
+        {
+            final Iterator<ROIResults> it = results.iterator();
+
+            while (it.hasNext())
+            {
+                // remove all results for this ROI
+                if (it.next().roi == roi)
+                    it.remove();
+            }
+        }
+
+        /**
+         * Start computation tasks while there is pending work (should be called with lock on resultsToCompute)
+         */
+        private void startTasks()
+        {
+            final int pending = resultsToCompute.size() + priorityResultsToCompute.size();
+
+            while ((numTasks < maxTasks) && (numTasks < pending))
+            {
+                numTasks++;
+                descriptorProcessor.submit(false, this);
+            }
+        }
+
+        /**
+         * Returns next ROI results to compute (visible rows first) and mark it as being computed by current thread or
+         * returns <code>null</code> if there is nothing to compute (should be called with lock on resultsToCompute).
+         */
+        private ROIResults takeNext()
+        {
+            ROIResults result = takeNext(priorityResultsToCompute);
+
+            if (result == null)
+                result = takeNext(resultsToCompute);
+            if (result != null)
+                computingResults.put(result, Thread.currentThread());
+
+            return result;
+        }
+
+        private ROIResults takeNext(Set<ROIResults> results)
+        {
+            final Iterator<ROIResults> it = results.iterator();
+
+            while (it.hasNext())
+            {
+                final ROIResults roiResults = it.next();
+
+                // not already computed by another task
+                if (!computingResults.containsKey(roiResults))
+                {
+                    it.remove();
+                    return roiResults;
+                }
             }
+
+            return null;
         }
 
         @Override
         public void run()
         {
+            // task slot already released
+            boolean released = false;
+
             try
             {
-                while (!interrupted())
+                for (int i = 0; i < COMPUTE_BATCH_SIZE; i++)
                 {
                     final ROIResults roiResults;
 
                     synchronized (resultsToCompute)
                     {
-                        while (resultsToCompute.isEmpty())
-                            resultsToCompute.wait();
+                        roiResults = takeNext();
 
-                        // get first
-                        roiResults = resultsToCompute.iterator().next();
-                        // and remove it from compute list
-                        resultsToCompute.remove(roiResults);
+                        // nothing more to compute --> release the task slot while holding the lock so a new
+                        // request can't see this task as still running and miss to start a new one
+                        if (roiResults == null)
+                        {
+                            numTasks--;
+                            released = true;
+                        }
                     }
 
-                    final Sequence seq = getSequence();
+                    if (roiResults == null)
+                        break;
+
+                    try
+                    {
+                        final Sequence seq = getSequence();
 
-                    if (seq != null)
-                        computeROIResults(roiResults, seq);
+                        if (seq != null)
+                            computeROIResults(roiResults, seq);
+                    }
+                    finally
+                    {
+                        synchronized (resultsToCompute)
+                        {
+                            computingResults.remove(roiResults);
+                            // clear interrupted state (computation cancelled) so the thread can be reused
+                            Thread.interrupted();
+                        }
+                    }
                 }
             }
-            catch (InterruptedException exc)
-            {
-                // just interrupt processing thread
-            }
             catch (Throwable t)
             {
                 System.err.println("Error while computing ROI descriptors:");
                 System.err.println(t.getMessage());
             }
+            finally
+            {
+                if (!released)
+                {
+                    synchronized (resultsToCompute)
+                    {
+                        numTasks--;
+                        // batch done (or error) and remaining work ? --> resubmit (let other tasks run first)
+                        startTasks();
+                    }
+                }
+            }
         }
 
         protected void computeROIResults(ROIResults roiResults, Sequence seq)
@@ -2238,9 +2560,9 @@ public abstract class AbstractRoisPanel extends ExternalizablePanel
                     needUpdate |= AbstractRoisPanel.this.computeROIResults(roiResults, seq, columnInfo);
             }
 
-            // need to refresh data
+            // need to publish results
             if (needUpdate)
-                refreshTableData();
+                publishTableData();
         }
     }
 
@@ -57,6 +57,8 @@ import icy.gui.component.SpecialValueSpinner;
 import icy.gui.component.ThumbnailComponent;
 import icy.gui.component.model.SpecialValueSpinnerModel;
 import icy.image.IcyBufferedImage;
+import icy.image.cache.ThumbnailCache;
+import icy.image.cache.ThumbnailCache.CachedThumbnail;
 import icy.resource.ResourceUtil;
 import icy.sequence.MetaDataUtil;
 import icy.sequence.SequenceIdImporter;
@@ -259,7 +261,45 @@ public class LoaderOptionPanel extends JPanel
             if (!open())
                 throw new IOException("Can't open importer !");
 
-            return importer.getThumbnail(s);
+            // single file ? --> use thumbnail cache
+            final String path = isMultiFile() ? null : files.get(0);
+
+            if (path != null)
+            {
+                final CachedThumbnail cached = ThumbnailCache.get(path, s);
+
+                if (cached != null)
+                {
+                    if (cached.upToDate)
+                        return cached.image;
+
+                    // file changed --> display previous thumbnail while we generate the new one
+                    preview.setImage(cached.image);
+                }
+            }
+
+            final IcyBufferedImage result = importer.getThumbnail(s);
+
+            if (path != null)
+                ThumbnailCache.put(path, s, result);
+
+            return result;
+        }
+
+        /**
+         * Returns the cached thumbnail for the current selection (even if outdated) or <code>null</code> if none.
+         */
+        IcyBufferedImage getCachedThumbnail(int s)
+        {
+            if (files.size() != 1)
+                return null;
+
+            final CachedThumbnail cached = ThumbnailCache.get(files.get(0), s);
+
+            if (cached != null)
+                return cached.image;
+
+            return null;
         }
 
         IcyBufferedImage getImage(int s, int res) throws InterruptedException, UnsupportedFormatException, IOException
@@ -424,8 +464,12 @@ public class LoaderOptionPanel extends JPanel
                     return;
                 }
 
-                // loading...
-                preview.setImage(ResourceUtil.ICON_WAIT);
+                // loading... (display cached thumbnail if we have one)
+                final IcyBufferedImage cachedThumbnail = getCachedThumbnail(s);
+                if (cachedThumbnail != null)
+                    preview.setImage(cachedThumbnail);
+                else
+                    preview.setImage(ResourceUtil.ICON_WAIT);
                 preview.setInfos("loading...");
 
                 // use Callable as we can get interrupted here...
@@ -42,6 +42,7 @@ public class SaverDialog extends JFileChooser
     private static final String ID_PATH = "path";
     private static final String ID_MULTIPLEFILE = "multipleFile";
     private static final String ID_OVERWRITENAME = "overwriteName";
+    private static final String ID_PYRAMID = "pyramid";
     private static final String ID_FPS = "fps";
     private static final String ID_EXTENSION = "extension";
 
@@ -142,6 +143,7 @@ public class SaverDialog extends JFileChooser
         settingPanel = new SaverOptionPanel();
         settingPanel.setMultipleFiles(preferences.getBoolean(ID_MULTIPLEFILE, false));
         settingPanel.setOverwriteMetadata(preferences.getBoolean(ID_OVERWRITENAME, true));
+        settingPanel.setPyramid(preferences.getBoolean(ID_PYRAMID, false));
 
         // try to set time interval from metadata
         final double ti = sequence.getTimeInterval() * 1000d;
@@ -278,7 +280,8 @@ public class SaverDialog extends JFileChooser
                         @Override
                         public void run()
                         {
-                            Saver.save(w, s, f, getFps(), isSaveAsMultipleFilesEnabled(), true, true);
+                            Saver.save(w, s, f, getFps(), isSaveAsMultipleFilesEnabled(),
+                                    isSaveAsPyramidEnabled() ? 0 : 1, true, true);
                         }
                     });
                 }
@@ -289,7 +292,10 @@ public class SaverDialog extends JFileChooser
             preferences.putInt(ID_HEIGHT, getHeight());
             // save this information only for TIFF format
             if (fileFormat == ImageFileFormat.TIFF)
+            {
                 preferences.putBoolean(ID_MULTIPLEFILE, isSaveAsMultipleFilesEnabled());
+                preferences.putBoolean(ID_PYRAMID, isSaveAsPyramidEnabled());
+            }
             preferences.putBoolean(ID_OVERWRITENAME, settingPanel.getOverwriteMetadata());
             // save this information only for AVI format
             if (fileFormat == ImageFileFormat.AVI)
@@ -395,6 +401,14 @@ public class SaverDialog extends JFileChooser
         return settingPanel.isMultipleFilesVisible() && settingPanel.getMultipleFiles();
     }
 
+    /**
+     * Returns <code>true</code> if user chosen to save the sequence as a tiled pyramidal image (TIFF only).
+     */
+    public boolean isSaveAsPyramidEnabled()
+    {
+        return settingPanel.isPyramidVisible() && settingPanel.getPyramid();
+    }
+
     /**
      * Returns <code>true</code> if user chosen to overwrite the sequence internal name by filename.
      */
@@ -499,6 +513,7 @@ public class SaverDialog extends JFileChooser
         }
 
         settingPanel.setFramePerSecondVisible(fileFormat == ImageFileFormat.AVI);
+        settingPanel.setPyramidVisible(fileFormat == ImageFileFormat.TIFF);
     }
 
     private boolean isCompatible(ImageFileFormat fileFormat, Sequence sequence)
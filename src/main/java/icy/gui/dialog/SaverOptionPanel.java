@@ -23,6 +23,8 @@ public class SaverOptionPanel extends JPanel
     private JCheckBox multipleFilesCheckbox;
     private NumberTextField msField;
     private JLabel msLabel;
+    private JLabel pyramidLabel;
+    private JCheckBox pyramidCheckbox;
 
     private boolean synching;
 
@@ -56,9 +58,9 @@ public class SaverOptionPanel extends JPanel
     {
         GridBagLayout gridBagLayout = new GridBagLayout();
         gridBagLayout.columnWidths = new int[] {0, 50, 0};
-        gridBagLayout.rowHeights = new int[] {0, 0, 0, 0, 0};
+        gridBagLayout.rowHeights = new int[] {0, 0, 0, 0, 0, 0};
         gridBagLayout.columnWeights = new double[] {1.0, 0.0, Double.MIN_VALUE};
-        gridBagLayout.rowWeights = new double[] {0.0, 0.0, 0.0, 0.0, Double.MIN_VALUE};
+        gridBagLayout.rowWeights = new double[] {0.0, 0.0, 0.0, 0.0, 0.0, Double.MIN_VALUE};
         setLayout(gridBagLayout);
 
         multipleFilesLabel = new JLabel(" Save as multiple files");
@@ -123,7 +125,7 @@ public class SaverOptionPanel extends JPanel
         overwriteMetaLabel.setToolTipText("Overwrite metadata name with filename");
         GridBagConstraints gbc_lblNewLabel_2 = new GridBagConstraints();
         gbc_lblNewLabel_2.anchor = GridBagConstraints.WEST;
-        gbc_lblNewLabel_2.insets = new Insets(0, 0, 0, 5);
+        gbc_lblNewLabel_2.insets = new Insets(0, 0, 5, 5);
         gbc_lblNewLabel_2.gridx = 0;
         gbc_lblNewLabel_2.gridy = 3;
         add(overwriteMetaLabel, gbc_lblNewLabel_2);
@@ -132,9 +134,27 @@ public class SaverOptionPanel extends JPanel
         overwriteMetaCheckbox.setToolTipText("Overwrite metadata name with filename");
         GridBagConstraints gbc_overwriteMetaCheckbox = new GridBagConstraints();
         gbc_overwriteMetaCheckbox.anchor = GridBagConstraints.NORTHEAST;
+        gbc_overwriteMetaCheckbox.insets = new Insets(0, 0, 5, 0);
         gbc_overwriteMetaCheckbox.gridx = 1;
         gbc_overwriteMetaCheckbox.gridy = 3;
         add(overwriteMetaCheckbox, gbc_overwriteMetaCheckbox);
+
+        pyramidLabel = new JLabel(" Save as pyramid");
+        pyramidLabel.setToolTipText("Save tiled image with sub resolution levels (faster display of large image)");
+        GridBagConstraints gbc_pyramidLabel = new GridBagConstraints();
+        gbc_pyramidLabel.anchor = GridBagConstraints.WEST;
+        gbc_pyramidLabel.insets = new Insets(0, 0, 0, 5);
+        gbc_pyramidLabel.gridx = 0;
+        gbc_pyramidLabel.gridy = 4;
+        add(pyramidLabel, gbc_pyramidLabel);
+
+        pyramidCheckbox = new JCheckBox("");
+        pyramidCheckbox.setToolTipText("Save tiled image with sub resolution levels (faster display of large image)");
+        GridBagConstraints gbc_pyramidCheckbox = new GridBagConstraints();
+        gbc_pyramidCheckbox.anchor = GridBagConstraints.NORTHEAST;
+        gbc_pyramidCheckbox.gridx = 1;
+        gbc_pyramidCheckbox.gridy = 4;
+        add(pyramidCheckbox, gbc_pyramidCheckbox);
     }
 
     void syncTime(boolean fromFPS)
@@ -218,6 +238,17 @@ public class SaverOptionPanel extends JPanel
         overwriteMetaCheckbox.setVisible(value);
     }
 
+    public boolean isPyramidVisible()
+    {
+        return pyramidCheckbox.isVisible();
+    }
+
+    public void setPyramidVisible(boolean value)
+    {
+        pyramidLabel.setVisible(value);
+        pyramidCheckbox.setVisible(value);
+    }
+
     public int getFramePerSecond()
     {
         return (int) fpsField.getNumericValue();
@@ -254,6 +285,16 @@ public class SaverOptionPanel extends JPanel
         multipleFilesCheckbox.setSelected(value);
     }
 
+    public boolean getPyramid()
+    {
+        return pyramidCheckbox.isSelected();
+    }
+
+    public void setPyramid(boolean value)
+    {
+        pyramidCheckbox.setSelected(value);
+    }
+
     public boolean getOverwriteMetadata()
     {
         return overwriteMetaCheckbox.isSelected();
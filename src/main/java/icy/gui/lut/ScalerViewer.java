@@ -35,7 +35,6 @@ import java.awt.event.MouseMotionListener;
 import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
 import java.awt.geom.Point2D;
-import java.lang.reflect.Array;
 import java.util.EventListener;
 
 import javax.swing.JMenuItem;
@@ -43,6 +42,7 @@ import javax.swing.JPanel;
 import javax.swing.JPopupMenu;
 import javax.swing.event.EventListenerList;
 
+import icy.common.listener.ProgressListener;
 import icy.gui.component.math.HistogramPanel;
 import icy.gui.component.math.HistogramPanel.HistogramPanelListener;
 import icy.gui.dialog.MessageDialog;
@@ -58,12 +58,13 @@ import icy.math.Histogram;
 import icy.math.MathUtil;
 import icy.math.Scaler;
 import icy.sequence.Sequence;
+import icy.sequence.SequenceContrastEstimator;
+import icy.sequence.SequenceContrastEstimator.SequenceContrastEstimatorListener;
 import icy.sequence.SequenceEvent;
 import icy.sequence.SequenceEvent.SequenceEventSourceType;
+import icy.sequence.SequenceHistogramService;
 import icy.sequence.SequenceListener;
 import icy.system.thread.ThreadUtil;
-import icy.type.DataType;
-import icy.type.collection.array.Array1DUtil;
 import icy.util.ColorUtil;
 import icy.util.EventUtil;
 import icy.util.GraphicsUtil;
@@ -509,6 +510,10 @@ public class ScalerViewer extends JPanel implements SequenceListener, LUTChannel
      * internals
      */
     private final Runnable histoUpdater;
+    private SequenceContrastEstimator contrastEstimator;
+    // bounds expected while auto contrast is running (any other value means the user modified them)
+    private double autoContrastMin;
+    private double autoContrastMax;
     String message;
     private int retry;
 
@@ -615,57 +620,19 @@ public class ScalerViewer extends JPanel implements SequenceListener, LUTChannel
         histogram.reset();
         try
         {
+            // merge cached plane histograms (only missing ones are computed)
             if (seq != null)
             {
-                final int maxZ;
-                final int maxT;
-                int t = viewer.getPositionT();
-                int z = viewer.getPositionZ();
-
-                if (t != -1)
-                    maxT = t;
-                else
-                {
-                    t = 0;
-                    maxT = seq.getSizeT() - 1;
-                }
-
-                if (z != -1)
-                    maxZ = z;
-                else
-                {
-                    z = 0;
-                    maxZ = seq.getSizeZ() - 1;
-                }
-
-                final int c = lutChannel.getChannel();
-
-                for (; t <= maxT; t++)
-                {
-                    for (; z <= maxZ; z++)
-                    {
-                        final Object data = seq.getDataXY(t, z, c);
-
-                        // need to test for empty sequence
-                        if (data != null)
+                SequenceHistogramService.addTo(histo, seq, viewer.getPositionT(), viewer.getPositionZ(),
+                        lutChannel.getChannel(), new ProgressListener()
                         {
-                            final DataType dataType = seq.getDataType_();
-                            final int len = Array.getLength(data);
-
-                            for (int i = 0; i < len; i++)
+                            @Override
+                            public boolean notifyProgress(double position, double length)
                             {
-                                if ((i & 0xFFF) == 0)
-                                {
-                                    // need to be recalculated so don't waste time here...
-                                    if (ThreadUtil.hasWaitingBgSingleTask(histoUpdater))
-                                        return;
-                                }
-
-                                histo.addValue(Array1DUtil.getValue(data, i, dataType));
+                                // need to be recalculated so don't waste time here...
+                                return !ThreadUtil.hasWaitingBgSingleTask(histoUpdater);
                             }
-                        }
-                    }
-                }
+                        });
             }
 
             retry = 0;
@@ -687,6 +654,102 @@ public class ScalerViewer extends JPanel implements SequenceListener, LUTChannel
         }
     }
 
+    /**
+     * Adjust channel bounds from quantiles estimated on a sample of the sequence data.<br>
+     * Bounds are set as soon as a first estimation is available (from planes already in memory) then refined in
+     * background while more planes are sampled.
+     * 
+     * @see SequenceContrastEstimator
+     */
+    public void autoContrast()
+    {
+        final Sequence seq = viewer.getSequence();
+
+        if (seq == null)
+            return;
+
+        cancelAutoContrast();
+
+        final int c = lutChannel.getChannel();
+        final SequenceContrastEstimator estimator = new SequenceContrastEstimator(seq, c,
+                SequenceContrastEstimator.DEFAULT_LOW_QUANTILE, SequenceContrastEstimator.DEFAULT_HIGH_QUANTILE);
+
+        estimator.addListener(new SequenceContrastEstimatorListener()
+        {
+            @Override
+            public void estimationChanged(final SequenceContrastEstimator source)
+            {
+                final double[] bounds = source.getBounds(c);
+
+                if (bounds == null)
+                    return;
+
+                // LUT should be modified from EDT
+                ThreadUtil.invokeLater(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        applyAutoContrast(source, bounds);
+                    }
+                });
+            }
+        });
+
+        synchronized (this)
+        {
+            contrastEstimator = estimator;
+            autoContrastMin = lutChannel.getMin();
+            autoContrastMax = lutChannel.getMax();
+        }
+
+        estimator.start(viewer.getPositionT(), viewer.getPositionZ());
+    }
+
+    /**
+     * Set estimated bounds if the estimator is still the current one and bounds were not modified since estimation
+     * started (should be called from EDT).
+     */
+    void applyAutoContrast(SequenceContrastEstimator estimator, double[] bounds)
+    {
+        synchronized (this)
+        {
+            // cancelled or superseded estimation
+            if ((estimator != contrastEstimator) || estimator.isCancelled())
+                return;
+
+            // user modified bounds in the meantime --> stop auto contrast
+            if ((lutChannel.getMin() != autoContrastMin) || (lutChannel.getMax() != autoContrastMax))
+            {
+                cancelAutoContrast();
+                return;
+            }
+        }
+
+        lutChannel.setMinMax(bounds[0], bounds[1], true);
+
+        synchronized (this)
+        {
+            autoContrastMin = lutChannel.getMin();
+            autoContrastMax = lutChannel.getMax();
+        }
+    }
+
+    /**
+     * Cancel the current auto contrast estimation (if any).
+     */
+    public void cancelAutoContrast()
+    {
+        synchronized (this)
+        {
+            if (contrastEstimator != null)
+            {
+                contrastEstimator.cancel();
+                contrastEstimator = null;
+            }
+        }
+    }
+
     /**
      * @return the histogram
      */
@@ -817,6 +880,16 @@ public class ScalerViewer extends JPanel implements SequenceListener, LUTChannel
                 requestHistoDataRefresh();
             }
         });
+        final JMenuItem autoContrastItem = new JMenuItem("Auto contrast");
+        autoContrastItem.setToolTipText("Set range from estimated 0.1% - 99.9% quantiles (sampled data)");
+        autoContrastItem.addActionListener(new ActionListener()
+        {
+            @Override
+            public void actionPerformed(ActionEvent e)
+            {
+                autoContrast();
+            }
+        });
         final JMenuItem setBoundsItem = new JMenuItem("Set range");
         setBoundsItem.addActionListener(new ActionListener()
         {
@@ -844,6 +917,7 @@ public class ScalerViewer extends JPanel implements SequenceListener, LUTChannel
         });
 
         menu.add(refreshItem);
+        menu.add(autoContrastItem);
         menu.add(setBoundsItem);
         menu.add(exportItem);
 
@@ -909,6 +983,7 @@ public class ScalerViewer extends JPanel implements SequenceListener, LUTChannel
     @Override
     public void viewerClosed(Viewer viewer)
     {
+        cancelAutoContrast();
         viewer.removeListener(this);
     }
 
@@ -922,6 +997,7 @@ public class ScalerViewer extends JPanel implements SequenceListener, LUTChannel
     @Override
     public void sequenceClosed(Sequence sequence)
     {
+        cancelAutoContrast();
         sequence.removeListener(this);
     }
 }
@@ -8,6 +8,7 @@ import java.awt.Point;
 import java.awt.Rectangle;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import icy.common.exception.UnsupportedFormatException;
 import icy.common.listener.ProgressListener;
@@ -26,7 +27,7 @@ import ome.xml.meta.OMEXMLMetadata;
  * 
  * @author Stephane
  */
-public abstract class AbstractImageProvider implements ImageProvider
+public abstract class AbstractImageProvider implements AsyncImageProvider
 {
     /**
      * Used for multi thread tile image reading.
@@ -213,6 +214,33 @@ public abstract class AbstractImageProvider implements ImageProvider
         return getImage(0, 0, null, z, t, -1);
     }
 
+    // default implementation: execute the blocking getPixels(..) method on the shared async reader, override it if the
+    // provider can schedule reads itself
+    @Override
+    public CompletableFuture<Object> getPixelsAsync(int series, int resolution, Rectangle region, int z, int t, int c)
+    {
+        return AsyncImageProviderAdapter.getPixelsAsync(this, AsyncImageProviderAdapter.getDefaultExecutor(), series,
+                resolution, region, z, t, c);
+    }
+
+    // default implementation: execute the blocking getImage(..) method on the shared async reader, override it if the
+    // provider can schedule reads itself
+    @Override
+    public CompletableFuture<IcyBufferedImage> getImageAsync(int series, int resolution, Rectangle region, int z, int t,
+            int c)
+    {
+        return AsyncImageProviderAdapter.getImageAsync(this, AsyncImageProviderAdapter.getDefaultExecutor(), series,
+                resolution, region, z, t, c);
+    }
+
+    // default implementation: requests are read in locality order on the shared async reader
+    @Override
+    public List<CompletableFuture<IcyBufferedImage>> getImagesAsync(List<ImageRequest> requests)
+    {
+        return AsyncImageProviderAdapter.getImagesAsync(this, AsyncImageProviderAdapter.getDefaultExecutor(), requests,
+                ImageRequest.LOCALITY_ORDER);
+    }
+
     /**
      * Returns the pixels located at specified position using tile by tile reading (if supported by the importer).<br>
      * This method is useful to read a sub resolution of a very large image which cannot fit in memory and also to take
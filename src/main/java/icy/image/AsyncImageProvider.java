@@ -0,0 +1,58 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.image;
+
+import java.awt.Rectangle;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@link ImageProvider} offering non blocking image data access.<br>
+ * Instead of blocking the calling thread, read operations return a {@link CompletableFuture} which is completed
+ * (possibly exceptionally with {@link icy.common.exception.UnsupportedFormatException},
+ * {@link java.io.IOException}...) when data is available.<br>
+ * Use {@link AsyncImageProviderAdapter#getAsync(ImageProvider)} to get asynchronous access on any
+ * {@link ImageProvider}.
+ * 
+ * @author Stephane
+ */
+public interface AsyncImageProvider extends ImageProvider
+{
+    /**
+     * Asynchronous version of {@link #getPixels(int, int, Rectangle, int, int, int)}.
+     */
+    public CompletableFuture<Object> getPixelsAsync(int series, int resolution, Rectangle region, int z, int t, int c);
+
+    /**
+     * Asynchronous version of {@link #getImage(int, int, Rectangle, int, int, int)}.
+     */
+    public CompletableFuture<IcyBufferedImage> getImageAsync(int series, int resolution, Rectangle region, int z, int t,
+            int c);
+
+    /**
+     * Batch asynchronous image loading.<br>
+     * The provider is free to reorder the reading operations (for data locality) but returned futures are given in
+     * the same order than the input requests.
+     * 
+     * @param requests
+     *        image requests
+     * @return futures of retrieved images (one per request, same order than <code>requests</code>)
+     */
+    public List<CompletableFuture<IcyBufferedImage>> getImagesAsync(List<ImageRequest> requests);
+}
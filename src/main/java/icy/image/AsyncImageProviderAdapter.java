@@ -0,0 +1,351 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.image;
+
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import icy.common.exception.UnsupportedFormatException;
+import icy.system.SystemUtil;
+import icy.system.thread.Processor;
+import loci.formats.ome.OMEXMLMetadataImpl;
+import ome.xml.meta.OMEXMLMetadata;
+
+/**
+ * Default {@link AsyncImageProvider} implementation wrapping a synchronous {@link ImageProvider}: blocking read
+ * operations are executed on a shared reader processor.<br>
+ * It also provides static helpers so {@link ImageProvider} implementations can easily schedule reads on their own
+ * {@link Executor}.
+ * 
+ * @author Stephane
+ */
+public class AsyncImageProviderAdapter implements AsyncImageProvider
+{
+    /**
+     * Shared processor for asynchronous image reading
+     */
+    private static Processor processor = null;
+
+    /**
+     * Returns the default (shared) executor used for asynchronous image reading.
+     */
+    public static synchronized Executor getDefaultExecutor()
+    {
+        if (processor == null)
+        {
+            processor = new Processor(-1, SystemUtil.getNumberOfCPUs());
+            processor.setThreadName("Async image reader");
+        }
+
+        return processor;
+    }
+
+    /**
+     * Returns an {@link AsyncImageProvider} for the specified {@link ImageProvider} (directly returned if it already
+     * supports asynchronous reading).
+     */
+    public static AsyncImageProvider getAsync(ImageProvider provider)
+    {
+        if (provider instanceof AsyncImageProvider)
+            return (AsyncImageProvider) provider;
+
+        return new AsyncImageProviderAdapter(provider);
+    }
+
+    /**
+     * Execute {@link ImageProvider#getPixels(int, int, Rectangle, int, int, int)} on the given executor.
+     */
+    public static CompletableFuture<Object> getPixelsAsync(final ImageProvider provider, Executor executor,
+            final int series, final int resolution, final Rectangle region, final int z, final int t, final int c)
+    {
+        final CompletableFuture<Object> result = new CompletableFuture<Object>();
+
+        execute(executor, result, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    result.complete(provider.getPixels(series, resolution, region, z, t, c));
+                }
+                catch (Throwable e)
+                {
+                    result.completeExceptionally(e);
+                }
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Execute {@link ImageProvider#getImage(int, int, Rectangle, int, int, int)} on the given executor.
+     */
+    public static CompletableFuture<IcyBufferedImage> getImageAsync(final ImageProvider provider, Executor executor,
+            final int series, final int resolution, final Rectangle region, final int z, final int t, final int c)
+    {
+        final CompletableFuture<IcyBufferedImage> result = new CompletableFuture<IcyBufferedImage>();
+
+        execute(executor, result, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    result.complete(provider.getImage(series, resolution, region, z, t, c));
+                }
+                catch (Throwable e)
+                {
+                    result.completeExceptionally(e);
+                }
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Execute all image requests on the given executor, reading operations are submitted following the specified
+     * <code>order</code> (see {@link ImageRequest#LOCALITY_ORDER}) while returned futures keep the requests order.
+     */
+    public static List<CompletableFuture<IcyBufferedImage>> getImagesAsync(ImageProvider provider, Executor executor,
+            List<ImageRequest> requests, Comparator<ImageRequest> order)
+    {
+        final List<CompletableFuture<IcyBufferedImage>> result = new ArrayList<CompletableFuture<IcyBufferedImage>>(
+                requests.size());
+        final List<Integer> indexes = new ArrayList<Integer>(requests.size());
+
+        for (int i = 0; i < requests.size(); i++)
+        {
+            result.add(null);
+            indexes.add(Integer.valueOf(i));
+        }
+
+        // define submission order
+        if (order != null)
+        {
+            final Comparator<ImageRequest> comparator = order;
+
+            Collections.sort(indexes, new Comparator<Integer>()
+            {
+                @Override
+                public int compare(Integer i1, Integer i2)
+                {
+                    return comparator.compare(requests.get(i1.intValue()), requests.get(i2.intValue()));
+                }
+            });
+        }
+
+        for (Integer index : indexes)
+        {
+            final int i = index.intValue();
+            final ImageRequest request = requests.get(i);
+
+            result.set(i, getImageAsync(provider, executor, request.series, request.resolution, request.region,
+                    request.z, request.t, request.c));
+        }
+
+        return result;
+    }
+
+    /**
+     * Shutdown the specified asynchronous reader executor: waiting read operations are canceled (their future is
+     * canceled) while running ones are completed normally.
+     */
+    public static void shutdown(ThreadPoolExecutor executor)
+    {
+        final List<Runnable> waitings = new ArrayList<Runnable>();
+
+        executor.getQueue().drainTo(waitings);
+        executor.shutdown();
+
+        for (Runnable r : waitings)
+            if (r instanceof AsyncReadTask)
+                ((AsyncReadTask) r).future.cancel(false);
+    }
+
+    private static void execute(Executor executor, CompletableFuture<?> future, Runnable task)
+    {
+        try
+        {
+            executor.execute(new AsyncReadTask(future, task));
+        }
+        catch (RejectedExecutionException e)
+        {
+            future.completeExceptionally(e);
+        }
+    }
+
+    private static class AsyncReadTask implements Runnable
+    {
+        final CompletableFuture<?> future;
+        final Runnable task;
+
+        public AsyncReadTask(CompletableFuture<?> future, Runnable task)
+        {
+            super();
+
+            this.future = future;
+            this.task = task;
+        }
+
+        @Override
+        public void run()
+        {
+            // canceled in between ? --> don't need to read data
+            if (!future.isDone())
+                task.run();
+        }
+    }
+
+    /**
+     * Wrapped provider
+     */
+    protected final ImageProvider provider;
+
+    public AsyncImageProviderAdapter(ImageProvider provider)
+    {
+        super();
+
+        this.provider = provider;
+    }
+
+    /**
+     * Returns the wrapped {@link ImageProvider}
+     */
+    public ImageProvider getProvider()
+    {
+        return provider;
+    }
+
+    @Override
+    public CompletableFuture<Object> getPixelsAsync(int series, int resolution, Rectangle region, int z, int t, int c)
+    {
+        return getPixelsAsync(provider, getDefaultExecutor(), series, resolution, region, z, t, c);
+    }
+
+    @Override
+    public CompletableFuture<IcyBufferedImage> getImageAsync(int series, int resolution, Rectangle region, int z, int t,
+            int c)
+    {
+        return getImageAsync(provider, getDefaultExecutor(), series, resolution, region, z, t, c);
+    }
+
+    @Override
+    public List<CompletableFuture<IcyBufferedImage>> getImagesAsync(List<ImageRequest> requests)
+    {
+        return getImagesAsync(provider, getDefaultExecutor(), requests, ImageRequest.LOCALITY_ORDER);
+    }
+
+    @Override
+    public OMEXMLMetadata getOMEXMLMetaData() throws UnsupportedFormatException, IOException, InterruptedException
+    {
+        return provider.getOMEXMLMetaData();
+    }
+
+    @Deprecated
+    @Override
+    public OMEXMLMetadataImpl getMetaData() throws UnsupportedFormatException, IOException, InterruptedException
+    {
+        return provider.getMetaData();
+    }
+
+    @Override
+    public int getTileWidth(int series) throws UnsupportedFormatException, IOException, InterruptedException
+    {
+        return provider.getTileWidth(series);
+    }
+
+    @Override
+    public int getTileHeight(int series) throws UnsupportedFormatException, IOException, InterruptedException
+    {
+        return provider.getTileHeight(series);
+    }
+
+    @Override
+    public boolean isResolutionAvailable(int series, int resolution) throws UnsupportedFormatException, IOException
+    {
+        return provider.isResolutionAvailable(series, resolution);
+    }
+
+    @Override
+    public IcyBufferedImage getThumbnail(int series)
+            throws UnsupportedFormatException, IOException, InterruptedException
+    {
+        return provider.getThumbnail(series);
+    }
+
+    @Override
+    public Object getPixels(int series, int resolution, Rectangle region, int z, int t, int c)
+            throws UnsupportedFormatException, IOException, InterruptedException
+    {
+        return provider.getPixels(series, resolution, region, z, t, c);
+    }
+
+    @Override
+    public IcyBufferedImage getImage(int series, int resolution, Rectangle region, int z, int t, int c)
+            throws UnsupportedFormatException, IOException, InterruptedException
+    {
+        return provider.getImage(series, resolution, region, z, t, c);
+    }
+
+    @Override
+    public IcyBufferedImage getImage(int series, int resolution, Rectangle region, int z, int t)
+            throws UnsupportedFormatException, IOException, InterruptedException
+    {
+        return provider.getImage(series, resolution, region, z, t);
+    }
+
+    @Override
+    public IcyBufferedImage getImage(int series, int resolution, int z, int t, int c)
+            throws UnsupportedFormatException, IOException, InterruptedException
+    {
+        return provider.getImage(series, resolution, z, t, c);
+    }
+
+    @Override
+    public IcyBufferedImage getImage(int series, int resolution, int z, int t)
+            throws UnsupportedFormatException, IOException, InterruptedException
+    {
+        return provider.getImage(series, resolution, z, t);
+    }
+
+    @Override
+    public IcyBufferedImage getImage(int series, int z, int t)
+            throws UnsupportedFormatException, IOException, InterruptedException
+    {
+        return provider.getImage(series, z, t);
+    }
+
+    @Override
+    public IcyBufferedImage getImage(int z, int t) throws UnsupportedFormatException, IOException, InterruptedException
+    {
+        return provider.getImage(z, t);
+    }
+}
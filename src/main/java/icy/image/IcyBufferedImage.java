@@ -42,12 +42,15 @@ import java.lang.reflect.Array;
 import java.nio.channels.ClosedByInterruptException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.media.jai.PlanarImage;
 
@@ -65,6 +68,7 @@ import icy.image.colormodel.IcyColorModelEvent;
 import icy.image.colormodel.IcyColorModelListener;
 import icy.image.lut.LUT;
 import icy.math.ArrayMath;
+import icy.math.Histogram;
 import icy.math.MathUtil;
 import icy.math.Scaler;
 import icy.preferences.GeneralPreferences;
@@ -299,6 +303,28 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
      */
     static final ImageDataLoader imageDataLoader = new ImageDataLoader();
 
+    /**
+     * Number of bins used for channel histograms
+     * 
+     * @see #getChannelHistogram(int)
+     */
+    public static final int HISTOGRAM_BIN_NUMBER = 4096;
+
+    /**
+     * Maximum memory used by cached channel histograms of all images (least recently used ones are released first)
+     * 
+     * @see #getChannelHistogram(int)
+     */
+    public static final long HISTOGRAM_CACHE_MAX_SIZE = Math.min(256L * 1024L * 1024L,
+            SystemUtil.getJavaMaxMemory() / 32L);
+
+    /**
+     * Images having cached channel histograms (identity hash code --> histograms memory size) in access order
+     */
+    static final LinkedHashMap<Integer, Long> histogramCacheEntries = new LinkedHashMap<Integer, Long>(256, 0.75f,
+            true);
+    static long histogramCacheSize = 0L;
+
     /**
      * Used internally to find out an image from its identity hash code
      */
@@ -701,6 +727,21 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
      */
     protected boolean autoUpdateChannelBounds;
 
+    /**
+     * cached channel histograms (computed on demand, cleared on data change)
+     */
+    protected Histogram[] channelHistograms;
+    protected int channelHistogramsModCount;
+
+    /**
+     * data version generator (see {@link #getDataVersion()})
+     */
+    private static final AtomicLong dataVersionGenerator = new AtomicLong(1L);
+    /**
+     * data version (see {@link #getDataVersion()})
+     */
+    protected volatile long dataVersion = dataVersionGenerator.getAndIncrement();
+
     /**
      * volatile data state
      */
@@ -1084,6 +1125,8 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
         {
             images.remove(Integer.valueOf(System.identityHashCode(this)));
         }
+        // and from histogram cache
+        updateHistogramCache(this, 0L);
 
         super.finalize();
     }
@@ -2730,6 +2773,237 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
         }
     }
 
+    /**
+     * Returns the cached histogram of the specified channel or <code>null</code> if it has not yet been computed (or
+     * if data changed since last computation).
+     * 
+     * @see #getChannelHistogram(int)
+     */
+    public Histogram getCachedChannelHistogram(int channel)
+    {
+        final Histogram result;
+
+        synchronized (this)
+        {
+            if ((channelHistograms == null) || (channel < 0) || (channel >= channelHistograms.length))
+                return null;
+
+            result = channelHistograms[channel];
+        }
+
+        // update LRU order of histogram cache
+        if (result != null)
+        {
+            synchronized (histogramCacheEntries)
+            {
+                histogramCacheEntries.get(Integer.valueOf(System.identityHashCode(this)));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the histogram of the specified channel.<br>
+     * The histogram is stored with the image (as channel bounds) so it is only recomputed when image data changed
+     * (data is loaded if needed) or released to respect the global histogram cache size (see
+     * {@link #HISTOGRAM_CACHE_MAX_SIZE}).<br>
+     * Histogram covers the actual channel data range, integer data up to 16 bits use one bin per value so histograms
+     * from different images can be merged exactly.<br>
+     * Returned histogram is shared and should not be modified.
+     * 
+     * @see Histogram#add(Histogram)
+     */
+    public Histogram getChannelHistogram(int channel)
+    {
+        Histogram result = getCachedChannelHistogram(channel);
+
+        if (result == null)
+        {
+            final int modCount;
+
+            synchronized (this)
+            {
+                modCount = channelHistogramsModCount;
+            }
+
+            result = getCalculatedChannelHistogram(channel);
+
+            long cacheSize = -1L;
+
+            synchronized (this)
+            {
+                // data didn't changed in the meantime ? --> store it
+                if (modCount == channelHistogramsModCount)
+                    cacheSize = setChannelHistogramInternal(channel, result);
+            }
+
+            // update cache size outside image lock
+            if (cacheSize != -1L)
+                updateHistogramCache(this, cacheSize);
+        }
+
+        return result;
+    }
+
+    /**
+     * Set the cached histogram of the specified channel (used to restore a previously computed histogram).<br>
+     * The histogram should match current image data as it is kept until next data change.
+     */
+    public void setChannelHistogram(int channel, Histogram histogram)
+    {
+        final long cacheSize;
+
+        synchronized (this)
+        {
+            if ((channel < 0) || (channel >= getSizeC()))
+                return;
+
+            cacheSize = setChannelHistogramInternal(channel, histogram);
+        }
+
+        updateHistogramCache(this, cacheSize);
+    }
+
+    /**
+     * Store the channel histogram and returns the memory size of cached histograms (should be called with lock on
+     * image).
+     */
+    private long setChannelHistogramInternal(int channel, Histogram histogram)
+    {
+        final int sizeC = getSizeC();
+
+        if ((channelHistograms == null) || (channelHistograms.length != sizeC))
+            channelHistograms = new Histogram[sizeC];
+
+        channelHistograms[channel] = histogram;
+
+        long result = 0L;
+        for (Histogram histo : channelHistograms)
+            if (histo != null)
+                result += 64L + (histo.getBinNumber() * 4L);
+
+        return result;
+    }
+
+    /**
+     * Release cached channel histograms to free memory (they will be recomputed on next request).<br>
+     * Unlike {@link #invalidateChannelHistograms()} it does not mean that data changed.
+     */
+    protected synchronized void releaseChannelHistograms()
+    {
+        channelHistograms = null;
+    }
+
+    /**
+     * Update memory size of cached histograms for the specified image and release least recently used histograms if
+     * the global cache size is exceeded.
+     */
+    private static void updateHistogramCache(IcyBufferedImage image, long size)
+    {
+        final List<IcyBufferedImage> toRelease = new ArrayList<IcyBufferedImage>();
+
+        synchronized (histogramCacheEntries)
+        {
+            final Integer key = Integer.valueOf(System.identityHashCode(image));
+            final Long old;
+
+            if (size > 0L)
+                old = histogramCacheEntries.put(key, Long.valueOf(size));
+            else
+                old = histogramCacheEntries.remove(key);
+
+            if (old != null)
+                histogramCacheSize -= old.longValue();
+            histogramCacheSize += size;
+
+            final Iterator<Map.Entry<Integer, Long>> it = histogramCacheEntries.entrySet().iterator();
+
+            while ((histogramCacheSize > HISTOGRAM_CACHE_MAX_SIZE) && it.hasNext())
+            {
+                final Map.Entry<Integer, Long> entry = it.next();
+
+                // keep histograms we just stored
+                if (entry.getKey().equals(key))
+                    break;
+
+                it.remove();
+                histogramCacheSize -= entry.getValue().longValue();
+
+                final IcyBufferedImage img = getIcyBufferedImage(entry.getKey());
+
+                if (img != null)
+                    toRelease.add(img);
+            }
+        }
+
+        // release outside cache lock
+        for (IcyBufferedImage img : toRelease)
+            img.releaseChannelHistograms();
+    }
+
+    /**
+     * Returns the number of time the cached channel histograms have been invalidated (mainly on data change).<br>
+     * This can be used to detect if image data has been modified since a given point.
+     * 
+     * @see #invalidateChannelHistograms()
+     */
+    public synchronized int getChannelHistogramsModCount()
+    {
+        return channelHistogramsModCount;
+    }
+
+    /**
+     * Returns the data version of this image.<br>
+     * It is a value unique for the session, assigned on creation and each time image data changes (see
+     * {@link #dataChanged()}) so it can be used to identify image content in cached values computed from image data.
+     */
+    public long getDataVersion()
+    {
+        return dataVersion;
+    }
+
+    /**
+     * Clear cached channel histograms (they will be recomputed on next request).
+     */
+    public void invalidateChannelHistograms()
+    {
+        synchronized (this)
+        {
+            channelHistograms = null;
+            channelHistogramsModCount++;
+        }
+
+        updateHistogramCache(this, 0L);
+    }
+
+    /**
+     * Compute the histogram of the specified channel (data is loaded if needed).
+     * 
+     * @see #getChannelHistogram(int)
+     */
+    protected Histogram getCalculatedChannelHistogram(int channel)
+    {
+        final DataType dataType = getDataType_();
+        final boolean signed = dataType.isSigned();
+        final Object data = getDataXY(channel);
+        final double min = ArrayMath.min(data, signed);
+        final double max = ArrayMath.max(data, signed);
+        final int nbBin;
+
+        // integer data up to 16 bits --> one bin per value (at most 65536 bins)
+        if (dataType.isInteger() && (dataType.getBitSize() <= 16))
+            nbBin = (int) (max - min) + 1;
+        else
+            nbBin = HISTOGRAM_BIN_NUMBER;
+
+        final Histogram result = new Histogram(min, max, nbBin, dataType.isInteger());
+
+        result.addValues(data, signed);
+
+        return result;
+    }
+
     /**
      * @deprecated Use {@link #updateChannelsBounds()} instead.
      */
@@ -4998,6 +5272,10 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
      */
     public void dataChanged()
     {
+        // new data version
+        dataVersion = dataVersionGenerator.getAndIncrement();
+        // cached histograms are no more valid
+        invalidateChannelHistograms();
         updater.changed(new IcyBufferedImageEvent(this, IcyBufferedImageEventType.DATA_CHANGED));
     }
 
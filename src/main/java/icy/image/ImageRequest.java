@@ -0,0 +1,104 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.image;
+
+import java.awt.Rectangle;
+import java.util.Comparator;
+
+/**
+ * Image data request (position and region of an image to retrieve from an {@link ImageProvider}).<br>
+ * Used for batch asynchronous image loading (see {@link AsyncImageProvider#getImagesAsync(java.util.List)}).
+ * 
+ * @author Stephane
+ */
+public class ImageRequest
+{
+    /**
+     * Default locality ordering: series, resolution, T, Z, C then region (top to bottom, left to right).<br>
+     * It matches the usual plane storage order so reading requests in this order limits seek operations.
+     */
+    public static final Comparator<ImageRequest> LOCALITY_ORDER = new Comparator<ImageRequest>()
+    {
+        @Override
+        public int compare(ImageRequest r1, ImageRequest r2)
+        {
+            int result = Integer.compare(r1.series, r2.series);
+
+            if (result == 0)
+                result = Integer.compare(r1.resolution, r2.resolution);
+            if (result == 0)
+                result = Integer.compare(r1.t, r2.t);
+            if (result == 0)
+                result = Integer.compare(r1.z, r2.z);
+            if (result == 0)
+                result = Integer.compare(r1.c, r2.c);
+            if (result == 0)
+                result = Integer.compare(getY(r1.region), getY(r2.region));
+            if (result == 0)
+                result = Integer.compare(getX(r1.region), getX(r2.region));
+
+            return result;
+        }
+
+        private int getX(Rectangle region)
+        {
+            return (region == null) ? 0 : region.x;
+        }
+
+        private int getY(Rectangle region)
+        {
+            return (region == null) ? 0 : region.y;
+        }
+    };
+
+    // series index
+    public final int series;
+    // resolution level
+    public final int resolution;
+    // XY region (null = whole image)
+    public final Rectangle region;
+    // Z, T, C position (c = -1 means all channel)
+    public final int z;
+    public final int t;
+    public final int c;
+
+    public ImageRequest(int series, int resolution, Rectangle region, int z, int t, int c)
+    {
+        super();
+
+        this.series = series;
+        this.resolution = resolution;
+        this.region = region;
+        this.z = z;
+        this.t = t;
+        this.c = c;
+    }
+
+    public ImageRequest(int series, int resolution, int z, int t, int c)
+    {
+        this(series, resolution, null, z, t, c);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "s=" + series + " r=" + resolution + " t=" + t + " z=" + z + " c=" + c
+                + ((region != null) ? " region=" + region : "");
+    }
+}
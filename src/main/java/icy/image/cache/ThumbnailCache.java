@@ -0,0 +1,328 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.image.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import icy.file.FileUtil;
+import icy.image.IcyBufferedImage;
+import icy.system.thread.Processor;
+import icy.type.DataType;
+import icy.type.collection.array.ByteArrayConvert;
+import icy.util.StringUtil;
+
+/**
+ * Persistent disk cache of image file thumbnails.<br>
+ * Thumbnails are keyed by file path and series, and stored with the file size and last modification date so an
+ * outdated thumbnail can still be displayed while the new one is generated.<br>
+ * The total size of the cache is limited to {@link #MAX_SIZE}, least recently used thumbnails are removed first.
+ * 
+ * @author Stephane
+ */
+public class ThumbnailCache
+{
+    /**
+     * Maximum cache size on disk (in bytes)
+     */
+    public static final long MAX_SIZE = 64L * 1024L * 1024L;
+
+    private static final String CACHE_DIRNAME = "icy_thumbnails";
+    private static final String THUMBNAIL_EXTENSION = ".thumb";
+    private static final int MAGIC = 0x4943544E;
+    private static final int VERSION = 1;
+
+    /**
+     * Cached thumbnail with its validity state
+     */
+    public static class CachedThumbnail
+    {
+        /**
+         * thumbnail image
+         */
+        public final IcyBufferedImage image;
+        /**
+         * <code>false</code> if the file changed since the thumbnail was generated
+         */
+        public final boolean upToDate;
+
+        CachedThumbnail(IcyBufferedImage image, boolean upToDate)
+        {
+            super();
+
+            this.image = image;
+            this.upToDate = upToDate;
+        }
+    }
+
+    private static Processor writer = null;
+    // current cache size (-1 if not yet computed)
+    private static long cacheSize = -1L;
+
+    /**
+     * Returns the cached thumbnail for the specified image file and series (<code>null</code> if none).<br>
+     * Check {@link CachedThumbnail#upToDate} to know if the file changed since the thumbnail was generated.
+     */
+    public static CachedThumbnail get(String path, int series)
+    {
+        if (StringUtil.isEmpty(path))
+            return null;
+
+        final File file = new File(path);
+        final File cacheFile = getCacheFile(path, series);
+
+        if (!cacheFile.exists())
+            return null;
+
+        try
+        {
+            final DataInputStream in = new DataInputStream(
+                    new InflaterInputStream(new BufferedInputStream(new FileInputStream(cacheFile))));
+
+            try
+            {
+                if ((in.readInt() != MAGIC) || (in.readInt() != VERSION))
+                    return null;
+                // hash collision
+                if (!StringUtil.equals(in.readUTF(), path) || (in.readInt() != series))
+                    return null;
+
+                final long fileSize = in.readLong();
+                final long fileModified = in.readLong();
+                final int sizeX = in.readInt();
+                final int sizeY = in.readInt();
+                final int sizeC = in.readInt();
+                final DataType dataType = DataType.getDataType(in.readUTF());
+
+                if (dataType == null)
+                    return null;
+
+                final Object[] data = new Object[sizeC];
+                final byte[] bytes = new byte[sizeX * sizeY * dataType.getSize()];
+
+                for (int c = 0; c < sizeC; c++)
+                {
+                    in.readFully(bytes);
+                    data[c] = ByteArrayConvert.byteArrayTo(bytes, dataType, false);
+                }
+
+                // used --> refresh LRU order
+                cacheFile.setLastModified(System.currentTimeMillis());
+
+                return new CachedThumbnail(new IcyBufferedImage(sizeX, sizeY, data, dataType.isSigned()),
+                        (file.length() == fileSize) && (file.lastModified() == fileModified));
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch (IOException e)
+        {
+            // corrupted file --> remove it
+            FileUtil.delete(cacheFile, false);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the cached thumbnail for the specified image file and series only if the file didn't change since it
+     * was generated (<code>null</code> otherwise).
+     */
+    public static IcyBufferedImage getUpToDate(String path, int series)
+    {
+        final CachedThumbnail result = get(path, series);
+
+        if ((result != null) && result.upToDate)
+            return result.image;
+
+        return null;
+    }
+
+    /**
+     * Store the thumbnail of the specified image file and series (written in background).
+     */
+    public static void put(final String path, final int series, final IcyBufferedImage thumbnail)
+    {
+        if (StringUtil.isEmpty(path) || (thumbnail == null))
+            return;
+
+        final File file = new File(path);
+        // get file state now (thumbnail correspond to it)
+        final long fileSize = file.length();
+        final long fileModified = file.lastModified();
+
+        // file doesn't exist
+        if (fileModified == 0L)
+            return;
+
+        getWriter().submit(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    write(path, series, fileSize, fileModified, thumbnail);
+                }
+                catch (IOException e)
+                {
+                    System.err.println("Warning: can't write thumbnail cache for " + path + ": " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Remove all thumbnails from the cache.
+     */
+    public static synchronized void clear()
+    {
+        FileUtil.delete(getCacheDirectory(), true);
+        cacheSize = 0L;
+    }
+
+    static void write(String path, int series, long fileSize, long fileModified, IcyBufferedImage thumbnail)
+            throws IOException
+    {
+        final File cacheFile = getCacheFile(path, series);
+        final File tmpFile = new File(cacheFile.getPath() + ".tmp");
+        final DataType dataType = thumbnail.getDataType_();
+
+        FileUtil.createDir(cacheFile.getParentFile());
+
+        final DataOutputStream out = new DataOutputStream(
+                new DeflaterOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile))));
+
+        try
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(path);
+            out.writeInt(series);
+            out.writeLong(fileSize);
+            out.writeLong(fileModified);
+            out.writeInt(thumbnail.getSizeX());
+            out.writeInt(thumbnail.getSizeY());
+            out.writeInt(thumbnail.getSizeC());
+            out.writeUTF(dataType.toString());
+
+            for (int c = 0; c < thumbnail.getSizeC(); c++)
+                out.write(ByteArrayConvert.toByteArray(thumbnail.getDataXY(c), false));
+        }
+        finally
+        {
+            out.close();
+        }
+
+        synchronized (ThumbnailCache.class)
+        {
+            final long previousSize = cacheFile.length();
+
+            if (cacheFile.exists() && !cacheFile.delete())
+                throw new IOException("Can't replace " + cacheFile.getPath());
+            if (!tmpFile.renameTo(cacheFile))
+                throw new IOException("Can't rename " + tmpFile.getPath());
+
+            if (cacheSize != -1L)
+                cacheSize += cacheFile.length() - previousSize;
+
+            trim();
+        }
+    }
+
+    /**
+     * Remove least recently used thumbnails if cache size exceed {@link #MAX_SIZE} (should be called with class
+     * lock)
+     */
+    private static void trim()
+    {
+        final File[] files = getCacheDirectory().listFiles();
+
+        if (files == null)
+            return;
+
+        // compute cache size on first call
+        if (cacheSize == -1L)
+        {
+            cacheSize = 0L;
+            for (File f : files)
+                cacheSize += f.length();
+        }
+
+        if (cacheSize <= MAX_SIZE)
+            return;
+
+        // least recently used first
+        Arrays.sort(files, new Comparator<File>()
+        {
+            @Override
+            public int compare(File f1, File f2)
+            {
+                return Long.compare(f1.lastModified(), f2.lastModified());
+            }
+        });
+
+        // remove down to 3/4 of maximum size so we don't trim on each write
+        for (File f : files)
+        {
+            if (cacheSize <= ((MAX_SIZE * 3) / 4))
+                break;
+
+            final long len = f.length();
+
+            if (f.delete())
+                cacheSize -= len;
+        }
+    }
+
+    private static synchronized Processor getWriter()
+    {
+        if (writer == null)
+        {
+            writer = new Processor(-1, 1);
+            writer.setThreadName("Thumbnail cache writer");
+        }
+
+        return writer;
+    }
+
+    private static File getCacheDirectory()
+    {
+        return new File(FileUtil.getTempDirectory() + FileUtil.separator + CACHE_DIRNAME);
+    }
+
+    private static File getCacheFile(String path, int series)
+    {
+        final String key = path + "#" + series;
+
+        return new File(getCacheDirectory(),
+                StringUtil.toHexaString(key.hashCode(), 8) + StringUtil.toHexaString(key.length(), 4) + THUMBNAIL_EXTENSION);
+    }
+}
@@ -209,6 +209,26 @@ public class LUT implements IcyColorSpaceListener, ScalerListener, ChangeListene
             getScaler().setLeftRightIn(min, max);
         }
 
+        /**
+         * Set min and max values.<br>
+         * If <code>extendBounds</code> is <code>true</code> then min and max bounds are extended if needed so the
+         * given values are not clamped (useful when values come from an estimation).
+         */
+        public void setMinMax(double min, double max, boolean extendBounds)
+        {
+            if (extendBounds)
+            {
+                final Scaler scaler = getScaler();
+                final double minBound = scaler.getAbsLeftIn();
+                final double maxBound = scaler.getAbsRightIn();
+
+                if ((min < minBound) || (max > maxBound))
+                    scaler.setAbsLeftRightIn(Math.min(min, minBound), Math.max(max, maxBound));
+            }
+
+            setMinMax(min, max);
+        }
+
         public double getMinBound()
         {
             return getScaler().getAbsLeftIn();
@@ -20,11 +20,18 @@ package icy.math;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import icy.file.FileUtil;
 import icy.gui.dialog.MessageDialog;
 import icy.gui.dialog.SaveDialog;
+import icy.system.SystemUtil;
+import icy.system.thread.Processor;
 import icy.type.TypeUtil;
 import icy.type.collection.array.ArrayUtil;
 import icy.util.StringUtil;
@@ -38,6 +45,30 @@ import jxl.write.WriteException;
  */
 public class Histogram
 {
+    /**
+     * Fill the given bins with values in the <code>[from, to[</code> range of a data array.
+     */
+    protected static interface BinFiller
+    {
+        public void fill(int[] dest, int from, int to);
+    }
+
+    /**
+     * Minimum number of values processed by a single thread when filling histogram from large arrays.
+     */
+    protected static final int PARALLEL_CHUNK_SIZE = 1 << 18;
+
+    /**
+     * Used to fill histogram from large arrays
+     */
+    protected static final Processor processor;
+
+    static
+    {
+        processor = new Processor(SystemUtil.getNumberOfCPUs());
+        processor.setThreadName("Histogram");
+    }
+
     protected final int[] bins;
 
     protected final double minValue;
@@ -98,6 +129,21 @@ public class Histogram
             dataToBin = 0d;
     }
 
+    /**
+     * Create a copy of the specified histogram (same properties and bins content).
+     */
+    public Histogram(Histogram histogram)
+    {
+        super();
+
+        minValue = histogram.minValue;
+        maxValue = histogram.maxValue;
+        integer = histogram.integer;
+        binWidth = histogram.binWidth;
+        dataToBin = histogram.dataToBin;
+        bins = histogram.bins.clone();
+    }
+
     /**
      * Returns histogram data in CSV format (tab separated).
      */
@@ -208,6 +254,17 @@ public class Histogram
             bins[index]++;
     }
 
+    /**
+     * Add the value to the histogram the specified number of times
+     */
+    public void addValue(double value, int count)
+    {
+        final int index = (int) ((value - minValue) * dataToBin);
+
+        if ((index >= 0) && (index < bins.length))
+            bins[index] += count;
+    }
+
     /**
      * Add the specified array of values to the histogram
      * 
@@ -248,87 +305,258 @@ public class Histogram
     /**
      * Add the specified byte array to the histogram
      */
-    public void addValues(byte[] array, boolean signed)
+    public void addValues(final byte[] array, final boolean signed)
     {
-        if (signed)
-        {
-            for (byte value : array)
-                bins[(int) ((value - minValue) * dataToBin)]++;
-        }
-        else
+        addValues(array.length, new BinFiller()
         {
-            for (byte value : array)
-                bins[(int) ((TypeUtil.unsign(value) - minValue) * dataToBin)]++;
-        }
+            @Override
+            public void fill(int[] dest, int from, int to)
+            {
+                if (signed)
+                {
+                    for (int i = from; i < to; i++)
+                        dest[(int) ((array[i] - minValue) * dataToBin)]++;
+                }
+                else
+                {
+                    for (int i = from; i < to; i++)
+                        dest[(int) ((TypeUtil.unsign(array[i]) - minValue) * dataToBin)]++;
+                }
+            }
+        });
     }
 
     /**
      * Add the specified short array to the histogram
      */
-    public void addValues(short[] array, boolean signed)
+    public void addValues(final short[] array, final boolean signed)
     {
-        if (signed)
-        {
-            for (short value : array)
-                bins[(int) ((value - minValue) * dataToBin)]++;
-        }
-        else
+        addValues(array.length, new BinFiller()
         {
-            for (short value : array)
-                bins[(int) ((TypeUtil.unsign(value) - minValue) * dataToBin)]++;
-        }
+            @Override
+            public void fill(int[] dest, int from, int to)
+            {
+                if (signed)
+                {
+                    for (int i = from; i < to; i++)
+                        dest[(int) ((array[i] - minValue) * dataToBin)]++;
+                }
+                else
+                {
+                    for (int i = from; i < to; i++)
+                        dest[(int) ((TypeUtil.unsign(array[i]) - minValue) * dataToBin)]++;
+                }
+            }
+        });
     }
 
     /**
      * Add the specified int array to the histogram
      */
-    public void addValues(int[] array, boolean signed)
+    public void addValues(final int[] array, final boolean signed)
     {
-        if (signed)
+        addValues(array.length, new BinFiller()
         {
-            for (int value : array)
-                bins[(int) ((value - minValue) * dataToBin)]++;
-        }
-        else
-        {
-            for (int value : array)
-                bins[(int) ((TypeUtil.unsign(value) - minValue) * dataToBin)]++;
-        }
+            @Override
+            public void fill(int[] dest, int from, int to)
+            {
+                if (signed)
+                {
+                    for (int i = from; i < to; i++)
+                        dest[(int) ((array[i] - minValue) * dataToBin)]++;
+                }
+                else
+                {
+                    for (int i = from; i < to; i++)
+                        dest[(int) ((TypeUtil.unsign(array[i]) - minValue) * dataToBin)]++;
+                }
+            }
+        });
     }
 
     /**
      * Add the specified long array to the histogram
      */
-    public void addValues(long[] array, boolean signed)
+    public void addValues(final long[] array, final boolean signed)
     {
-        if (signed)
+        addValues(array.length, new BinFiller()
         {
-            for (long value : array)
-                bins[(int) ((value - minValue) * dataToBin)]++;
+            @Override
+            public void fill(int[] dest, int from, int to)
+            {
+                if (signed)
+                {
+                    for (int i = from; i < to; i++)
+                        dest[(int) ((array[i] - minValue) * dataToBin)]++;
+                }
+                else
+                {
+                    for (int i = from; i < to; i++)
+                        dest[(int) ((TypeUtil.unsign(array[i]) - minValue) * dataToBin)]++;
+                }
+            }
+        });
+    }
+
+    /**
+     * Add the specified float array to the histogram
+     */
+    public void addValues(final float[] array)
+    {
+        addValues(array.length, new BinFiller()
+        {
+            @Override
+            public void fill(int[] dest, int from, int to)
+            {
+                for (int i = from; i < to; i++)
+                    dest[(int) ((array[i] - minValue) * dataToBin)]++;
+            }
+        });
+    }
+
+    /**
+     * Add the specified double array to the histogram
+     */
+    public void addValues(final double[] array)
+    {
+        addValues(array.length, new BinFiller()
+        {
+            @Override
+            public void fill(int[] dest, int from, int to)
+            {
+                for (int i = from; i < to; i++)
+                    dest[(int) ((array[i] - minValue) * dataToBin)]++;
+            }
+        });
+    }
+
+    /**
+     * Fill the histogram using the given filler on <code>[0, length[</code>.<br>
+     * Large arrays are split in chunks filled in parallel in local bins then summed, so the histogram is left
+     * unchanged if the operation is interrupted.
+     */
+    protected void addValues(int length, final BinFiller filler)
+    {
+        final int numChunk = Math.min(SystemUtil.getNumberOfCPUs(), length / PARALLEL_CHUNK_SIZE);
+
+        // not worth it
+        if (numChunk <= 1)
+        {
+            filler.fill(bins, 0, length);
+            return;
         }
-        else
+
+        final int binNumber = bins.length;
+        final int chunkSize = (length + (numChunk - 1)) / numChunk;
+        final List<Future<int[]>> results = new ArrayList<Future<int[]>>(numChunk);
+
+        for (int i = 0; i < numChunk; i++)
         {
-            for (long value : array)
-                bins[(int) ((TypeUtil.unsign(value) - minValue) * dataToBin)]++;
+            final int from = i * chunkSize;
+            final int to = Math.min(from + chunkSize, length);
+
+            results.add(processor.submit(new Callable<int[]>()
+            {
+                @Override
+                public int[] call() throws Exception
+                {
+                    final int[] result = new int[binNumber];
+                    filler.fill(result, from, to);
+                    return result;
+                }
+            }));
         }
+
+        final int[][] partials = new int[numChunk][];
+
+        try
+        {
+            for (int i = 0; i < numChunk; i++)
+                partials[i] = results.get(i).get();
+        }
+        catch (InterruptedException e)
+        {
+            for (Future<int[]> result : results)
+                result.cancel(false);
+            // keep interrupted state for caller
+            Thread.currentThread().interrupt();
+            return;
+        }
+        catch (ExecutionException e)
+        {
+            final Throwable cause = e.getCause();
+
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+
+            throw new RuntimeException(cause);
+        }
+
+        // merge partial bins
+        for (int[] partial : partials)
+            for (int b = 0; b < binNumber; b++)
+                bins[b] += partial[b];
     }
 
     /**
-     * Add the specified float array to the histogram
+     * Returns true if the specified histogram has the same bounds, type and number of bin than this one (bins can then
+     * be merged directly).
      */
-    public void addValues(float[] array)
+    public boolean hasSameProperties(Histogram histogram)
     {
-        for (float value : array)
-            bins[(int) ((value - minValue) * dataToBin)]++;
+        return (bins.length == histogram.bins.length) && (minValue == histogram.minValue)
+                && (maxValue == histogram.maxValue) && (integer == histogram.integer);
     }
 
     /**
-     * Add the specified double array to the histogram
+     * Merge the specified histogram into this one.<br>
+     * If both histograms have the same properties (see {@link #hasSameProperties(Histogram)}) bins are simply summed,
+     * otherwise each bin of the source histogram is redistributed in the bin containing its center value, or its exact
+     * value for integer histogram with one bin per value (values outside this histogram range are ignored).
      */
-    public void addValues(double[] array)
+    public void add(Histogram histogram)
     {
-        for (double value : array)
-            bins[(int) ((value - minValue) * dataToBin)]++;
+        final int[] srcBins = histogram.bins;
+
+        if (hasSameProperties(histogram))
+        {
+            for (int i = 0; i < srcBins.length; i++)
+                bins[i] += srcBins[i];
+        }
+        else
+        {
+            final double srcMin = histogram.minValue;
+            final double srcBinToData = (histogram.dataToBin != 0d) ? (1d / histogram.dataToBin) : 0d;
+            // one bin per value --> use exact value instead of bin center
+            final double offset = (histogram.integer && (histogram.binWidth == 1d)) ? 0d : 0.5d;
+
+            for (int i = 0; i < srcBins.length; i++)
+            {
+                final int size = srcBins[i];
+
+                if (size != 0)
+                    addValue(srcMin + ((i + offset) * srcBinToData), size);
+            }
+        }
+    }
+
+    /**
+     * Returns a new histogram resulting from the merge of the specified histograms.<br>
+     * The result uses the properties of the first histogram.
+     * 
+     * @see #add(Histogram)
+     */
+    public static Histogram merge(Histogram... histograms)
+    {
+        if (histograms.length == 0)
+            return null;
+
+        final Histogram result = new Histogram(histograms[0]);
+
+        for (int i = 1; i < histograms.length; i++)
+            result.add(histograms[i]);
+
+        return result;
     }
 
     /**
@@ -0,0 +1,377 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.math;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import icy.type.DataType;
+import icy.type.collection.array.Array1DUtil;
+import icy.type.collection.array.ArrayUtil;
+
+/**
+ * Streaming quantile sketch (KLL like compactors hierarchy).<br>
+ * It accepts any number of values while keeping a bounded number of them and answers quantile queries with a rank
+ * error bounded by {@link #getNormalizedRankError()} (relative to the number of values).<br>
+ * Sketches can be merged so partial results (per plane, per thread...) can be combined.
+ * 
+ * @author Stephane
+ */
+public class QuantileSketch
+{
+    /**
+     * Default sketch size parameter (about 1.3% rank error)
+     */
+    public static final int DEFAULT_K = 200;
+
+    protected static final int MIN_CAPACITY = 8;
+    protected static final double CAPACITY_RATIO = 2d / 3d;
+
+    protected static class Compactor
+    {
+        double[] values;
+        int size;
+
+        Compactor()
+        {
+            super();
+
+            values = new double[MIN_CAPACITY];
+            size = 0;
+        }
+
+        void add(double value)
+        {
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+    }
+
+    protected final int k;
+    protected final List<Compactor> compactors;
+    protected final Random random;
+
+    protected long count;
+    protected double min;
+    protected double max;
+
+    /**
+     * Create a new sketch.
+     * 
+     * @param k
+     *        sketch size parameter, the rank error decreases (and memory usage increases) with it
+     */
+    public QuantileSketch(int k)
+    {
+        super();
+
+        this.k = Math.max(k, MIN_CAPACITY);
+        compactors = new ArrayList<Compactor>();
+        // fixed seed so results are reproducible
+        random = new Random(0x51C7L);
+
+        reset();
+    }
+
+    /**
+     * Create a new sketch with default size parameter.
+     */
+    public QuantileSketch()
+    {
+        this(DEFAULT_K);
+    }
+
+    /**
+     * Reset sketch (remove all values)
+     */
+    public void reset()
+    {
+        compactors.clear();
+        compactors.add(new Compactor());
+        count = 0L;
+        min = Double.NaN;
+        max = Double.NaN;
+    }
+
+    /**
+     * Returns the number of values added to the sketch.
+     */
+    public long getCount()
+    {
+        return count;
+    }
+
+    /**
+     * Returns <code>true</code> if the sketch does not contain any value.
+     */
+    public boolean isEmpty()
+    {
+        return count == 0L;
+    }
+
+    /**
+     * Returns the exact minimum value added to the sketch (<code>NaN</code> if empty).
+     */
+    public double getMinValue()
+    {
+        return min;
+    }
+
+    /**
+     * Returns the exact maximum value added to the sketch (<code>NaN</code> if empty).
+     */
+    public double getMaxValue()
+    {
+        return max;
+    }
+
+    /**
+     * Returns the normalized rank error of quantile queries (with 99% confidence).<br>
+     * For instance with 0.01 the rank of the value returned for the 0.5 quantile is within [0.49, 0.51].
+     */
+    public double getNormalizedRankError()
+    {
+        return 2.296d / Math.pow(k, 0.9723d);
+    }
+
+    /**
+     * Add the value to the sketch (<code>NaN</code> values are ignored).
+     */
+    public void add(double value)
+    {
+        if (Double.isNaN(value))
+            return;
+
+        if (count == 0L)
+        {
+            min = value;
+            max = value;
+        }
+        else
+        {
+            if (value < min)
+                min = value;
+            if (value > max)
+                max = value;
+        }
+
+        compactors.get(0).add(value);
+        count++;
+
+        if (getRetainedSize() >= getTotalCapacity())
+            compress();
+    }
+
+    /**
+     * Add the specified array of values to the sketch.
+     * 
+     * @param signed
+     *        false if the input array should be interpreted as unsigned values<br>
+     *        (integer type only)
+     */
+    public void addValues(Object array, boolean signed)
+    {
+        final DataType dataType = ArrayUtil.getDataType(array, signed);
+        final int len = ArrayUtil.getLength(array);
+
+        for (int i = 0; i < len; i++)
+            add(Array1DUtil.getValue(array, i, dataType));
+    }
+
+    /**
+     * Merge the specified sketch into this one.
+     */
+    public void add(QuantileSketch sketch)
+    {
+        if (sketch.isEmpty())
+            return;
+
+        if (isEmpty())
+        {
+            min = sketch.min;
+            max = sketch.max;
+        }
+        else
+        {
+            min = Math.min(min, sketch.min);
+            max = Math.max(max, sketch.max);
+        }
+
+        for (int h = 0; h < sketch.compactors.size(); h++)
+        {
+            final Compactor src = sketch.compactors.get(h);
+
+            while (compactors.size() <= h)
+                compactors.add(new Compactor());
+
+            final Compactor dst = compactors.get(h);
+
+            for (int i = 0; i < src.size; i++)
+                dst.add(src.values[i]);
+        }
+
+        count += sketch.count;
+
+        compress();
+    }
+
+    /**
+     * Returns the (approximated) value for the specified quantile.
+     * 
+     * @param quantile
+     *        wanted quantile in [0..1] range (0.5 = median)
+     * @return quantile value or <code>NaN</code> if the sketch is empty
+     */
+    public double getQuantile(double quantile)
+    {
+        if (isEmpty())
+            return Double.NaN;
+        if (quantile <= 0d)
+            return min;
+        if (quantile >= 1d)
+            return max;
+
+        final int numLevel = compactors.size();
+        final double[][] sorted = new double[numLevel][];
+        final int[] positions = new int[numLevel];
+        long totalWeight = 0L;
+
+        for (int h = 0; h < numLevel; h++)
+        {
+            final Compactor c = compactors.get(h);
+
+            sorted[h] = Arrays.copyOf(c.values, c.size);
+            Arrays.sort(sorted[h]);
+            totalWeight += ((long) c.size) << h;
+        }
+
+        final double target = quantile * totalWeight;
+        long cumulated = 0L;
+
+        // merge sorted levels until we reach the wanted rank
+        while (true)
+        {
+            int bestLevel = -1;
+            double bestValue = 0d;
+
+            for (int h = 0; h < numLevel; h++)
+            {
+                if (positions[h] < sorted[h].length)
+                {
+                    final double value = sorted[h][positions[h]];
+
+                    if ((bestLevel == -1) || (value < bestValue))
+                    {
+                        bestLevel = h;
+                        bestValue = value;
+                    }
+                }
+            }
+
+            // no more value
+            if (bestLevel == -1)
+                return max;
+
+            positions[bestLevel]++;
+            cumulated += 1L << bestLevel;
+
+            if (cumulated >= target)
+                return bestValue;
+        }
+    }
+
+    /**
+     * Returns the (approximated) values for the specified low and high quantiles.
+     */
+    public double[] getQuantiles(double lowQuantile, double highQuantile)
+    {
+        return new double[] {getQuantile(lowQuantile), getQuantile(highQuantile)};
+    }
+
+    protected int getCapacity(int level)
+    {
+        final int depth = compactors.size() - (level + 1);
+
+        return Math.max(MIN_CAPACITY, (int) Math.ceil(k * Math.pow(CAPACITY_RATIO, depth)));
+    }
+
+    protected int getTotalCapacity()
+    {
+        int result = 0;
+
+        for (int h = 0; h < compactors.size(); h++)
+            result += getCapacity(h);
+
+        return result;
+    }
+
+    protected int getRetainedSize()
+    {
+        int result = 0;
+
+        for (Compactor c : compactors)
+            result += c.size;
+
+        return result;
+    }
+
+    /**
+     * Compact levels which exceed their capacity (half of the values are promoted to the next level with a doubled
+     * weight).
+     */
+    protected void compress()
+    {
+        for (int h = 0; h < compactors.size(); h++)
+        {
+            final Compactor c = compactors.get(h);
+
+            if (c.size >= getCapacity(h))
+            {
+                if ((h + 1) == compactors.size())
+                    compactors.add(new Compactor());
+
+                final Compactor next = compactors.get(h + 1);
+
+                Arrays.sort(c.values, 0, c.size);
+
+                // odd number of values --> keep the last one at this level
+                final int len = c.size & ~1;
+                final int offset = random.nextBoolean() ? 1 : 0;
+
+                for (int i = offset; i < len; i += 2)
+                    next.add(c.values[i]);
+
+                if ((c.size & 1) != 0)
+                {
+                    c.values[0] = c.values[c.size - 1];
+                    c.size = 1;
+                }
+                else
+                    c.size = 0;
+
+                // capacity constraint satisfied ? --> done
+                if (getRetainedSize() < getTotalCapacity())
+                    return;
+            }
+        }
+    }
+}
@@ -5,12 +5,16 @@ package icy.plugin.abstract_;
 
 import java.awt.Rectangle;
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import icy.common.exception.UnsupportedFormatException;
 import icy.common.listener.ProgressListener;
 import icy.file.SequenceFileImporter;
 import icy.image.AbstractImageProvider;
+import icy.image.AsyncImageProvider;
 import icy.image.IcyBufferedImage;
+import icy.image.ImageRequest;
 import icy.plugin.interface_.PluginNoEDTConstructor;
 import icy.sequence.SequenceIdImporter;
 import loci.formats.ome.OMEXMLMetadataImpl;
@@ -25,7 +29,7 @@ import ome.xml.meta.OMEXMLMetadata;
  * @see PluginSequenceImporter
  * @author Stephane
  */
-public abstract class PluginSequenceFileImporter extends Plugin implements SequenceFileImporter, PluginNoEDTConstructor
+public abstract class PluginSequenceFileImporter extends Plugin implements SequenceFileImporter, AsyncImageProvider, PluginNoEDTConstructor
 {
     // default helper
     protected class InternalSequenceIdImporterHelper extends AbstractImageProvider implements SequenceIdImporter
@@ -148,6 +152,27 @@ public abstract class PluginSequenceFileImporter extends Plugin implements Seque
         return interfaceHelper.getImage(z, t);
     }
 
+    // default implementation
+    @Override
+    public CompletableFuture<Object> getPixelsAsync(int series, int resolution, Rectangle region, int z, int t, int c)
+    {
+        return interfaceHelper.getPixelsAsync(series, resolution, region, z, t, c);
+    }
+
+    // default implementation
+    @Override
+    public CompletableFuture<IcyBufferedImage> getImageAsync(int series, int resolution, Rectangle region, int z, int t, int c)
+    {
+        return interfaceHelper.getImageAsync(series, resolution, region, z, t, c);
+    }
+
+    // default implementation
+    @Override
+    public List<CompletableFuture<IcyBufferedImage>> getImagesAsync(List<ImageRequest> requests)
+    {
+        return interfaceHelper.getImagesAsync(requests);
+    }
+
     /**
      * See {@link AbstractImageProvider#getPixelsByTile(int, int, Rectangle, int, int, int, int, int, ProgressListener)}
      * 
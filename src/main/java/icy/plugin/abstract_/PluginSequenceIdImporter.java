@@ -5,11 +5,15 @@ package icy.plugin.abstract_;
 
 import java.awt.Rectangle;
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import icy.common.exception.UnsupportedFormatException;
 import icy.common.listener.ProgressListener;
 import icy.image.AbstractImageProvider;
+import icy.image.AsyncImageProvider;
 import icy.image.IcyBufferedImage;
+import icy.image.ImageRequest;
 import icy.plugin.interface_.PluginNoEDTConstructor;
 import icy.sequence.SequenceIdImporter;
 import loci.formats.ome.OMEXMLMetadataImpl;
@@ -24,7 +28,7 @@ import ome.xml.meta.OMEXMLMetadata;
  * @see PluginSequenceImporter
  * @author Stephane
  */
-public abstract class PluginSequenceIdImporter extends Plugin implements SequenceIdImporter, PluginNoEDTConstructor
+public abstract class PluginSequenceIdImporter extends Plugin implements SequenceIdImporter, AsyncImageProvider, PluginNoEDTConstructor
 {
     // default helper
     protected class InternalSequenceIdImporterHelper extends AbstractImageProvider implements SequenceIdImporter
@@ -147,6 +151,27 @@ public abstract class PluginSequenceIdImporter extends Plugin implements Sequenc
         return interfaceHelper.getImage(z, t);
     }
 
+    // default implementation
+    @Override
+    public CompletableFuture<Object> getPixelsAsync(int series, int resolution, Rectangle region, int z, int t, int c)
+    {
+        return interfaceHelper.getPixelsAsync(series, resolution, region, z, t, c);
+    }
+
+    // default implementation
+    @Override
+    public CompletableFuture<IcyBufferedImage> getImageAsync(int series, int resolution, Rectangle region, int z, int t, int c)
+    {
+        return interfaceHelper.getImageAsync(series, resolution, region, z, t, c);
+    }
+
+    // default implementation
+    @Override
+    public List<CompletableFuture<IcyBufferedImage>> getImagesAsync(List<ImageRequest> requests)
+    {
+        return interfaceHelper.getImagesAsync(requests);
+    }
+
     /**
      * See {@link AbstractImageProvider#getPixelsByTile(int, int, Rectangle, int, int, int, int, int,ProgressListener)}
      * 
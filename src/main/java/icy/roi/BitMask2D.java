@@ -0,0 +1,648 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.roi;
+
+import java.awt.Rectangle;
+
+/**
+ * Bit packed 2D mask (1 bit per point) with boolean operations done on 64 points at once.<br>
+ * Each row of the mask starts on a new <code>long</code> word and bit <i>i</i> of word <i>w</i> represents the point
+ * at <code>x = bounds.x + (w * 64) + i</code> so a mask uses 8 times less memory than {@link BooleanMask2D}.<br>
+ * Use {@link #BitMask2D(BooleanMask2D)} and {@link #toBooleanMask2D()} to convert from / to the
+ * <code>boolean[]</code> representation.
+ * 
+ * @author Stephane
+ */
+public class BitMask2D implements Cloneable
+{
+    private static final int OP_OR = 0;
+    private static final int OP_AND = 1;
+    private static final int OP_XOR = 2;
+    private static final int OP_ANDNOT = 3;
+
+    /**
+     * Build resulting mask from union of the mask1 and mask2.
+     * 
+     * @throws InterruptedException
+     * @see BooleanMask2D#getUnion(BooleanMask2D, BooleanMask2D)
+     */
+    public static BitMask2D getUnion(BitMask2D mask1, BitMask2D mask2) throws InterruptedException
+    {
+        if ((mask1 == null) && (mask2 == null))
+            return new BitMask2D();
+
+        if ((mask1 == null) || mask1.isEmpty())
+            return (BitMask2D) mask2.clone();
+        if ((mask2 == null) || mask2.isEmpty())
+            return (BitMask2D) mask1.clone();
+
+        return combine(mask1, mask2, mask1.bounds.union(mask2.bounds), OP_OR);
+    }
+
+    /**
+     * Build resulting mask from intersection of the mask1 and mask2.
+     * 
+     * @throws InterruptedException
+     * @see BooleanMask2D#getIntersection(BooleanMask2D, BooleanMask2D)
+     */
+    public static BitMask2D getIntersection(BitMask2D mask1, BitMask2D mask2) throws InterruptedException
+    {
+        if ((mask1 == null) || (mask2 == null))
+            return new BitMask2D();
+
+        final Rectangle intersect = mask1.bounds.intersection(mask2.bounds);
+
+        if (intersect.isEmpty())
+            return new BitMask2D();
+
+        return combine(mask1, mask2, intersect, OP_AND);
+    }
+
+    /**
+     * Build resulting mask from exclusive union of the mask1 and mask2.
+     * 
+     * @throws InterruptedException
+     * @see BooleanMask2D#getExclusiveUnion(BooleanMask2D, BooleanMask2D)
+     */
+    public static BitMask2D getExclusiveUnion(BitMask2D mask1, BitMask2D mask2) throws InterruptedException
+    {
+        if ((mask1 == null) && (mask2 == null))
+            return new BitMask2D();
+
+        if ((mask1 == null) || mask1.isEmpty())
+            return (BitMask2D) mask2.clone();
+        if ((mask2 == null) || mask2.isEmpty())
+            return (BitMask2D) mask1.clone();
+
+        final BitMask2D result = combine(mask1, mask2, mask1.bounds.union(mask2.bounds), OP_XOR);
+
+        // optimize bounds
+        result.optimizeBounds();
+
+        return result;
+    }
+
+    /**
+     * Build resulting mask from the subtraction of mask2 from mask1.
+     * 
+     * @throws InterruptedException
+     * @see BooleanMask2D#getSubtraction(BooleanMask2D, BooleanMask2D)
+     */
+    public static BitMask2D getSubtraction(BitMask2D mask1, BitMask2D mask2) throws InterruptedException
+    {
+        if (mask1 == null)
+            return new BitMask2D();
+        if ((mask2 == null) || !mask1.bounds.intersects(mask2.bounds))
+            return (BitMask2D) mask1.clone();
+
+        final BitMask2D result = combine(mask1, mask2, new Rectangle(mask1.bounds), OP_ANDNOT);
+
+        // optimize bounds
+        result.optimizeBounds();
+
+        return result;
+    }
+
+    /**
+     * Compute <code>mask1 (op) mask2</code> on the specified region, 64 points at once.
+     */
+    private static BitMask2D combine(BitMask2D mask1, BitMask2D mask2, Rectangle region, int op)
+            throws InterruptedException
+    {
+        final BitMask2D result = new BitMask2D(region);
+        final long[] dst = result.words;
+        final int wordsPerRow = result.wordsPerRow;
+        final long lastWordMask = getLastWordMask(region.width);
+        // X offset (in bit) of region start in source masks
+        final int dx1 = region.x - mask1.bounds.x;
+        final int dx2 = region.x - mask2.bounds.x;
+
+        int off = 0;
+        for (int y = 0; y < region.height; y++)
+        {
+            final int y1 = (region.y + y) - mask1.bounds.y;
+            final int y2 = (region.y + y) - mask2.bounds.y;
+            final boolean row1 = (y1 >= 0) && (y1 < mask1.bounds.height);
+            final boolean row2 = (y2 >= 0) && (y2 < mask2.bounds.height);
+            final int rowOff1 = y1 * mask1.wordsPerRow;
+            final int rowOff2 = y2 * mask2.wordsPerRow;
+
+            for (int w = 0; w < wordsPerRow; w++)
+            {
+                final int bit = w << 6;
+                final long v1 = row1 ? mask1.getWord(rowOff1, dx1 + bit) : 0L;
+                final long v2 = row2 ? mask2.getWord(rowOff2, dx2 + bit) : 0L;
+                final long v;
+
+                switch (op)
+                {
+                    default:
+                    case OP_OR:
+                        v = v1 | v2;
+                        break;
+                    case OP_AND:
+                        v = v1 & v2;
+                        break;
+                    case OP_XOR:
+                        v = v1 ^ v2;
+                        break;
+                    case OP_ANDNOT:
+                        v = v1 & ~v2;
+                        break;
+                }
+
+                dst[off++] = v;
+            }
+
+            // clear padding bits
+            if (wordsPerRow > 0)
+                dst[off - 1] &= lastWordMask;
+
+            // check for interruption from time to time as this can be a long process
+            if (((y & 0xF) == 0xF) && Thread.interrupted())
+                throw new InterruptedException("BitMask2D boolean operation process interrupted.");
+        }
+
+        return result;
+    }
+
+    private static int getWordsPerRow(int width)
+    {
+        return (Math.max(0, width) + 63) >>> 6;
+    }
+
+    private static long getLastWordMask(int width)
+    {
+        final int r = width & 63;
+        return (r == 0) ? -1L : ((1L << r) - 1L);
+    }
+
+    /**
+     * Region represented by the mask.
+     */
+    protected Rectangle bounds;
+    /**
+     * Number of <code>long</code> word per row
+     */
+    protected int wordsPerRow;
+    /**
+     * Bit packed mask data
+     */
+    protected long[] words;
+
+    /**
+     * Create an empty BitMask2D
+     */
+    public BitMask2D()
+    {
+        this(new Rectangle());
+    }
+
+    /**
+     * Create a new BitMask2D with the specified bounds and all points set to <code>false</code>.
+     */
+    public BitMask2D(Rectangle bounds)
+    {
+        super();
+
+        this.bounds = bounds;
+        wordsPerRow = getWordsPerRow(bounds.width);
+        words = new long[wordsPerRow * Math.max(0, bounds.height)];
+    }
+
+    /**
+     * Create a new BitMask2D from the specified <code>boolean</code> mask array.
+     */
+    public BitMask2D(Rectangle bounds, boolean[] mask)
+    {
+        this(bounds);
+
+        final int w = bounds.width;
+        int offSrc = 0;
+        int offDst = 0;
+
+        for (int y = 0; y < bounds.height; y++)
+        {
+            for (int x = 0; x < w; x += 64)
+            {
+                final int end = Math.min(64, w - x);
+                long v = 0L;
+
+                for (int b = 0; b < end; b++)
+                    if (mask[offSrc++])
+                        v |= 1L << b;
+
+                words[offDst++] = v;
+            }
+        }
+    }
+
+    /**
+     * Create a new BitMask2D from the specified {@link BooleanMask2D}.
+     */
+    public BitMask2D(BooleanMask2D mask)
+    {
+        this(new Rectangle(mask.bounds), mask.mask);
+    }
+
+    /**
+     * Returns the region represented by the mask.
+     */
+    public Rectangle getBounds()
+    {
+        return bounds;
+    }
+
+    /**
+     * Returns the <code>boolean</code> mask array representation (X then Y ordered).
+     */
+    public boolean[] toBooleanArray()
+    {
+        final int w = Math.max(0, bounds.width);
+        final boolean[] result = new boolean[w * Math.max(0, bounds.height)];
+        int offSrc = 0;
+        int offDst = 0;
+
+        for (int y = 0; y < bounds.height; y++)
+        {
+            for (int x = 0; x < w; x += 64)
+            {
+                long v = words[offSrc++];
+
+                // only visit set bits
+                while (v != 0L)
+                {
+                    result[offDst + x + Long.numberOfTrailingZeros(v)] = true;
+                    v &= v - 1L;
+                }
+            }
+
+            offDst += w;
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the {@link BooleanMask2D} representation of this mask.
+     */
+    public BooleanMask2D toBooleanMask2D()
+    {
+        return new BooleanMask2D(new Rectangle(bounds), toBooleanArray());
+    }
+
+    /**
+     * Return true if boolean mask is empty
+     */
+    public boolean isEmpty()
+    {
+        if (bounds.isEmpty())
+            return true;
+
+        for (long v : words)
+            if (v != 0L)
+                return false;
+
+        return true;
+    }
+
+    /**
+     * Return true if mask contains the specified point
+     */
+    public boolean contains(int x, int y)
+    {
+        if (bounds.contains(x, y))
+        {
+            final int bx = x - bounds.x;
+            return (words[((y - bounds.y) * wordsPerRow) + (bx >>> 6)] & (1L << (bx & 63))) != 0L;
+        }
+
+        return false;
+    }
+
+    /**
+     * Set the value for the specified point (should be inside mask bounds).
+     */
+    public void set(int x, int y, boolean value)
+    {
+        final int bx = x - bounds.x;
+        final int ind = ((y - bounds.y) * wordsPerRow) + (bx >>> 6);
+
+        if (value)
+            words[ind] |= 1L << (bx & 63);
+        else
+            words[ind] &= ~(1L << (bx & 63));
+    }
+
+    /**
+     * Return true if mask contains the specified 2D mask.
+     */
+    public boolean contains(BitMask2D bitMask)
+    {
+        final Rectangle rect = bitMask.bounds;
+        final int dx = rect.x - bounds.x;
+
+        for (int y = 0; y < rect.height; y++)
+        {
+            final int ty = (rect.y + y) - bounds.y;
+            final boolean row = (ty >= 0) && (ty < bounds.height);
+            final int rowOff = ty * wordsPerRow;
+            int off = y * bitMask.wordsPerRow;
+
+            for (int w = 0; w < bitMask.wordsPerRow; w++)
+            {
+                final long v = bitMask.words[off++];
+
+                if (v != 0L)
+                {
+                    final long tv = row ? getWord(rowOff, dx + (w << 6)) : 0L;
+
+                    if ((v & ~tv) != 0L)
+                        return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Return true if mask intersects (contains at least one point) the specified 2D mask.
+     */
+    public boolean intersects(BitMask2D bitMask)
+    {
+        final Rectangle intersect = bounds.intersection(bitMask.bounds);
+
+        if (intersect.isEmpty())
+            return false;
+
+        final int wpr = getWordsPerRow(intersect.width);
+        final long lastWordMask = getLastWordMask(intersect.width);
+        final int dx1 = intersect.x - bounds.x;
+        final int dx2 = intersect.x - bitMask.bounds.x;
+
+        for (int y = 0; y < intersect.height; y++)
+        {
+            final int rowOff1 = ((intersect.y + y) - bounds.y) * wordsPerRow;
+            final int rowOff2 = ((intersect.y + y) - bitMask.bounds.y) * bitMask.wordsPerRow;
+
+            for (int w = 0; w < wpr; w++)
+            {
+                final int bit = w << 6;
+                long v = getWord(rowOff1, dx1 + bit) & bitMask.getWord(rowOff2, dx2 + bit);
+
+                if (w == (wpr - 1))
+                    v &= lastWordMask;
+                if (v != 0L)
+                    return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Return the number of points contained in this mask.
+     */
+    public int getNumberOfPoints()
+    {
+        int result = 0;
+
+        for (long v : words)
+            result += Long.bitCount(v);
+
+        return result;
+    }
+
+    /**
+     * Returns the 64 bits of the row starting at <code>rowOffset</code> in <code>words</code> array, starting from
+     * bit <code>bitIndex</code> (can be negative or outside row, missing bits are set to 0).
+     */
+    protected long getWord(int rowOffset, int bitIndex)
+    {
+        // floor division for negative index
+        final int w = bitIndex >> 6;
+        final int shift = bitIndex & 63;
+        final long lo = ((w >= 0) && (w < wordsPerRow)) ? words[rowOffset + w] : 0L;
+
+        if (shift == 0)
+            return lo;
+
+        final long hi = ((w >= -1) && ((w + 1) < wordsPerRow)) ? words[rowOffset + w + 1] : 0L;
+
+        return (lo >>> shift) | (hi << (64 - shift));
+    }
+
+    /**
+     * Build resulting mask from union of this mask and the specified one.
+     * 
+     * @throws InterruptedException
+     */
+    public BitMask2D getUnion(BitMask2D bitMask) throws InterruptedException
+    {
+        return getUnion(this, bitMask);
+    }
+
+    /**
+     * Build resulting mask from intersection of this mask and the specified one.
+     * 
+     * @throws InterruptedException
+     */
+    public BitMask2D getIntersection(BitMask2D bitMask) throws InterruptedException
+    {
+        return getIntersection(this, bitMask);
+    }
+
+    /**
+     * Build resulting mask from exclusive union of this mask and the specified one.
+     * 
+     * @throws InterruptedException
+     */
+    public BitMask2D getExclusiveUnion(BitMask2D bitMask) throws InterruptedException
+    {
+        return getExclusiveUnion(this, bitMask);
+    }
+
+    /**
+     * Build resulting mask from the subtraction of the specified mask from this mask.
+     * 
+     * @throws InterruptedException
+     */
+    public BitMask2D getSubtraction(BitMask2D bitMask) throws InterruptedException
+    {
+        return getSubtraction(this, bitMask);
+    }
+
+    /**
+     * Add the specified mask into the current mask (bounds can be enlarged):
+     * 
+     * @throws InterruptedException
+     */
+    public void add(BitMask2D bitMask) throws InterruptedException
+    {
+        set(getUnion(this, bitMask));
+    }
+
+    /**
+     * Set the content of current mask with the result of the intersection with the specified mask.
+     * 
+     * @throws InterruptedException
+     */
+    public void intersect(BitMask2D bitMask) throws InterruptedException
+    {
+        set(getIntersection(this, bitMask));
+    }
+
+    /**
+     * Exclusively add the specified mask into the current mask (bounds can change).
+     * 
+     * @throws InterruptedException
+     */
+    public void exclusiveAdd(BitMask2D bitMask) throws InterruptedException
+    {
+        set(getExclusiveUnion(this, bitMask));
+    }
+
+    /**
+     * Subtract the specified mask from the current mask.
+     * 
+     * @throws InterruptedException
+     */
+    public void subtract(BitMask2D bitMask) throws InterruptedException
+    {
+        set(getSubtraction(this, bitMask));
+    }
+
+    private void set(BitMask2D source)
+    {
+        synchronized (this)
+        {
+            bounds = source.bounds;
+            wordsPerRow = source.wordsPerRow;
+            words = source.words;
+        }
+    }
+
+    /**
+     * Get the smallest bounds which fit mask content.
+     */
+    public Rectangle getOptimizedBounds()
+    {
+        int minX = Integer.MAX_VALUE;
+        int minY = -1;
+        int maxX = -1;
+        int maxY = -1;
+        int off = 0;
+
+        for (int y = 0; y < bounds.height; y++)
+        {
+            for (int w = 0; w < wordsPerRow; w++)
+            {
+                final long v = words[off++];
+
+                if (v != 0L)
+                {
+                    final int bit = w << 6;
+                    final int first = bit + Long.numberOfTrailingZeros(v);
+                    final int last = bit + (63 - Long.numberOfLeadingZeros(v));
+
+                    if (first < minX)
+                        minX = first;
+                    if (last > maxX)
+                        maxX = last;
+                    if (minY == -1)
+                        minY = y;
+                    maxY = y;
+                }
+            }
+        }
+
+        // empty --> return empty bounds
+        if (minY == -1)
+            return new Rectangle(bounds.x, bounds.y, 0, 0);
+
+        // new calculated bounds
+        return new Rectangle(bounds.x + minX, bounds.y + minY, (maxX - minX) + 1, (maxY - minY) + 1);
+    }
+
+    /**
+     * Optimize mask bounds so it fit mask content.
+     */
+    public void optimizeBounds()
+    {
+        moveBounds(getOptimizedBounds());
+    }
+
+    /**
+     * Change the bounds of the mask.<br>
+     * Keep mask data intersecting from old bounds.
+     */
+    public void moveBounds(Rectangle value)
+    {
+        // bounds changed ?
+        if (bounds.equals(value))
+            return;
+
+        final int newWordsPerRow = getWordsPerRow(value.width);
+        final long[] newWords = new long[newWordsPerRow * Math.max(0, value.height)];
+        final long lastWordMask = getLastWordMask(value.width);
+        final int dx = value.x - bounds.x;
+
+        if (newWordsPerRow > 0)
+        {
+            int off = 0;
+            for (int y = 0; y < value.height; y++)
+            {
+                final int sy = (value.y + y) - bounds.y;
+
+                if ((sy >= 0) && (sy < bounds.height))
+                {
+                    final int rowOff = sy * wordsPerRow;
+
+                    for (int w = 0; w < newWordsPerRow; w++)
+                        newWords[off + w] = getWord(rowOff, dx + (w << 6));
+
+                    newWords[(off + newWordsPerRow) - 1] &= lastWordMask;
+                }
+
+                off += newWordsPerRow;
+            }
+        }
+
+        // update mask and bounds
+        synchronized (this)
+        {
+            words = newWords;
+            wordsPerRow = newWordsPerRow;
+            bounds = value;
+        }
+    }
+
+    @Override
+    public Object clone()
+    {
+        final BitMask2D result = new BitMask2D();
+
+        result.bounds = new Rectangle(bounds);
+        result.wordsPerRow = wordsPerRow;
+        result.words = words.clone();
+
+        return result;
+    }
+}
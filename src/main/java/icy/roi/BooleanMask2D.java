@@ -608,23 +608,28 @@ public class BooleanMask2D implements Cloneable
      */
     public static BooleanMask2D getUnion(List<BooleanMask2D> masks) throws InterruptedException
     {
-        BooleanMask2D result = null;
+        // return an empty BooleanMask2D instead of null
+        if (masks.isEmpty())
+            return new BooleanMask2D();
+        // single mask
+        if (masks.size() == 1)
+        {
+            final BooleanMask2D bm = masks.get(0);
+            return new BooleanMask2D(bm.bounds, bm.mask);
+        }
 
-        // compute global union boolean mask of all ROI2D
+        // compute global union in bit packed form (64 points at once and no intermediate boolean array)
+        BitMask2D result = null;
         for (BooleanMask2D bm : masks)
         {
             // update global mask
             if (result == null)
-                result = new BooleanMask2D(bm.bounds, bm.mask);
+                result = new BitMask2D(bm);
             else
-                result = getUnion(result, bm);
+                result.add(new BitMask2D(bm));
         }
 
-        // return an empty BooleanMask2D instead of null
-        if (result == null)
-            result = new BooleanMask2D();
-
-        return result;
+        return result.toBooleanMask2D();
     }
 
     /**
@@ -721,23 +726,28 @@ public class BooleanMask2D implements Cloneable
      */
     public static BooleanMask2D getIntersection(List<BooleanMask2D> masks) throws InterruptedException
     {
-        BooleanMask2D result = null;
+        // return an empty BooleanMask2D instead of null
+        if (masks.isEmpty())
+            return new BooleanMask2D();
+        // single mask
+        if (masks.size() == 1)
+        {
+            final BooleanMask2D bm = masks.get(0);
+            return new BooleanMask2D(bm.bounds, bm.mask);
+        }
 
-        // compute global intersect boolean mask of all ROI2D
+        // compute global intersect in bit packed form (64 points at once and no intermediate boolean array)
+        BitMask2D result = null;
         for (BooleanMask2D bm : masks)
         {
             // update global mask
             if (result == null)
-                result = new BooleanMask2D(bm.bounds, bm.mask);
+                result = new BitMask2D(bm);
             else
-                result = getIntersection(result, bm);
+                result.intersect(new BitMask2D(bm));
         }
 
-        // return an empty BooleanMask2D instead of null
-        if (result == null)
-            result = new BooleanMask2D();
-
-        return result;
+        return result.toBooleanMask2D();
     }
 
     /**
@@ -812,23 +822,28 @@ public class BooleanMask2D implements Cloneable
      */
     public static BooleanMask2D getExclusiveUnion(List<BooleanMask2D> masks) throws InterruptedException
     {
-        BooleanMask2D result = null;
+        // return an empty BooleanMask2D instead of null
+        if (masks.isEmpty())
+            return new BooleanMask2D();
+        // single mask
+        if (masks.size() == 1)
+        {
+            final BooleanMask2D bm = masks.get(0);
+            return new BooleanMask2D(bm.bounds, bm.mask);
+        }
 
-        // compute global exclusive union boolean mask of all ROI2D
+        // compute global exclusive union in bit packed form (64 points at once and no intermediate boolean array)
+        BitMask2D result = null;
         for (BooleanMask2D bm : masks)
         {
             // update global mask
             if (result == null)
-                result = new BooleanMask2D(bm.bounds, bm.mask);
+                result = new BitMask2D(bm);
             else
-                result = getExclusiveUnion(result, bm);
+                result.exclusiveAdd(new BitMask2D(bm));
         }
 
-        // return an empty BooleanMask2D instead of null
-        if (result == null)
-            result = new BooleanMask2D();
-
-        return result;
+        return result.toBooleanMask2D();
     }
 
     /**
@@ -1539,7 +1554,9 @@ public class BooleanMask2D implements Cloneable
      * A component is basically an isolated object which does not touch any other objects.<br>
      * Internal use only.
      * @throws InterruptedException 
+     * @deprecated Use {@link ConnectedComponentLabeling#label(BooleanMask2D, int)} instead.
      */
+    @Deprecated
     protected List<Component> getComponentsPointsInternal() throws InterruptedException
     {
         final List<Component> components = new ArrayList<Component>();
@@ -1721,14 +1738,8 @@ public class BooleanMask2D implements Cloneable
         if (bounds.isEmpty())
             return new int[0][0];
 
-        final List<Component> components = getComponentsPointsInternal();
-        final int[][] result = new int[components.size()][];
-
-        // convert list of point to Point array
-        for (int i = 0; i < result.length; i++)
-            result[i] = components.get(i).getAllPoints();
-
-        return result;
+        return ConnectedComponentLabeling.label(this, ConnectedComponentLabeling.CONNECTIVITY_8)
+                .getPointsAsIntArray2D();
     }
 
     /**
@@ -1742,14 +1753,15 @@ public class BooleanMask2D implements Cloneable
         if (bounds.isEmpty())
             return new BooleanMask2D[0];
 
-        final int[][] componentsPoints = getComponentsPointsAsIntArray();
-        final List<BooleanMask2D> result = new ArrayList<BooleanMask2D>();
+        final ConnectedComponentLabeling.Labels labels = ConnectedComponentLabeling.label(this,
+                ConnectedComponentLabeling.CONNECTIVITY_8);
+        final BooleanMask2D[] result = new BooleanMask2D[labels.getNumberOfComponents()];
 
-        // convert array of point to boolean mask
-        for (int[] componentPoints : componentsPoints)
-            result.add(new BooleanMask2D(componentPoints));
+        // build boolean mask directly from label array
+        for (int i = 0; i < result.length; i++)
+            result[i] = labels.getMask2D(i + 1);
 
-        return result.toArray(new BooleanMask2D[result.size()]);
+        return result;
     }
 
     /**
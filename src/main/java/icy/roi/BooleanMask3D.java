@@ -2,18 +2,15 @@ package icy.roi;
 
 import java.awt.Rectangle;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
 
-import icy.image.IcyBufferedImage;
-import icy.sequence.Sequence;
 import icy.type.collection.array.DynamicArray;
 import icy.type.point.Point3D;
 import icy.type.rectangle.Rectangle3D;
-import plugins.kernel.roi.roi3d.ROI3DArea;
 
 /**
  * Class to define a 3D boolean mask region and make basic boolean operation between masks.<br>
@@ -24,49 +21,11 @@ import plugins.kernel.roi.roi3d.ROI3DArea;
 public class BooleanMask3D implements Cloneable
 {
 
-    /**
-     * A temporary component structure used during the extraction process. Many such components may
-     * be extracted from the sequence, and some are fused into the final extracted ROI
-     * 
-     * @author Alexandre Dufour
-     */
-    private static class ConnectedComponent
-    {
-
-        /**
-         * final label that should replace the current label if fusion is needed
-         */
-        int targetLabel;
-
-        /**
-         * if non-null, indicates the parent object with which the current object should be fused
-         */
-        ConnectedComponent targetComponent;
-
-        /**
-         * Creates a new label with the given value. If no parent is set to this label, the given
-         * value will be the final one
-         * 
-         * @param value
-         *        the pixel value
-         * @param label
-         *        the label value
-         */
-        ConnectedComponent(int label)
-        {
-            this.targetLabel = label;
-        }
-
-        /**
-         * Retrieves the final object label (recursively)
-         * 
-         * @return
-         */
-        int getTargetLabel()
-        {
-            return targetComponent == null ? targetLabel : targetComponent.getTargetLabel();
-        }
-    }
+    // Internal use only
+    private static final int OP_UNION = 0;
+    private static final int OP_INTERSECTION = 1;
+    private static final int OP_EXCLUSIVE_UNION = 2;
+    private static final int OP_SUBTRACTION = 3;
 
     // Internal use only
     private static BooleanMask2D doUnion2D(BooleanMask2D m1, BooleanMask2D m2) throws InterruptedException
@@ -129,6 +88,56 @@ public class BooleanMask3D implements Cloneable
         return BooleanMask2D.getSubtraction(m1, m2);
     }
 
+    // Internal use only
+    private static BooleanMask2D doOperation2D(BooleanMask2D m1, BooleanMask2D m2, int op) throws InterruptedException
+    {
+        switch (op)
+        {
+            default:
+            case OP_UNION:
+                return doUnion2D(m1, m2);
+            case OP_INTERSECTION:
+                return doIntersection2D(m1, m2);
+            case OP_EXCLUSIVE_UNION:
+                return doExclusiveUnion2D(m1, m2);
+            case OP_SUBTRACTION:
+                return doSubtraction2D(m1, m2);
+        }
+    }
+
+    /**
+     * Internal use only: process the given boolean operation on each Z slice of the specified bounds.<br>
+     * Slices are independent so they are processed in parallel.
+     */
+    private static BooleanMask2D[] doSliceOperation(BooleanMask3D mask1, BooleanMask3D mask2,
+            Rectangle3D.Integer bounds, final int op) throws InterruptedException
+    {
+        final List<Callable<BooleanMask2D>> tasks = new ArrayList<Callable<BooleanMask2D>>(bounds.sizeZ);
+
+        for (int z = 0; z < bounds.sizeZ; z++)
+        {
+            final BooleanMask2D m2d1 = mask1.getMask2D(z + bounds.z);
+            final BooleanMask2D m2d2 = mask2.getMask2D(z + bounds.z);
+
+            // nothing to do
+            if ((m2d1 == null) && (m2d2 == null))
+                tasks.add(null);
+            else
+            {
+                tasks.add(new Callable<BooleanMask2D>()
+                {
+                    @Override
+                    public BooleanMask2D call() throws Exception
+                    {
+                        return doOperation2D(m2d1, m2d2, op);
+                    }
+                });
+            }
+        }
+
+        return BooleanMaskProcessor.process(tasks).toArray(new BooleanMask2D[bounds.sizeZ]);
+    }
+
     /**
      * Build resulting mask from union of the mask1 and mask2:
      * 
@@ -180,15 +189,7 @@ public class BooleanMask3D implements Cloneable
             }
             else
             {
-                mask = new BooleanMask2D[bounds.sizeZ];
-
-                for (int z = 0; z < bounds.sizeZ; z++)
-                {
-                    final BooleanMask2D m2d1 = mask1.getMask2D(z + bounds.z);
-                    final BooleanMask2D m2d2 = mask2.getMask2D(z + bounds.z);
-
-                    mask[z] = doUnion2D(m2d1, m2d2);
-                }
+                mask = doSliceOperation(mask1, mask2, bounds, OP_UNION);
             }
 
             return new BooleanMask3D(bounds, mask);
@@ -243,15 +244,7 @@ public class BooleanMask3D implements Cloneable
             }
             else
             {
-                mask = new BooleanMask2D[bounds.sizeZ];
-
-                for (int z = 0; z < bounds.sizeZ; z++)
-                {
-                    final BooleanMask2D m2d1 = mask1.getMask2D(z + bounds.z);
-                    final BooleanMask2D m2d2 = mask2.getMask2D(z + bounds.z);
-
-                    mask[z] = doIntersection2D(m2d1, m2d2);
-                }
+                mask = doSliceOperation(mask1, mask2, bounds, OP_INTERSECTION);
             }
 
             return new BooleanMask3D(bounds, mask);
@@ -311,15 +304,7 @@ public class BooleanMask3D implements Cloneable
             }
             else
             {
-                mask = new BooleanMask2D[bounds.sizeZ];
-
-                for (int z = 0; z < bounds.sizeZ; z++)
-                {
-                    final BooleanMask2D m2d1 = mask1.getMask2D(z + bounds.z);
-                    final BooleanMask2D m2d2 = mask2.getMask2D(z + bounds.z);
-
-                    mask[z] = doExclusiveUnion2D(m2d1, m2d2);
-                }
+                mask = doSliceOperation(mask1, mask2, bounds, OP_EXCLUSIVE_UNION);
             }
 
             return new BooleanMask3D(bounds, mask);
@@ -377,15 +362,7 @@ public class BooleanMask3D implements Cloneable
             }
             else
             {
-                mask = new BooleanMask2D[bounds.sizeZ];
-
-                for (int z = 0; z < bounds.sizeZ; z++)
-                {
-                    final BooleanMask2D m2d1 = mask1.getMask2D(z + bounds.z);
-                    final BooleanMask2D m2d2 = mask2.getMask2D(z + bounds.z);
-
-                    mask[z] = doSubtraction2D(m2d1, m2d2);
-                }
+                mask = doSliceOperation(mask1, mask2, bounds, OP_SUBTRACTION);
             }
 
             return new BooleanMask3D(bounds, mask);
@@ -418,11 +395,27 @@ public class BooleanMask3D implements Cloneable
             }
             else
             {
-                for (Entry<Integer, BooleanMask2D> entry : srcMask.entrySet())
+                final List<Callable<BooleanMask2D>> tasks = new ArrayList<Callable<BooleanMask2D>>(srcMask.size());
+
+                for (final BooleanMask2D bm : srcMask.values())
                 {
-                    final int key = entry.getKey().intValue();
-                    // get upscaled 2D mask
-                    final BooleanMask2D bm = entry.getValue().upscale();
+                    tasks.add(new Callable<BooleanMask2D>()
+                    {
+                        @Override
+                        public BooleanMask2D call() throws Exception
+                        {
+                            return bm.upscale();
+                        }
+                    });
+                }
+
+                // get upscaled 2D masks (processed in parallel)
+                final Iterator<BooleanMask2D> results = BooleanMaskProcessor.process(tasks).iterator();
+
+                for (Integer z : srcMask.keySet())
+                {
+                    final int key = z.intValue();
+                    final BooleanMask2D bm = results.next();
 
                     // duplicate it at (Z pos) * 2
                     resMask.put(Integer.valueOf((key * 2) + 0), bm);
@@ -501,7 +494,7 @@ public class BooleanMask3D implements Cloneable
      *        Accepted value: 1 to 8 (default is 5)
      * @throws InterruptedException
      */
-    public static BooleanMask3D downscale(BooleanMask3D mask, int nbPointForTrue) throws InterruptedException
+    public static BooleanMask3D downscale(BooleanMask3D mask, final int nbPointForTrue) throws InterruptedException
     {
         final TreeMap<Integer, BooleanMask2D> srcMask = mask.mask;
         final TreeMap<Integer, BooleanMask2D> resMask = new TreeMap<Integer, BooleanMask2D>();
@@ -517,11 +510,36 @@ public class BooleanMask3D implements Cloneable
                 resMask.put(Integer.valueOf(Integer.MIN_VALUE), mergeForDownscale(srcMask, -1, nbPointForTrue));
             else
             {
+                final List<Integer> destZs = new ArrayList<Integer>();
+
                 for (int z = minZ; z < maxZ; z += 2)
                 {
-                    final int destZ = z / 2;
-                    resMask.put(Integer.valueOf(destZ), mergeForDownscale(srcMask, destZ, nbPointForTrue));
+                    final Integer destZ = Integer.valueOf(z / 2);
+
+                    // z / 2 rounds toward zero so we can get the same destination twice around 0
+                    if (destZs.isEmpty() || !destZs.get(destZs.size() - 1).equals(destZ))
+                        destZs.add(destZ);
+                }
+
+                final List<Callable<BooleanMask2D>> tasks = new ArrayList<Callable<BooleanMask2D>>(destZs.size());
+
+                // each destination slice uses its own couple of source slices so we can process them in parallel
+                for (final Integer destZ : destZs)
+                {
+                    tasks.add(new Callable<BooleanMask2D>()
+                    {
+                        @Override
+                        public BooleanMask2D call() throws Exception
+                        {
+                            return mergeForDownscale(srcMask, destZ.intValue(), nbPointForTrue);
+                        }
+                    });
                 }
+
+                final List<BooleanMask2D> results = BooleanMaskProcessor.process(tasks);
+
+                for (int i = 0; i < destZs.size(); i++)
+                    resMask.put(destZs.get(i), results.get(i));
             }
         }
 
@@ -564,9 +582,25 @@ public class BooleanMask3D implements Cloneable
             }
             else
             {
-                // put up scaled version for each Z
-                for (Entry<Integer, BooleanMask2D> entry : srcMask.entrySet())
-                    resMask.put(entry.getKey(), entry.getValue().upscale());
+                final List<Callable<BooleanMask2D>> tasks = new ArrayList<Callable<BooleanMask2D>>(srcMask.size());
+
+                for (final BooleanMask2D bm : srcMask.values())
+                {
+                    tasks.add(new Callable<BooleanMask2D>()
+                    {
+                        @Override
+                        public BooleanMask2D call() throws Exception
+                        {
+                            return bm.upscale();
+                        }
+                    });
+                }
+
+                // put up scaled version for each Z (processed in parallel)
+                final Iterator<BooleanMask2D> results = BooleanMaskProcessor.process(tasks).iterator();
+
+                for (Integer z : srcMask.keySet())
+                    resMask.put(z, results.next());
             }
         }
 
@@ -586,7 +620,7 @@ public class BooleanMask3D implements Cloneable
      *        Accepted value: 1 to 4 (default is 3)
      * @throws InterruptedException
      */
-    public static BooleanMask3D downscale2D(BooleanMask3D mask, int nbPointForTrue) throws InterruptedException
+    public static BooleanMask3D downscale2D(BooleanMask3D mask, final int nbPointForTrue) throws InterruptedException
     {
         final TreeMap<Integer, BooleanMask2D> srcMask = mask.mask;
         final TreeMap<Integer, BooleanMask2D> resMask = new TreeMap<Integer, BooleanMask2D>();
@@ -605,9 +639,25 @@ public class BooleanMask3D implements Cloneable
             }
             else
             {
-                // put down scaled version for each Z
-                for (Entry<Integer, BooleanMask2D> entry : srcMask.entrySet())
-                    resMask.put(entry.getKey(), entry.getValue().downscale(nbPointForTrue));
+                final List<Callable<BooleanMask2D>> tasks = new ArrayList<Callable<BooleanMask2D>>(srcMask.size());
+
+                for (final BooleanMask2D bm : srcMask.values())
+                {
+                    tasks.add(new Callable<BooleanMask2D>()
+                    {
+                        @Override
+                        public BooleanMask2D call() throws Exception
+                        {
+                            return bm.downscale(nbPointForTrue);
+                        }
+                    });
+                }
+
+                // put down scaled version for each Z (processed in parallel)
+                final Iterator<BooleanMask2D> results = BooleanMaskProcessor.process(tasks).iterator();
+
+                for (Integer z : srcMask.keySet())
+                    resMask.put(z, results.next());
             }
         }
 
@@ -1222,21 +1272,49 @@ public class BooleanMask3D implements Cloneable
         return result;
     }
 
+    /**
+     * Internal use only: returns a task computing points (or contour points) of the specified 2D slice as
+     * 3D int array.
+     */
+    private static Callable<int[]> createPointsTask(final BooleanMask2D mask2d, final int z, final boolean contour)
+    {
+        return new Callable<int[]>()
+        {
+            @Override
+            public int[] call() throws Exception
+            {
+                if (contour)
+                    return toInt3D(mask2d.getContourPointsAsIntArray(), z);
+
+                return toInt3D(mask2d.getPointsAsIntArray(), z);
+            }
+        };
+    }
+
     /**
      * Return the number of points contained in this boolean mask.
      */
     public int getNumberOfPoints() throws InterruptedException
     {
-        int result = 0;
+        final List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>(mask.size());
 
-        for (BooleanMask2D mask2d : mask.values())
+        for (final BooleanMask2D mask2d : mask.values())
         {
-            if (Thread.interrupted())
-                throw new InterruptedException("BooleanMask.getNumberOfPoints() computation interrupted !");
-
-            result += mask2d.getNumberOfPoints();
+            tasks.add(new Callable<Integer>()
+            {
+                @Override
+                public Integer call() throws Exception
+                {
+                    return Integer.valueOf(mask2d.getNumberOfPoints());
+                }
+            });
         }
 
+        int result = 0;
+
+        for (Integer value : BooleanMaskProcessor.process(tasks))
+            result += value.intValue();
+
         return result;
     }
 
@@ -1262,15 +1340,16 @@ public class BooleanMask3D implements Cloneable
      */
     public int[] getPointsAsIntArray() throws InterruptedException
     {
-        final DynamicArray.Int result = new DynamicArray.Int(8);
+        final List<Callable<int[]>> tasks = new ArrayList<Callable<int[]>>(mask.size());
 
         for (Entry<Integer, BooleanMask2D> entry : mask.entrySet())
-        {
-            if (Thread.interrupted())
-                throw new InterruptedException("BooleanMask.getPointsAsIntArray() computation interrupted !");
+            tasks.add(createPointsTask(entry.getValue(), entry.getKey().intValue(), false));
 
-            result.add(toInt3D(entry.getValue().getPointsAsIntArray(), entry.getKey().intValue()));
-        }
+        final DynamicArray.Int result = new DynamicArray.Int(8);
+
+        // slices are processed in parallel, results come back in Z order
+        for (int[] points : BooleanMaskProcessor.process(tasks))
+            result.add(points);
 
         return result.asArray();
     }
@@ -1309,28 +1388,26 @@ public class BooleanMask3D implements Cloneable
      */
     public int[] getContourPointsAsIntArray() throws InterruptedException
     {
-        final DynamicArray.Int result = new DynamicArray.Int(8);
-
+        final List<Callable<int[]>> tasks = new ArrayList<Callable<int[]>>(mask.size());
         // TODO: fix this method and use real 3D contour point
-        if (mask.size() <= 2)
-        {
-            for (Entry<Integer, BooleanMask2D> entry : mask.entrySet())
-                result.add(toInt3D(entry.getValue().getPointsAsIntArray(), entry.getKey().intValue()));
-        }
-        else
+        final boolean hasInnerSlices = mask.size() > 2;
+        final Integer firstKey = hasInnerSlices ? mask.firstKey() : null;
+        final Integer lastKey = hasInnerSlices ? mask.lastKey() : null;
+
+        for (Entry<Integer, BooleanMask2D> entry : mask.entrySet())
         {
-            final Entry<Integer, BooleanMask2D> firstEntry = mask.firstEntry();
-            final Entry<Integer, BooleanMask2D> lastEntry = mask.lastEntry();
-            final Integer firstKey = firstEntry.getKey();
-            final Integer lastKey = lastEntry.getKey();
+            final Integer key = entry.getKey();
+            // first and last slices give all their points, intermediate slices only give their contour
+            final boolean contour = hasInnerSlices && !key.equals(firstKey) && !key.equals(lastKey);
 
-            result.add(toInt3D(firstEntry.getValue().getPointsAsIntArray(), firstKey.intValue()));
+            tasks.add(createPointsTask(entry.getValue(), key.intValue(), contour));
+        }
 
-            for (Entry<Integer, BooleanMask2D> entry : mask.subMap(firstKey, false, lastKey, false).entrySet())
-                result.add(toInt3D(entry.getValue().getContourPointsAsIntArray(), entry.getKey().intValue()));
+        final DynamicArray.Int result = new DynamicArray.Int(8);
 
-            result.add(toInt3D(lastEntry.getValue().getPointsAsIntArray(), lastKey.intValue()));
-        }
+        // slices are processed in parallel, results come back in Z order
+        for (int[] points : BooleanMaskProcessor.process(tasks))
+            result.add(points);
 
         return result.asArray();
     }
@@ -1514,492 +1591,31 @@ public class BooleanMask3D implements Cloneable
     }
 
     /**
-     * Extract masks in the specified sequence though its connected components (8-connectivity is
-     * considered in 2D, and 26-connectivity in 3D). The algorithm uses a fast single-pass sweeping
-     * technique that builds a list of intermediate connected components which are eventually fused
-     * according to their connectivity.<br>
-     * NB: in 3D, the algorithm caches some intermediate buffers to disk to save RAM
+     * Extract connected components of the mask (26-connectivity) using a union-find labeling (see
+     * {@link ConnectedComponentLabeling}).
      * 
      * @return List of BooleanMask3D instances (each connected component).
+     * @throws InterruptedException
      */
     public List<BooleanMask3D> getComponents() throws InterruptedException
     {
-        int width = bounds.sizeX;
-        int height = bounds.sizeY;
-        int slice = width * height;
-        int depth = bounds.sizeZ;
-
-        final Map<Integer, ConnectedComponent> ccs = new HashMap<>();
-        final Map<Integer, ROI3DArea> roiMap = new HashMap<>();
-
-        int[] neighborLabels = new int[13];
-        int nbNeighbors = 0;
-
-        // temporary label buffer
-        final Sequence labelSequence = new Sequence();
-        boolean virtual = false;
-
-        int[] _labelsAbove = null;
-
-        // first image pass: naive labeling with simple backward neighborhood
-        int highestKnownLabel = 0;
-
-        for (int z = 0; z < depth; z++)
-        {
-            int[] _labelsHere;
-
-            try
-            {
-                _labelsHere = new int[slice];
-            }
-            catch (OutOfMemoryError error)
-            {
-                // not enough memory --> pass in virtual mode
-                if (!virtual)
-                {
-                    labelSequence.setVolatile(true);
-                    virtual = true;
-
-                    // re-allocate (we should have enough memory now)
-                    _labelsHere = new int[slice];
-                }
-                else
-                    throw error;
-            }
-
-            // if (is3D) System.out.println("[Label Extractor] First pass (Z" + z + ")");
-
-            BooleanMask2D inputData = getMask2D(z);
-
-            for (int y = 0, maskY = bounds.y, inOffset = 0; y < height; y++, maskY++)
-            {
-                if (Thread.currentThread().isInterrupted())
-                    return new ArrayList<>();
-
-                for (int x = 0, maskX = bounds.x; x < width; x++, maskX++, inOffset++)
-                {
-                    boolean currentImageValue = inputData.contains(maskX, maskY);
-
-                    // do not process the current pixel if:
-                    // - extractUserValue is true and pixelEqualsUserValue is false
-                    // - extractUserValue is false and pixelEqualsUserValue is true
-
-                    if (!currentImageValue)
-                        continue;
-
-                    // from here on, the current pixel should be labeled
-
-                    // -> look for existing labels in its neighborhood
-
-                    // 1) define the neighborhood of interest here
-                    // NB: this is a single pass method, so backward neighborhood is sufficient
-
-                    // legend:
-                    // e = edge
-                    // x = current pixel
-                    // n = valid neighbor
-                    // . = other neighbor
-
-                    if (z == 0)
-                    {
-                        if (y == 0)
-                        {
-                            if (x == 0)
-                            {
-                                // e e e
-                                // e x .
-                                // e . .
-
-                                // do nothing
-                            }
-                            else
-                            {
-                                // e e e
-                                // n x .
-                                // . . .
-
-                                neighborLabels[0] = _labelsHere[inOffset - 1];
-                                nbNeighbors = 1;
-                            }
-                        }
-                        else
-                        {
-                            int north = inOffset - width;
-
-                            if (x == 0)
-                            {
-                                // e n n
-                                // e x .
-                                // e . .
-
-                                neighborLabels[0] = _labelsHere[north];
-                                neighborLabels[1] = _labelsHere[north + 1];
-                                nbNeighbors = 2;
-                            }
-                            else if (x == width - 1)
-                            {
-                                // n n e
-                                // n x e
-                                // . . e
-
-                                neighborLabels[0] = _labelsHere[north - 1];
-                                neighborLabels[1] = _labelsHere[north];
-                                neighborLabels[2] = _labelsHere[inOffset - 1];
-                                nbNeighbors = 3;
-                            }
-                            else
-                            {
-                                // n n n
-                                // n x .
-                                // . . .
-
-                                neighborLabels[0] = _labelsHere[north - 1];
-                                neighborLabels[1] = _labelsHere[north];
-                                neighborLabels[2] = _labelsHere[north + 1];
-                                neighborLabels[3] = _labelsHere[inOffset - 1];
-                                nbNeighbors = 4;
-                            }
-                        }
-                    }
-                    else
-                    {
-                        if (y == 0)
-                        {
-                            int south = inOffset + width;
-
-                            if (x == 0)
-                            {
-                                // e e e | e e e
-                                // e n n | e x .
-                                // e n n | e . .
-
-                                neighborLabels[0] = _labelsAbove[inOffset];
-                                neighborLabels[1] = _labelsAbove[inOffset + 1];
-                                neighborLabels[2] = _labelsAbove[south];
-                                neighborLabels[3] = _labelsAbove[south + 1];
-                                nbNeighbors = 4;
-                            }
-                            else if (x == width - 1)
-                            {
-                                // e e e | e e e
-                                // n n e | n x e
-                                // n n e | . . e
-
-                                neighborLabels[0] = _labelsAbove[inOffset - 1];
-                                neighborLabels[1] = _labelsAbove[inOffset];
-                                neighborLabels[2] = _labelsAbove[south - 1];
-                                neighborLabels[3] = _labelsAbove[south];
-                                neighborLabels[4] = _labelsHere[inOffset - 1];
-                                nbNeighbors = 5;
-                            }
-                            else
-                            {
-                                // e e e | e e e
-                                // n n n | n x .
-                                // n n n | . . .
-
-                                neighborLabels[0] = _labelsAbove[inOffset - 1];
-                                neighborLabels[1] = _labelsAbove[inOffset];
-                                neighborLabels[2] = _labelsAbove[inOffset + 1];
-                                neighborLabels[3] = _labelsAbove[south - 1];
-                                neighborLabels[4] = _labelsAbove[south];
-                                neighborLabels[5] = _labelsAbove[south + 1];
-                                neighborLabels[6] = _labelsHere[inOffset - 1];
-                                nbNeighbors = 7;
-                            }
-                        }
-                        else if (y == height - 1)
-                        {
-                            int north = inOffset - width;
-
-                            if (x == 0)
-                            {
-                                // e n n | e n n
-                                // e n n | e x .
-                                // e e e | e e e
-
-                                neighborLabels[0] = _labelsAbove[north];
-                                neighborLabels[1] = _labelsAbove[north + 1];
-                                neighborLabels[2] = _labelsAbove[inOffset];
-                                neighborLabels[3] = _labelsAbove[inOffset + 1];
-                                neighborLabels[4] = _labelsHere[north];
-                                neighborLabels[5] = _labelsHere[north + 1];
-                                nbNeighbors = 6;
-                            }
-                            else if (x == width - 1)
-                            {
-                                // n n e | n n e
-                                // n n e | n x e
-                                // e e e | e e e
-
-                                neighborLabels[0] = _labelsAbove[north - 1];
-                                neighborLabels[1] = _labelsAbove[north];
-                                neighborLabels[2] = _labelsAbove[inOffset - 1];
-                                neighborLabels[3] = _labelsAbove[inOffset];
-                                neighborLabels[4] = _labelsHere[north - 1];
-                                neighborLabels[5] = _labelsHere[north];
-                                neighborLabels[6] = _labelsHere[inOffset - 1];
-                                nbNeighbors = 7;
-                            }
-                            else
-                            {
-                                // n n n | n n n
-                                // n n n | n x .
-                                // e e e | e e e
-
-                                neighborLabels[0] = _labelsAbove[north - 1];
-                                neighborLabels[1] = _labelsAbove[north];
-                                neighborLabels[2] = _labelsAbove[north + 1];
-                                neighborLabels[3] = _labelsAbove[inOffset - 1];
-                                neighborLabels[4] = _labelsAbove[inOffset];
-                                neighborLabels[5] = _labelsAbove[inOffset + 1];
-                                neighborLabels[6] = _labelsHere[north - 1];
-                                neighborLabels[7] = _labelsHere[north];
-                                neighborLabels[8] = _labelsHere[north + 1];
-                                neighborLabels[9] = _labelsHere[inOffset - 1];
-                                nbNeighbors = 10;
-                            }
-                        }
-                        else
-                        {
-                            int north = inOffset - width;
-                            int south = inOffset + width;
-
-                            if (x == 0)
-                            {
-                                // e n n | e n n
-                                // e n n | e x .
-                                // e n n | e . .
-
-                                neighborLabels[0] = _labelsAbove[north];
-                                neighborLabels[1] = _labelsAbove[north + 1];
-                                neighborLabels[2] = _labelsAbove[inOffset];
-                                neighborLabels[3] = _labelsAbove[inOffset + 1];
-                                neighborLabels[4] = _labelsAbove[south];
-                                neighborLabels[5] = _labelsAbove[south + 1];
-                                neighborLabels[6] = _labelsHere[north];
-                                neighborLabels[7] = _labelsHere[north + 1];
-                                nbNeighbors = 8;
-                            }
-                            else if (x == width - 1)
-                            {
-                                int northwest = north - 1;
-                                int west = inOffset - 1;
-
-                                // n n e | n n e
-                                // n n e | n x e
-                                // n n e | . . e
-
-                                neighborLabels[0] = _labelsAbove[northwest];
-                                neighborLabels[1] = _labelsAbove[north];
-                                neighborLabels[2] = _labelsAbove[west];
-                                neighborLabels[3] = _labelsAbove[inOffset];
-                                neighborLabels[4] = _labelsAbove[south - 1];
-                                neighborLabels[5] = _labelsAbove[south];
-                                neighborLabels[6] = _labelsHere[northwest];
-                                neighborLabels[7] = _labelsHere[north];
-                                neighborLabels[8] = _labelsHere[west];
-                                nbNeighbors = 9;
-                            }
-                            else
-                            {
-                                int northwest = north - 1;
-                                int west = inOffset - 1;
-                                int northeast = north + 1;
-                                int southwest = south - 1;
-                                int southeast = south + 1;
-
-                                // n n n | n n n
-                                // n n n | n x .
-                                // n n n | . . .
-
-                                neighborLabels[0] = _labelsAbove[northwest];
-                                neighborLabels[1] = _labelsAbove[north];
-                                neighborLabels[2] = _labelsAbove[northeast];
-                                neighborLabels[3] = _labelsAbove[west];
-                                neighborLabels[4] = _labelsAbove[inOffset];
-                                neighborLabels[5] = _labelsAbove[inOffset + 1];
-                                neighborLabels[6] = _labelsAbove[southwest];
-                                neighborLabels[7] = _labelsAbove[south];
-                                neighborLabels[8] = _labelsAbove[southeast];
-                                neighborLabels[9] = _labelsHere[northwest];
-                                neighborLabels[10] = _labelsHere[north];
-                                neighborLabels[11] = _labelsHere[northeast];
-                                neighborLabels[12] = _labelsHere[west];
-                                nbNeighbors = 13;
-                            }
-                        }
-                    }
-
-                    // 2) the neighborhood is ready, move to the labeling step
-
-                    // to avoid creating too many labels and fuse them later on,
-                    // find the minimum non-zero label in the neighborhood
-                    // and assign that minimum label right now
-
-                    int currentLabel = Integer.MAX_VALUE;
-
-                    for (int i = 0; i < nbNeighbors; i++)
-                    {
-                        int neighborLabel = neighborLabels[i];
-
-                        // "zero" neighbors belong to the background...
-                        if (neighborLabel == 0)
-                            continue;
-
-                        if (!currentImageValue)
-                            continue;
-
-                        // here, the neighbor label is valid
-                        // => check if it is lower
-                        if (neighborLabel < currentLabel)
-                        {
-                            currentLabel = neighborLabel;
-                        }
-                    }
-
-                    if (currentLabel == Integer.MAX_VALUE)
-                    {
-                        // currentLabel didn't change
-                        // => there is no lower neighbor
-                        // => register a new connected component
-                        highestKnownLabel++;
-                        currentLabel = highestKnownLabel;
-                        ccs.put(currentLabel, new ConnectedComponent(currentLabel));
-                    }
-                    else
-                    {
-                        // currentLabel has been modified
-                        // -> browse the neighborhood again
-                        // --> fuse high labels with low labels
-
-                        ConnectedComponent currentCC = ccs.get(currentLabel);
-                        int currentTargetLabel = currentCC.getTargetLabel();
-
-                        for (int i = 0; i < nbNeighbors; i++)
-                        {
-                            int neighborLabel = neighborLabels[i];
-
-                            if (neighborLabel == 0)
-                                continue; // no object in this pixel
-
-                            ConnectedComponent neighborCC = ccs.get(neighborLabel);
-                            int neighborTargetLabel = neighborCC.getTargetLabel();
-
-                            if (neighborTargetLabel == currentTargetLabel)
-                                continue;
-
-                            if (!currentImageValue)
-                                continue;
-
-                            // fuse the highest with the lowest
-                            if (neighborTargetLabel > currentTargetLabel)
-                            {
-                                ccs.get(neighborTargetLabel).targetComponent = ccs.get(currentTargetLabel);
-                            }
-                            else
-                            {
-                                ccs.get(currentTargetLabel).targetComponent = ccs.get(neighborTargetLabel);
-                            }
-                        }
-                    }
-
-                    // -> store this label in the labeled image
-                    if (currentLabel != 0)
-                        _labelsHere[inOffset] = currentLabel;
-                }
-            }
-
-            final IcyBufferedImage img = new IcyBufferedImage(width, height, _labelsHere);
-            // pass to volatile if needed
-            if (virtual)
-                img.setVolatile(true);
-
-            // store image in label sequence
-            labelSequence.setImage(0, z, img);
-            // store labels from previous slice
-            _labelsAbove = _labelsHere;
-        }
-
-        // for debugging
-        // Sequence preLabels = new Sequence();
-        // preLabels.addImage(new IcyBufferedImage(width, height, new int[][] { _labels[0] }));
-        // preLabels.getColorModel().setColorMap(0, new FireColorMap(), true);
-        // addSequence(preLabels);
-
-        // end of the first pass, all pixels have a label
-        // (though might not be unique within a given component)
-
-        if (Thread.currentThread().isInterrupted())
+        if (bounds.isEmpty())
             return new ArrayList<BooleanMask3D>();
 
-        // fusion strategy: fuse higher labels with lower ones
-        // "highestKnownLabel" holds the highest known label
-        // -> loop downwards from there to accumulate object size recursively
-
-        int finalLabel = 0;
+        final ConnectedComponentLabeling.Labels labels = ConnectedComponentLabeling.label(this,
+                ConnectedComponentLabeling.CONNECTIVITY_26);
+        final int numComponent = labels.getNumberOfComponents();
+        final List<BooleanMask3D> result = new ArrayList<BooleanMask3D>(numComponent);
 
-        for (int currentLabel = highestKnownLabel; currentLabel > 0; currentLabel--)
+        for (int label = 1; label <= numComponent; label++)
         {
-            ConnectedComponent currentCC = ccs.get(currentLabel);
+            // check for interruption from time to time as this can be a long process
+            if (((label & 0xFF) == 0xFF) && Thread.interrupted())
+                throw new InterruptedException("BooleanMask.getComponents() process interrupted.");
 
-            // if the target label is higher than or equal to the current label
-            if (currentCC.targetLabel >= currentLabel)
-            {
-                // label has same labelValue and targetLabelValue
-                // -> it cannot be fused to anything
-                // -> this is a terminal label
-
-                // -> assign its final labelValue (for the final image labeling pass)
-                finalLabel++;
-                currentCC.targetLabel = finalLabel;
-            }
-            else
-            {
-                // the current label should be fused to targetLabel
-                currentCC.targetComponent = ccs.get(currentCC.targetLabel);
-            }
+            result.add(labels.getMask3D(label));
         }
 
-        // 3) second image pass: replace all labels by their final values
-
-        finalPass: for (int z = 0, zMask = 0; z < depth; z++, zMask++)
-        {
-            // get labels for that slice
-            final int[] _labelsHere = (int[]) labelSequence.getDataXY(0, z, 0);
-            for (int j = 0, jMask = bounds.y, offset = 0; j < height; j++, jMask++)
-            {
-                if (Thread.currentThread().isInterrupted())
-                    break finalPass;
-
-                for (int i = 0, iMask = bounds.x; i < width; i++, iMask++, offset++)
-                {
-                    int targetLabel = _labelsHere[offset];
-
-                    if (targetLabel == 0)
-                        continue;
-
-                    // if a fusion was indicated, retrieve the final label value
-                    targetLabel = ccs.get(targetLabel).getTargetLabel();
-
-                    // store the current pixel in the component
-                    if (!roiMap.containsKey(targetLabel))
-                    {
-                        ROI3DArea roi3D = new ROI3DArea();
-                        roi3D.setName("" + targetLabel);
-                        roiMap.put(targetLabel, roi3D);
-                    }
-                    roiMap.get(targetLabel).addPoint(iMask, jMask, zMask);
-                }
-            }
-        }
-
-        final List<BooleanMask3D> result = new ArrayList<>();
-
-        for (ROI3DArea roi : roiMap.values())
-            result.add(roi.getBooleanMask(true));
-
         return result;
     }
-
 }
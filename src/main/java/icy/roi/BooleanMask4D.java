@@ -9,8 +9,11 @@ import icy.type.rectangle.Rectangle3D;
 import icy.type.rectangle.Rectangle4D;
 
 import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
 
 /**
  * Class to define a 4D boolean mask region and make basic boolean operation between masks.<br>
@@ -20,6 +23,12 @@ import java.util.TreeMap;
  */
 public class BooleanMask4D
 {
+    // Internal use only
+    private static final int OP_UNION = 0;
+    private static final int OP_INTERSECTION = 1;
+    private static final int OP_EXCLUSIVE_UNION = 2;
+    private static final int OP_SUBTRACTION = 3;
+
     // Internal use only
     private static BooleanMask3D doUnion3D(BooleanMask3D m1, BooleanMask3D m2) throws InterruptedException
     {
@@ -81,6 +90,56 @@ public class BooleanMask4D
         return BooleanMask3D.getSubtraction(m1, m2);
     }
 
+    // Internal use only
+    private static BooleanMask3D doOperation3D(BooleanMask3D m1, BooleanMask3D m2, int op) throws InterruptedException
+    {
+        switch (op)
+        {
+            default:
+            case OP_UNION:
+                return doUnion3D(m1, m2);
+            case OP_INTERSECTION:
+                return doIntersection3D(m1, m2);
+            case OP_EXCLUSIVE_UNION:
+                return doExclusiveUnion3D(m1, m2);
+            case OP_SUBTRACTION:
+                return doSubtraction3D(m1, m2);
+        }
+    }
+
+    /**
+     * Internal use only: process the given boolean operation on each T slice of the specified bounds.<br>
+     * Slices are independent so they are processed in parallel.
+     */
+    private static BooleanMask3D[] doSliceOperation(BooleanMask4D mask1, BooleanMask4D mask2,
+            Rectangle4D.Integer bounds, final int op) throws InterruptedException
+    {
+        final List<Callable<BooleanMask3D>> tasks = new ArrayList<Callable<BooleanMask3D>>(bounds.sizeT);
+
+        for (int t = 0; t < bounds.sizeT; t++)
+        {
+            final BooleanMask3D m1 = mask1.getMask3D(t + bounds.t);
+            final BooleanMask3D m2 = mask2.getMask3D(t + bounds.t);
+
+            // nothing to do
+            if ((m1 == null) && (m2 == null))
+                tasks.add(null);
+            else
+            {
+                tasks.add(new Callable<BooleanMask3D>()
+                {
+                    @Override
+                    public BooleanMask3D call() throws Exception
+                    {
+                        return doOperation3D(m1, m2, op);
+                    }
+                });
+            }
+        }
+
+        return BooleanMaskProcessor.process(tasks).toArray(new BooleanMask3D[bounds.sizeT]);
+    }
+
     /**
      * Build resulting mask from union of the mask1 and mask2:
      * 
@@ -131,15 +190,7 @@ public class BooleanMask4D
             }
             else
             {
-                mask = new BooleanMask3D[bounds.sizeT];
-
-                for (int t = 0; t < bounds.sizeT; t++)
-                {
-                    final BooleanMask3D m2d1 = mask1.getMask3D(t + bounds.t);
-                    final BooleanMask3D m2d2 = mask2.getMask3D(t + bounds.t);
-
-                    mask[t] = doUnion3D(m2d1, m2d2);
-                }
+                mask = doSliceOperation(mask1, mask2, bounds, OP_UNION);
             }
 
             return new BooleanMask4D(bounds, mask);
@@ -193,15 +244,7 @@ public class BooleanMask4D
             }
             else
             {
-                mask = new BooleanMask3D[bounds.sizeT];
-
-                for (int t = 0; t < bounds.sizeT; t++)
-                {
-                    final BooleanMask3D m2d1 = mask1.getMask3D(t + bounds.t);
-                    final BooleanMask3D m2d2 = mask2.getMask3D(t + bounds.t);
-
-                    mask[t] = doIntersection3D(m2d1, m2d2);
-                }
+                mask = doSliceOperation(mask1, mask2, bounds, OP_INTERSECTION);
             }
 
             return new BooleanMask4D(bounds, mask);
@@ -260,15 +303,7 @@ public class BooleanMask4D
             }
             else
             {
-                mask = new BooleanMask3D[bounds.sizeT];
-
-                for (int t = 0; t < bounds.sizeT; t++)
-                {
-                    final BooleanMask3D m2d1 = mask1.getMask3D(t + bounds.t);
-                    final BooleanMask3D m2d2 = mask2.getMask3D(t + bounds.t);
-
-                    mask[t] = doExclusiveUnion3D(m2d1, m2d2);
-                }
+                mask = doSliceOperation(mask1, mask2, bounds, OP_EXCLUSIVE_UNION);
             }
 
             return new BooleanMask4D(bounds, mask);
@@ -325,15 +360,7 @@ public class BooleanMask4D
             }
             else
             {
-                mask = new BooleanMask3D[bounds.sizeT];
-
-                for (int t = 0; t < bounds.sizeT; t++)
-                {
-                    final BooleanMask3D m2d1 = mask1.getMask3D(t + bounds.t);
-                    final BooleanMask3D m2d2 = mask2.getMask3D(t + bounds.t);
-
-                    mask[t] = doSubtraction3D(m2d1, m2d2);
-                }
+                mask = doSliceOperation(mask1, mask2, bounds, OP_SUBTRACTION);
             }
 
             return new BooleanMask4D(bounds, mask);
@@ -961,43 +988,73 @@ public class BooleanMask4D
      */
     public int[] getContourPointsAsIntArray() throws InterruptedException
     {
-        final DynamicArray.Int result = new DynamicArray.Int(8);
-
+        final List<Callable<int[]>> tasks = new ArrayList<Callable<int[]>>(mask.size());
         // perimeter = first slice volume + inter slices perimeter + last slice volume
         // TODO: fix this method and use real 4D contour point
-        if (mask.size() <= 2)
-        {
-            for (Entry<Integer, BooleanMask3D> entry : mask.entrySet())
-                result.add(toInt4D(entry.getValue().getPointsAsIntArray(), entry.getKey().intValue()));
-        }
-        else
+        final boolean hasInnerSlices = mask.size() > 2;
+        final Integer firstKey = hasInnerSlices ? mask.firstKey() : null;
+        final Integer lastKey = hasInnerSlices ? mask.lastKey() : null;
+
+        for (Entry<Integer, BooleanMask3D> entry : mask.entrySet())
         {
-            final Entry<Integer, BooleanMask3D> firstEntry = mask.firstEntry();
-            final Entry<Integer, BooleanMask3D> lastEntry = mask.lastEntry();
-            final Integer firstKey = firstEntry.getKey();
-            final Integer lastKey = lastEntry.getKey();
+            final Integer key = entry.getKey();
+            final boolean contour = hasInnerSlices && !key.equals(firstKey) && !key.equals(lastKey);
 
-            result.add(toInt4D(firstEntry.getValue().getPointsAsIntArray(), firstKey.intValue()));
+            tasks.add(createPointsTask(entry.getValue(), key.intValue(), contour));
+        }
 
-            for (Entry<Integer, BooleanMask3D> entry : mask.subMap(firstKey, false, lastKey, false).entrySet())
-                result.add(toInt4D(entry.getValue().getContourPointsAsIntArray(), entry.getKey().intValue()));
+        final DynamicArray.Int result = new DynamicArray.Int(8);
 
-            result.add(toInt4D(lastEntry.getValue().getPointsAsIntArray(), lastKey.intValue()));
-        }
+        // slices are processed in parallel, results come back in T order
+        for (int[] points : BooleanMaskProcessor.process(tasks))
+            result.add(points);
 
         return result.asArray();
     }
 
+    /**
+     * Internal use only: returns a task computing points (or contour points) of the specified 3D slice as
+     * 4D int array.
+     */
+    private static Callable<int[]> createPointsTask(final BooleanMask3D mask3d, final int t, final boolean contour)
+    {
+        return new Callable<int[]>()
+        {
+            @Override
+            public int[] call() throws Exception
+            {
+                if (contour)
+                    return toInt4D(mask3d.getContourPointsAsIntArray(), t);
+
+                return toInt4D(mask3d.getPointsAsIntArray(), t);
+            }
+        };
+    }
+
     /**
      * Return the number of points contained in this boolean mask.
      * @throws InterruptedException 
      */
     public int getNumberOfPoints() throws InterruptedException
     {
+        final List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>(mask.size());
+
+        for (final BooleanMask3D mask3d : mask.values())
+        {
+            tasks.add(new Callable<Integer>()
+            {
+                @Override
+                public Integer call() throws Exception
+                {
+                    return Integer.valueOf(mask3d.getNumberOfPoints());
+                }
+            });
+        }
+
         int result = 0;
 
-        for (BooleanMask3D mask3d : mask.values())
-            result += mask3d.getNumberOfPoints();
+        for (Integer value : BooleanMaskProcessor.process(tasks))
+            result += value.intValue();
 
         return result;
     }
@@ -1025,10 +1082,16 @@ public class BooleanMask4D
      */
     public int[] getPointsAsIntArray() throws InterruptedException
     {
-        final DynamicArray.Int result = new DynamicArray.Int(8);
+        final List<Callable<int[]>> tasks = new ArrayList<Callable<int[]>>(mask.size());
 
         for (Entry<Integer, BooleanMask3D> entry : mask.entrySet())
-            result.add(toInt4D(entry.getValue().getPointsAsIntArray(), entry.getKey().intValue()));
+            tasks.add(createPointsTask(entry.getValue(), entry.getKey().intValue(), false));
+
+        final DynamicArray.Int result = new DynamicArray.Int(8);
+
+        // slices are processed in parallel, results come back in T order
+        for (int[] points : BooleanMaskProcessor.process(tasks))
+            result.add(points);
 
         return result.asArray();
     }
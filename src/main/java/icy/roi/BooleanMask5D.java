@@ -10,8 +10,11 @@ import icy.type.rectangle.Rectangle4D;
 import icy.type.rectangle.Rectangle5D;
 
 import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
 
 /**
  * Class to define a 5D boolean mask region and make basic boolean operation between masks.<br>
@@ -21,6 +24,12 @@ import java.util.TreeMap;
  */
 public class BooleanMask5D
 {
+    // Internal use only
+    private static final int OP_UNION = 0;
+    private static final int OP_INTERSECTION = 1;
+    private static final int OP_EXCLUSIVE_UNION = 2;
+    private static final int OP_SUBTRACTION = 3;
+
     // Internal use only
     private static BooleanMask4D doUnion4D(BooleanMask4D m1, BooleanMask4D m2) throws InterruptedException
     {
@@ -82,6 +91,56 @@ public class BooleanMask5D
         return BooleanMask4D.getSubtraction(m1, m2);
     }
 
+    // Internal use only
+    private static BooleanMask4D doOperation4D(BooleanMask4D m1, BooleanMask4D m2, int op) throws InterruptedException
+    {
+        switch (op)
+        {
+            default:
+            case OP_UNION:
+                return doUnion4D(m1, m2);
+            case OP_INTERSECTION:
+                return doIntersection4D(m1, m2);
+            case OP_EXCLUSIVE_UNION:
+                return doExclusiveUnion4D(m1, m2);
+            case OP_SUBTRACTION:
+                return doSubtraction4D(m1, m2);
+        }
+    }
+
+    /**
+     * Internal use only: process the given boolean operation on each C slice of the specified bounds.<br>
+     * Slices are independent so they are processed in parallel.
+     */
+    private static BooleanMask4D[] doSliceOperation(BooleanMask5D mask1, BooleanMask5D mask2,
+            Rectangle5D.Integer bounds, final int op) throws InterruptedException
+    {
+        final List<Callable<BooleanMask4D>> tasks = new ArrayList<Callable<BooleanMask4D>>(bounds.sizeC);
+
+        for (int c = 0; c < bounds.sizeC; c++)
+        {
+            final BooleanMask4D m1 = mask1.getMask4D(c + bounds.c);
+            final BooleanMask4D m2 = mask2.getMask4D(c + bounds.c);
+
+            // nothing to do
+            if ((m1 == null) && (m2 == null))
+                tasks.add(null);
+            else
+            {
+                tasks.add(new Callable<BooleanMask4D>()
+                {
+                    @Override
+                    public BooleanMask4D call() throws Exception
+                    {
+                        return doOperation4D(m1, m2, op);
+                    }
+                });
+            }
+        }
+
+        return BooleanMaskProcessor.process(tasks).toArray(new BooleanMask4D[bounds.sizeC]);
+    }
+
     /**
      * Build resulting mask from union of the mask1 and mask2:
      * 
@@ -132,15 +191,7 @@ public class BooleanMask5D
             }
             else
             {
-                mask = new BooleanMask4D[bounds.sizeT];
-
-                for (int c = 0; c < bounds.sizeC; c++)
-                {
-                    final BooleanMask4D m2d1 = mask1.getMask4D(c + bounds.c);
-                    final BooleanMask4D m2d2 = mask2.getMask4D(c + bounds.c);
-
-                    mask[c] = doUnion4D(m2d1, m2d2);
-                }
+                mask = doSliceOperation(mask1, mask2, bounds, OP_UNION);
             }
 
             return new BooleanMask5D(bounds, mask);
@@ -194,15 +245,7 @@ public class BooleanMask5D
             }
             else
             {
-                mask = new BooleanMask4D[bounds.sizeT];
-
-                for (int c = 0; c < bounds.sizeC; c++)
-                {
-                    final BooleanMask4D m2d1 = mask1.getMask4D(c + bounds.c);
-                    final BooleanMask4D m2d2 = mask2.getMask4D(c + bounds.c);
-
-                    mask[c] = doIntersection4D(m2d1, m2d2);
-                }
+                mask = doSliceOperation(mask1, mask2, bounds, OP_INTERSECTION);
             }
 
             return new BooleanMask5D(bounds, mask);
@@ -261,15 +304,7 @@ public class BooleanMask5D
             }
             else
             {
-                mask = new BooleanMask4D[bounds.sizeT];
-
-                for (int c = 0; c < bounds.sizeC; c++)
-                {
-                    final BooleanMask4D m2d1 = mask1.getMask4D(c + bounds.c);
-                    final BooleanMask4D m2d2 = mask2.getMask4D(c + bounds.c);
-
-                    mask[c] = doExclusiveUnion4D(m2d1, m2d2);
-                }
+                mask = doSliceOperation(mask1, mask2, bounds, OP_EXCLUSIVE_UNION);
             }
 
             return new BooleanMask5D(bounds, mask);
@@ -326,15 +361,7 @@ public class BooleanMask5D
             }
             else
             {
-                mask = new BooleanMask4D[bounds.sizeC];
-
-                for (int c = 0; c < bounds.sizeC; c++)
-                {
-                    final BooleanMask4D m2d1 = mask1.getMask4D(c + bounds.c);
-                    final BooleanMask4D m2d2 = mask2.getMask4D(c + bounds.c);
-
-                    mask[c] = doSubtraction4D(m2d1, m2d2);
-                }
+                mask = doSliceOperation(mask1, mask2, bounds, OP_SUBTRACTION);
             }
 
             return new BooleanMask5D(bounds, mask);
@@ -1048,43 +1075,73 @@ public class BooleanMask5D
      */
     public int[] getContourPointsAsIntArray() throws InterruptedException
     {
-        final DynamicArray.Int result = new DynamicArray.Int(8);
-
+        final List<Callable<int[]>> tasks = new ArrayList<Callable<int[]>>(mask.size());
         // perimeter = first slice volume + inter slices perimeter + last slice volume
         // TODO: fix this method and use real 5D contour point
-        if (mask.size() <= 2)
-        {
-            for (Entry<Integer, BooleanMask4D> entry : mask.entrySet())
-                result.add(toInt5D(entry.getValue().getPointsAsIntArray(), entry.getKey().intValue()));
-        }
-        else
+        final boolean hasInnerSlices = mask.size() > 2;
+        final Integer firstKey = hasInnerSlices ? mask.firstKey() : null;
+        final Integer lastKey = hasInnerSlices ? mask.lastKey() : null;
+
+        for (Entry<Integer, BooleanMask4D> entry : mask.entrySet())
         {
-            final Entry<Integer, BooleanMask4D> firstEntry = mask.firstEntry();
-            final Entry<Integer, BooleanMask4D> lastEntry = mask.lastEntry();
-            final Integer firstKey = firstEntry.getKey();
-            final Integer lastKey = lastEntry.getKey();
+            final Integer key = entry.getKey();
+            final boolean contour = hasInnerSlices && !key.equals(firstKey) && !key.equals(lastKey);
 
-            result.add(toInt5D(firstEntry.getValue().getPointsAsIntArray(), firstKey.intValue()));
+            tasks.add(createPointsTask(entry.getValue(), key.intValue(), contour));
+        }
 
-            for (Entry<Integer, BooleanMask4D> entry : mask.subMap(firstKey, false, lastKey, false).entrySet())
-                result.add(toInt5D(entry.getValue().getContourPointsAsIntArray(), entry.getKey().intValue()));
+        final DynamicArray.Int result = new DynamicArray.Int(8);
 
-            result.add(toInt5D(lastEntry.getValue().getPointsAsIntArray(), lastKey.intValue()));
-        }
+        // slices are processed in parallel, results come back in C order
+        for (int[] points : BooleanMaskProcessor.process(tasks))
+            result.add(points);
 
         return result.asArray();
     }
 
+    /**
+     * Internal use only: returns a task computing points (or contour points) of the specified 4D slice as
+     * 5D int array.
+     */
+    private static Callable<int[]> createPointsTask(final BooleanMask4D mask4d, final int c, final boolean contour)
+    {
+        return new Callable<int[]>()
+        {
+            @Override
+            public int[] call() throws Exception
+            {
+                if (contour)
+                    return toInt5D(mask4d.getContourPointsAsIntArray(), c);
+
+                return toInt5D(mask4d.getPointsAsIntArray(), c);
+            }
+        };
+    }
+
     /**
      * Return the number of points contained in this boolean mask.
      * @throws InterruptedException 
      */
     public int getNumberOfPoints() throws InterruptedException
     {
+        final List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>(mask.size());
+
+        for (final BooleanMask4D mask4d : mask.values())
+        {
+            tasks.add(new Callable<Integer>()
+            {
+                @Override
+                public Integer call() throws Exception
+                {
+                    return Integer.valueOf(mask4d.getNumberOfPoints());
+                }
+            });
+        }
+
         int result = 0;
 
-        for (BooleanMask4D mask4d : mask.values())
-            result += mask4d.getNumberOfPoints();
+        for (Integer value : BooleanMaskProcessor.process(tasks))
+            result += value.intValue();
 
         return result;
     }
@@ -1113,10 +1170,16 @@ public class BooleanMask5D
      */
     public int[] getPointsAsIntArray() throws InterruptedException
     {
-        final DynamicArray.Int result = new DynamicArray.Int(8);
+        final List<Callable<int[]>> tasks = new ArrayList<Callable<int[]>>(mask.size());
 
         for (Entry<Integer, BooleanMask4D> entry : mask.entrySet())
-            result.add(toInt5D(entry.getValue().getPointsAsIntArray(), entry.getKey().intValue()));
+            tasks.add(createPointsTask(entry.getValue(), entry.getKey().intValue(), false));
+
+        final DynamicArray.Int result = new DynamicArray.Int(8);
+
+        // slices are processed in parallel, results come back in C order
+        for (int[] points : BooleanMaskProcessor.process(tasks))
+            result.add(points);
 
         return result.asArray();
     }
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ *
+ * This file is part of Icy.
+ *
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.roi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import icy.system.SystemUtil;
+import icy.system.thread.Processor;
+
+/**
+ * Internal helper used by {@link BooleanMask3D}, {@link BooleanMask4D} and {@link BooleanMask5D} to process
+ * independent slice operations in parallel.<br>
+ * Tasks submitted from a worker thread (nested 5D -> 4D -> 3D operations) are executed directly in the calling
+ * thread so the pool can never dead lock on itself.
+ * 
+ * @author Stephane
+ */
+class BooleanMaskProcessor
+{
+    protected static final Processor processor;
+    protected static final ThreadLocal<Boolean> worker = new ThreadLocal<Boolean>();
+
+    static
+    {
+        processor = new Processor(-1, Math.max(1, SystemUtil.getNumberOfCPUs()));
+        processor.setThreadName("Boolean mask processor");
+    }
+
+    /**
+     * Execute the given tasks and returns their results (in same order than tasks).<br>
+     * Tasks are executed in parallel whenever it is possible, a <code>null</code> task simply gives a
+     * <code>null</code> result.
+     * 
+     * @throws InterruptedException
+     */
+    static <T> List<T> process(List<Callable<T>> tasks) throws InterruptedException
+    {
+        final List<T> result = new ArrayList<T>(tasks.size());
+
+        // not worth it or nested call --> direct execution
+        if ((tasks.size() < 2) || (processor.getMaximumPoolSize() < 2) || (worker.get() != null))
+        {
+            for (Callable<T> task : tasks)
+            {
+                if (Thread.interrupted())
+                    throw new InterruptedException("BooleanMask slice processing interrupted !");
+
+                try
+                {
+                    result.add((task != null) ? task.call() : null);
+                }
+                catch (InterruptedException e)
+                {
+                    throw e;
+                }
+                catch (RuntimeException e)
+                {
+                    throw e;
+                }
+                catch (Exception e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+
+            return result;
+        }
+
+        final List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+        boolean done = false;
+
+        try
+        {
+            for (final Callable<T> task : tasks)
+            {
+                if (task == null)
+                {
+                    futures.add(null);
+                    continue;
+                }
+
+                futures.add(processor.submit(new Callable<T>()
+                {
+                    @Override
+                    public T call() throws Exception
+                    {
+                        worker.set(Boolean.TRUE);
+                        try
+                        {
+                            return task.call();
+                        }
+                        finally
+                        {
+                            worker.remove();
+                        }
+                    }
+                }));
+            }
+
+            for (Future<T> future : futures)
+            {
+                try
+                {
+                    result.add((future != null) ? future.get() : null);
+                }
+                catch (ExecutionException e)
+                {
+                    final Throwable cause = e.getCause();
+
+                    if (cause instanceof InterruptedException)
+                        throw (InterruptedException) cause;
+                    if (cause instanceof RuntimeException)
+                        throw (RuntimeException) cause;
+                    if (cause instanceof Error)
+                        throw (Error) cause;
+
+                    throw new RuntimeException(cause);
+                }
+            }
+
+            done = true;
+        }
+        finally
+        {
+            // cancel remaining tasks on failure / interruption
+            if (!done)
+                for (Future<T> future : futures)
+                    if (future != null)
+                        future.cancel(true);
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,899 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ *
+ * This file is part of Icy.
+ *
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.roi;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import icy.system.SystemUtil;
+import icy.type.rectangle.Rectangle3D;
+
+/**
+ * Connected component labeling of 2D and 3D boolean masks.<br>
+ * It uses a two pass union-find algorithm working on primitive label arrays (one per plane):
+ * <ul>
+ * <li>each plane is labeled independently (in parallel on planes, or on slabs of rows for a single plane)</li>
+ * <li>plane components are then merged by resolving equivalences between adjacent planes (3D connectivity)</li>
+ * <li>last pass assigns final consecutive labels (in XYZ scan order) while computing component size and
+ * bounding box</li>
+ * </ul>
+ * This way components can be counted, measured or filtered before building any mask or ROI object.<br>
+ * Masks with infinite Z dimension are labeled from their single plane, components then keep the infinite Z
+ * dimension.
+ * 
+ * @author Stephane
+ */
+public class ConnectedComponentLabeling
+{
+    /**
+     * 4-connectivity (2D only, edge neighbors)
+     */
+    public static final int CONNECTIVITY_4 = 4;
+    /**
+     * 8-connectivity (2D only, edge and corner neighbors)
+     */
+    public static final int CONNECTIVITY_8 = 8;
+    /**
+     * 6-connectivity (3D, face neighbors)
+     */
+    public static final int CONNECTIVITY_6 = 6;
+    /**
+     * 26-connectivity (3D, face, edge and corner neighbors)
+     */
+    public static final int CONNECTIVITY_26 = 26;
+
+    /**
+     * Minimum number of point to split the labeling of a single plane in several slabs
+     */
+    protected static final int MIN_PARALLEL_SIZE = 1 << 18;
+
+    /**
+     * Result of a connected component labeling.<br>
+     * Labels are numbered from 1 to {@link #getNumberOfComponents()} in XYZ scan order of their first point, 0 is
+     * background.
+     * 
+     * @author Stephane
+     */
+    public static class Labels
+    {
+        /**
+         * Region covered by the label arrays
+         */
+        public final Rectangle3D.Integer bounds;
+        /**
+         * Label arrays, one per plane (<code>labels[z][(y * sizeX) + x]</code>, coordinates relative to bounds).<br>
+         * A <code>null</code> plane does not contain any point. With infinite Z dimension there is a single plane
+         * shared by all Z positions.
+         */
+        public final int[][] labels;
+
+        protected final int count;
+        protected final long[] sizes;
+        // bounding box of each component: minX, minY, minZ, maxX, maxY, maxZ (relative to bounds)
+        protected final int[] boxes;
+
+        protected Labels(Rectangle3D.Integer bounds, int[][] labels, int count, long[] sizes, int[] boxes)
+        {
+            super();
+
+            this.bounds = bounds;
+            this.labels = labels;
+            this.count = count;
+            this.sizes = sizes;
+            this.boxes = boxes;
+        }
+
+        /**
+         * Returns <code>true</code> if labels have an infinite Z dimension.
+         */
+        public boolean isInfiniteZ()
+        {
+            return bounds.sizeZ == Integer.MAX_VALUE;
+        }
+
+        /**
+         * Returns the label array of the specified plane (Z relative to bounds), can be <code>null</code>.
+         */
+        protected int[] getPlane(int zi)
+        {
+            if (isInfiniteZ())
+                return labels[0];
+            if ((zi < 0) || (zi >= labels.length))
+                return null;
+
+            return labels[zi];
+        }
+
+        /**
+         * Returns the number of components.
+         */
+        public int getNumberOfComponents()
+        {
+            return count;
+        }
+
+        /**
+         * Returns the label at specified (absolute) position (0 if background or outside bounds).
+         */
+        public int getLabel(int x, int y, int z)
+        {
+            final int xi = x - bounds.x;
+            final int yi = y - bounds.y;
+
+            if ((xi < 0) || (xi >= bounds.sizeX) || (yi < 0) || (yi >= bounds.sizeY))
+                return 0;
+
+            final int[] plane = getPlane(z - bounds.z);
+
+            if (plane == null)
+                return 0;
+
+            return plane[(yi * bounds.sizeX) + xi];
+        }
+
+        /**
+         * Returns the number of points of the specified component (label from 1 to {@link #getNumberOfComponents()}
+         * ).<br>
+         * With infinite Z dimension this is the number of points of the component in a single plane.
+         */
+        public long getSize(int label)
+        {
+            return sizes[label - 1];
+        }
+
+        /**
+         * Returns the number of points of each component (<code>result[label - 1]</code>).
+         */
+        public long[] getSizes()
+        {
+            return Arrays.copyOf(sizes, count);
+        }
+
+        /**
+         * Returns the bounding box of the specified component (label from 1 to {@link #getNumberOfComponents()}).
+         */
+        public Rectangle3D.Integer getBounds(int label)
+        {
+            final int off = (label - 1) * 6;
+            final int z;
+            final int sizeZ;
+
+            if (isInfiniteZ())
+            {
+                z = bounds.z;
+                sizeZ = bounds.sizeZ;
+            }
+            else
+            {
+                z = bounds.z + boxes[off + 2];
+                sizeZ = (boxes[off + 5] - boxes[off + 2]) + 1;
+            }
+
+            return new Rectangle3D.Integer(bounds.x + boxes[off + 0], bounds.y + boxes[off + 1], z,
+                    (boxes[off + 3] - boxes[off + 0]) + 1, (boxes[off + 4] - boxes[off + 1]) + 1, sizeZ);
+        }
+
+        /**
+         * Returns the 2D boolean mask of the specified component at the given (absolute) Z position or
+         * <code>null</code> if the component is not present on this plane.
+         */
+        public BooleanMask2D getMask2D(int label, int z)
+        {
+            final int off = (label - 1) * 6;
+            final int zi = z - bounds.z;
+
+            if (!isInfiniteZ() && ((zi < boxes[off + 2]) || (zi > boxes[off + 5])))
+                return null;
+
+            final int[] plane = getPlane(zi);
+
+            if (plane == null)
+                return null;
+
+            final int minX = boxes[off + 0];
+            final int minY = boxes[off + 1];
+            final int w = (boxes[off + 3] - minX) + 1;
+            final int h = (boxes[off + 4] - minY) + 1;
+            final boolean[] mask = new boolean[w * h];
+            boolean empty = true;
+
+            int offset = 0;
+            for (int y = 0; y < h; y++)
+            {
+                int ind = ((minY + y) * bounds.sizeX) + minX;
+
+                for (int x = 0; x < w; x++)
+                {
+                    if (plane[ind++] == label)
+                    {
+                        mask[offset] = true;
+                        empty = false;
+                    }
+
+                    offset++;
+                }
+            }
+
+            if (empty)
+                return null;
+
+            return new BooleanMask2D(new Rectangle(bounds.x + minX, bounds.y + minY, w, h), mask);
+        }
+
+        /**
+         * Returns the 2D boolean mask of the specified component (2D labeling).
+         */
+        public BooleanMask2D getMask2D(int label)
+        {
+            final int off = (label - 1) * 6;
+
+            return getMask2D(label, bounds.z + boxes[off + 2]);
+        }
+
+        /**
+         * Returns the 3D boolean mask of the specified component.
+         */
+        public BooleanMask3D getMask3D(int label)
+        {
+            final Rectangle3D.Integer box = getBounds(label);
+
+            // single plane shared by all Z
+            if (isInfiniteZ())
+                return new BooleanMask3D(box, new BooleanMask2D[] {getMask2D(label, bounds.z)});
+
+            final BooleanMask2D[] masks = new BooleanMask2D[box.sizeZ];
+
+            for (int z = 0; z < box.sizeZ; z++)
+                masks[z] = getMask2D(label, box.z + z);
+
+            return new BooleanMask3D(box, masks);
+        }
+
+        /**
+         * Returns points of each component as 2D (XY) int array (2D labeling).<br>
+         * <code>result[label - 1][(pt * 2) + 0]</code> = X coordinate for point <i>pt</i>.<br>
+         * <code>result[label - 1][(pt * 2) + 1]</code> = Y coordinate for point <i>pt</i>.<br>
+         * Points are returned in ascending XY order.
+         */
+        public int[][] getPointsAsIntArray2D()
+        {
+            final int[][] result = new int[count][];
+            final int[] pos = new int[count];
+
+            for (int i = 0; i < count; i++)
+                result[i] = new int[(int) (sizes[i] * 2)];
+
+            final int[] plane = getPlane(0);
+
+            if (plane == null)
+                return result;
+
+            int offset = 0;
+            for (int y = 0; y < bounds.sizeY; y++)
+            {
+                for (int x = 0; x < bounds.sizeX; x++)
+                {
+                    final int label = plane[offset++];
+
+                    if (label != 0)
+                    {
+                        final int[] pts = result[label - 1];
+                        int p = pos[label - 1];
+
+                        pts[p++] = bounds.x + x;
+                        pts[p++] = bounds.y + y;
+                        pos[label - 1] = p;
+                    }
+                }
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * Returns the connected components of the specified 2D mask.
+     * 
+     * @param mask
+     *        the boolean mask to label
+     * @param connectivity
+     *        {@link #CONNECTIVITY_4} or {@link #CONNECTIVITY_8}
+     * @throws InterruptedException
+     */
+    public static Labels label(BooleanMask2D mask, int connectivity) throws InterruptedException
+    {
+        if ((connectivity != CONNECTIVITY_4) && (connectivity != CONNECTIVITY_8))
+            throw new IllegalArgumentException("ConnectedComponentLabeling: 2D connectivity should be 4 or 8.");
+
+        final Rectangle bounds2D = mask.bounds;
+        final Rectangle3D.Integer bounds = new Rectangle3D.Integer(bounds2D.x, bounds2D.y, 0, bounds2D.width,
+                bounds2D.height, 1);
+
+        return label(bounds, new BooleanMask2D[] {mask}, connectivity);
+    }
+
+    /**
+     * Returns the connected components of the specified 3D mask.<br>
+     * If the mask has an infinite Z dimension then its single plane is labeled and components keep the infinite Z
+     * dimension.
+     * 
+     * @param mask
+     *        the boolean mask to label
+     * @param connectivity
+     *        {@link #CONNECTIVITY_6} or {@link #CONNECTIVITY_26} (4 and 8 can be used to only label each plane
+     *        independently)
+     * @throws InterruptedException
+     */
+    public static Labels label(BooleanMask3D mask, int connectivity) throws InterruptedException
+    {
+        if ((connectivity != CONNECTIVITY_4) && (connectivity != CONNECTIVITY_8) && (connectivity != CONNECTIVITY_6)
+                && (connectivity != CONNECTIVITY_26))
+            throw new IllegalArgumentException("ConnectedComponentLabeling: connectivity should be 4, 8, 6 or 26.");
+
+        final Rectangle3D.Integer bounds = mask.bounds;
+        final BooleanMask2D[] masks;
+
+        // special case of infinite Z dimension: all planes are identical
+        if (bounds.sizeZ == Integer.MAX_VALUE)
+            masks = new BooleanMask2D[] {mask.getMask2D(bounds.z)};
+        else
+        {
+            masks = new BooleanMask2D[Math.max(0, bounds.sizeZ)];
+
+            for (int z = 0; z < masks.length; z++)
+                masks[z] = mask.getMask2D(bounds.z + z);
+        }
+
+        return label(new Rectangle3D.Integer(bounds), masks, connectivity);
+    }
+
+    /**
+     * Internal labeling (<code>masks</code> contains one entry per plane of bounds, or a single entry for infinite Z
+     * dimension)
+     */
+    protected static Labels label(final Rectangle3D.Integer bounds, final BooleanMask2D[] masks, int connectivity)
+            throws InterruptedException
+    {
+        final int sizeX = Math.max(0, bounds.sizeX);
+        final int sizeY = Math.max(0, bounds.sizeY);
+        final int numPlane = masks.length;
+        final long planeSize = (long) sizeX * (long) sizeY;
+
+        // each plane is stored in its own array
+        if (planeSize >= Integer.MAX_VALUE)
+            throw new UnsupportedOperationException("ConnectedComponentLabeling: plane is too large (" + sizeX
+                    + " x " + sizeY + ").");
+
+        final int[][] labels = new int[numPlane][];
+
+        if ((planeSize == 0) || (numPlane == 0))
+            return new Labels(bounds, labels, 0, new long[0], new int[0]);
+
+        // in plane backward neighbors
+        final int[][] neighbors = getBackwardNeighbors(
+                ((connectivity == CONNECTIVITY_4) || (connectivity == CONNECTIVITY_6)) ? CONNECTIVITY_4
+                        : CONNECTIVITY_8);
+        final int[] offsets = new int[neighbors.length];
+
+        for (int n = 0; n < neighbors.length; n++)
+            offsets[n] = (neighbors[n][1] * sizeX) + neighbors[n][0];
+
+        // number of provisional component in each plane
+        final int[] planeCounts = new int[numPlane];
+
+        if (numPlane == 1)
+        {
+            // single plane --> parallel on slabs of rows
+            final int numSlab;
+
+            if (planeSize < MIN_PARALLEL_SIZE)
+                numSlab = 1;
+            else
+                numSlab = Math.max(1, Math.min(sizeY, SystemUtil.getNumberOfCPUs()));
+
+            if (masks[0] != null)
+            {
+                labels[0] = new int[(int) planeSize];
+                planeCounts[0] = labelPlane(labels[0], bounds, masks[0], neighbors, offsets, numSlab);
+            }
+        }
+        else
+        {
+            // parallel on planes
+            final List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>(numPlane);
+
+            for (int z = 0; z < numPlane; z++)
+            {
+                final BooleanMask2D mask = masks[z];
+
+                // plane without any point
+                if ((mask == null) || mask.isEmpty())
+                {
+                    tasks.add(null);
+                    continue;
+                }
+
+                final int zi = z;
+
+                tasks.add(new Callable<Integer>()
+                {
+                    @Override
+                    public Integer call() throws Exception
+                    {
+                        final int[] plane = new int[(int) planeSize];
+                        final int result = labelPlane(plane, bounds, mask, neighbors, offsets, 1);
+
+                        labels[zi] = plane;
+
+                        return Integer.valueOf(result);
+                    }
+                });
+            }
+
+            final List<Integer> results = BooleanMaskProcessor.process(tasks);
+
+            for (int z = 0; z < numPlane; z++)
+            {
+                final Integer result = results.get(z);
+
+                if (result != null)
+                    planeCounts[z] = result.intValue();
+            }
+        }
+
+        // global index of first component of each plane
+        final int[] planeBases = new int[numPlane];
+        long total = 0;
+
+        for (int z = 0; z < numPlane; z++)
+        {
+            planeBases[z] = (int) total;
+            total += planeCounts[z];
+        }
+
+        if (total >= Integer.MAX_VALUE)
+            throw new UnsupportedOperationException("ConnectedComponentLabeling: too many components (" + total
+                    + ").");
+
+        // union-find on plane components (parent index + 1, same encoding as provisional labels)
+        final int[] parents = new int[(int) total];
+
+        for (int i = 0; i < parents.length; i++)
+            parents[i] = i + 1;
+
+        // merge plane components connected to the previous plane
+        if ((numPlane > 1) && ((connectivity == CONNECTIVITY_6) || (connectivity == CONNECTIVITY_26)))
+        {
+            final int[][] planeNeighbors = getPreviousPlaneNeighbors(connectivity);
+
+            for (int z = 1; z < numPlane; z++)
+            {
+                final int[] plane = labels[z];
+                final int[] prevPlane = labels[z - 1];
+
+                if ((plane == null) || (prevPlane == null))
+                    continue;
+
+                mergePlanes(parents, plane, planeBases[z], prevPlane, planeBases[z - 1], sizeX, sizeY,
+                        planeNeighbors);
+
+                // check for interruption from time to time as this can be a long process
+                if (((z & 0xF) == 0xF) && Thread.interrupted())
+                    throw new InterruptedException("ConnectedComponentLabeling.label(..) process interrupted.");
+            }
+        }
+
+        // final labels of plane components (roots always precede their children in scan order)
+        final int[] finalLabels = new int[(int) total];
+        int count = 0;
+
+        for (int i = 0; i < finalLabels.length; i++)
+        {
+            final int root = find(parents, i);
+
+            if (root == i)
+                finalLabels[i] = ++count;
+            else
+                finalLabels[i] = finalLabels[root];
+        }
+
+        // last pass: final labels, sizes and bounding boxes
+        final long[] sizes = new long[count];
+        final int[] boxes = new int[count * 6];
+        int numFound = 0;
+
+        for (int z = 0; z < numPlane; z++)
+        {
+            final int[] plane = labels[z];
+
+            if (plane == null)
+                continue;
+
+            final int base = planeBases[z] - 1;
+
+            int i = 0;
+            for (int y = 0; y < sizeY; y++)
+            {
+                for (int x = 0; x < sizeX; x++, i++)
+                {
+                    final int local = plane[i];
+
+                    // background
+                    if (local == 0)
+                        continue;
+
+                    final int label = finalLabels[base + local];
+                    final int off = (label - 1) * 6;
+
+                    // first point of this component
+                    if (label > numFound)
+                    {
+                        numFound = label;
+
+                        boxes[off + 0] = x;
+                        boxes[off + 1] = y;
+                        boxes[off + 2] = z;
+                        boxes[off + 3] = x;
+                        boxes[off + 4] = y;
+                        boxes[off + 5] = z;
+                    }
+                    else
+                    {
+                        if (x < boxes[off + 0])
+                            boxes[off + 0] = x;
+                        if (y < boxes[off + 1])
+                            boxes[off + 1] = y;
+                        if (x > boxes[off + 3])
+                            boxes[off + 3] = x;
+                        if (y > boxes[off + 4])
+                            boxes[off + 4] = y;
+                        if (z > boxes[off + 5])
+                            boxes[off + 5] = z;
+                    }
+
+                    plane[i] = label;
+                    sizes[label - 1]++;
+                }
+
+                // check for interruption from time to time as this can be a long process
+                if (((y & 0xF) == 0xF) && Thread.interrupted())
+                    throw new InterruptedException("ConnectedComponentLabeling.label(..) process interrupted.");
+            }
+        }
+
+        return new Labels(bounds, labels, count, sizes, boxes);
+    }
+
+    /**
+     * Label the specified plane: on return the label array contains consecutive labels (from 1, in XY scan order
+     * of their first point) and the method returns the number of components of the plane.
+     */
+    protected static int labelPlane(final int[] labels, final Rectangle3D.Integer bounds, final BooleanMask2D mask,
+            final int[][] neighbors, final int[] offsets, int numSlab) throws InterruptedException
+    {
+        final int sizeX = bounds.sizeX;
+        final int sizeY = bounds.sizeY;
+        final int[] slabStartRows = new int[numSlab + 1];
+
+        for (int s = 0; s <= numSlab; s++)
+            slabStartRows[s] = (int) (((long) sizeY * s) / numSlab);
+
+        if (numSlab == 1)
+        {
+            fill(labels, bounds, mask, 0, sizeY);
+            firstPass(labels, sizeX, sizeY, neighbors, offsets, 0, sizeY);
+        }
+        else
+        {
+            // first pass (parallel on slabs)
+            final List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(numSlab);
+
+            for (int s = 0; s < numSlab; s++)
+            {
+                final int startRow = slabStartRows[s];
+                final int endRow = slabStartRows[s + 1];
+
+                tasks.add(new Callable<Object>()
+                {
+                    @Override
+                    public Object call() throws Exception
+                    {
+                        fill(labels, bounds, mask, startRow, endRow);
+                        firstPass(labels, sizeX, sizeY, neighbors, offsets, startRow, endRow);
+                        return null;
+                    }
+                });
+            }
+
+            BooleanMaskProcessor.process(tasks);
+
+            // merge slabs
+            for (int s = 1; s < numSlab; s++)
+                mergeSlab(labels, sizeX, sizeY, neighbors, offsets, slabStartRows[s]);
+        }
+
+        // second pass: consecutive labels
+        int count = 0;
+
+        for (int i = 0; i < labels.length; i++)
+        {
+            final int parent = labels[i] - 1;
+
+            // background
+            if (parent == -1)
+                continue;
+
+            // root --> new component, else parent always precedes current point so it already has its final label
+            labels[i] = (parent == i) ? ++count : labels[parent];
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns the backward neighbors (already visited in XY scan order) for the specified 2D connectivity as [dx,
+     * dy] array.
+     */
+    protected static int[][] getBackwardNeighbors(int connectivity)
+    {
+        switch (connectivity)
+        {
+            case CONNECTIVITY_4:
+                return new int[][] { {-1, 0}, {0, -1}};
+
+            case CONNECTIVITY_8:
+                return new int[][] { {-1, 0}, {-1, -1}, {0, -1}, {1, -1}};
+
+            default:
+                throw new IllegalArgumentException("ConnectedComponentLabeling: unsupported connectivity: "
+                        + connectivity);
+        }
+    }
+
+    /**
+     * Returns the neighbors in the previous plane for the specified 3D connectivity as [dx, dy] array.
+     */
+    protected static int[][] getPreviousPlaneNeighbors(int connectivity)
+    {
+        switch (connectivity)
+        {
+            case CONNECTIVITY_6:
+                return new int[][] {{0, 0}};
+
+            case CONNECTIVITY_26:
+            {
+                final int[][] result = new int[9][];
+                int n = 0;
+
+                for (int dy = -1; dy <= 1; dy++)
+                    for (int dx = -1; dx <= 1; dx++)
+                        result[n++] = new int[] {dx, dy};
+
+                return result;
+            }
+
+            default:
+                throw new IllegalArgumentException("ConnectedComponentLabeling: unsupported connectivity: "
+                        + connectivity);
+        }
+    }
+
+    /**
+     * Set label array to -1 for mask points in the specified rows.
+     */
+    protected static void fill(int[] labels, Rectangle3D.Integer bounds, BooleanMask2D m, int startRow, int endRow)
+    {
+        final int sizeX = bounds.sizeX;
+        final Rectangle mb = m.bounds;
+        final int startX = Math.max(bounds.x, mb.x);
+        final int endX = Math.min(bounds.x + sizeX, mb.x + mb.width);
+        final boolean[] mask = m.mask;
+
+        for (int y = startRow; y < endRow; y++)
+        {
+            final int my = (bounds.y + y) - mb.y;
+
+            // row not in this 2D mask
+            if ((my < 0) || (my >= mb.height))
+                continue;
+
+            int off = (my * mb.width) + (startX - mb.x);
+            int ind = (y * sizeX) + (startX - bounds.x);
+
+            for (int x = startX; x < endX; x++, off++, ind++)
+                if (mask[off])
+                    labels[ind] = -1;
+        }
+    }
+
+    /**
+     * First pass on the specified rows: assign provisional labels (parent index + 1) considering only neighbors
+     * inside the same slab.
+     */
+    protected static void firstPass(int[] labels, int sizeX, int sizeY, int[][] neighbors, int[] offsets,
+            int startRow, int endRow) throws InterruptedException
+    {
+        final int start = startRow * sizeX;
+        final int numNeighbor = neighbors.length;
+
+        for (int y = startRow; y < endRow; y++)
+        {
+            int i = y * sizeX;
+
+            for (int x = 0; x < sizeX; x++, i++)
+            {
+                if (labels[i] == 0)
+                    continue;
+
+                int root = -1;
+
+                for (int n = 0; n < numNeighbor; n++)
+                {
+                    final int[] d = neighbors[n];
+                    final int nx = x + d[0];
+                    final int ny = y + d[1];
+
+                    if ((nx < 0) || (nx >= sizeX) || (ny < 0) || (ny >= sizeY))
+                        continue;
+
+                    final int j = i + offsets[n];
+
+                    if ((j < start) || (labels[j] == 0))
+                        continue;
+
+                    final int r = find(labels, j);
+
+                    if (root == -1)
+                        root = r;
+                    else if (r != root)
+                        root = union(labels, root, r);
+                }
+
+                // new provisional label or attach to neighbors root
+                labels[i] = (root == -1) ? (i + 1) : (root + 1);
+            }
+
+            // check for interruption from time to time as this can be a long process
+            if (((y & 0xF) == 0xF) && Thread.interrupted())
+                throw new InterruptedException("ConnectedComponentLabeling.label(..) process interrupted.");
+        }
+    }
+
+    /**
+     * Merge equivalences between the first row of a slab and the previous slab.
+     */
+    protected static void mergeSlab(int[] labels, int sizeX, int sizeY, int[][] neighbors, int[] offsets, int row)
+    {
+        final int start = row * sizeX;
+        final int numNeighbor = neighbors.length;
+        int i = start;
+
+        for (int x = 0; x < sizeX; x++, i++)
+        {
+            if (labels[i] == 0)
+                continue;
+
+            for (int n = 0; n < numNeighbor; n++)
+            {
+                final int[] d = neighbors[n];
+                final int nx = x + d[0];
+                final int ny = row + d[1];
+
+                if ((nx < 0) || (nx >= sizeX) || (ny < 0) || (ny >= sizeY))
+                    continue;
+
+                final int j = i + offsets[n];
+
+                // only consider neighbors from previous slab
+                if ((j >= start) || (labels[j] == 0))
+                    continue;
+
+                final int ri = find(labels, i);
+                final int rj = find(labels, j);
+
+                if (ri != rj)
+                    union(labels, ri, rj);
+            }
+        }
+    }
+
+    /**
+     * Merge components of a plane with the connected components of the previous plane.<br>
+     * Plane arrays contain local labels, <code>parents</code> is indexed by global component index (plane base +
+     * local label - 1).
+     */
+    protected static void mergePlanes(int[] parents, int[] plane, int base, int[] prevPlane, int prevBase,
+            int sizeX, int sizeY, int[][] neighbors)
+    {
+        final int numNeighbor = neighbors.length;
+
+        int i = 0;
+        for (int y = 0; y < sizeY; y++)
+        {
+            for (int x = 0; x < sizeX; x++, i++)
+            {
+                final int local = plane[i];
+
+                if (local == 0)
+                    continue;
+
+                for (int n = 0; n < numNeighbor; n++)
+                {
+                    final int[] d = neighbors[n];
+                    final int nx = x + d[0];
+                    final int ny = y + d[1];
+
+                    if ((nx < 0) || (nx >= sizeX) || (ny < 0) || (ny >= sizeY))
+                        continue;
+
+                    final int prevLocal = prevPlane[(ny * sizeX) + nx];
+
+                    if (prevLocal == 0)
+                        continue;
+
+                    final int ri = find(parents, (base + local) - 1);
+                    final int rj = find(parents, (prevBase + prevLocal) - 1);
+
+                    if (ri != rj)
+                        union(parents, ri, rj);
+                }
+            }
+        }
+    }
+
+    /**
+     * Find root index of specified point (with path compression).
+     */
+    protected static int find(int[] labels, int i)
+    {
+        int root = i;
+
+        while ((labels[root] - 1) != root)
+            root = labels[root] - 1;
+
+        // path compression
+        while (i != root)
+        {
+            final int next = labels[i] - 1;
+            labels[i] = root + 1;
+            i = next;
+        }
+
+        return root;
+    }
+
+    /**
+     * Union of the 2 specified roots, the smallest index become the root so a parent always precedes its children
+     * in scan order. Returns the new root.
+     */
+    protected static int union(int[] labels, int root1, int root2)
+    {
+        if (root1 < root2)
+        {
+            labels[root2] = root1 + 1;
+            return root1;
+        }
+
+        labels[root1] = root2 + 1;
+        return root2;
+    }
+}
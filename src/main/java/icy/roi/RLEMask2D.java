@@ -0,0 +1,801 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.roi;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+/**
+ * Run length encoded 2D mask.<br>
+ * Each row of the mask is stored as a sorted list of disjoint <code>[start, end[</code> runs (X coordinates relative
+ * to <code>bounds.x</code>) so memory only depends on the object contour length and not on its bounding box area.
+ * Boolean operations, containment tests and point iteration are done directly on runs.<br>
+ * Run arrays are never modified once built so {@link #clone()} is cheap, only the bounds can be moved.
+ * 
+ * @author Stephane
+ */
+public class RLEMask2D implements Cloneable
+{
+    private static final int OP_OR = 0;
+    private static final int OP_AND = 1;
+    private static final int OP_XOR = 2;
+    private static final int OP_ANDNOT = 3;
+
+    private static final int[] EMPTY = new int[0];
+
+    /**
+     * Build resulting mask from union of the mask1 and mask2.
+     * 
+     * @see BooleanMask2D#getUnion(BooleanMask2D, BooleanMask2D)
+     */
+    public static RLEMask2D getUnion(RLEMask2D mask1, RLEMask2D mask2)
+    {
+        if ((mask1 == null) && (mask2 == null))
+            return new RLEMask2D();
+
+        if ((mask1 == null) || mask1.isEmpty())
+            return (RLEMask2D) mask2.clone();
+        if ((mask2 == null) || mask2.isEmpty())
+            return (RLEMask2D) mask1.clone();
+
+        return combine(mask1, mask2, Math.min(mask1.bounds.y, mask2.bounds.y),
+                Math.max(mask1.bounds.y + mask1.bounds.height, mask2.bounds.y + mask2.bounds.height), OP_OR);
+    }
+
+    /**
+     * Build resulting mask from intersection of the mask1 and mask2.
+     * 
+     * @see BooleanMask2D#getIntersection(BooleanMask2D, BooleanMask2D)
+     */
+    public static RLEMask2D getIntersection(RLEMask2D mask1, RLEMask2D mask2)
+    {
+        if ((mask1 == null) || (mask2 == null))
+            return new RLEMask2D();
+
+        return combine(mask1, mask2, Math.max(mask1.bounds.y, mask2.bounds.y),
+                Math.min(mask1.bounds.y + mask1.bounds.height, mask2.bounds.y + mask2.bounds.height), OP_AND);
+    }
+
+    /**
+     * Build resulting mask from exclusive union of the mask1 and mask2.
+     * 
+     * @see BooleanMask2D#getExclusiveUnion(BooleanMask2D, BooleanMask2D)
+     */
+    public static RLEMask2D getExclusiveUnion(RLEMask2D mask1, RLEMask2D mask2)
+    {
+        if ((mask1 == null) && (mask2 == null))
+            return new RLEMask2D();
+
+        if ((mask1 == null) || mask1.isEmpty())
+            return (RLEMask2D) mask2.clone();
+        if ((mask2 == null) || mask2.isEmpty())
+            return (RLEMask2D) mask1.clone();
+
+        return combine(mask1, mask2, Math.min(mask1.bounds.y, mask2.bounds.y),
+                Math.max(mask1.bounds.y + mask1.bounds.height, mask2.bounds.y + mask2.bounds.height), OP_XOR);
+    }
+
+    /**
+     * Build resulting mask from the subtraction of mask2 from mask1.
+     * 
+     * @see BooleanMask2D#getSubtraction(BooleanMask2D, BooleanMask2D)
+     */
+    public static RLEMask2D getSubtraction(RLEMask2D mask1, RLEMask2D mask2)
+    {
+        if (mask1 == null)
+            return new RLEMask2D();
+        if ((mask2 == null) || !mask1.bounds.intersects(mask2.bounds))
+            return (RLEMask2D) mask1.clone();
+
+        return combine(mask1, mask2, mask1.bounds.y, mask1.bounds.y + mask1.bounds.height, OP_ANDNOT);
+    }
+
+    /**
+     * Compute <code>mask1 (op) mask2</code> for rows in <code>[minY, maxY[</code>, result has optimized bounds.
+     */
+    private static RLEMask2D combine(RLEMask2D mask1, RLEMask2D mask2, int minY, int maxY, int op)
+    {
+        final Builder builder = new Builder(minY);
+
+        for (int y = minY; y < maxY; y++)
+        {
+            final int ry1 = y - mask1.bounds.y;
+            final int ry2 = y - mask2.bounds.y;
+            // run range (in run array index) for this row
+            int i = 0, iEnd = 0, j = 0, jEnd = 0;
+
+            if ((ry1 >= 0) && (ry1 < mask1.bounds.height))
+            {
+                i = mask1.rowIndex[ry1] << 1;
+                iEnd = mask1.rowIndex[ry1 + 1] << 1;
+            }
+            if ((ry2 >= 0) && (ry2 < mask2.bounds.height))
+            {
+                j = mask2.rowIndex[ry2] << 1;
+                jEnd = mask2.rowIndex[ry2 + 1] << 1;
+            }
+
+            final int[] runs1 = mask1.runs;
+            final int[] runs2 = mask2.runs;
+            final int x1 = mask1.bounds.x;
+            final int x2 = mask2.bounds.x;
+            boolean in1 = false;
+            boolean in2 = false;
+            boolean in = false;
+            int start = 0;
+
+            // sweep over run boundaries of both masks
+            while ((i < iEnd) || (j < jEnd))
+            {
+                final int p1 = (i < iEnd) ? runs1[i] + x1 : Integer.MAX_VALUE;
+                final int p2 = (j < jEnd) ? runs2[j] + x2 : Integer.MAX_VALUE;
+                final int p = Math.min(p1, p2);
+
+                if (p1 == p)
+                {
+                    in1 = !in1;
+                    i++;
+                }
+                if (p2 == p)
+                {
+                    in2 = !in2;
+                    j++;
+                }
+
+                final boolean v;
+
+                switch (op)
+                {
+                    default:
+                    case OP_OR:
+                        v = in1 | in2;
+                        break;
+                    case OP_AND:
+                        v = in1 & in2;
+                        break;
+                    case OP_XOR:
+                        v = in1 ^ in2;
+                        break;
+                    case OP_ANDNOT:
+                        v = in1 & !in2;
+                        break;
+                }
+
+                if (v != in)
+                {
+                    if (v)
+                        start = p;
+                    else
+                        builder.addRun(start, p);
+
+                    in = v;
+                }
+            }
+
+            builder.endRow();
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Incremental builder (rows are added in ascending Y order, runs in ascending X order)
+     */
+    private static class Builder
+    {
+        final int startY;
+        int[] runs;
+        int numRun;
+        int[] rowIndex;
+        int numRow;
+        int minX;
+        int maxX;
+
+        Builder(int startY)
+        {
+            super();
+
+            this.startY = startY;
+            runs = new int[64];
+            numRun = 0;
+            rowIndex = new int[64];
+            rowIndex[0] = 0;
+            numRow = 0;
+            minX = Integer.MAX_VALUE;
+            maxX = Integer.MIN_VALUE;
+        }
+
+        /**
+         * Add run <code>[start, end[</code> (absolute X coordinates) to current row
+         */
+        void addRun(int start, int end)
+        {
+            if (start >= end)
+                return;
+
+            // contiguous to previous run of the same row --> merge
+            if ((numRun > rowIndex[numRow]) && (runs[(numRun * 2) - 1] == start))
+                runs[(numRun * 2) - 1] = end;
+            else
+            {
+                if (((numRun + 1) * 2) > runs.length)
+                    runs = Arrays.copyOf(runs, runs.length * 2);
+
+                runs[numRun * 2] = start;
+                runs[(numRun * 2) + 1] = end;
+                numRun++;
+            }
+
+            if (start < minX)
+                minX = start;
+            if (end > maxX)
+                maxX = end;
+        }
+
+        void endRow()
+        {
+            if ((numRow + 2) > rowIndex.length)
+                rowIndex = Arrays.copyOf(rowIndex, rowIndex.length * 2);
+
+            numRow++;
+            rowIndex[numRow] = numRun;
+        }
+
+        /**
+         * Build the mask with optimized bounds
+         */
+        RLEMask2D build()
+        {
+            if (numRun == 0)
+                return new RLEMask2D(new Rectangle(minX == Integer.MAX_VALUE ? 0 : minX, startY, 0, 0), new int[1],
+                        EMPTY);
+
+            // find first and last non empty rows
+            int first = 0;
+            while (rowIndex[first + 1] == rowIndex[first])
+                first++;
+            int last = numRow - 1;
+            while (rowIndex[last + 1] == rowIndex[last])
+                last--;
+
+            final int[] resultRowIndex = new int[(last - first) + 2];
+            final int baseRun = rowIndex[first];
+
+            for (int r = 0; r < resultRowIndex.length; r++)
+                resultRowIndex[r] = rowIndex[first + r] - baseRun;
+
+            final int[] resultRuns = new int[(rowIndex[last + 1] - baseRun) * 2];
+
+            // runs relative to minX
+            for (int k = 0; k < resultRuns.length; k++)
+                resultRuns[k] = runs[(baseRun * 2) + k] - minX;
+
+            return new RLEMask2D(new Rectangle(minX, startY + first, maxX - minX, (last - first) + 1),
+                    resultRowIndex, resultRuns);
+        }
+    }
+
+    /**
+     * Region represented by the mask.<br>
+     * Runs are relative to the bounds so changing bounds location translates the mask, size should not be modified.
+     */
+    public Rectangle bounds;
+    /**
+     * Runs of row <i>y</i> are stored in <code>runs[rowIndex[y] * 2]</code> to <code>runs[rowIndex[y + 1] * 2]</code>
+     */
+    protected int[] rowIndex;
+    /**
+     * Packed runs (start, end) with X relative to <code>bounds.x</code>
+     */
+    protected int[] runs;
+
+    /**
+     * Create an empty RLEMask2D
+     */
+    public RLEMask2D()
+    {
+        this(new Rectangle(), new int[1], EMPTY);
+    }
+
+    protected RLEMask2D(Rectangle bounds, int[] rowIndex, int[] runs)
+    {
+        super();
+
+        this.bounds = bounds;
+        this.rowIndex = rowIndex;
+        this.runs = runs;
+    }
+
+    /**
+     * Create a new RLEMask2D from the specified boolean mask array (region defined by <code>bounds</code>).
+     */
+    public RLEMask2D(Rectangle bounds, boolean[] mask)
+    {
+        super();
+
+        final int w = Math.max(0, bounds.width);
+        final int h = Math.max(0, bounds.height);
+        final Builder builder = new Builder(0);
+        int off = 0;
+
+        for (int y = 0; y < h; y++)
+        {
+            int x = 0;
+            while (x < w)
+            {
+                // find run start
+                while ((x < w) && !mask[off + x])
+                    x++;
+                if (x == w)
+                    break;
+
+                final int start = x;
+                // find run end
+                while ((x < w) && mask[off + x])
+                    x++;
+
+                builder.addRun(start, x);
+            }
+
+            builder.endRow();
+            off += w;
+        }
+
+        this.bounds = bounds;
+        rowIndex = Arrays.copyOf(builder.rowIndex, h + 1);
+        runs = Arrays.copyOf(builder.runs, builder.numRun * 2);
+    }
+
+    /**
+     * Create a new RLEMask2D from the specified byte mask array (0 = false, other = true) where the region is defined
+     * by <code>bounds</code>.
+     */
+    public RLEMask2D(Rectangle bounds, byte[] mask)
+    {
+        super();
+
+        final int w = Math.max(0, bounds.width);
+        final int h = Math.max(0, bounds.height);
+        final Builder builder = new Builder(0);
+        int off = 0;
+
+        for (int y = 0; y < h; y++)
+        {
+            int x = 0;
+            while (x < w)
+            {
+                // find run start
+                while ((x < w) && (mask[off + x] == 0))
+                    x++;
+                if (x == w)
+                    break;
+
+                final int start = x;
+                // find run end
+                while ((x < w) && (mask[off + x] != 0))
+                    x++;
+
+                builder.addRun(start, x);
+            }
+
+            builder.endRow();
+            off += w;
+        }
+
+        this.bounds = bounds;
+        rowIndex = Arrays.copyOf(builder.rowIndex, h + 1);
+        runs = Arrays.copyOf(builder.runs, builder.numRun * 2);
+    }
+
+    /**
+     * Create a new RLEMask2D from the specified {@link BooleanMask2D}.
+     */
+    public RLEMask2D(BooleanMask2D mask)
+    {
+        this(new Rectangle(mask.bounds), mask.mask);
+    }
+
+    /**
+     * Return true if mask is empty (does not contain any point)
+     */
+    public boolean isEmpty()
+    {
+        return runs.length == 0;
+    }
+
+    /**
+     * Return the number of runs of the mask
+     */
+    public int getNumberOfRuns()
+    {
+        return runs.length >> 1;
+    }
+
+    /**
+     * Return the number of points contained in this mask.
+     */
+    public int getNumberOfPoints()
+    {
+        int result = 0;
+
+        for (int i = 0; i < runs.length; i += 2)
+            result += runs[i + 1] - runs[i];
+
+        return result;
+    }
+
+    /**
+     * Returns runs of the specified row as <code>(start, end)</code> pairs of absolute X coordinates (end is
+     * exclusive).<br>
+     * Returns an empty array if row is outside mask bounds.
+     */
+    public int[] getRuns(int y)
+    {
+        final int ry = y - bounds.y;
+
+        if ((ry < 0) || (ry >= bounds.height))
+            return EMPTY;
+
+        final int start = rowIndex[ry] << 1;
+        final int end = rowIndex[ry + 1] << 1;
+        final int[] result = new int[end - start];
+
+        for (int i = 0; i < result.length; i++)
+            result[i] = runs[start + i] + bounds.x;
+
+        return result;
+    }
+
+    /**
+     * Returns index (in runs array) of the run containing relative <code>rx</code> position in the specified
+     * relative row, or -1 if not found.
+     */
+    private int findRun(int ry, int rx)
+    {
+        // binary search on run start
+        int lo = rowIndex[ry];
+        int hi = rowIndex[ry + 1] - 1;
+
+        while (lo <= hi)
+        {
+            final int mid = (lo + hi) >>> 1;
+            final int i = mid << 1;
+
+            if (rx < runs[i])
+                hi = mid - 1;
+            else if (rx >= runs[i + 1])
+                lo = mid + 1;
+            else
+                return i;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Return true if mask contains the specified point
+     */
+    public boolean contains(int x, int y)
+    {
+        if (bounds.contains(x, y))
+            return findRun(y - bounds.y, x - bounds.x) != -1;
+
+        return false;
+    }
+
+    /**
+     * Return true if mask contains all points of the specified region.
+     */
+    public boolean contains(Rectangle region)
+    {
+        if (region.isEmpty() || !bounds.contains(region))
+            return false;
+
+        final int rx = region.x - bounds.x;
+        final int rxEnd = rx + region.width;
+
+        for (int y = 0; y < region.height; y++)
+        {
+            final int i = findRun((region.y + y) - bounds.y, rx);
+
+            // runs are merged so a single run should cover the whole region row
+            if ((i == -1) || (runs[i + 1] < rxEnd))
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Return true if mask intersects (contains at least one point of) the specified region.
+     */
+    public boolean intersects(Rectangle region)
+    {
+        final Rectangle intersect = bounds.intersection(region);
+
+        if (intersect.isEmpty())
+            return false;
+
+        final int rx = intersect.x - bounds.x;
+        final int rxEnd = rx + intersect.width;
+
+        for (int y = 0; y < intersect.height; y++)
+        {
+            final int ry = (intersect.y + y) - bounds.y;
+            final int end = rowIndex[ry + 1] << 1;
+
+            for (int i = rowIndex[ry] << 1; i < end; i += 2)
+            {
+                // runs are sorted
+                if (runs[i] >= rxEnd)
+                    break;
+                if (runs[i + 1] > rx)
+                    return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Return true if mask contains the specified mask.
+     */
+    public boolean contains(RLEMask2D mask)
+    {
+        return getSubtraction(mask, this).isEmpty();
+    }
+
+    /**
+     * Return true if mask intersects (contains at least one point of) the specified mask.
+     */
+    public boolean intersects(RLEMask2D mask)
+    {
+        final Rectangle intersect = bounds.intersection(mask.bounds);
+
+        if (intersect.isEmpty())
+            return false;
+
+        for (int y = 0; y < intersect.height; y++)
+        {
+            final int ry1 = (intersect.y + y) - bounds.y;
+            final int ry2 = (intersect.y + y) - mask.bounds.y;
+            final int iEnd = rowIndex[ry1 + 1] << 1;
+            final int jEnd = mask.rowIndex[ry2 + 1] << 1;
+            int i = rowIndex[ry1] << 1;
+            int j = mask.rowIndex[ry2] << 1;
+
+            while ((i < iEnd) && (j < jEnd))
+            {
+                final int s1 = runs[i] + bounds.x;
+                final int e1 = runs[i + 1] + bounds.x;
+                final int s2 = mask.runs[j] + mask.bounds.x;
+                final int e2 = mask.runs[j + 1] + mask.bounds.x;
+
+                if ((s1 < e2) && (s2 < e1))
+                    return true;
+
+                // advance the run which ends first
+                if (e1 <= e2)
+                    i += 2;
+                else
+                    j += 2;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns points of the mask as XY ordered integer array:<br>
+     * <code>result[(pt * 2) + 0]</code> = X coordinate for point <i>pt</i>.<br>
+     * <code>result[(pt * 2) + 1]</code> = Y coordinate for point <i>pt</i>.
+     * 
+     * @see BooleanMask2D#getPointsAsIntArray()
+     */
+    public int[] getPointsAsIntArray()
+    {
+        final int[] result = new int[getNumberOfPoints() * 2];
+        int off = 0;
+
+        for (int ry = 0; ry < bounds.height; ry++)
+        {
+            final int y = bounds.y + ry;
+            final int end = rowIndex[ry + 1] << 1;
+
+            for (int i = rowIndex[ry] << 1; i < end; i += 2)
+            {
+                final int xEnd = runs[i + 1] + bounds.x;
+
+                for (int x = runs[i] + bounds.x; x < xEnd; x++)
+                {
+                    result[off++] = x;
+                    result[off++] = y;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Fill the specified byte array (0 = false, 1 = true) representing the mask bounds region.
+     */
+    public void toByteArray(byte[] result)
+    {
+        final int w = bounds.width;
+        int off = 0;
+
+        for (int ry = 0; ry < bounds.height; ry++)
+        {
+            final int end = rowIndex[ry + 1] << 1;
+
+            for (int i = rowIndex[ry] << 1; i < end; i += 2)
+                Arrays.fill(result, off + runs[i], off + runs[i + 1], (byte) 1);
+
+            off += w;
+        }
+    }
+
+    /**
+     * Returns the byte mask array (0 = false, 1 = true) representing the mask bounds region.
+     */
+    public byte[] toByteArray()
+    {
+        final byte[] result = new byte[Math.max(0, bounds.width) * Math.max(0, bounds.height)];
+
+        toByteArray(result);
+
+        return result;
+    }
+
+    /**
+     * Returns the boolean mask array of the specified region.
+     */
+    public boolean[] toBooleanArray(Rectangle region)
+    {
+        final boolean[] result = new boolean[Math.max(0, region.width) * Math.max(0, region.height)];
+        final Rectangle intersect = bounds.intersection(region);
+
+        if (intersect.isEmpty())
+            return result;
+
+        // region limits relative to mask bounds
+        final int rxMin = intersect.x - bounds.x;
+        final int rxMax = rxMin + intersect.width;
+        // offset of mask bounds origin in result row
+        final int dx = bounds.x - region.x;
+        int off = (intersect.y - region.y) * region.width;
+
+        for (int y = 0; y < intersect.height; y++)
+        {
+            final int ry = (intersect.y + y) - bounds.y;
+            final int end = rowIndex[ry + 1] << 1;
+
+            for (int i = rowIndex[ry] << 1; i < end; i += 2)
+            {
+                final int s = Math.max(rxMin, runs[i]);
+                final int e = Math.min(rxMax, runs[i + 1]);
+
+                if (s < e)
+                    Arrays.fill(result, off + dx + s, off + dx + e, true);
+            }
+
+            off += region.width;
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the boolean mask array representing the mask bounds region.
+     */
+    public boolean[] toBooleanArray()
+    {
+        return toBooleanArray(bounds);
+    }
+
+    /**
+     * Returns the {@link BooleanMask2D} representation of this mask.
+     */
+    public BooleanMask2D toBooleanMask2D()
+    {
+        return new BooleanMask2D(new Rectangle(bounds), toBooleanArray());
+    }
+
+    /**
+     * Get the smallest bounds which fit mask content.
+     */
+    public Rectangle getOptimizedBounds()
+    {
+        // empty --> return empty bounds
+        if (runs.length == 0)
+            return new Rectangle(bounds.x, bounds.y, 0, 0);
+
+        int minX = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int minY = -1;
+        int maxY = -1;
+
+        for (int ry = 0; ry < bounds.height; ry++)
+        {
+            final int start = rowIndex[ry];
+            final int end = rowIndex[ry + 1];
+
+            if (start != end)
+            {
+                if (minY == -1)
+                    minY = ry;
+                maxY = ry;
+
+                // runs are sorted
+                if (runs[start << 1] < minX)
+                    minX = runs[start << 1];
+                if (runs[(end << 1) - 1] > maxX)
+                    maxX = runs[(end << 1) - 1];
+            }
+        }
+
+        return new Rectangle(bounds.x + minX, bounds.y + minY, maxX - minX, (maxY - minY) + 1);
+    }
+
+    /**
+     * Optimize mask bounds so it fit mask content.
+     */
+    public void optimizeBounds()
+    {
+        final Rectangle optBounds = getOptimizedBounds();
+
+        if (optBounds.equals(bounds))
+            return;
+
+        final int dx = optBounds.x - bounds.x;
+        final int dy = optBounds.y - bounds.y;
+        final int[] newRowIndex = new int[optBounds.height + 1];
+        final int baseRun = (optBounds.height > 0) ? rowIndex[dy] : 0;
+        final int[] newRuns = new int[runs.length];
+
+        for (int r = 0; r < newRowIndex.length; r++)
+            newRowIndex[r] = rowIndex[dy + r] - baseRun;
+        for (int i = 0; i < newRuns.length; i++)
+            newRuns[i] = runs[i] - dx;
+
+        // update mask and bounds
+        synchronized (this)
+        {
+            rowIndex = newRowIndex;
+            runs = newRuns;
+            bounds = optBounds;
+        }
+    }
+
+    /**
+     * Returns an approximation of the memory used by this mask (in bytes).
+     */
+    public long getMemorySize()
+    {
+        return ((long) rowIndex.length + (long) runs.length) * 4L;
+    }
+
+    @Override
+    public Object clone()
+    {
+        // run arrays are never modified so we can share them
+        return new RLEMask2D(new Rectangle(bounds), rowIndex, runs);
+    }
+}
@@ -27,6 +27,7 @@ import java.awt.event.KeyEvent;
 import java.awt.event.MouseEvent;
 import java.awt.geom.Point2D;
 import java.lang.reflect.Constructor;
+import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -135,6 +136,7 @@ public abstract class ROI implements ChangeListener, XMLPersistent
     public static final String ID_READONLY = "readOnly";
     public static final String ID_SHOWNAME = "showName";
     public static final String ID_PROPERTIES = "properties";
+    public static final String ID_CONTENT_VERSION = "contentVersion";
     // public static final String ID_PAINTER = "painter";
 
     public static final ROIIdComparator idComparator = new ROIIdComparator();
@@ -786,6 +788,14 @@ public abstract class ROI implements ChangeListener, XMLPersistent
             canBeRemoved = false;
         }
 
+        /**
+         * @return the ROI this painter belongs to.
+         */
+        public ROI getROI()
+        {
+            return ROI.this;
+        }
+
         /**
          * @return Return the ROI painter stroke.
          */
@@ -1511,6 +1521,10 @@ public abstract class ROI implements ChangeListener, XMLPersistent
      * id generator
      */
     private static int id_generator = 1;
+    /**
+     * content version generator (random so versions stay unique across sessions, see {@link #getContentVersion()})
+     */
+    private static final SecureRandom version_generator = new SecureRandom();
 
     /**
      * associated ROI painter
@@ -1538,6 +1552,18 @@ public abstract class ROI implements ChangeListener, XMLPersistent
     protected boolean boundsInvalid;
     protected boolean numberOfContourPointsInvalid;
     protected boolean numberOfPointsInvalid;
+    /**
+     * display modification counter (see {@link #getDisplayModCount()})
+     */
+    protected volatile int displayModCount;
+    /**
+     * content version (see {@link #getContentVersion()})
+     */
+    protected volatile long contentVersion;
+    /**
+     * content version restored from XML, to apply on next content change event
+     */
+    protected long restoredContentVersion;
 
     /**
      * listeners
@@ -1554,6 +1580,8 @@ public abstract class ROI implements ChangeListener, XMLPersistent
 
         // ensure unique id
         id = generateId();
+        contentVersion = generateContentVersion();
+        restoredContentVersion = 0L;
         painter = createPainter();
         name = "";
         // groupid = null;
@@ -1597,6 +1625,21 @@ public abstract class ROI implements ChangeListener, XMLPersistent
         return id_generator++;
     }
 
+    /**
+     * @return generate unique content version (random positive value, a session counter would restart from 1 and
+     *         collide with versions of ROI loaded from a previous session)
+     */
+    private static long generateContentVersion()
+    {
+        long result;
+
+        do
+            result = version_generator.nextLong() & Long.MAX_VALUE;
+        while (result == 0L);
+
+        return result;
+    }
+
     /**
      * @deprecated use {@link Sequence#addROI(ROI)} instead
      * @param sequence
@@ -2285,6 +2328,29 @@ public abstract class ROI implements ChangeListener, XMLPersistent
         }
     }
 
+    /**
+     * @return a counter incremented each time the ROI content, position or a display property (color, stroke,
+     *         opacity, name...) changed.<br>
+     *         Selection and focus changes do not modify it so it can be used to validate a cached rendering of the
+     *         ROI.
+     */
+    public int getDisplayModCount()
+    {
+        return displayModCount;
+    }
+
+    /**
+     * @return the content version of the ROI: a new unique value is assigned each time the ROI content or position
+     *         changes.<br>
+     *         The version is saved with the ROI (see {@link #saveToXML(Node)}) and restored when the ROI is loaded or
+     *         copied from XML (undo / redo, copy, sequence persistence) so it identifies the ROI content and can be used
+     *         to validate cached descriptor results (see {@link ROIDescriptorCache}).
+     */
+    public long getContentVersion()
+    {
+        return contentVersion;
+    }
+
     /**
      * @return Return <code>true</code> if ROI should display its name at draw time.<br>
      */
@@ -3564,6 +3630,15 @@ public abstract class ROI implements ChangeListener, XMLPersistent
                 }
             }
 
+            final long version = XMLUtil.getElementLongValue(node, ID_CONTENT_VERSION, 0L);
+            if (version > 0L)
+            {
+                // loaded content is the one identified by this version
+                contentVersion = version;
+                // content change events from loading should not modify it
+                restoredContentVersion = version;
+            }
+
             return painter.loadFromXML(node);
         }
         finally
@@ -3584,6 +3659,7 @@ public abstract class ROI implements ChangeListener, XMLPersistent
         // XMLUtil.setElementIntValue(node, ID_GROUPID, getGroupId().ordinal());
         XMLUtil.setElementBooleanValue(node, ID_SELECTED, isSelected());
         XMLUtil.setElementBooleanValue(node, ID_READONLY, isReadOnly());
+        XMLUtil.setElementLongValue(node, ID_CONTENT_VERSION, contentVersion);
 
         final Element propertiesNode = XMLUtil.setElement(node, ID_PROPERTIES);
         final Set<Entry<String, String>> entries = properties.entrySet();
@@ -3607,6 +3683,7 @@ public abstract class ROI implements ChangeListener, XMLPersistent
     @Deprecated
     public void roiChanged(ROIPointEventType pointEventType, Object point)
     {
+        contentVersionChanged();
         // handle with updater
         updater.changed(new ROIEvent(this, ROIEventType.ROI_CHANGED, pointEventType, point));
     }
@@ -3619,6 +3696,7 @@ public abstract class ROI implements ChangeListener, XMLPersistent
      */
     public void roiChanged(boolean contentChanged)
     {
+        contentVersionChanged();
         // handle with updater
         if (contentChanged)
             updater.changed(new ROIEvent(this, ROIEventType.ROI_CHANGED, ROI_CHANGED_ALL));
@@ -3626,6 +3704,18 @@ public abstract class ROI implements ChangeListener, XMLPersistent
             updater.changed(new ROIEvent(this, ROIEventType.ROI_CHANGED, ROI_CHANGED_POSITION));
     }
 
+    /**
+     * Assign a new content version (done immediately as ROI_CHANGED event may be delayed by {@link #beginUpdate()}).
+     */
+    protected void contentVersionChanged()
+    {
+        // content loaded from XML keeps its version
+        if (restoredContentVersion != 0L)
+            contentVersion = restoredContentVersion;
+        else
+            contentVersion = generateContentVersion();
+    }
+
     /**
      * @deprecated Use {@link #roiChanged(boolean)} instead.
      */
@@ -3732,6 +3822,10 @@ public abstract class ROI implements ChangeListener, XMLPersistent
     {
         painter.endUpdate();
         updater.endUpdate();
+
+        // all events fired --> restored content version is now applied
+        if (!isUpdating())
+            restoredContentVersion = 0L;
     }
 
     public boolean isUpdating()
@@ -3756,6 +3850,7 @@ public abstract class ROI implements ChangeListener, XMLPersistent
                     numberOfContourPointsInvalid = true;
                     numberOfPointsInvalid = true;
                 }
+                displayModCount++;
                 painter.painterChanged();
                 break;
 
@@ -3775,7 +3870,10 @@ public abstract class ROI implements ChangeListener, XMLPersistent
                         || StringUtil.equals(property, PROPERTY_OPACITY)
                         || StringUtil.equals(property, PROPERTY_SHOWNAME)
                         || StringUtil.equals(property, PROPERTY_STROKE))
+                {
+                    displayModCount++;
                     painter.painterChanged();
+                }
                 break;
 
             default:
@@ -363,6 +363,10 @@ public abstract class ROI3D extends ROI
      * c coordinate attachment
      */
     protected int c;
+    /**
+     * rasterized 2D masks cache (see {@link #isMaskCacheEnabled()})
+     */
+    protected final ROIMaskCache maskCache;
 
     public ROI3D()
     {
@@ -371,6 +375,7 @@ public abstract class ROI3D extends ROI
         // by default we consider no specific T and C attachment
         t = -1;
         c = -1;
+        maskCache = new ROIMaskCache();
     }
 
     @Override
@@ -985,7 +990,44 @@ public abstract class ROI3D extends ROI
         if (!isActiveFor(t, c))
             return new BooleanMask2D(new Rectangle(), new boolean[0]);
 
-        return getBooleanMask2D(z, inclusive);
+        return getCachedBooleanMask2D(z, inclusive);
+    }
+
+    /**
+     * Returns <code>true</code> if 2D masks returned by {@link #getBooleanMask2D(int, int, int, boolean)} are cached
+     * (default is <code>false</code>).<br>
+     * Override it to return <code>true</code> for ROI which need to rasterize their mask on each call.
+     */
+    protected boolean isMaskCacheEnabled()
+    {
+        return false;
+    }
+
+    /**
+     * Same as {@link #getBooleanMask2D(int, boolean)} but uses the mask cache when enabled (see
+     * {@link #isMaskCacheEnabled()}).<br>
+     * Cache is invalidated as soon as {@link #roiChanged(boolean)} is called.
+     * 
+     * @throws InterruptedException
+     */
+    protected BooleanMask2D getCachedBooleanMask2D(int z, boolean inclusive) throws InterruptedException
+    {
+        if (!isMaskCacheEnabled())
+            return getBooleanMask2D(z, inclusive);
+
+        final int curT = getT();
+        final int curC = getC();
+        BooleanMask2D result = maskCache.get(z, curT, curC, inclusive);
+
+        if (result == null)
+        {
+            final int modCount = maskCache.getModCount();
+
+            result = getBooleanMask2D(z, inclusive);
+            maskCache.put(z, curT, curC, inclusive, result, modCount);
+        }
+
+        return result;
     }
 
     /**
@@ -1048,7 +1090,7 @@ public abstract class ROI3D extends ROI
         bounds.setZ(z);
         bounds.setSizeZ(1);
 
-        return new BooleanMask3D(bounds, new BooleanMask2D[] {getBooleanMask2D(z, inclusive)});
+        return new BooleanMask3D(bounds, new BooleanMask2D[] {getCachedBooleanMask2D(z, inclusive)});
     }
 
     /**
@@ -1064,7 +1106,7 @@ public abstract class ROI3D extends ROI
         final BooleanMask2D masks[] = new BooleanMask2D[bounds.sizeZ];
 
         for (int z = 0; z < masks.length; z++)
-            masks[z] = getBooleanMask2D(bounds.z + z, inclusive);
+            masks[z] = getCachedBooleanMask2D(bounds.z + z, inclusive);
 
         return new BooleanMask3D(bounds, masks);
     }
@@ -1244,6 +1286,27 @@ public abstract class ROI3D extends ROI
         return ((getT() == -1) || (t == -1) || (getT() == t)) && ((getC() == -1) || (c == -1) || (getC() == c));
     }
 
+    @Deprecated
+    @Override
+    public void roiChanged(ROIEvent.ROIPointEventType pointEventType, Object point)
+    {
+        // invalidate cached masks now (ROI_CHANGED event may be delayed by beginUpdate())
+        if (maskCache != null)
+            maskCache.invalidate();
+
+        super.roiChanged(pointEventType, point);
+    }
+
+    @Override
+    public void roiChanged(boolean contentChanged)
+    {
+        // invalidate cached masks now (ROI_CHANGED event may be delayed by beginUpdate())
+        if (maskCache != null)
+            maskCache.invalidate();
+
+        super.roiChanged(contentChanged);
+    }
+
     // @Override
     // public void onChanged(CollapsibleEvent object)
     // {
@@ -0,0 +1,539 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ *
+ * This file is part of Icy.
+ *
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.roi;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import icy.roi.ROIEvent.ROIEventType;
+import icy.sequence.Sequence;
+import icy.sequence.SequenceEvent;
+import icy.sequence.SequenceEvent.SequenceEventSourceType;
+import icy.type.rectangle.Rectangle5D;
+import icy.util.StringUtil;
+import icy.util.XMLUtil;
+
+/**
+ * Cache of ROI descriptor results computed on a Sequence.<br>
+ * Results are keyed by the ROI content version (see {@link ROI#getContentVersion()}), the version of the Sequence
+ * data the descriptor depends on (see {@link #getDataVersion(Sequence, ROI, ROIDescriptor)}), the descriptor id and
+ * the channel so a result is found again as long as the ROI content and the data are the same (after undo / redo or
+ * when the ROI is reloaded) without any explicit invalidation.<br>
+ * Only descriptors which do not depend on ROI properties (name, color...) can be cached (see
+ * {@link #isCacheable(ROIDescriptor, ROI)}).<br>
+ * The cache is bounded (least recently used results are released first) and can be persisted in the Sequence XML data
+ * (see {@link #saveToXML(Node, Sequence, boolean)}).
+ *
+ * @author Stephane
+ */
+public class ROIDescriptorCache
+{
+    /**
+     * Default maximum number of cached results
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 100000;
+
+    protected static final String ID_RESULT = "result";
+    protected static final String ID_ROI_VERSION = "roi";
+    protected static final String ID_DESCRIPTOR = "id";
+    protected static final String ID_CHANNEL = "c";
+    protected static final String ID_DATA = "data";
+    protected static final String ID_META = "meta";
+    protected static final String ID_TYPE = "type";
+    protected static final String ID_VALUE = "value";
+
+    protected static final class Key
+    {
+        final long roiVersion;
+        final long dataVersion;
+        final String descriptorId;
+        final int channel;
+
+        Key(long roiVersion, long dataVersion, String descriptorId, int channel)
+        {
+            super();
+
+            this.roiVersion = roiVersion;
+            this.dataVersion = dataVersion;
+            this.descriptorId = descriptorId;
+            this.channel = channel;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (obj instanceof Key)
+            {
+                final Key key = (Key) obj;
+
+                return (key.roiVersion == roiVersion) && (key.dataVersion == dataVersion)
+                        && (key.channel == channel) && key.descriptorId.equals(descriptorId);
+            }
+
+            return false;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return (((((int) (roiVersion ^ (roiVersion >>> 32)) * 31) + (int) (dataVersion ^ (dataVersion >>> 32)))
+                    * 31) + descriptorId.hashCode()) * 31 + channel;
+        }
+    }
+
+    protected static final class Entry
+    {
+        final Object value;
+        /**
+         * result depends on sequence data
+         */
+        final boolean data;
+        /**
+         * result depends on sequence metadata
+         */
+        final boolean meta;
+
+        Entry(Object value, boolean data, boolean meta)
+        {
+            super();
+
+            this.value = value;
+            this.data = data;
+            this.meta = meta;
+        }
+    }
+
+    /**
+     * cached results (access order for LRU)
+     */
+    protected final LinkedHashMap<Key, Entry> entries;
+    protected int maxEntries;
+    protected boolean persistent;
+
+    public ROIDescriptorCache(int maxEntries)
+    {
+        super();
+
+        entries = new LinkedHashMap<Key, Entry>(256, 0.75f, true);
+        this.maxEntries = Math.max(0, maxEntries);
+        persistent = true;
+    }
+
+    public ROIDescriptorCache()
+    {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Returns the maximum number of cached results.
+     */
+    public int getMaxEntries()
+    {
+        synchronized (entries)
+        {
+            return maxEntries;
+        }
+    }
+
+    /**
+     * Sets the maximum number of cached results.
+     */
+    public void setMaxEntries(int value)
+    {
+        synchronized (entries)
+        {
+            maxEntries = Math.max(0, value);
+            trim();
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if cached results are saved with the Sequence XML persistent data.
+     */
+    public boolean isPersistent()
+    {
+        return persistent;
+    }
+
+    /**
+     * Sets to <code>true</code> to save cached results with the Sequence XML persistent data.
+     */
+    public void setPersistent(boolean value)
+    {
+        persistent = value;
+    }
+
+    /**
+     * Returns the number of cached results.
+     */
+    public int size()
+    {
+        synchronized (entries)
+        {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Release all cached results.
+     */
+    public void clear()
+    {
+        synchronized (entries)
+        {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Returns the cached result of the specified descriptor for the ROI content and the sequence data.<br>
+     * Returns <code>null</code> if the result is not cached.
+     *
+     * @param roi
+     *        the ROI (the one the descriptor is computed on or its parent ROI for per channel computation)
+     * @param descriptor
+     *        the descriptor
+     * @param channel
+     *        channel for per channel descriptor, 0 otherwise
+     * @param dataVersion
+     *        data version (see {@link #getDataVersion(Sequence, ROI, ROIDescriptor)})
+     */
+    public Object get(ROI roi, ROIDescriptor descriptor, int channel, long dataVersion)
+    {
+        final Entry entry;
+
+        synchronized (entries)
+        {
+            entry = entries.get(new Key(roi.getContentVersion(), dataVersion, descriptor.getId(), channel));
+        }
+
+        if (entry == null)
+            return null;
+
+        return entry.value;
+    }
+
+    /**
+     * Store the result of the specified descriptor for the given ROI content and sequence data.<br>
+     * Does nothing if the descriptor cannot be cached (see {@link #isCacheable(ROIDescriptor, ROI)}) or if value is
+     * <code>null</code>.
+     *
+     * @param roi
+     *        the ROI (the one the descriptor is computed on or its parent ROI for per channel computation)
+     * @param roiVersion
+     *        the ROI content version the result has been computed for
+     * @param descriptor
+     *        the descriptor
+     * @param channel
+     *        channel for per channel descriptor, 0 otherwise
+     * @param sequence
+     *        the sequence the result has been computed on
+     * @param dataVersion
+     *        data version the result has been computed for (see {@link #getDataVersion(Sequence, ROI, ROIDescriptor)})
+     * @param value
+     *        the descriptor result
+     */
+    public void put(ROI roi, long roiVersion, ROIDescriptor descriptor, int channel, Sequence sequence,
+            long dataVersion, Object value)
+    {
+        if ((value == null) || !isCacheable(descriptor, roi))
+            return;
+
+        final Entry entry = new Entry(value, isDataDependent(descriptor, sequence),
+                isMetaDataDependent(descriptor, sequence));
+
+        synchronized (entries)
+        {
+            entries.put(new Key(roiVersion, dataVersion, descriptor.getId(), channel), entry);
+            trim();
+        }
+    }
+
+    /**
+     * Release least recently used results to respect the maximum number of entries (should be called with lock on
+     * entries).
+     */
+    protected void trim()
+    {
+        while (entries.size() > maxEntries)
+            entries.remove(entries.keySet().iterator().next());
+    }
+
+    /**
+     * Returns <code>true</code> if results of the specified descriptor can be cached: descriptor result should only
+     * depend on ROI content and sequence data / metadata, not on ROI properties (name, color...).
+     */
+    public static boolean isCacheable(ROIDescriptor descriptor, ROI roi)
+    {
+        final String[] properties = {null, ROI.PROPERTY_NAME, ROI.PROPERTY_ID, ROI.PROPERTY_ICON,
+                ROI.PROPERTY_READONLY, ROI.PROPERTY_SHOWNAME, ROI.PROPERTY_COLOR, ROI.PROPERTY_STROKE,
+                ROI.PROPERTY_OPACITY};
+
+        try
+        {
+            for (String property : properties)
+                if (descriptor.needRecompute(new ROIEvent(roi, ROIEventType.PROPERTY_CHANGED, property)))
+                    return false;
+
+            return !descriptor.needRecompute(new ROIEvent(roi, ROIEventType.SELECTION_CHANGED))
+                    && !descriptor.needRecompute(new ROIEvent(roi, ROIEventType.FOCUS_CHANGED));
+        }
+        catch (RuntimeException e)
+        {
+            // descriptor does not support these events --> don't cache it
+            return false;
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if results of the specified descriptor depend on sequence data.
+     */
+    protected static boolean isDataDependent(ROIDescriptor descriptor, Sequence sequence)
+    {
+        try
+        {
+            return descriptor.needRecompute(new SequenceEvent(sequence, SequenceEventSourceType.SEQUENCE_DATA));
+        }
+        catch (RuntimeException e)
+        {
+            // consider it as dependent to be safe
+            return true;
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if results of the specified descriptor depend on sequence metadata.
+     */
+    protected static boolean isMetaDataDependent(ROIDescriptor descriptor, Sequence sequence)
+    {
+        try
+        {
+            return descriptor.needRecompute(new SequenceEvent(sequence, SequenceEventSourceType.SEQUENCE_META));
+        }
+        catch (RuntimeException e)
+        {
+            // consider it as dependent to be safe
+            return true;
+        }
+    }
+
+    /**
+     * Returns the version of the sequence data the specified descriptor depends on when computed on the given ROI:
+     * <ul>
+     * <li>data version of the planes covered by the ROI (see {@link Sequence#getDataVersion(int, int)}) if the
+     * descriptor depends on sequence data</li>
+     * <li>pixel size and time interval if the descriptor depends on sequence metadata</li>
+     * </ul>
+     * Returns <code>0</code> if the descriptor does not depend on sequence.
+     */
+    public static long getDataVersion(Sequence sequence, ROI roi, ROIDescriptor descriptor)
+    {
+        if (sequence == null)
+            return 0L;
+
+        return getDataVersion(sequence, roi, isDataDependent(descriptor, sequence),
+                isMetaDataDependent(descriptor, sequence));
+    }
+
+    protected static long getDataVersion(Sequence sequence, ROI roi, boolean data, boolean meta)
+    {
+        long result = 0L;
+
+        if (meta)
+        {
+            result = mix(result, Double.doubleToLongBits(sequence.getPixelSizeX()));
+            result = mix(result, Double.doubleToLongBits(sequence.getPixelSizeY()));
+            result = mix(result, Double.doubleToLongBits(sequence.getPixelSizeZ()));
+            result = mix(result, Double.doubleToLongBits(sequence.getTimeInterval()));
+        }
+
+        if (data)
+        {
+            final Rectangle5D.Integer bounds = (Rectangle5D.Integer) sequence.getBounds5D()
+                    .createIntersection(roi.getBounds5D());
+
+            result = mix(result, bounds.t);
+            result = mix(result, bounds.sizeT);
+            result = mix(result, bounds.z);
+            result = mix(result, bounds.sizeZ);
+            result = mix(result, sequence.getSizeC());
+
+            for (int t = bounds.t; t < bounds.t + bounds.sizeT; t++)
+                for (int z = bounds.z; z < bounds.z + bounds.sizeZ; z++)
+                    result = mix(result, sequence.getDataVersion(t, z));
+        }
+
+        return result;
+    }
+
+    private static long mix(long hash, long value)
+    {
+        return (hash * 0x9E3779B97F4A7C15L) + value + 1L;
+    }
+
+    /**
+     * Save the cached results still valid for the ROIs of the specified sequence in the given XML node.<br>
+     * Only numeric, boolean and string results are saved.
+     *
+     * @param node
+     *        XML node where to save results
+     * @param sequence
+     *        the sequence the results have been computed on
+     * @param saveDataDependent
+     *        if <code>false</code> results depending on sequence data are not saved (data can't be validated on
+     *        reload)
+     */
+    public void saveToXML(Node node, Sequence sequence, boolean saveDataDependent)
+    {
+        final Map<Long, ROI> rois = getROIsByVersion(sequence);
+        final List<Map.Entry<Key, Entry>> toSave;
+
+        synchronized (entries)
+        {
+            toSave = new ArrayList<Map.Entry<Key, Entry>>(entries.entrySet());
+        }
+
+        for (Map.Entry<Key, Entry> mapEntry : toSave)
+        {
+            final Key key = mapEntry.getKey();
+            final Entry entry = mapEntry.getValue();
+            final ROI roi = rois.get(Long.valueOf(key.roiVersion));
+            final String type = getTypeName(entry.value);
+
+            // ROI not in sequence anymore or unsupported type
+            if ((roi == null) || (type == null))
+                continue;
+            if (entry.data && !saveDataDependent)
+                continue;
+            // result not valid anymore
+            if (getDataVersion(sequence, roi, entry.data, entry.meta) != key.dataVersion)
+                continue;
+
+            final Element nodeResult = XMLUtil.addElement(node, ID_RESULT);
+
+            XMLUtil.setAttributeLongValue(nodeResult, ID_ROI_VERSION, key.roiVersion);
+            XMLUtil.setAttributeValue(nodeResult, ID_DESCRIPTOR, key.descriptorId);
+            XMLUtil.setAttributeIntValue(nodeResult, ID_CHANNEL, key.channel);
+            XMLUtil.setAttributeBooleanValue(nodeResult, ID_DATA, entry.data);
+            XMLUtil.setAttributeBooleanValue(nodeResult, ID_META, entry.meta);
+            XMLUtil.setAttributeValue(nodeResult, ID_TYPE, type);
+            XMLUtil.setAttributeValue(nodeResult, ID_VALUE, entry.value.toString());
+        }
+    }
+
+    /**
+     * Load results saved with {@link #saveToXML(Node, Sequence, boolean)} for the ROIs of the specified sequence (ROIs
+     * should be already loaded).
+     *
+     * @param node
+     *        XML node where results are saved
+     * @param sequence
+     *        the sequence the results have been computed on
+     * @param loadDataDependent
+     *        if <code>false</code> results depending on sequence data are ignored (data changed since results were
+     *        saved)
+     */
+    public void loadFromXML(Node node, Sequence sequence, boolean loadDataDependent)
+    {
+        final Map<Long, ROI> rois = getROIsByVersion(sequence);
+
+        for (Element nodeResult : XMLUtil.getElements(node, ID_RESULT))
+        {
+            final long roiVersion = XMLUtil.getAttributeLongValue(nodeResult, ID_ROI_VERSION, 0L);
+            final String descriptorId = XMLUtil.getAttributeValue(nodeResult, ID_DESCRIPTOR, "");
+            final int channel = XMLUtil.getAttributeIntValue(nodeResult, ID_CHANNEL, 0);
+            final boolean data = XMLUtil.getAttributeBooleanValue(nodeResult, ID_DATA, true);
+            final boolean meta = XMLUtil.getAttributeBooleanValue(nodeResult, ID_META, true);
+            final Object value = parseValue(XMLUtil.getAttributeValue(nodeResult, ID_TYPE, ""),
+                    XMLUtil.getAttributeValue(nodeResult, ID_VALUE, null));
+            final ROI roi = rois.get(Long.valueOf(roiVersion));
+
+            if ((roi == null) || StringUtil.isEmpty(descriptorId) || (value == null))
+                continue;
+            if (data && !loadDataDependent)
+                continue;
+
+            final Key key = new Key(roiVersion, getDataVersion(sequence, roi, data, meta), descriptorId, channel);
+
+            synchronized (entries)
+            {
+                entries.put(key, new Entry(value, data, meta));
+                trim();
+            }
+        }
+    }
+
+    private static Map<Long, ROI> getROIsByVersion(Sequence sequence)
+    {
+        final Map<Long, ROI> result = new HashMap<Long, ROI>();
+
+        for (ROI roi : sequence.getROIs())
+            result.put(Long.valueOf(roi.getContentVersion()), roi);
+
+        return result;
+    }
+
+    private static String getTypeName(Object value)
+    {
+        if ((value instanceof Double) || (value instanceof Float) || (value instanceof Long)
+                || (value instanceof Integer) || (value instanceof Short) || (value instanceof Byte)
+                || (value instanceof Boolean) || (value instanceof String))
+            return value.getClass().getSimpleName();
+
+        return null;
+    }
+
+    private static Object parseValue(String type, String value)
+    {
+        if (value == null)
+            return null;
+
+        try
+        {
+            if (type.equals("Double"))
+                return Double.valueOf(value);
+            if (type.equals("Float"))
+                return Float.valueOf(value);
+            if (type.equals("Long"))
+                return Long.valueOf(value);
+            if (type.equals("Integer"))
+                return Integer.valueOf(value);
+            if (type.equals("Short"))
+                return Short.valueOf(value);
+            if (type.equals("Byte"))
+                return Byte.valueOf(value);
+            if (type.equals("Boolean"))
+                return Boolean.valueOf(value);
+            if (type.equals("String"))
+                return value;
+        }
+        catch (NumberFormatException e)
+        {
+            // ignore invalid value
+        }
+
+        return null;
+    }
+}
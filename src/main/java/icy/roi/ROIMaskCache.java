@@ -0,0 +1,309 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ *
+ * This file is part of Icy.
+ *
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.roi;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Bounded cache of rasterized {@link BooleanMask2D} for a ROI, keyed by (Z, T, C, inclusive).<br>
+ * Each cache is limited in number of entries and the memory used by all caches is accounted globally: when the
+ * global limit is reached the least recently used masks (from any ROI) are released first.<br>
+ * Cached masks are never exposed directly, a copy is returned so callers can modify it freely.
+ * 
+ * @author Stephane
+ */
+public class ROIMaskCache
+{
+    /**
+     * Default maximum number of cached mask per ROI
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 1024;
+
+    protected static final class Key
+    {
+        final int z;
+        final int t;
+        final int c;
+        final boolean inclusive;
+
+        Key(int z, int t, int c, boolean inclusive)
+        {
+            super();
+
+            this.z = z;
+            this.t = t;
+            this.c = c;
+            this.inclusive = inclusive;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (obj instanceof Key)
+            {
+                final Key key = (Key) obj;
+
+                return (key.z == z) && (key.t == t) && (key.c == c) && (key.inclusive == inclusive);
+            }
+
+            return false;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return (((((z * 31) + t) * 31) + c) * 2) + (inclusive ? 1 : 0);
+        }
+    }
+
+    protected static final class Entry
+    {
+        final ROIMaskCache owner;
+        final Key key;
+        final BooleanMask2D mask;
+        final long size;
+
+        Entry(ROIMaskCache owner, Key key, BooleanMask2D mask)
+        {
+            super();
+
+            this.owner = owner;
+            this.key = key;
+            this.mask = mask;
+            // mask data + objects overhead
+            size = mask.mask.length + 96L;
+        }
+    }
+
+    /**
+     * global LRU of all cached entries (also used as global lock)
+     */
+    protected static final LinkedHashMap<Entry, Entry> globalEntries = new LinkedHashMap<Entry, Entry>(256, 0.75f,
+            true);
+    protected static long memoryUsage = 0L;
+    protected static long maxMemory = Runtime.getRuntime().maxMemory() / 16;
+
+    /**
+     * Returns the global memory limit (in bytes) for all cached masks.
+     */
+    public static long getMaxMemory()
+    {
+        synchronized (globalEntries)
+        {
+            return maxMemory;
+        }
+    }
+
+    /**
+     * Sets the global memory limit (in bytes) for all cached masks.
+     */
+    public static void setMaxMemory(long value)
+    {
+        synchronized (globalEntries)
+        {
+            maxMemory = Math.max(0L, value);
+            trim();
+        }
+    }
+
+    /**
+     * Returns the memory (in bytes) currently used by all cached masks.
+     */
+    public static long getMemoryUsage()
+    {
+        synchronized (globalEntries)
+        {
+            return memoryUsage;
+        }
+    }
+
+    /**
+     * Release all cached masks (from all ROI).
+     */
+    public static void clearAll()
+    {
+        synchronized (globalEntries)
+        {
+            for (Entry entry : globalEntries.keySet())
+                entry.owner.entries = null;
+
+            globalEntries.clear();
+            memoryUsage = 0L;
+        }
+    }
+
+    /**
+     * Remove least recently used entries while we exceed the memory limit (global lock should be hold).
+     */
+    protected static void trim()
+    {
+        final Iterator<Entry> it = globalEntries.keySet().iterator();
+
+        while ((memoryUsage > maxMemory) && it.hasNext())
+        {
+            final Entry entry = it.next();
+
+            it.remove();
+            entry.owner.entries.remove(entry.key);
+            memoryUsage -= entry.size;
+        }
+    }
+
+    protected final int maxEntries;
+    /**
+     * cached entries for this ROI in access order (lazily created, guarded by global lock)
+     */
+    protected LinkedHashMap<Key, Entry> entries;
+    /**
+     * modification counter (incremented on each invalidation)
+     */
+    protected int modCount;
+
+    public ROIMaskCache(int maxEntries)
+    {
+        super();
+
+        this.maxEntries = maxEntries;
+        entries = null;
+        modCount = 0;
+    }
+
+    public ROIMaskCache()
+    {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Returns a copy of the cached mask for the specified position or <code>null</code> if not in cache.
+     */
+    public BooleanMask2D get(int z, int t, int c, boolean inclusive)
+    {
+        final BooleanMask2D mask;
+
+        synchronized (globalEntries)
+        {
+            if (entries == null)
+                return null;
+
+            final Entry entry = entries.get(new Key(z, t, c, inclusive));
+
+            if (entry == null)
+                return null;
+
+            // update global access order
+            globalEntries.get(entry);
+            mask = entry.mask;
+        }
+
+        return (BooleanMask2D) mask.clone();
+    }
+
+    /**
+     * Returns the modification counter, it should be retrieved before computing a mask then given to
+     * {@link #put(int, int, int, boolean, BooleanMask2D, int)} so a mask computed while the ROI changed is not stored.
+     */
+    public int getModCount()
+    {
+        synchronized (globalEntries)
+        {
+            return modCount;
+        }
+    }
+
+    /**
+     * Store a copy of the specified mask in the cache (only if the cache was not invalidated since
+     * <code>expectedModCount</code> was retrieved with {@link #getModCount()}).
+     */
+    public void put(int z, int t, int c, boolean inclusive, BooleanMask2D mask, int expectedModCount)
+    {
+        if (mask == null)
+            return;
+
+        final Entry entry = new Entry(this, new Key(z, t, c, inclusive), (BooleanMask2D) mask.clone());
+
+        synchronized (globalEntries)
+        {
+            // invalidated in between or mask too large to be cached
+            if ((expectedModCount != modCount) || (entry.size > (maxMemory / 4)))
+                return;
+
+            if (entries == null)
+                entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+
+            final Entry old = entries.put(entry.key, entry);
+
+            if (old != null)
+            {
+                globalEntries.remove(old);
+                memoryUsage -= old.size;
+            }
+
+            globalEntries.put(entry, entry);
+            memoryUsage += entry.size;
+
+            // too many entries for this ROI --> remove least recently used one
+            if (entries.size() > maxEntries)
+            {
+                final Iterator<Entry> it = entries.values().iterator();
+                final Entry eldest = it.next();
+
+                it.remove();
+                globalEntries.remove(eldest);
+                memoryUsage -= eldest.size;
+            }
+
+            // global memory limit
+            trim();
+        }
+    }
+
+    /**
+     * Release all cached masks of this cache (to call when the ROI changed).
+     */
+    public void invalidate()
+    {
+        synchronized (globalEntries)
+        {
+            modCount++;
+
+            if (entries == null)
+                return;
+
+            for (Entry entry : entries.values())
+            {
+                globalEntries.remove(entry);
+                memoryUsage -= entry.size;
+            }
+
+            entries = null;
+        }
+    }
+
+    /**
+     * Returns the number of cached masks.
+     */
+    public int size()
+    {
+        synchronized (globalEntries)
+        {
+            return (entries == null) ? 0 : entries.size();
+        }
+    }
+}
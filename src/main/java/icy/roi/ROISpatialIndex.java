@@ -0,0 +1,331 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ *
+ * This file is part of Icy.
+ *
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.roi;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import icy.type.rectangle.Rectangle5D;
+
+/**
+ * Spatial index of a set of ROI based on a uniform grid over their XY bounds (see {@link ROI#getBounds5D()}).<br>
+ * It permits to quickly retrieve the ROI which may intersect a given region (viewport, mouse cursor...) without
+ * iterating over all ROI.<br>
+ * The index is updated incrementally: changed ROI are only marked as dirty (see {@link #invalidate(ROI)}) and
+ * re-indexed on next query so several changes cost a single bounds computation.<br>
+ * ROI with infinite or very large XY extent are not stored in the grid but always tested.
+ *
+ * @author Stephane
+ */
+public class ROISpatialIndex
+{
+    /**
+     * Default grid cell size (image unit)
+     */
+    public static final double DEFAULT_CELL_SIZE = 128d;
+    /**
+     * Maximum number of grid cell a ROI can cover before being considered as a 'large' ROI
+     */
+    protected static final int MAX_CELL_PER_ROI = 256;
+
+    protected final double cellSize;
+    /**
+     * grid cells (key is packed XY cell index)
+     */
+    protected final Map<Long, List<ROI>> cells;
+    /**
+     * indexed ROI with bounds used for indexing
+     */
+    protected final Map<ROI, Rectangle5D> bounds;
+    /**
+     * ROI not stored in the grid (infinite or too large)
+     */
+    protected final Set<ROI> large;
+    /**
+     * ROI to (re)index
+     */
+    protected final Set<ROI> dirty;
+
+    /**
+     * Create a new spatial index with the specified grid cell size (image unit).
+     */
+    public ROISpatialIndex(double cellSize)
+    {
+        super();
+
+        if (cellSize <= 0d)
+            throw new IllegalArgumentException("ROISpatialIndex: cell size should be > 0");
+
+        this.cellSize = cellSize;
+
+        cells = new HashMap<Long, List<ROI>>();
+        bounds = new HashMap<ROI, Rectangle5D>();
+        large = new HashSet<ROI>();
+        dirty = new HashSet<ROI>();
+    }
+
+    /**
+     * Create a new spatial index with default grid cell size.
+     */
+    public ROISpatialIndex()
+    {
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Returns the grid cell size (image unit)
+     */
+    public double getCellSize()
+    {
+        return cellSize;
+    }
+
+    /**
+     * Returns the number of ROI in the index.
+     */
+    public synchronized int size()
+    {
+        return bounds.size() + dirty.size();
+    }
+
+    /**
+     * Returns <code>true</code> if the index contains the specified ROI.
+     */
+    public synchronized boolean contains(ROI roi)
+    {
+        return bounds.containsKey(roi) || dirty.contains(roi);
+    }
+
+    /**
+     * Add the specified ROI to the index (effectively indexed on next query).
+     */
+    public synchronized void add(ROI roi)
+    {
+        if ((roi != null) && !bounds.containsKey(roi))
+            dirty.add(roi);
+    }
+
+    /**
+     * Remove the specified ROI from the index.
+     */
+    public synchronized void remove(ROI roi)
+    {
+        dirty.remove(roi);
+        unindex(roi);
+    }
+
+    /**
+     * Notify that the specified ROI changed (position or content) so it needs to be re-indexed.<br>
+     * Does nothing if the ROI is not part of the index.
+     */
+    public synchronized void invalidate(ROI roi)
+    {
+        if (bounds.containsKey(roi))
+            dirty.add(roi);
+    }
+
+    /**
+     * Remove all ROI from the index.
+     */
+    public synchronized void clear()
+    {
+        cells.clear();
+        bounds.clear();
+        large.clear();
+        dirty.clear();
+    }
+
+    /**
+     * Returns all ROI which bounds intersect the specified region.<br>
+     * Note that it only tests bounds so returned ROI does not necessarily intersect the region.
+     *
+     * @see ROI#intersects(Rectangle5D)
+     */
+    public synchronized List<ROI> getROIs(Rectangle5D region)
+    {
+        // update index first
+        flush();
+
+        final List<ROI> result = new ArrayList<ROI>();
+        final long minCX = getCellIndex(region.getMinX());
+        final long maxCX = getCellIndex(region.getMaxX());
+        final long minCY = getCellIndex(region.getMinY());
+        final long maxCY = getCellIndex(region.getMaxY());
+
+        // region covers more cells than the grid contains (or infinite region) --> test all ROI
+        if (getCellCount(region) > cells.size())
+        {
+            for (Entry<ROI, Rectangle5D> entry : bounds.entrySet())
+                if (entry.getValue().intersects(region))
+                    result.add(entry.getKey());
+
+            return result;
+        }
+
+        // ROI can be present in several cells
+        final Set<ROI> done = new HashSet<ROI>();
+
+        for (long cy = minCY; cy <= maxCY; cy++)
+        {
+            for (long cx = minCX; cx <= maxCX; cx++)
+            {
+                final List<ROI> cell = cells.get(Long.valueOf(getCellKey(cx, cy)));
+
+                if (cell != null)
+                {
+                    for (ROI roi : cell)
+                        if (done.add(roi) && bounds.get(roi).intersects(region))
+                            result.add(roi);
+                }
+            }
+        }
+
+        for (ROI roi : large)
+            if (bounds.get(roi).intersects(region))
+                result.add(roi);
+
+        return result;
+    }
+
+    /**
+     * Index dirty ROI
+     */
+    protected void flush()
+    {
+        if (dirty.isEmpty())
+            return;
+
+        final Iterator<ROI> it = dirty.iterator();
+
+        while (it.hasNext())
+        {
+            final ROI roi = it.next();
+
+            unindex(roi);
+            index(roi);
+        }
+
+        dirty.clear();
+    }
+
+    protected void index(ROI roi)
+    {
+        final Rectangle5D roiBounds = roi.getBounds5D();
+
+        bounds.put(roi, roiBounds);
+
+        // infinite or too large ROI
+        if (getCellCount(roiBounds) > MAX_CELL_PER_ROI)
+        {
+            large.add(roi);
+            return;
+        }
+
+        final long minCX = getCellIndex(roiBounds.getMinX());
+        final long maxCX = getCellIndex(roiBounds.getMaxX());
+        final long minCY = getCellIndex(roiBounds.getMinY());
+        final long maxCY = getCellIndex(roiBounds.getMaxY());
+
+        for (long cy = minCY; cy <= maxCY; cy++)
+        {
+            for (long cx = minCX; cx <= maxCX; cx++)
+            {
+                final Long key = Long.valueOf(getCellKey(cx, cy));
+                List<ROI> cell = cells.get(key);
+
+                if (cell == null)
+                {
+                    cell = new ArrayList<ROI>(4);
+                    cells.put(key, cell);
+                }
+
+                cell.add(roi);
+            }
+        }
+    }
+
+    protected void unindex(ROI roi)
+    {
+        final Rectangle5D roiBounds = bounds.remove(roi);
+
+        // not indexed
+        if (roiBounds == null)
+            return;
+        // was a large ROI
+        if (large.remove(roi))
+            return;
+
+        final long minCX = getCellIndex(roiBounds.getMinX());
+        final long maxCX = getCellIndex(roiBounds.getMaxX());
+        final long minCY = getCellIndex(roiBounds.getMinY());
+        final long maxCY = getCellIndex(roiBounds.getMaxY());
+
+        for (long cy = minCY; cy <= maxCY; cy++)
+        {
+            for (long cx = minCX; cx <= maxCX; cx++)
+            {
+                final Long key = Long.valueOf(getCellKey(cx, cy));
+                final List<ROI> cell = cells.get(key);
+
+                if (cell != null)
+                {
+                    cell.remove(roi);
+                    if (cell.isEmpty())
+                        cells.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of grid cells covered by the XY bounds of specified rectangle (infinite if the rectangle
+     * is unbounded in X or Y).
+     */
+    protected double getCellCount(Rectangle5D rect)
+    {
+        final double minX = rect.getMinX();
+        final double maxX = rect.getMaxX();
+        final double minY = rect.getMinY();
+        final double maxY = rect.getMaxY();
+
+        // infinite or invalid bounds
+        if (Double.isInfinite(minX) || Double.isInfinite(maxX) || Double.isInfinite(minY) || Double.isInfinite(maxY)
+                || Double.isNaN(minX + maxX + minY + maxY))
+            return Double.POSITIVE_INFINITY;
+
+        return ((double) (getCellIndex(maxX) - getCellIndex(minX)) + 1d)
+                * ((double) (getCellIndex(maxY) - getCellIndex(minY)) + 1d);
+    }
+
+    protected long getCellIndex(double value)
+    {
+        return (long) Math.floor(value / cellSize);
+    }
+
+    protected static long getCellKey(long cx, long cy)
+    {
+        return (cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+}
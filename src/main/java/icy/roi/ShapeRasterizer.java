@@ -0,0 +1,454 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ *
+ * This file is part of Icy.
+ *
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.roi;
+
+import java.awt.Shape;
+import java.awt.geom.PathIterator;
+import java.util.Arrays;
+
+/**
+ * Scan line rasterizer used to build boolean mask from {@link Shape} without any Java2D rendering.<br>
+ * Mask pixel <code>(i, j)</code> is the unit square centered on <code>(x + i, y + j)</code> (same convention as the
+ * previous Java2D based rendering):
+ * <ul>
+ * <li>the interior is sampled on pixel center with the winding rule of the path (center on a left or top edge is
+ * inside, center on a right or bottom edge is outside)</li>
+ * <li>in <i>inclusive</i> mode pixels intersecting the outline (with a non zero area) are added</li>
+ * <li>in <i>exclusive</i> mode pixels intersecting the outline are removed so only pixels totally contained remain</li>
+ * </ul>
+ * As with {@link icy.util.ShapeUtil#getClosedPath(Shape)} only closed sub paths are filled while open sub paths only
+ * contribute to the outline.<br>
+ * Working buffers are kept per thread so rasterizing many shapes does not allocate anything except the result.
+ * 
+ * @author Stephane
+ */
+public class ShapeRasterizer
+{
+    /**
+     * Flatness used to flatten curves
+     */
+    public static final double FLATNESS = 0.05d;
+
+    protected static final int EDGE_FILL = 1;
+    protected static final int EDGE_DRAW = 2;
+
+    protected static final ThreadLocal<ShapeRasterizer> rasterizers = new ThreadLocal<ShapeRasterizer>()
+    {
+        @Override
+        protected ShapeRasterizer initialValue()
+        {
+            return new ShapeRasterizer();
+        }
+    };
+
+    /**
+     * Returns the boolean mask of the specified shape for the given rectangular area.<br>
+     * <code>result[(j * width) + i]</code> is <code>true</code> if pixel <code>(x + i, y + j)</code> is in the mask.
+     * 
+     * @param inclusive
+     *        If true then all partially contained (intersected) pixels are included in the mask.
+     */
+    public static boolean[] getBooleanMask(Shape shape, int x, int y, int width, int height, boolean inclusive)
+    {
+        final boolean[] result = new boolean[Math.max(0, width) * Math.max(0, height)];
+
+        if (result.length > 0)
+            rasterize(shape.getPathIterator(null, FLATNESS), x, y, width, height, inclusive, result);
+
+        return result;
+    }
+
+    /**
+     * Rasterize the specified flattened path (see {@link Shape#getPathIterator(java.awt.geom.AffineTransform, double)})
+     * in the given mask.<br>
+     * Only pixels belonging to the shape are modified (set to <code>true</code>) except in exclusive mode where pixels
+     * intersecting the outline are set to <code>false</code>.
+     * 
+     * @param result
+     *        the destination mask (<code>result[(j * width) + i]</code> for pixel <code>(x + i, y + j)</code>)
+     * @param inclusive
+     *        If true then all partially contained (intersected) pixels are included in the mask.
+     */
+    public static void rasterize(PathIterator path, int x, int y, int width, int height, boolean inclusive,
+            boolean[] result)
+    {
+        rasterizers.get().doRasterize(path, x, y, width, height, inclusive, result);
+    }
+
+    // edges (x0, y0, x1, y1)
+    protected double[] edges;
+    protected int[] edgeFlags;
+    protected int numEdges;
+    // edges sorted on first row (row << 32 | edge index)
+    protected long[] edgeOrder;
+    protected int[] edgeLastRow;
+    // active edges
+    protected int[] active;
+    // scan line crossings
+    protected double[] crossX;
+    protected int[] crossDir;
+    protected final double[] coords;
+
+    protected ShapeRasterizer()
+    {
+        super();
+
+        edges = new double[64 * 4];
+        edgeFlags = new int[64];
+        edgeOrder = new long[64];
+        edgeLastRow = new int[64];
+        active = new int[64];
+        crossX = new double[64];
+        crossDir = new int[64];
+        coords = new double[6];
+    }
+
+    protected void addEdge(double x0, double y0, double x1, double y1, int flags)
+    {
+        // single point edge
+        if ((x0 == x1) && (y0 == y1))
+            return;
+
+        if (numEdges == edgeFlags.length)
+        {
+            final int newSize = numEdges * 2;
+
+            edges = Arrays.copyOf(edges, newSize * 4);
+            edgeFlags = Arrays.copyOf(edgeFlags, newSize);
+            edgeOrder = new long[newSize];
+            edgeLastRow = new int[newSize];
+            active = new int[newSize];
+            crossX = new double[newSize];
+            crossDir = new int[newSize];
+        }
+
+        final int off = numEdges * 4;
+
+        edges[off + 0] = x0;
+        edges[off + 1] = y0;
+        edges[off + 2] = x1;
+        edges[off + 3] = y1;
+        edgeFlags[numEdges] = flags;
+        numEdges++;
+    }
+
+    /**
+     * Build edges from the path, returns the winding rule
+     */
+    protected int buildEdges(PathIterator path)
+    {
+        final double[] crd = coords;
+        double moveX = 0d;
+        double moveY = 0d;
+        double curX = 0d;
+        double curY = 0d;
+        int subPathStart = 0;
+
+        numEdges = 0;
+
+        while (!path.isDone())
+        {
+            switch (path.currentSegment(crd))
+            {
+                case PathIterator.SEG_MOVETO:
+                    moveX = curX = crd[0];
+                    moveY = curY = crd[1];
+                    subPathStart = numEdges;
+                    break;
+
+                case PathIterator.SEG_LINETO:
+                    addEdge(curX, curY, crd[0], crd[1], EDGE_DRAW);
+                    curX = crd[0];
+                    curY = crd[1];
+                    break;
+
+                // should not happen on flattened path but keep end point
+                case PathIterator.SEG_QUADTO:
+                    addEdge(curX, curY, crd[2], crd[3], EDGE_DRAW);
+                    curX = crd[2];
+                    curY = crd[3];
+                    break;
+
+                case PathIterator.SEG_CUBICTO:
+                    addEdge(curX, curY, crd[4], crd[5], EDGE_DRAW);
+                    curX = crd[4];
+                    curY = crd[5];
+                    break;
+
+                case PathIterator.SEG_CLOSE:
+                    addEdge(curX, curY, moveX, moveY, EDGE_DRAW);
+                    // closed sub path --> it participates to the fill
+                    for (int e = subPathStart; e < numEdges; e++)
+                        edgeFlags[e] |= EDGE_FILL;
+                    curX = moveX;
+                    curY = moveY;
+                    subPathStart = numEdges;
+                    break;
+            }
+
+            path.next();
+        }
+
+        return path.getWindingRule();
+    }
+
+    protected void doRasterize(PathIterator path, int x, int y, int width, int height, boolean inclusive,
+            boolean[] result)
+    {
+        final boolean nonZero = buildEdges(path) == PathIterator.WIND_NON_ZERO;
+        final double[] e = edges;
+        final int maxRow = height - 1;
+        int numSorted = 0;
+
+        // compute row range of each edge (rows which pixels can intersect the edge)
+        for (int i = 0; i < numEdges; i++)
+        {
+            final double y0 = e[(i * 4) + 1];
+            final double y1 = e[(i * 4) + 3];
+            final double first = (Math.floor(Math.min(y0, y1) - 0.5d) + 1d) - y;
+            final double last = (Math.ceil(Math.max(y0, y1) + 0.5d) - 1d) - y;
+
+            // outside area
+            if ((last < 0d) || (first > maxRow))
+                continue;
+
+            edgeOrder[numSorted++] = ((long) Math.max(0, (int) first) << 32) | i;
+            edgeLastRow[i] = (int) Math.min(maxRow, last);
+        }
+
+        Arrays.sort(edgeOrder, 0, numSorted);
+
+        int next = 0;
+        int numActive = 0;
+
+        for (int j = 0; j < height; j++)
+        {
+            // add new active edges
+            while ((next < numSorted) && ((int) (edgeOrder[next] >>> 32) <= j))
+                active[numActive++] = (int) edgeOrder[next++];
+
+            // remove terminated edges
+            int n = 0;
+            for (int a = 0; a < numActive; a++)
+            {
+                final int ind = active[a];
+
+                if (edgeLastRow[ind] >= j)
+                    active[n++] = ind;
+            }
+            numActive = n;
+
+            if (numActive == 0)
+            {
+                // done
+                if (next == numSorted)
+                    break;
+
+                continue;
+            }
+
+            final double py = y + j;
+            final int rowOffset = j * width;
+            int numCross = 0;
+
+            // interior (sampled on pixel center, top edge inclusive, bottom edge exclusive)
+            for (int a = 0; a < numActive; a++)
+            {
+                final int ind = active[a];
+
+                if ((edgeFlags[ind] & EDGE_FILL) == 0)
+                    continue;
+
+                final int off = ind * 4;
+                final double x0 = e[off + 0];
+                final double y0 = e[off + 1];
+                final double x1 = e[off + 2];
+                final double y1 = e[off + 3];
+
+                if (y0 < y1)
+                {
+                    if ((py >= y0) && (py < y1))
+                    {
+                        crossX[numCross] = x0 + (((py - y0) * (x1 - x0)) / (y1 - y0));
+                        crossDir[numCross++] = 1;
+                    }
+                }
+                else if (y0 > y1)
+                {
+                    if ((py >= y1) && (py < y0))
+                    {
+                        crossX[numCross] = x1 + (((py - y1) * (x0 - x1)) / (y0 - y1));
+                        crossDir[numCross++] = -1;
+                    }
+                }
+            }
+
+            if (numCross > 1)
+            {
+                sortCrossings(0, numCross - 1);
+
+                int winding = 0;
+                double start = 0d;
+
+                for (int c = 0; c < numCross; c++)
+                {
+                    final boolean wasInside = nonZero ? (winding != 0) : ((winding & 1) != 0);
+
+                    winding += crossDir[c];
+
+                    final boolean inside = nonZero ? (winding != 0) : ((winding & 1) != 0);
+
+                    if (!wasInside && inside)
+                        start = crossX[c];
+                    else if (wasInside && !inside)
+                        // pixel centers in [start, end[
+                        fillRow(result, rowOffset, Math.ceil(start) - x, Math.ceil(crossX[c]) - (x + 1), width, true);
+                }
+            }
+
+            // outline (pixels intersecting an edge with a non zero area)
+            final double bandMin = py - 0.5d;
+            final double bandMax = py + 0.5d;
+
+            for (int a = 0; a < numActive; a++)
+            {
+                final int ind = active[a];
+
+                if ((edgeFlags[ind] & EDGE_DRAW) == 0)
+                    continue;
+
+                final int off = ind * 4;
+                final double x0 = e[off + 0];
+                final double y0 = e[off + 1];
+                final double x1 = e[off + 2];
+                final double y1 = e[off + 3];
+                final double minX;
+                final double maxX;
+
+                if (y0 == y1)
+                {
+                    // horizontal edge on pixel border
+                    if ((y0 <= bandMin) || (y0 >= bandMax))
+                        continue;
+
+                    minX = Math.min(x0, x1);
+                    maxX = Math.max(x0, x1);
+                }
+                else
+                {
+                    // clip edge to the pixel row
+                    final double ya = Math.max(Math.min(y0, y1), bandMin);
+                    final double yb = Math.min(Math.max(y0, y1), bandMax);
+
+                    if (ya >= yb)
+                        continue;
+
+                    final double slope = (x1 - x0) / (y1 - y0);
+                    final double xa = x0 + ((ya - y0) * slope);
+                    final double xb = x0 + ((yb - y0) * slope);
+
+                    minX = Math.min(xa, xb);
+                    maxX = Math.max(xa, xb);
+                }
+
+                // pixels which ]x - 0.5, x + 0.5[ range intersects [minX, maxX]
+                fillRow(result, rowOffset, (Math.floor(minX - 0.5d) + 1d) - x, (Math.ceil(maxX + 0.5d) - 1d) - x,
+                        width, inclusive);
+            }
+        }
+    }
+
+    /**
+     * Set mask value for the specified pixel range of a row (range given in double to avoid overflow).
+     */
+    protected static void fillRow(boolean[] result, int rowOffset, double start, double end, int width,
+            boolean value)
+    {
+        final int s = (int) Math.max(0d, start);
+        final int e = (int) Math.min(width - 1, end);
+
+        if (s <= e)
+            Arrays.fill(result, rowOffset + s, rowOffset + e + 1, value);
+    }
+
+    /**
+     * Sort scan line crossings on X (quick sort with insertion sort for small range)
+     */
+    protected void sortCrossings(int lo, int hi)
+    {
+        final double[] xs = crossX;
+        final int[] dirs = crossDir;
+
+        while ((hi - lo) > 16)
+        {
+            final double pivot = xs[(lo + hi) >>> 1];
+            int i = lo;
+            int j = hi;
+
+            while (i <= j)
+            {
+                while (xs[i] < pivot)
+                    i++;
+                while (xs[j] > pivot)
+                    j--;
+
+                if (i <= j)
+                {
+                    final double tx = xs[i];
+                    xs[i] = xs[j];
+                    xs[j] = tx;
+                    final int td = dirs[i];
+                    dirs[i] = dirs[j];
+                    dirs[j] = td;
+                    i++;
+                    j--;
+                }
+            }
+
+            // recurse on smaller part
+            if ((j - lo) < (hi - i))
+            {
+                sortCrossings(lo, j);
+                lo = i;
+            }
+            else
+            {
+                sortCrossings(i, hi);
+                hi = j;
+            }
+        }
+
+        for (int i = lo + 1; i <= hi; i++)
+        {
+            final double tx = xs[i];
+            final int td = dirs[i];
+            int j = i - 1;
+
+            while ((j >= lo) && (xs[j] > tx))
+            {
+                xs[j + 1] = xs[j];
+                dirs[j + 1] = dirs[j];
+                j--;
+            }
+
+            xs[j + 1] = tx;
+            dirs[j + 1] = td;
+        }
+    }
+}
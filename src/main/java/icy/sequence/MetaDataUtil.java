@@ -20,9 +20,13 @@ package icy.sequence;
 
 import java.awt.Color;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
 
 import org.joda.time.Instant;
 
@@ -66,6 +70,55 @@ public class MetaDataUtil
 {
     public static final String DEFAULT_CHANNEL_NAME = "ch ";
 
+    /**
+     * Plane index by (T,Z,C) position for a Pixels object (avoid iterating over all planes for each plane lookup)
+     */
+    private static class PlaneIndex
+    {
+        final int numPlane;
+        final Map<Long, Integer> indexes;
+
+        PlaneIndex(Pixels pix)
+        {
+            super();
+
+            numPlane = pix.sizeOfPlaneList();
+            indexes = new HashMap<Long, Integer>(numPlane * 2);
+
+            for (int i = 0; i < numPlane; i++)
+            {
+                final Plane plane = pix.getPlane(i);
+                final Long key = getKey(OMEUtil.getValue(plane.getTheT(), -1), OMEUtil.getValue(plane.getTheZ(), -1),
+                        OMEUtil.getValue(plane.getTheC(), -1));
+
+                // keep first plane found for a given position
+                if (!indexes.containsKey(key))
+                    indexes.put(key, Integer.valueOf(i));
+            }
+        }
+
+        int get(int t, int z, int c)
+        {
+            final Integer result = indexes.get(getKey(t, z, c));
+
+            if (result == null)
+                return -1;
+
+            return result.intValue();
+        }
+
+        static Long getKey(int t, int z, int c)
+        {
+            return Long.valueOf(((t & 0x1FFFFFL) << 42) | ((z & 0x1FFFFFL) << 21) | (c & 0x1FFFFFL));
+        }
+    }
+
+    /**
+     * Plane index cache (weak keys so it doesn't retain metadata)
+     */
+    private static final Map<Pixels, PlaneIndex> planeIndexes = Collections
+            .synchronizedMap(new WeakHashMap<Pixels, PlaneIndex>());
+
     /**
      * @return Returns OME root element (create it if needed).
      * @param metaData
@@ -365,16 +418,9 @@ public class MetaDataUtil
         }
 
         // first try to get index from real plan position
-        final int len = pix.sizeOfPlaneList();
-        for (int i = 0; i < len; i++)
-        {
-            final Plane plane = pix.getPlane(i);
-
-            // plane found --> return index
-            if ((OMEUtil.getValue(plane.getTheT(), -1) == t) && (OMEUtil.getValue(plane.getTheZ(), -1) == z)
-                    && (OMEUtil.getValue(plane.getTheC(), -1) == c))
-                return i;
-        }
+        final int index = findPlaneIndex(pix, t, z, c);
+        if (index != -1)
+            return index;
 
         DimensionOrder dimOrder = pix.getDimensionOrder();
         // use default dimension order
@@ -385,6 +431,58 @@ public class MetaDataUtil
         return FormatTools.getIndex(dimOrder.getValue(), sizeZ, sizeC, sizeT, sizeZ * sizeC * sizeT, z, adjC, t);
     }
 
+    /**
+     * Returns index of the plane with the specified T, Z, C position (-1 if no plane defines this position).<br>
+     * Plane positions are cached by Pixels object so successive lookups don't iterate over all planes.
+     */
+    private static int findPlaneIndex(Pixels pix, int t, int z, int c)
+    {
+        final int len = pix.sizeOfPlaneList();
+
+        if (len == 0)
+            return -1;
+
+        PlaneIndex planeIndex = planeIndexes.get(pix);
+
+        // not yet built or planes added / removed ? --> build it
+        if ((planeIndex == null) || (planeIndex.numPlane != len))
+        {
+            planeIndex = new PlaneIndex(pix);
+            planeIndexes.put(pix, planeIndex);
+
+            // just built so result is accurate
+            return planeIndex.get(t, z, c);
+        }
+
+        final int result = planeIndex.get(t, z, c);
+
+        // not defined (index is up to date) or plane still at this position ? --> done
+        if ((result == -1) || isPlaneAt(pix.getPlane(result), t, z, c))
+            return result;
+
+        // plane position modified (planes replaced or reordered) --> rebuild index
+        planeIndex = new PlaneIndex(pix);
+        planeIndexes.put(pix, planeIndex);
+
+        return planeIndex.get(t, z, c);
+    }
+
+    private static boolean isPlaneAt(Plane plane, int t, int z, int c)
+    {
+        return (OMEUtil.getValue(plane.getTheT(), -1) == t) && (OMEUtil.getValue(plane.getTheZ(), -1) == z)
+                && (OMEUtil.getValue(plane.getTheC(), -1) == c);
+    }
+
+    /**
+     * Clear cached plane positions of the specified Pixels object.<br>
+     * Should be called after plane positions (TheT, TheZ, TheC) have been directly modified.
+     */
+    public static void invalidatePlaneIndex(Pixels pix)
+    {
+        if (pix != null)
+            planeIndexes.remove(pix);
+    }
+
     public static Plane getPlane(Pixels pix, int index)
     {
         if (pix != null)
@@ -2961,6 +3059,9 @@ public class MetaDataUtil
             if (posC != -1)
                 plane.setTheC(OMEUtil.getNonNegativeInteger(0));
         }
+
+        // plane positions changed
+        invalidatePlaneIndex(pix);
     }
 
     /**
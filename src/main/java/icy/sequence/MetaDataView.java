@@ -0,0 +1,418 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.sequence;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import icy.util.OMEUtil;
+import icy.util.StringUtil;
+import ome.xml.meta.OMEXMLMetadata;
+import ome.xml.model.OME;
+import ome.xml.model.Pixels;
+import ome.xml.model.Plane;
+import ome.xml.model.StructuredAnnotations;
+import ome.xml.model.XMLAnnotation;
+
+/**
+ * Typed and cached read access to the OME metadata of a single image series.<br>
+ * Values are read from the underlying {@link OMEXMLMetadata} on first access then cached:
+ * <ul>
+ * <li>plane level information (time offset, position, exposure time) is gathered in arrays with a single pass over
+ * the planes</li>
+ * <li>original metadata (key / value annotations which can be huge) are only parsed when requested</li>
+ * </ul>
+ * The view does not see metadata modifications until {@link #invalidate()} is called.
+ * 
+ * @author Stephane
+ */
+public class MetaDataView
+{
+    protected final OMEXMLMetadata metaData;
+    protected final int series;
+
+    // cached series information (NaN when not yet retrieved)
+    protected double pixelSizeX;
+    protected double pixelSizeY;
+    protected double pixelSizeZ;
+    protected double timeInterval;
+
+    // plane level information indexed by (T, Z, C) position, null when not yet retrieved
+    protected int sizeT;
+    protected int sizeZ;
+    protected int sizeC;
+    protected double[] deltaT;
+    protected double[] positionX;
+    protected double[] positionY;
+    protected double[] positionZ;
+    protected double[] exposureTime;
+
+    // original metadata, null when not yet parsed
+    protected Map<String, String> originalMetadata;
+
+    public MetaDataView(OMEXMLMetadata metaData, int series)
+    {
+        super();
+
+        this.metaData = metaData;
+        this.series = series;
+
+        invalidate();
+    }
+
+    /**
+     * Returns the underlying metadata object
+     */
+    public OMEXMLMetadata getMetaData()
+    {
+        return metaData;
+    }
+
+    /**
+     * Returns the series index of this view
+     */
+    public int getSeries()
+    {
+        return series;
+    }
+
+    /**
+     * Clear all cached information (should be called when the metadata has been modified).
+     */
+    public synchronized void invalidate()
+    {
+        pixelSizeX = Double.NaN;
+        pixelSizeY = Double.NaN;
+        pixelSizeZ = Double.NaN;
+        timeInterval = Double.NaN;
+        deltaT = null;
+        positionX = null;
+        positionY = null;
+        positionZ = null;
+        exposureTime = null;
+        originalMetadata = null;
+    }
+
+    /**
+     * Returns X pixel size (in &micro;m) or <code>defaultValue</code> if not defined.
+     */
+    public synchronized double getPixelSizeX(double defaultValue)
+    {
+        if (Double.isNaN(pixelSizeX))
+            pixelSizeX = MetaDataUtil.getPixelSizeX(metaData, series, -1d);
+
+        return (pixelSizeX == -1d) ? defaultValue : pixelSizeX;
+    }
+
+    /**
+     * Returns Y pixel size (in &micro;m) or <code>defaultValue</code> if not defined.
+     */
+    public synchronized double getPixelSizeY(double defaultValue)
+    {
+        if (Double.isNaN(pixelSizeY))
+            pixelSizeY = MetaDataUtil.getPixelSizeY(metaData, series, -1d);
+
+        return (pixelSizeY == -1d) ? defaultValue : pixelSizeY;
+    }
+
+    /**
+     * Returns Z pixel size (in &micro;m) or <code>defaultValue</code> if not defined.
+     */
+    public synchronized double getPixelSizeZ(double defaultValue)
+    {
+        if (Double.isNaN(pixelSizeZ))
+            pixelSizeZ = MetaDataUtil.getPixelSizeZ(metaData, series, -1d);
+
+        return (pixelSizeZ == -1d) ? defaultValue : pixelSizeZ;
+    }
+
+    /**
+     * Returns time interval (in second) or <code>defaultValue</code> if not defined.
+     */
+    public synchronized double getTimeInterval(double defaultValue)
+    {
+        if (Double.isNaN(timeInterval))
+            timeInterval = MetaDataUtil.getTimeInterval(metaData, series, -1d);
+
+        return (timeInterval == -1d) ? defaultValue : timeInterval;
+    }
+
+    /**
+     * Returns the time position offset (in second) relative to first image for the image at the specified T, Z, C
+     * position (same as {@link MetaDataUtil#getPositionTOffset(OMEXMLMetadata, int, int, int, int, double)}).
+     */
+    public double getPositionTOffset(int t, int z, int c, double defaultValue)
+    {
+        final double result = getPlaneValue(getDeltaT(), t, z, c);
+
+        if (!Double.isNaN(result))
+            return result;
+
+        // try from time interval instead
+        final double ti = getTimeInterval(-1d);
+
+        if (ti != -1d)
+            return ti * t;
+
+        return defaultValue;
+    }
+
+    /**
+     * Returns the X field position (in &micro;m) for the image at the specified T, Z, C position.
+     */
+    public double getPositionX(int t, int z, int c, double defaultValue)
+    {
+        final double result = getPlaneValue(getPositionX(), t, z, c);
+        return Double.isNaN(result) ? defaultValue : result;
+    }
+
+    /**
+     * Returns the Y field position (in &micro;m) for the image at the specified T, Z, C position.
+     */
+    public double getPositionY(int t, int z, int c, double defaultValue)
+    {
+        final double result = getPlaneValue(getPositionY(), t, z, c);
+        return Double.isNaN(result) ? defaultValue : result;
+    }
+
+    /**
+     * Returns the Z field position (in &micro;m) for the image at the specified T, Z, C position.
+     */
+    public double getPositionZ(int t, int z, int c, double defaultValue)
+    {
+        final double result = getPlaneValue(getPositionZ(), t, z, c);
+        return Double.isNaN(result) ? defaultValue : result;
+    }
+
+    /**
+     * Returns the exposure time (in second) for the image at the specified T, Z, C position.
+     */
+    public double getExposureTime(int t, int z, int c, double defaultValue)
+    {
+        final double result = getPlaneValue(getExposureTime(), t, z, c);
+        return Double.isNaN(result) ? defaultValue : result;
+    }
+
+    /**
+     * Returns plane time offsets (in second) indexed by <code>(((t * sizeZ) + z) * sizeC) + c</code>, undefined values
+     * are set to <code>NaN</code>.<br>
+     * Returned array should not be modified.
+     */
+    public double[] getDeltaT()
+    {
+        loadPlanes();
+        return deltaT;
+    }
+
+    /**
+     * Returns plane X positions (in &micro;m), see {@link #getDeltaT()} for indexing.
+     */
+    public double[] getPositionX()
+    {
+        loadPlanes();
+        return positionX;
+    }
+
+    /**
+     * Returns plane Y positions (in &micro;m), see {@link #getDeltaT()} for indexing.
+     */
+    public double[] getPositionY()
+    {
+        loadPlanes();
+        return positionY;
+    }
+
+    /**
+     * Returns plane Z positions (in &micro;m), see {@link #getDeltaT()} for indexing.
+     */
+    public double[] getPositionZ()
+    {
+        loadPlanes();
+        return positionZ;
+    }
+
+    /**
+     * Returns plane exposure times (in second), see {@link #getDeltaT()} for indexing.
+     */
+    public double[] getExposureTime()
+    {
+        loadPlanes();
+        return exposureTime;
+    }
+
+    /**
+     * Returns original metadata (key / value pairs stored by the importer as XML annotations), parsed on first call.
+     */
+    public synchronized Map<String, String> getOriginalMetadata()
+    {
+        if (originalMetadata == null)
+            originalMetadata = Collections.unmodifiableMap(parseOriginalMetadata());
+
+        return originalMetadata;
+    }
+
+    /**
+     * Returns the original metadata value for the given key (<code>null</code> if not defined).
+     */
+    public String getOriginalMetadata(String key)
+    {
+        return getOriginalMetadata().get(key);
+    }
+
+    protected double getPlaneValue(double[] values, int t, int z, int c)
+    {
+        synchronized (this)
+        {
+            if ((t < 0) || (z < 0) || (c < 0) || (t >= sizeT) || (z >= sizeZ) || (c >= sizeC))
+                return Double.NaN;
+
+            return values[(((t * sizeZ) + z) * sizeC) + c];
+        }
+    }
+
+    /**
+     * Gather plane level information in arrays (single pass over planes).
+     */
+    protected synchronized void loadPlanes()
+    {
+        if (deltaT != null)
+            return;
+
+        final Pixels pix = MetaDataUtil.getPixels(metaData, series);
+
+        sizeT = Math.max(1, MetaDataUtil.getSizeT(metaData, series));
+        sizeZ = Math.max(1, MetaDataUtil.getSizeZ(metaData, series));
+        sizeC = Math.max(1, MetaDataUtil.getSizeC(metaData, series));
+
+        final int len = sizeT * sizeZ * sizeC;
+
+        deltaT = new double[len];
+        positionX = new double[len];
+        positionY = new double[len];
+        positionZ = new double[len];
+        exposureTime = new double[len];
+
+        Arrays.fill(deltaT, Double.NaN);
+        Arrays.fill(positionX, Double.NaN);
+        Arrays.fill(positionY, Double.NaN);
+        Arrays.fill(positionZ, Double.NaN);
+        Arrays.fill(exposureTime, Double.NaN);
+
+        if ((pix == null) || (pix.sizeOfPlaneList() == 0))
+            return;
+
+        int ind = 0;
+        for (int t = 0; t < sizeT; t++)
+        {
+            for (int z = 0; z < sizeZ; z++)
+            {
+                for (int c = 0; c < sizeC; c++, ind++)
+                {
+                    // plane lookup is cached in MetaDataUtil
+                    final Plane plane = MetaDataUtil.getPlane(pix, t, z, c);
+
+                    if (plane != null)
+                    {
+                        deltaT[ind] = OMEUtil.getValue(plane.getDeltaT(), Double.NaN);
+                        positionX[ind] = OMEUtil.getValue(plane.getPositionX(), Double.NaN);
+                        positionY[ind] = OMEUtil.getValue(plane.getPositionY(), Double.NaN);
+                        positionZ[ind] = OMEUtil.getValue(plane.getPositionZ(), Double.NaN);
+                        exposureTime[ind] = OMEUtil.getValue(plane.getExposureTime(), Double.NaN);
+
+                        // -1 means undefined (see MetaDataUtil)
+                        if (deltaT[ind] == -1d)
+                            deltaT[ind] = Double.NaN;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Parse original metadata from XML annotations.
+     */
+    protected Map<String, String> parseOriginalMetadata()
+    {
+        final Map<String, String> result = new LinkedHashMap<String, String>();
+        final OME ome = MetaDataUtil.getOME(metaData);
+        final StructuredAnnotations annotations = (ome != null) ? ome.getStructuredAnnotations() : null;
+
+        if (annotations == null)
+            return result;
+
+        for (int i = 0; i < annotations.sizeOfXMLAnnotationList(); i++)
+        {
+            final XMLAnnotation annotation = annotations.getXMLAnnotation(i);
+            final String value = annotation.getValue();
+
+            if (StringUtil.isEmpty(value))
+                continue;
+
+            // original metadata are stored as <OriginalMetadata><Key>k</Key><Value>v</Value></OriginalMetadata>
+            int pos = 0;
+            while (true)
+            {
+                final String key = getTagContent(value, "Key", pos);
+
+                if (key == null)
+                    break;
+
+                pos = value.indexOf("</Key>", pos) + 6;
+
+                final String v = getTagContent(value, "Value", pos);
+
+                if (v != null)
+                {
+                    pos = value.indexOf("</Value>", pos) + 8;
+                    result.put(unescape(key), unescape(v));
+                }
+                else
+                    result.put(unescape(key), "");
+            }
+        }
+
+        return result;
+    }
+
+    private static String getTagContent(String text, String tag, int from)
+    {
+        final int start = text.indexOf("<" + tag + ">", from);
+
+        if (start == -1)
+            return null;
+
+        final int end = text.indexOf("</" + tag + ">", start);
+
+        if (end == -1)
+            return null;
+
+        return text.substring(start + tag.length() + 2, end);
+    }
+
+    private static String unescape(String text)
+    {
+        if (text.indexOf('&') == -1)
+            return text;
+
+        return text.replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"").replace("&apos;", "'")
+                .replace("&amp;", "&");
+    }
+}
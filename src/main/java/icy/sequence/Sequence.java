@@ -72,8 +72,11 @@ import icy.preferences.GeneralPreferences;
 import icy.roi.ROI;
 import icy.roi.ROI2D;
 import icy.roi.ROI3D;
+import icy.roi.ROIDescriptorCache;
 import icy.roi.ROIEvent;
+import icy.roi.ROIEvent.ROIEventType;
 import icy.roi.ROIListener;
+import icy.roi.ROISpatialIndex;
 import icy.sequence.SequenceEvent.SequenceEventSourceType;
 import icy.sequence.SequenceEvent.SequenceEventType;
 import icy.sequence.edit.DataSequenceEdit;
@@ -196,6 +199,14 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
      * ROIs
      */
     protected final Set<ROI> rois;
+    /**
+     * ROIs spatial index
+     */
+    protected final ROISpatialIndex roiIndex;
+    /**
+     * ROI descriptor results cache
+     */
+    protected final ROIDescriptorCache roiDescriptorCache;
 
     /**
      * id of sequence (uniq during an Icy session)
@@ -267,6 +278,10 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
      * Metadata
      */
     protected OMEXMLMetadata metaData;
+    /**
+     * Cached typed view of metadata (lazy creation)
+     */
+    protected MetaDataView metaDataView;
     // /**
     // * X, Y, Z resolution (in mm)
     // */
@@ -392,6 +407,8 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
         volumetricImages = new TreeMap<Integer, VolumetricImage>();
         overlays = new HashSet<Overlay>();
         rois = new HashSet<ROI>();
+        roiIndex = new ROISpatialIndex();
+        roiDescriptorCache = new ROIDescriptorCache();
         persistent = new SequencePersistent(this);
         undoManager = new IcyUndoManager(this, GeneralPreferences.getHistorySize());
 
@@ -1488,6 +1505,27 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
         return metaData;
     }
 
+    /**
+     * Returns a cached and typed view of the sequence metadata.<br>
+     * Plane level information (time offset, position...) and original metadata are only retrieved on first access
+     * then cached until metadata changes.
+     * 
+     * @return metadata view
+     */
+    public MetaDataView getMetaDataView()
+    {
+        MetaDataView result = metaDataView;
+
+        // sequence metadata always contains a single serie
+        if ((result == null) || (result.getMetaData() != metaData))
+        {
+            result = new MetaDataView(metaData, 0);
+            metaDataView = result;
+        }
+
+        return result;
+    }
+
     /**
      * Set the meta data object
      * 
@@ -1548,7 +1586,7 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
      */
     public double getPositionX()
     {
-        return MetaDataUtil.getPositionX(metaData, 0, 0, 0, 0, 0d);
+        return getMetaDataView().getPositionX(0, 0, 0, 0d);
     }
 
     /**
@@ -1561,7 +1599,7 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
      */
     public double getPositionY()
     {
-        return MetaDataUtil.getPositionY(metaData, 0, 0, 0, 0, 0d);
+        return getMetaDataView().getPositionY(0, 0, 0, 0d);
     }
 
     /**
@@ -1574,7 +1612,7 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
      */
     public double getPositionZ()
     {
-        return MetaDataUtil.getPositionZ(metaData, 0, 0, 0, 0, 0d);
+        return getMetaDataView().getPositionZ(0, 0, 0, 0d);
     }
 
     /**
@@ -1602,7 +1640,7 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
      */
     public double getPositionTOffset(int t, int z, int c)
     {
-        return MetaDataUtil.getPositionTOffset(metaData, 0, t, z, c, 0d);
+        return getMetaDataView().getPositionTOffset(t, z, c, 0d);
     }
 
     /**
@@ -1716,7 +1754,7 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
      */
     public double getPixelSizeX()
     {
-        return MetaDataUtil.getPixelSizeX(metaData, 0, 1d);
+        return getMetaDataView().getPixelSizeX(1d);
     }
 
     /**
@@ -1724,7 +1762,7 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
      */
     public double getPixelSizeY()
     {
-        return MetaDataUtil.getPixelSizeY(metaData, 0, 1d);
+        return getMetaDataView().getPixelSizeY(1d);
     }
 
     /**
@@ -1732,7 +1770,7 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
      */
     public double getPixelSizeZ()
     {
-        return MetaDataUtil.getPixelSizeZ(metaData, 0, 1d);
+        return getMetaDataView().getPixelSizeZ(1d);
     }
 
     /**
@@ -1749,7 +1787,11 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
             result = MetaDataUtil.getTimeIntervalFromTimePositions(metaData, 0);
             // we got something --> set it as the time interval
             if (result != 0d)
+            {
                 MetaDataUtil.setTimeInterval(metaData, 0, result);
+                // cached time interval is no more valid
+                invalidateMetaDataView();
+            }
         }
 
         return result;
@@ -2514,6 +2556,25 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
         return (ArrayList<ROI>) getROIs(false);
     }
 
+    /**
+     * @return the spatial index of ROIs attached to this sequence.<br>
+     *         It can be used to quickly retrieve ROIs which may intersect a given region (see
+     *         {@link ROISpatialIndex#getROIs(icy.type.rectangle.Rectangle5D)}).
+     */
+    public ROISpatialIndex getROIIndex()
+    {
+        return roiIndex;
+    }
+
+    /**
+     * @return the cache of ROI descriptor results computed on this sequence (see {@link ROIDescriptorCache}).<br>
+     *         It is saved with the sequence XML persistent data.
+     */
+    public ROIDescriptorCache getROIDescriptorCache()
+    {
+        return roiDescriptorCache;
+    }
+
     /**
      * @return all ROIs attached to this sequence (HashSet form)
      */
@@ -3658,6 +3719,25 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
         return null;
     }
 
+    /**
+     * @param t
+     *        int
+     * @param z
+     *        int
+     * @return data version of the image at time t and depth z (see {@link IcyBufferedImage#getDataVersion()}) or
+     *         <code>0</code> if there is no image at this position.<br>
+     *         Image data is not loaded by this method.
+     */
+    public long getDataVersion(int t, int z)
+    {
+        final IcyBufferedImage image = getImage(t, z, false);
+
+        if (image == null)
+            return 0L;
+
+        return image.getDataVersion();
+    }
+
     /**
      * @param t
      *        int
@@ -8420,6 +8500,7 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
      */
     public void metaChanged(String metaName)
     {
+        invalidateMetaDataView();
         updater.changed(new SequenceEvent(this, SequenceEventSourceType.SEQUENCE_META, metaName));
     }
 
@@ -8431,9 +8512,18 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
      */
     public void metaChanged(String metaName, int param)
     {
+        invalidateMetaDataView();
         updater.changed(new SequenceEvent(this, SequenceEventSourceType.SEQUENCE_META, metaName, null, param));
     }
 
+    private void invalidateMetaDataView()
+    {
+        final MetaDataView view = metaDataView;
+
+        if (view != null)
+            view.invalidate();
+    }
+
     /**
      * sequence type (colorModel, size) changed
      */
@@ -8543,7 +8633,10 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
     public void roiChanged(ROI roi)
     {
         if (contains(roi))
+        {
+            roiIndex.invalidate(roi);
             roiChanged(roi, SequenceEventType.CHANGED);
+        }
     }
 
     /**
@@ -8554,6 +8647,12 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
      */
     protected void roiChanged(ROI roi, SequenceEventType type)
     {
+        // keep spatial index up to date
+        if (type == SequenceEventType.ADDED)
+            roiIndex.add(roi);
+        else if (type == SequenceEventType.REMOVED)
+            roiIndex.remove(roi);
+
         updater.changed(new SequenceEvent(this, SequenceEventSourceType.SEQUENCE_ROI, roi, type));
     }
 
@@ -8626,6 +8725,10 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
     @Override
     public void roiChanged(ROIEvent event)
     {
+        // ROI position or content changed --> need to be re-indexed
+        if (event.getType() == ROIEventType.ROI_CHANGED)
+            roiIndex.invalidate(event.getSource());
+
         // notify the ROI has changed
         roiChanged(event.getSource(), SequenceEventType.CHANGED);
     }
@@ -0,0 +1,504 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.sequence;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.EventListener;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import icy.image.IcyBufferedImage;
+import icy.image.IcyBufferedImage.ImageSourceInfo;
+import icy.math.QuantileSketch;
+import icy.system.thread.Processor;
+import icy.type.DataType;
+import icy.type.collection.array.Array1DUtil;
+import icy.util.StringUtil;
+
+/**
+ * Estimate channel contrast bounds (low and high quantiles) of a Sequence from a stratified sample of planes and
+ * tiles.<br>
+ * A first estimation is done from already loaded planes then it is refined in background by sampling more planes
+ * (spread over the whole Z/T range). Planes not yet loaded (virtual mode) are sampled by reading only some tiles
+ * from the importer so we never need to load the whole data.<br>
+ * Quantiles are computed with a {@link QuantileSketch} (see {@link #getRankError()}).
+ * 
+ * @author Stephane
+ */
+public class SequenceContrastEstimator
+{
+    public static interface SequenceContrastEstimatorListener extends EventListener
+    {
+        /**
+         * Estimation has been refined (or is done).
+         */
+        public void estimationChanged(SequenceContrastEstimator source);
+    }
+
+    /**
+     * Default low quantile (0.1% of saturated pixels)
+     */
+    public static final double DEFAULT_LOW_QUANTILE = 0.001d;
+    /**
+     * Default high quantile (0.1% of saturated pixels)
+     */
+    public static final double DEFAULT_HIGH_QUANTILE = 0.999d;
+    /**
+     * Maximum number of sampled planes
+     */
+    public static final int DEFAULT_MAX_PLANE = 64;
+
+    // sketch size parameter (~0.15% rank error)
+    protected static final int SKETCH_K = 2000;
+    // number of tiles in X and Y
+    protected static final int GRID_SIZE = 4;
+    // size of sampled tiles
+    protected static final int TILE_SIZE = 64;
+    // minimum interval between 2 refinement notifications (ms)
+    protected static final long NOTIFY_INTERVAL = 200L;
+
+    protected static final Processor processor;
+
+    static
+    {
+        processor = new Processor(-1, 2, Processor.MIN_PRIORITY);
+        processor.setThreadName("Contrast estimator");
+    }
+
+    protected final Sequence sequence;
+    protected final int[] channels;
+    protected final double lowQuantile;
+    protected final double highQuantile;
+    protected final QuantileSketch[] sketches;
+    protected final Set<Integer> sampledPlanes;
+    protected final List<SequenceContrastEstimatorListener> listeners;
+
+    protected int maxPlane;
+    protected volatile boolean cancelled;
+    protected volatile boolean done;
+    protected long lastNotify;
+
+    /**
+     * Create the estimator.
+     * 
+     * @param sequence
+     *        the sequence we want to estimate contrast for
+     * @param channel
+     *        channel to estimate (-1 for all channels)
+     * @param lowQuantile
+     *        wanted low quantile (in [0..1] range)
+     * @param highQuantile
+     *        wanted high quantile (in [0..1] range)
+     */
+    public SequenceContrastEstimator(Sequence sequence, int channel, double lowQuantile, double highQuantile)
+    {
+        super();
+
+        this.sequence = sequence;
+        this.lowQuantile = lowQuantile;
+        this.highQuantile = highQuantile;
+
+        final int sizeC = sequence.getSizeC();
+
+        if (channel == -1)
+        {
+            channels = new int[sizeC];
+            for (int c = 0; c < sizeC; c++)
+                channels[c] = c;
+        }
+        else
+            channels = new int[] {channel};
+
+        sketches = new QuantileSketch[sizeC];
+        for (int c : channels)
+            sketches[c] = new QuantileSketch(SKETCH_K);
+
+        sampledPlanes = new HashSet<Integer>();
+        listeners = new ArrayList<SequenceContrastEstimatorListener>();
+        maxPlane = DEFAULT_MAX_PLANE;
+        cancelled = false;
+        done = false;
+    }
+
+    /**
+     * Create the estimator for all channels with default quantiles.
+     */
+    public SequenceContrastEstimator(Sequence sequence)
+    {
+        this(sequence, -1, DEFAULT_LOW_QUANTILE, DEFAULT_HIGH_QUANTILE);
+    }
+
+    /**
+     * Returns the maximum number of sampled planes.
+     */
+    public int getMaxPlane()
+    {
+        return maxPlane;
+    }
+
+    /**
+     * Set the maximum number of sampled planes (should be done before {@link #start(int, int)}).
+     */
+    public void setMaxPlane(int value)
+    {
+        maxPlane = Math.max(1, value);
+    }
+
+    /**
+     * Start the estimation in background.<br>
+     * Already loaded planes and the specified one are sampled first (listeners are notified as soon as we have a
+     * first estimation) then others planes are sampled in stratified order.
+     * 
+     * @param t
+     *        T position of the plane to sample first (current displayed plane)
+     * @param z
+     *        Z position of the plane to sample first (current displayed plane)
+     */
+    public void start(final int t, final int z)
+    {
+        processor.submit(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    estimate(Math.max(0, t), Math.max(0, z));
+                }
+                finally
+                {
+                    done = true;
+                    // last notification (not sent if cancelled)
+                    fireEstimationChanged();
+                }
+            }
+        });
+    }
+
+    /**
+     * Cancel the estimation (current estimation is kept but listeners won't be notified anymore).
+     */
+    public void cancel()
+    {
+        cancelled = true;
+    }
+
+    /**
+     * Returns <code>true</code> if estimation is done (or has been cancelled).
+     */
+    public boolean isDone()
+    {
+        return done;
+    }
+
+    /**
+     * Returns <code>true</code> if estimation has been cancelled.
+     */
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+    /**
+     * Returns the number of planes sampled so far.
+     */
+    public int getSampledPlaneCount()
+    {
+        synchronized (sampledPlanes)
+        {
+            return sampledPlanes.size();
+        }
+    }
+
+    /**
+     * Returns the normalized rank error of estimated quantiles (sampling error is not included).
+     * 
+     * @see QuantileSketch#getNormalizedRankError()
+     */
+    public double getRankError()
+    {
+        return new QuantileSketch(SKETCH_K).getNormalizedRankError();
+    }
+
+    /**
+     * Returns current estimated bounds <code>[low, high]</code> for the specified channel or <code>null</code> if
+     * no estimation is available yet.
+     */
+    public double[] getBounds(int channel)
+    {
+        if ((channel < 0) || (channel >= sketches.length))
+            return null;
+
+        final QuantileSketch sketch = sketches[channel];
+
+        if (sketch == null)
+            return null;
+
+        synchronized (sketch)
+        {
+            if (sketch.isEmpty())
+                return null;
+
+            final double[] result = sketch.getQuantiles(lowQuantile, highQuantile);
+
+            // flat data --> use min max
+            if (result[1] <= result[0])
+                return new double[] {sketch.getMinValue(), sketch.getMaxValue()};
+
+            return result;
+        }
+    }
+
+    protected void estimate(int t, int z)
+    {
+        final int sizeT = sequence.getSizeT();
+        final int sizeZ = sequence.getSizeZ();
+        final int numPlane = sizeT * sizeZ;
+
+        if (numPlane == 0)
+            return;
+
+        // current plane first
+        samplePlane(Math.min(t, sizeT - 1), Math.min(z, sizeZ - 1), sizeZ);
+        // instant estimation from planes already in memory
+        for (int index : getStratifiedOrder(numPlane))
+        {
+            if (cancelled || (getSampledPlaneCount() >= maxPlane))
+                break;
+
+            final IcyBufferedImage image = sequence.getImage(index / sizeZ, index % sizeZ, false);
+
+            if ((image != null) && image.isDataInitialized() && !image.isVolatile())
+                samplePlane(index / sizeZ, index % sizeZ, sizeZ);
+        }
+        fireEstimationChanged();
+
+        // refine with others planes
+        for (int index : getStratifiedOrder(numPlane))
+        {
+            if (cancelled || (getSampledPlaneCount() >= maxPlane))
+                break;
+
+            samplePlane(index / sizeZ, index % sizeZ, sizeZ);
+
+            if ((System.currentTimeMillis() - lastNotify) > NOTIFY_INTERVAL)
+                fireEstimationChanged();
+        }
+    }
+
+    /**
+     * Returns plane indexes ordered so any prefix is spread over the whole range (0, 1/2, 1/4, 3/4, 1/8...)
+     */
+    protected static List<Integer> getStratifiedOrder(int numPlane)
+    {
+        final List<Integer> result = new ArrayList<Integer>(numPlane);
+        final boolean[] done = new boolean[numPlane];
+
+        for (int div = 1; result.size() < numPlane; div *= 2)
+        {
+            for (int i = 0; i < div; i++)
+            {
+                final int index = (int) (((long) i * numPlane) / div);
+
+                if (!done[index])
+                {
+                    done[index] = true;
+                    result.add(Integer.valueOf(index));
+                }
+            }
+
+            // finest level reached
+            if (div >= numPlane)
+            {
+                for (int i = 0; i < numPlane; i++)
+                    if (!done[i])
+                        result.add(Integer.valueOf(i));
+            }
+        }
+
+        return result;
+    }
+
+    protected void samplePlane(int t, int z, int sizeZ)
+    {
+        final Integer key = Integer.valueOf((t * sizeZ) + z);
+
+        synchronized (sampledPlanes)
+        {
+            if (sampledPlanes.contains(key))
+                return;
+            sampledPlanes.add(key);
+        }
+
+        final IcyBufferedImage image = sequence.getImage(t, z, false);
+
+        if (image == null)
+            return;
+
+        final DataType dataType = image.getDataType_();
+        final boolean signed = dataType.isSigned();
+        // same tiles for each estimation of this plane
+        final Random random = new Random(key.intValue());
+        final List<Rectangle> tiles = getTiles(image.getWidth(), image.getHeight(), random);
+
+        for (int c : channels)
+        {
+            if (cancelled)
+                return;
+
+            final QuantileSketch planeSketch = new QuantileSketch(SKETCH_K);
+
+            try
+            {
+                final ImageSourceInfo sourceInfo = image.getImageSourceInfo();
+
+                // data not loaded ? --> only read sampled tiles
+                if (!image.isDataInitialized() && (sourceInfo != null)
+                        && !StringUtil.isEmpty(sourceInfo.imp.getOpened()))
+                {
+                    for (Rectangle tile : tiles)
+                        planeSketch.addValues(readTile(sourceInfo, tile, c), signed);
+                }
+                else
+                {
+                    final Object data = image.getDataXY(c);
+                    final int width = image.getWidth();
+
+                    for (Rectangle tile : tiles)
+                    {
+                        for (int y = tile.y; y < (tile.y + tile.height); y++)
+                        {
+                            int offset = (y * width) + tile.x;
+
+                            for (int x = 0; x < tile.width; x++)
+                                planeSketch.add(Array1DUtil.getValue(data, offset++, dataType));
+                        }
+                    }
+                }
+            }
+            catch (InterruptedException e)
+            {
+                cancelled = true;
+                return;
+            }
+            catch (Exception e)
+            {
+                // data not accessible (sequence closed...) --> ignore this plane
+                continue;
+            }
+
+            final QuantileSketch sketch = sketches[c];
+
+            synchronized (sketch)
+            {
+                sketch.add(planeSketch);
+            }
+        }
+    }
+
+    /**
+     * Returns one tile per stratum of a GRID_SIZE x GRID_SIZE grid (at random position in the stratum) or the whole
+     * plane if it is small enough.
+     */
+    protected static List<Rectangle> getTiles(int width, int height, Random random)
+    {
+        final List<Rectangle> result = new ArrayList<Rectangle>();
+
+        if ((width <= (GRID_SIZE * TILE_SIZE)) && (height <= (GRID_SIZE * TILE_SIZE)))
+        {
+            result.add(new Rectangle(0, 0, width, height));
+            return result;
+        }
+
+        for (int gy = 0; gy < GRID_SIZE; gy++)
+        {
+            final int sy = (gy * height) / GRID_SIZE;
+            final int sh = (((gy + 1) * height) / GRID_SIZE) - sy;
+            final int th = Math.min(TILE_SIZE, sh);
+
+            for (int gx = 0; gx < GRID_SIZE; gx++)
+            {
+                final int sx = (gx * width) / GRID_SIZE;
+                final int sw = (((gx + 1) * width) / GRID_SIZE) - sx;
+                final int tw = Math.min(TILE_SIZE, sw);
+
+                if ((tw > 0) && (th > 0))
+                    result.add(new Rectangle(sx + random.nextInt((sw - tw) + 1), sy + random.nextInt((sh - th) + 1),
+                            tw, th));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Read tile data directly from the importer (region is given in image coordinates)
+     */
+    protected static Object readTile(ImageSourceInfo sourceInfo, Rectangle tile, int c) throws Exception
+    {
+        final int scale = 1 << sourceInfo.resolution;
+        final int offX = (sourceInfo.region != null) ? sourceInfo.region.x : 0;
+        final int offY = (sourceInfo.region != null) ? sourceInfo.region.y : 0;
+        // region is expressed in full resolution
+        final Rectangle region = new Rectangle(offX + (tile.x * scale), offY + (tile.y * scale), tile.width * scale,
+                tile.height * scale);
+        final int srcC = (sourceInfo.c == -1) ? c : sourceInfo.c + c;
+
+        return sourceInfo.imp.getPixels(sourceInfo.series, sourceInfo.resolution, region, sourceInfo.z, sourceInfo.t,
+                srcC);
+    }
+
+    public void addListener(SequenceContrastEstimatorListener listener)
+    {
+        synchronized (listeners)
+        {
+            listeners.add(listener);
+        }
+    }
+
+    public void removeListener(SequenceContrastEstimatorListener listener)
+    {
+        synchronized (listeners)
+        {
+            listeners.remove(listener);
+        }
+    }
+
+    protected void fireEstimationChanged()
+    {
+        // cancelled estimation should not override a newer one
+        if (cancelled)
+            return;
+
+        final List<SequenceContrastEstimatorListener> list;
+
+        synchronized (listeners)
+        {
+            list = new ArrayList<SequenceContrastEstimatorListener>(listeners);
+        }
+
+        lastNotify = System.currentTimeMillis();
+
+        for (SequenceContrastEstimatorListener listener : list)
+            listener.estimationChanged(this);
+    }
+}
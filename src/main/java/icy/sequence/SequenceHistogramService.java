@@ -0,0 +1,388 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.sequence;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import icy.common.listener.ProgressListener;
+import icy.image.IcyBufferedImage;
+import icy.math.Histogram;
+import icy.sequence.SequenceEvent.SequenceEventSourceType;
+import icy.sequence.SequenceEvent.SequenceEventType;
+import icy.system.SystemUtil;
+import icy.system.thread.Processor;
+
+/**
+ * Service used to compute and cache Sequence histograms.<br>
+ * One histogram is computed per plane and channel (in background) and stored with the image itself (see
+ * {@link IcyBufferedImage#getChannelHistogram(int)}) so sequence histograms are obtained by merging them without data
+ * rescan. Once a Sequence is tracked by the service, histogram of modified planes are automatically recomputed in
+ * background.
+ * 
+ * @author Stephane
+ */
+public class SequenceHistogramService implements SequenceListener
+{
+    // singleton
+    private static final SequenceHistogramService service = new SequenceHistogramService();
+
+    /**
+     * Returns the histogram of the specified plane and channel (computed if needed).
+     */
+    public static Histogram getPlaneHistogram(Sequence sequence, int t, int z, int c)
+    {
+        final IcyBufferedImage image = sequence.getImage(t, z, false);
+
+        if (image == null)
+            return null;
+
+        service.track(sequence);
+        service.use(image);
+
+        return image.getChannelHistogram(c);
+    }
+
+    /**
+     * Merge histograms of the specified channel for the given plane(s) into the destination histogram.<br>
+     * Missing plane histograms are computed in parallel, cached ones are directly merged.
+     * 
+     * @param dest
+     *        destination histogram
+     * @param t
+     *        T position (-1 for all T)
+     * @param z
+     *        Z position (-1 for all Z)
+     * @param c
+     *        channel
+     * @return <code>false</code> if the operation was interrupted (destination histogram is then partially filled)
+     */
+    public static boolean addTo(Histogram dest, Sequence sequence, int t, int z, int c)
+    {
+        return service.addToInternal(dest, sequence, t, z, c, null);
+    }
+
+    /**
+     * Merge histograms of the specified channel for the given plane(s) into the destination histogram.<br>
+     * Missing plane histograms are computed in parallel, cached ones are directly merged.
+     * 
+     * @param dest
+     *        destination histogram
+     * @param t
+     *        T position (-1 for all T)
+     * @param z
+     *        Z position (-1 for all Z)
+     * @param c
+     *        channel
+     * @param listener
+     *        notified for each merged plane, the operation is aborted if it returns <code>false</code> (can be
+     *        <code>null</code>)
+     * @return <code>false</code> if the operation was interrupted or aborted (destination histogram is then partially
+     *         filled)
+     */
+    public static boolean addTo(Histogram dest, Sequence sequence, int t, int z, int c, ProgressListener listener)
+    {
+        return service.addToInternal(dest, sequence, t, z, c, listener);
+    }
+
+    /**
+     * Returns the histogram of the specified channel for the whole sequence.<br>
+     * It uses the current channel bounds of the sequence and the given number of bin.
+     */
+    public static Histogram getHistogram(Sequence sequence, int c, int nbBin)
+    {
+        final double[] bounds = sequence.getChannelBounds(c);
+        final Histogram result = new Histogram(bounds[0], bounds[1], nbBin, !sequence.isFloatDataType());
+
+        if (!addTo(result, sequence, -1, -1, c))
+            return null;
+
+        return result;
+    }
+
+    /**
+     * Request background computation of all missing plane histograms for the specified sequence.
+     */
+    public static void prefetch(Sequence sequence)
+    {
+        service.track(sequence);
+
+        for (IcyBufferedImage image : sequence.getAllImage())
+        {
+            service.use(image);
+            service.prefetchInternal(image);
+        }
+    }
+
+    /**
+     * Cancel pending histogram computations for the specified sequence and stop tracking it.
+     */
+    public static void cancel(Sequence sequence)
+    {
+        service.untrack(sequence);
+
+        for (IcyBufferedImage image : sequence.getAllImage())
+            service.cancelInternal(image);
+    }
+
+    private final Processor processor;
+    private final Set<Sequence> sequences;
+    private final Set<IcyBufferedImage> pendings;
+    // images for which histograms have been requested (updated on data change)
+    private final Set<IcyBufferedImage> useds;
+
+    private SequenceHistogramService()
+    {
+        super();
+
+        processor = new Processor(-1, Math.max(1, SystemUtil.getNumberOfCPUs() - 1), Processor.MIN_PRIORITY);
+        processor.setThreadName("Sequence histogram");
+
+        sequences = Collections.newSetFromMap(new WeakHashMap<Sequence, Boolean>());
+        pendings = Collections.newSetFromMap(new IdentityHashMap<IcyBufferedImage, Boolean>());
+        useds = Collections.newSetFromMap(new WeakHashMap<IcyBufferedImage, Boolean>());
+    }
+
+    private void track(Sequence sequence)
+    {
+        synchronized (sequences)
+        {
+            if (sequences.add(sequence))
+                sequence.addListener(this);
+        }
+    }
+
+    private void untrack(Sequence sequence)
+    {
+        synchronized (sequences)
+        {
+            if (sequences.remove(sequence))
+                sequence.removeListener(this);
+        }
+    }
+
+    private void use(IcyBufferedImage image)
+    {
+        synchronized (useds)
+        {
+            useds.add(image);
+        }
+    }
+
+    private boolean isUsed(IcyBufferedImage image)
+    {
+        synchronized (useds)
+        {
+            return useds.contains(image);
+        }
+    }
+
+    private static boolean isComputed(IcyBufferedImage image)
+    {
+        for (int c = 0; c < image.getSizeC(); c++)
+            if (image.getCachedChannelHistogram(c) == null)
+                return false;
+
+        return true;
+    }
+
+    private void prefetchInternal(final IcyBufferedImage image)
+    {
+        if ((image == null) || isComputed(image))
+            return;
+
+        synchronized (pendings)
+        {
+            // already pending
+            if (!pendings.add(image))
+                return;
+        }
+
+        processor.submit(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                synchronized (pendings)
+                {
+                    // cancelled in the meantime
+                    if (!pendings.remove(image))
+                        return;
+                }
+
+                try
+                {
+                    for (int c = 0; c < image.getSizeC(); c++)
+                        image.getChannelHistogram(c);
+                }
+                catch (Exception e)
+                {
+                    // data may not be accessible anymore (sequence closed), just ignore
+                }
+            }
+        });
+    }
+
+    private void cancelInternal(IcyBufferedImage image)
+    {
+        // task will do nothing if image is not in the pending set
+        synchronized (pendings)
+        {
+            pendings.remove(image);
+        }
+    }
+
+    private boolean addToInternal(Histogram dest, Sequence sequence, int t, int z, int c, ProgressListener listener)
+    {
+        final int sizeT = sequence.getSizeT();
+        final int sizeZ = sequence.getSizeZ();
+        final int minT = (t == -1) ? 0 : t;
+        final int maxT = (t == -1) ? sizeT - 1 : t;
+        final int minZ = (z == -1) ? 0 : z;
+        final int maxZ = (z == -1) ? sizeZ - 1 : z;
+        final List<IcyBufferedImage> images = new ArrayList<IcyBufferedImage>();
+
+        for (int it = minT; it <= maxT; it++)
+        {
+            for (int iz = minZ; iz <= maxZ; iz++)
+            {
+                final IcyBufferedImage image = sequence.getImage(it, iz, false);
+
+                if (image != null)
+                    images.add(image);
+            }
+        }
+
+        track(sequence);
+        for (IcyBufferedImage image : images)
+            use(image);
+
+        // compute missing histograms in parallel
+        final List<Future<Histogram>> results = new ArrayList<Future<Histogram>>(images.size());
+
+        for (final IcyBufferedImage image : images)
+        {
+            final Histogram histo = image.getCachedChannelHistogram(c);
+
+            if (histo != null)
+                results.add(null);
+            else
+            {
+                results.add(processor.submit(new Callable<Histogram>()
+                {
+                    @Override
+                    public Histogram call() throws Exception
+                    {
+                        return image.getChannelHistogram(c);
+                    }
+                }));
+            }
+        }
+
+        try
+        {
+            for (int i = 0; i < images.size(); i++)
+            {
+                final Future<Histogram> result = results.get(i);
+                final Histogram histo;
+
+                if (result == null)
+                    histo = images.get(i).getCachedChannelHistogram(c);
+                else
+                    histo = result.get();
+
+                // can be null if data changed in the meantime
+                if (histo != null)
+                    dest.add(histo);
+                else
+                    dest.add(images.get(i).getChannelHistogram(c));
+
+                // abort requested ?
+                if ((listener != null) && !listener.notifyProgress(i + 1, images.size()))
+                {
+                    cancelAll(results);
+                    return false;
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            cancelAll(results);
+            return false;
+        }
+        catch (ExecutionException e)
+        {
+            final Throwable cause = e.getCause();
+
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+
+            throw new RuntimeException(cause);
+        }
+
+        return true;
+    }
+
+    private static void cancelAll(List<Future<Histogram>> results)
+    {
+        for (Future<Histogram> result : results)
+            if (result != null)
+                result.cancel(false);
+    }
+
+    @Override
+    public void sequenceChanged(SequenceEvent event)
+    {
+        if (event.getSourceType() != SequenceEventSourceType.SEQUENCE_DATA)
+            return;
+        if (event.getType() == SequenceEventType.REMOVED)
+            return;
+
+        final Object source = event.getSource();
+
+        // only the modified image need to be updated
+        if (source instanceof IcyBufferedImage)
+        {
+            final IcyBufferedImage image = (IcyBufferedImage) source;
+
+            if (isUsed(image))
+                prefetchInternal(image);
+        }
+        else
+        {
+            // only used images with invalidated histograms are recomputed
+            for (IcyBufferedImage image : event.getSequence().getAllImage())
+                if (isUsed(image))
+                    prefetchInternal(image);
+        }
+    }
+
+    @Override
+    public void sequenceClosed(Sequence sequence)
+    {
+        cancel(sequence);
+    }
+}
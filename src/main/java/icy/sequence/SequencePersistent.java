@@ -18,11 +18,15 @@
  */
 package icy.sequence;
 
+import java.awt.Rectangle;
+import java.io.File;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.zip.CRC32;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -30,10 +34,14 @@ import org.w3c.dom.Node;
 
 import icy.file.FileUtil;
 import icy.file.xml.XMLPersistent;
+import icy.image.IcyBufferedImage;
 import icy.image.lut.LUT;
+import icy.math.Histogram;
 import icy.painter.Overlay;
 import icy.roi.ROI;
+import icy.roi.ROIDescriptorCache;
 import icy.system.IcyExceptionHandler;
+import icy.type.collection.array.ByteArrayConvert;
 import icy.util.StringUtil;
 import icy.util.XMLUtil;
 
@@ -47,11 +55,31 @@ public class SequencePersistent implements XMLPersistent
     private final static String ID_OVERLAYS = "overlays";
     private final static String ID_LUT = "lut";
     private static final String ID_PROPERTIES = "properties";
+    private static final String ID_STATISTICS = "statistics";
+    private static final String ID_DESCRIPTORS = "descriptors";
+
+    private static final String ID_FINGERPRINT = "fingerprint";
+    private static final String ID_PLANE = "plane";
+    private static final String ID_CHANNEL = "channel";
+    private static final String ID_T = "t";
+    private static final String ID_Z = "z";
+    private static final String ID_C = "c";
+    private static final String ID_MIN = "min";
+    private static final String ID_MAX = "max";
+    private static final String ID_HISTOGRAM_MIN = "histogramMin";
+    private static final String ID_HISTOGRAM_MAX = "histogramMax";
+    private static final String ID_HISTOGRAM_INTEGER = "histogramInteger";
+    private static final String ID_HISTOGRAM_BINS = "histogramBins";
 
     private final Sequence sequence;
 
     private Document document;
 
+    /**
+     * images modification count when persistent data has been loaded (used to detect modified images)
+     */
+    private final Map<IcyBufferedImage, Integer> loadedImagesModCount;
+
     /**
      * 
      */
@@ -62,6 +90,7 @@ public class SequencePersistent implements XMLPersistent
         this.sequence = sequence;
 
         document = XMLUtil.createDocument(true);
+        loadedImagesModCount = new WeakHashMap<IcyBufferedImage, Integer>();
     }
 
     /**
@@ -87,6 +116,9 @@ public class SequencePersistent implements XMLPersistent
         boolean result;
         Exception exc = null;
 
+        // keep trace of images state so we know if statistics can be saved later
+        storeImagesModCount();
+
         if ((xmlFilename != null) && FileUtil.exists(xmlFilename))
         {
             try
@@ -172,6 +204,10 @@ public class SequencePersistent implements XMLPersistent
             result = false;
         if (!loadPropertiesFromXML(node))
             result = false;
+        // statistics are just a cache so we can ignore errors
+        loadStatisticsFromXML(node);
+        // same for ROI descriptors results
+        loadDescriptorsFromXML(node);
 
         return result;
     }
@@ -304,6 +340,112 @@ public class SequencePersistent implements XMLPersistent
         return true;
     }
 
+    private boolean loadStatisticsFromXML(Node node)
+    {
+        final Element nodeStatistics = XMLUtil.getElement(node, ID_STATISTICS);
+
+        // no node --> nothing to load...
+        if (nodeStatistics == null)
+            return true;
+
+        final String fingerprint = getDataFingerprint();
+
+        // image data changed since statistics were saved --> ignore them
+        if ((fingerprint == null) || !fingerprint.equals(XMLUtil.getAttributeValue(nodeStatistics, ID_FINGERPRINT, "")))
+            return true;
+
+        final int sizeC = sequence.getSizeC();
+        boolean restored = false;
+
+        sequence.beginUpdate();
+        try
+        {
+            for (Element nodePlane : XMLUtil.getElements(nodeStatistics, ID_PLANE))
+            {
+                final int t = XMLUtil.getAttributeIntValue(nodePlane, ID_T, -1);
+                final int z = XMLUtil.getAttributeIntValue(nodePlane, ID_Z, -1);
+                // don't force data loading here
+                final IcyBufferedImage image = sequence.getImage(t, z, false);
+
+                // image not found or modified since loading --> can't restore statistics
+                if ((image == null) || isImageModified(image))
+                    continue;
+
+                for (Element nodeChannel : XMLUtil.getElements(nodePlane, ID_CHANNEL))
+                {
+                    final int c = XMLUtil.getAttributeIntValue(nodeChannel, ID_C, -1);
+
+                    if ((c < 0) || (c >= sizeC))
+                        continue;
+
+                    final double min = XMLUtil.getAttributeDoubleValue(nodeChannel, ID_MIN, Double.NaN);
+                    final double max = XMLUtil.getAttributeDoubleValue(nodeChannel, ID_MAX, Double.NaN);
+                    final Histogram histogram = loadHistogramFromXML(nodeChannel);
+
+                    if (Double.isNaN(min) || Double.isNaN(max) || (min > max) || (histogram == null))
+                        continue;
+
+                    // bounds are already up to date when data is loaded
+                    if (!image.isDataInitialized())
+                        image.setChannelBounds(c, min, max);
+                    image.setChannelHistogram(c, histogram);
+                    restored = true;
+                }
+            }
+
+            // update sequence bounds from restored images bounds
+            if (restored)
+                sequence.updateChannelsBounds(false);
+        }
+        finally
+        {
+            sequence.endUpdate();
+        }
+
+        return true;
+    }
+
+    private boolean loadDescriptorsFromXML(Node node)
+    {
+        final Element nodeDescriptors = XMLUtil.getElement(node, ID_DESCRIPTORS);
+
+        // no node --> nothing to load...
+        if (nodeDescriptors == null)
+            return true;
+
+        final String fingerprint = getDataFingerprint();
+        // results depending on image data are only valid if data didn't changed since they were saved
+        final boolean dataValid = (fingerprint != null)
+                && fingerprint.equals(XMLUtil.getAttributeValue(nodeDescriptors, ID_FINGERPRINT, ""))
+                && !isDataModified();
+
+        sequence.getROIDescriptorCache().loadFromXML(nodeDescriptors, sequence, dataValid);
+
+        return true;
+    }
+
+    private static Histogram loadHistogramFromXML(Element node)
+    {
+        final double min = XMLUtil.getAttributeDoubleValue(node, ID_HISTOGRAM_MIN, Double.NaN);
+        final double max = XMLUtil.getAttributeDoubleValue(node, ID_HISTOGRAM_MAX, Double.NaN);
+        final boolean integer = XMLUtil.getAttributeBooleanValue(node, ID_HISTOGRAM_INTEGER, false);
+        final byte[] bytes = XMLUtil.getAttributeBytesValue(node, ID_HISTOGRAM_BINS, null);
+
+        if (Double.isNaN(min) || Double.isNaN(max) || (bytes == null) || (bytes.length == 0))
+            return null;
+
+        final int[] bins = ByteArrayConvert.byteArrayToIntArray(bytes, false);
+        final Histogram result = new Histogram(min, max, bins.length, integer);
+
+        // histogram properties don't match saved data
+        if (result.getBinNumber() != bins.length)
+            return null;
+
+        System.arraycopy(bins, 0, result.getBins(), 0, bins.length);
+
+        return result;
+    }
+
     @Override
     public boolean saveToXML(Node node)
     {
@@ -314,6 +456,8 @@ public class SequencePersistent implements XMLPersistent
         saveOverlaysToXML(node);
         saveLUTToXML(node);
         savePropertiesToXML(node);
+        saveStatisticsToXML(node);
+        saveDescriptorsToXML(node);
 
         return true;
     }
@@ -410,6 +554,191 @@ public class SequencePersistent implements XMLPersistent
         }
     }
 
+    // save per plane channel statistics (bounds and histogram)
+    private void saveStatisticsToXML(Node node)
+    {
+        final String fingerprint = getDataFingerprint();
+
+        // statistics can't be validated on reload without file attachment
+        if (fingerprint == null)
+        {
+            XMLUtil.removeNode(node, ID_STATISTICS);
+            return;
+        }
+
+        final Element nodeStatistics = XMLUtil.setElement(node, ID_STATISTICS);
+
+        if (nodeStatistics != null)
+        {
+            XMLUtil.removeAllChildren(nodeStatistics);
+            XMLUtil.setAttributeValue(nodeStatistics, ID_FINGERPRINT, fingerprint);
+
+            final int sizeC = sequence.getSizeC();
+            final Histogram[] histograms = new Histogram[sizeC];
+
+            for (int t = 0; t < sequence.getSizeT(); t++)
+            {
+                for (int z = 0; z < sequence.getSizeZ(t); z++)
+                {
+                    final IcyBufferedImage image = sequence.getImage(t, z, false);
+
+                    // statistics of modified image does not match file data anymore
+                    if ((image == null) || isImageModified(image))
+                        continue;
+                    // channel bounds may not reflect data
+                    if (image.isDataInitialized() && !image.getAutoUpdateChannelBounds())
+                        continue;
+
+                    boolean complete = true;
+                    // only save already computed statistics
+                    for (int c = 0; c < sizeC; c++)
+                    {
+                        histograms[c] = image.getCachedChannelHistogram(c);
+                        if (histograms[c] == null)
+                            complete = false;
+                    }
+
+                    if (!complete)
+                        continue;
+
+                    final Element nodePlane = XMLUtil.addElement(nodeStatistics, ID_PLANE);
+
+                    XMLUtil.setAttributeIntValue(nodePlane, ID_T, t);
+                    XMLUtil.setAttributeIntValue(nodePlane, ID_Z, z);
+
+                    for (int c = 0; c < sizeC; c++)
+                    {
+                        final Element nodeChannel = XMLUtil.addElement(nodePlane, ID_CHANNEL);
+                        final double[] bounds = image.getChannelBounds(c);
+
+                        XMLUtil.setAttributeIntValue(nodeChannel, ID_C, c);
+                        XMLUtil.setAttributeDoubleValue(nodeChannel, ID_MIN, bounds[0]);
+                        XMLUtil.setAttributeDoubleValue(nodeChannel, ID_MAX, bounds[1]);
+                        saveHistogramToXML(nodeChannel, histograms[c]);
+                    }
+                }
+            }
+        }
+    }
+
+    // save cached ROI descriptors results
+    private void saveDescriptorsToXML(Node node)
+    {
+        final ROIDescriptorCache cache = sequence.getROIDescriptorCache();
+
+        if (!cache.isPersistent())
+        {
+            XMLUtil.removeNode(node, ID_DESCRIPTORS);
+            return;
+        }
+
+        final Element nodeDescriptors = XMLUtil.setElement(node, ID_DESCRIPTORS);
+
+        if (nodeDescriptors != null)
+        {
+            final String fingerprint = getDataFingerprint();
+            // results depending on image data can't be validated on reload if data doesn't match file anymore
+            final boolean dataValid = (fingerprint != null) && !isDataModified();
+
+            XMLUtil.removeAllChildren(nodeDescriptors);
+            if (dataValid)
+                XMLUtil.setAttributeValue(nodeDescriptors, ID_FINGERPRINT, fingerprint);
+            else
+                XMLUtil.removeAttribute(nodeDescriptors, ID_FINGERPRINT);
+
+            cache.saveToXML(nodeDescriptors, sequence, dataValid);
+        }
+    }
+
+    private static void saveHistogramToXML(Element node, Histogram histogram)
+    {
+        XMLUtil.setAttributeDoubleValue(node, ID_HISTOGRAM_MIN, histogram.getMinValue());
+        XMLUtil.setAttributeDoubleValue(node, ID_HISTOGRAM_MAX, histogram.getMaxValue());
+        XMLUtil.setAttributeBooleanValue(node, ID_HISTOGRAM_INTEGER, histogram.isIntegerType());
+        // bytes are packed by XMLUtil
+        XMLUtil.setAttributeBytesValue(node, ID_HISTOGRAM_BINS, ByteArrayConvert.toByteArray(histogram.getBins(), false));
+    }
+
+    /**
+     * Returns a fingerprint of the image data the sequence has been loaded from (file name, size and modification date,
+     * origin part, dimension and data type) or <code>null</code> if sequence is not attached to an existing file.
+     */
+    private String getDataFingerprint()
+    {
+        final String filename = sequence.getFilename();
+
+        if (StringUtil.isEmpty(filename))
+            return null;
+
+        final File file = new File(filename);
+
+        if (!file.exists())
+            return null;
+
+        final Rectangle region = sequence.getOriginXYRegion();
+        final StringBuilder sb = new StringBuilder();
+
+        sb.append(file.getName()).append(';');
+        sb.append(file.length()).append(';');
+        sb.append(file.lastModified()).append(';');
+        sb.append(sequence.getSeries()).append(';');
+        sb.append(sequence.getOriginResolution()).append(';');
+        if (region != null)
+            sb.append(region.x).append(',').append(region.y).append(',').append(region.width).append(',')
+                    .append(region.height);
+        sb.append(';');
+        sb.append(sequence.getOriginZMin()).append(',').append(sequence.getOriginZMax()).append(';');
+        sb.append(sequence.getOriginTMin()).append(',').append(sequence.getOriginTMax()).append(';');
+        sb.append(sequence.getOriginChannel()).append(';');
+        sb.append(sequence.getSizeX()).append(',').append(sequence.getSizeY()).append(',');
+        sb.append(sequence.getSizeZ()).append(',').append(sequence.getSizeT()).append(',');
+        sb.append(sequence.getSizeC()).append(';');
+        sb.append(sequence.getDataType_());
+
+        final CRC32 crc = new CRC32();
+        crc.update(sb.toString().getBytes());
+
+        return Long.toHexString(crc.getValue());
+    }
+
+    private void storeImagesModCount()
+    {
+        synchronized (loadedImagesModCount)
+        {
+            loadedImagesModCount.clear();
+            for (IcyBufferedImage image : sequence.getAllImage())
+                loadedImagesModCount.put(image, Integer.valueOf(image.getChannelHistogramsModCount()));
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if image data has been modified (or image added) since persistent data was loaded.
+     */
+    private boolean isImageModified(IcyBufferedImage image)
+    {
+        final Integer modCount;
+
+        synchronized (loadedImagesModCount)
+        {
+            modCount = loadedImagesModCount.get(image);
+        }
+
+        return (modCount == null) || (modCount.intValue() != image.getChannelHistogramsModCount());
+    }
+
+    /**
+     * Returns <code>true</code> if any image of the sequence has been modified (or added) since persistent data was
+     * loaded.
+     */
+    private boolean isDataModified()
+    {
+        for (IcyBufferedImage image : sequence.getAllImage())
+            if (isImageModified(image))
+                return true;
+
+        return false;
+    }
+
     /**
      * Get Sequence XML root node
      */
@@ -560,6 +560,76 @@ public class ShapeUtil
         return result;
     }
 
+    /**
+     * Returns a simplified (polyline) version of the specified Shape.<br>
+     * Curves are flattened and consecutive points closer than <code>tolerance</code> are merged, which is useful
+     * to quickly draw a complex shape at low resolution.
+     * 
+     * @param shape
+     *        the shape to simplify
+     * @param tolerance
+     *        the maximum deviation allowed (typically one pixel in the destination space)
+     */
+    public static Path2D getSimplifiedPath(Shape shape, double tolerance)
+    {
+        final PathIterator pathIt = shape.getPathIterator(null, tolerance / 2d);
+        final Path2D result = new Path2D.Double(pathIt.getWindingRule());
+        final double tol2 = tolerance * tolerance;
+        final double crd[] = new double[6];
+        double lastX = 0d;
+        double lastY = 0d;
+        // last skipped point (so we can keep the end of sub path)
+        boolean skipped = false;
+        double skipX = 0d;
+        double skipY = 0d;
+
+        while (!pathIt.isDone())
+        {
+            switch (pathIt.currentSegment(crd))
+            {
+                case PathIterator.SEG_MOVETO:
+                    if (skipped)
+                        result.lineTo(skipX, skipY);
+                    result.moveTo(crd[0], crd[1]);
+                    lastX = crd[0];
+                    lastY = crd[1];
+                    skipped = false;
+                    break;
+
+                case PathIterator.SEG_LINETO:
+                    final double dx = crd[0] - lastX;
+                    final double dy = crd[1] - lastY;
+
+                    if (((dx * dx) + (dy * dy)) >= tol2)
+                    {
+                        result.lineTo(crd[0], crd[1]);
+                        lastX = crd[0];
+                        lastY = crd[1];
+                        skipped = false;
+                    }
+                    else
+                    {
+                        skipped = true;
+                        skipX = crd[0];
+                        skipY = crd[1];
+                    }
+                    break;
+
+                case PathIterator.SEG_CLOSE:
+                    result.closePath();
+                    skipped = false;
+                    break;
+            }
+
+            pathIt.next();
+        }
+
+        if (skipped)
+            result.lineTo(skipX, skipY);
+
+        return result;
+    }
+
     /**
      * Return all PathAnchor points from the specified shape
      */
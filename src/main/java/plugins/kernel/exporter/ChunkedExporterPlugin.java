@@ -0,0 +1,256 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package plugins.kernel.exporter;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.filechooser.FileFilter;
+
+import icy.file.FileUtil;
+import icy.file.chunk.ChunkedImage;
+import icy.gui.frame.progress.FileFrame;
+import icy.image.IcyBufferedImageUtil;
+import icy.plugin.abstract_.PluginSequenceFileExporter;
+import icy.sequence.Sequence;
+import icy.system.IcyExceptionHandler;
+import icy.system.SystemUtil;
+import icy.system.thread.Processor;
+import loci.formats.gui.ExtensionFileFilter;
+
+/**
+ * Exporter for the chunked image format (see {@link ChunkedImage}).<br>
+ * Chunks are compressed and written in parallel, resolution levels are generated plane by plane from the previous
+ * level while the full resolution is written.
+ * 
+ * @author Stephane
+ */
+public class ChunkedExporterPlugin extends PluginSequenceFileExporter
+{
+    public static final int DEFAULT_CHUNK_SIZE_XY = 256;
+    public static final int DEFAULT_CHUNK_SIZE_Z = 1;
+    /**
+     * Fast deflate by default (chunked format is mainly used as scratch / exchange format)
+     */
+    public static final int DEFAULT_COMPRESSION = 1;
+
+    protected int chunkSizeXY;
+    protected int chunkSizeZ;
+    protected int compression;
+    /**
+     * number of resolution levels (-1 = automatic)
+     */
+    protected int numLevels;
+
+    public ChunkedExporterPlugin()
+    {
+        super();
+
+        chunkSizeXY = DEFAULT_CHUNK_SIZE_XY;
+        chunkSizeZ = DEFAULT_CHUNK_SIZE_Z;
+        compression = DEFAULT_COMPRESSION;
+        numLevels = -1;
+    }
+
+    public int getChunkSizeXY()
+    {
+        return chunkSizeXY;
+    }
+
+    public void setChunkSizeXY(int value)
+    {
+        chunkSizeXY = Math.max(16, value);
+    }
+
+    public int getChunkSizeZ()
+    {
+        return chunkSizeZ;
+    }
+
+    public void setChunkSizeZ(int value)
+    {
+        chunkSizeZ = Math.max(1, value);
+    }
+
+    /**
+     * Returns the deflate compression level (0 = no compression)
+     */
+    public int getCompression()
+    {
+        return compression;
+    }
+
+    /**
+     * Set the deflate compression level (0 = no compression, 9 = best compression)
+     */
+    public void setCompression(int value)
+    {
+        compression = Math.max(0, Math.min(9, value));
+    }
+
+    /**
+     * Returns the number of stored resolution levels (-1 means automatic)
+     */
+    public int getNumLevels()
+    {
+        return numLevels;
+    }
+
+    /**
+     * Set the number of stored resolution levels (-1 means automatic: down to a single chunk)
+     */
+    public void setNumLevels(int value)
+    {
+        numLevels = value;
+    }
+
+    @Override
+    public List<FileFilter> getFileFilters()
+    {
+        final List<FileFilter> result = new ArrayList<FileFilter>();
+
+        result.add(new ExtensionFileFilter(new String[] {ChunkedImage.FILE_EXTENSION}, "Icy chunked images"));
+
+        return result;
+    }
+
+    /**
+     * Returns the number of levels needed for the image to fit in a single chunk
+     */
+    protected static int getAutoLevels(int sizeX, int sizeY, int chunkSize)
+    {
+        int result = 1;
+        int size = Math.max(sizeX, sizeY);
+
+        while (size > chunkSize)
+        {
+            size /= 2;
+            result++;
+        }
+
+        return result;
+    }
+
+    @Override
+    public boolean save(Sequence sequence, String path, FileFrame loadingFrame)
+    {
+        String adjPath = FileUtil.getGenericPath(path);
+
+        if (!FileUtil.getFileExtension(adjPath, false).toLowerCase().equals(ChunkedImage.FILE_EXTENSION))
+            adjPath += "." + ChunkedImage.FILE_EXTENSION;
+
+        final int sizeX = sequence.getSizeX();
+        final int sizeY = sequence.getSizeY();
+        final int sizeC = sequence.getSizeC();
+        final int sizeZ = sequence.getSizeZ();
+        final int sizeT = sequence.getSizeT();
+        final boolean signed = sequence.isSignedDataType();
+        final int levels = (numLevels > 0) ? numLevels : getAutoLevels(sizeX, sizeY, chunkSizeXY);
+        final ChunkedImage image = new ChunkedImage(adjPath, sizeX, sizeY, sizeC, sizeZ, sizeT,
+                sequence.getDataType_(), chunkSizeXY, chunkSizeXY, chunkSizeZ, levels, compression);
+
+        image.setName(sequence.getName());
+        image.setPixelSizeX(sequence.getPixelSizeX());
+        image.setPixelSizeY(sequence.getPixelSizeY());
+        image.setPixelSizeZ(sequence.getPixelSizeZ());
+        image.setTimeInterval(sequence.getTimeInterval());
+        for (int c = 0; c < sizeC; c++)
+            image.setChannelName(c, sequence.getChannelName(c));
+
+        final int numCZ = image.getNumChunkZ();
+        final Processor processor = new Processor(-1, SystemUtil.getNumberOfCPUs());
+
+        processor.setThreadName("Chunk writer");
+
+        if (loadingFrame != null)
+        {
+            loadingFrame.setLength(sizeT * numCZ * sizeC);
+            loadingFrame.setPosition(0);
+        }
+
+        try
+        {
+            // header is written last so an incomplete dataset is never seen as valid
+            new File(adjPath).delete();
+            image.clearData();
+
+            for (int t = 0; t < sizeT; t++)
+            {
+                for (int cz = 0; cz < numCZ; cz++)
+                {
+                    final int zMin = cz * image.getChunkSizeZ();
+                    final int zMax = Math.min(sizeZ, zMin + image.getChunkSizeZ());
+
+                    for (int c = 0; c < sizeC; c++)
+                    {
+                        if ((loadingFrame != null) && loadingFrame.isCancelRequested())
+                        {
+                            image.clearData();
+                            return false;
+                        }
+
+                        final Object[] planes = new Object[zMax - zMin];
+
+                        for (int z = zMin; z < zMax; z++)
+                            planes[z - zMin] = sequence.getDataXY(t, z, c);
+
+                        // full resolution
+                        image.writePlanes(0, t, c, cz, planes, processor);
+
+                        // sub resolutions, each computed from previous one
+                        for (int level = 1; level < levels; level++)
+                        {
+                            final int w = image.getSizeX(level - 1);
+                            final int h = image.getSizeY(level - 1);
+
+                            for (int i = 0; i < planes.length; i++)
+                                planes[i] = IcyBufferedImageUtil.downscaleBy2(planes[i], w, h, signed, true);
+
+                            image.writePlanes(level, t, c, cz, planes, processor);
+                        }
+
+                        if (loadingFrame != null)
+                            loadingFrame.incPosition();
+                    }
+                }
+            }
+
+            image.writeHeader();
+
+            return true;
+        }
+        catch (InterruptedException e)
+        {
+            image.clearData();
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        catch (Exception e)
+        {
+            System.err.println("ChunkedExporterPlugin.save(...) error :");
+            IcyExceptionHandler.showErrorMessage(e, true);
+            return false;
+        }
+        finally
+        {
+            processor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package plugins.kernel.importer;
+
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.filechooser.FileFilter;
+
+import icy.common.exception.UnsupportedFormatException;
+import icy.file.FileUtil;
+import icy.file.chunk.ChunkedImage;
+import icy.image.IcyBufferedImage;
+import icy.image.IcyBufferedImageUtil;
+import icy.plugin.abstract_.PluginSequenceFileImporter;
+import icy.sequence.MetaDataUtil;
+import icy.system.SystemUtil;
+import icy.system.thread.Processor;
+import icy.util.StringUtil;
+import loci.common.services.ServiceException;
+import loci.formats.gui.ExtensionFileFilter;
+import loci.formats.ome.OMEXMLMetadataImpl;
+import ome.xml.meta.OMEXMLMetadata;
+
+/**
+ * Importer for the chunked image format (see {@link ChunkedImage}).<br>
+ * Chunks are read and decompressed in parallel and stored resolution levels are used directly.
+ * 
+ * @author Stephane
+ */
+public class ChunkedImporterPlugin extends PluginSequenceFileImporter
+{
+    protected ChunkedImage image;
+    protected OMEXMLMetadata metadata;
+    protected String openedPath;
+    protected Processor chunkReaderProcessor;
+
+    public ChunkedImporterPlugin()
+    {
+        super();
+
+        image = null;
+        metadata = null;
+        openedPath = null;
+        chunkReaderProcessor = null;
+    }
+
+    @Override
+    public List<FileFilter> getFileFilters()
+    {
+        final List<FileFilter> result = new ArrayList<FileFilter>();
+
+        result.add(new ExtensionFileFilter(new String[] {ChunkedImage.FILE_EXTENSION}, "Icy chunked images"));
+
+        return result;
+    }
+
+    @Override
+    public boolean acceptFile(String path)
+    {
+        return ChunkedImage.isChunkedImageFile(path);
+    }
+
+    @Override
+    public String getOpened()
+    {
+        return openedPath;
+    }
+
+    @Override
+    public boolean open(String path, int flags) throws UnsupportedFormatException, IOException
+    {
+        final String adjPath = FileUtil.getGenericPath(path);
+
+        // already opened ?
+        if (StringUtil.equals(openedPath, adjPath))
+            return true;
+
+        // close first
+        close();
+
+        final ChunkedImage img = ChunkedImage.open(adjPath);
+
+        try
+        {
+            final OMEXMLMetadata meta = MetaDataUtil.generateMetaData(img.getSizeX(), img.getSizeY(), img.getSizeC(),
+                    img.getSizeZ(), img.getSizeT(), img.getDataType(), true);
+
+            MetaDataUtil.setName(meta, 0, img.getName());
+            MetaDataUtil.setPixelSizeX(meta, 0, img.getPixelSizeX());
+            MetaDataUtil.setPixelSizeY(meta, 0, img.getPixelSizeY());
+            MetaDataUtil.setPixelSizeZ(meta, 0, img.getPixelSizeZ());
+            MetaDataUtil.setTimeInterval(meta, 0, img.getTimeInterval());
+            for (int c = 0; c < img.getSizeC(); c++)
+                if (!StringUtil.isEmpty(img.getChannelName(c)))
+                    MetaDataUtil.setChannelName(meta, 0, c, img.getChannelName(c));
+
+            metadata = meta;
+        }
+        catch (ServiceException e)
+        {
+            throw new UnsupportedFormatException("Cannot create metadata for " + path, e);
+        }
+
+        image = img;
+        openedPath = adjPath;
+
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        image = null;
+        metadata = null;
+        openedPath = null;
+
+        synchronized (this)
+        {
+            if (chunkReaderProcessor != null)
+            {
+                chunkReaderProcessor.shutdown();
+                chunkReaderProcessor = null;
+            }
+        }
+    }
+
+    protected synchronized Processor getChunkReaderProcessor()
+    {
+        if (chunkReaderProcessor == null)
+        {
+            chunkReaderProcessor = new Processor(-1, Math.max(1, SystemUtil.getNumberOfCPUs()));
+            chunkReaderProcessor.setThreadName("Chunk reader");
+        }
+
+        return chunkReaderProcessor;
+    }
+
+    @Override
+    public OMEXMLMetadata getOMEXMLMetaData() throws UnsupportedFormatException, IOException
+    {
+        return metadata;
+    }
+
+    @Deprecated
+    @Override
+    public OMEXMLMetadataImpl getMetaData() throws UnsupportedFormatException, IOException
+    {
+        return (OMEXMLMetadataImpl) getOMEXMLMetaData();
+    }
+
+    @Override
+    public int getTileWidth(int series) throws UnsupportedFormatException, IOException
+    {
+        final ChunkedImage img = image;
+
+        if (img == null)
+            return 0;
+
+        return Math.min(img.getSizeX(), img.getChunkSizeX());
+    }
+
+    @Override
+    public int getTileHeight(int series) throws UnsupportedFormatException, IOException
+    {
+        final ChunkedImage img = image;
+
+        if (img == null)
+            return 0;
+
+        return Math.min(img.getSizeY(), img.getChunkSizeY());
+    }
+
+    @Override
+    public boolean isResolutionAvailable(int series, int resolution) throws UnsupportedFormatException, IOException
+    {
+        final ChunkedImage img = image;
+
+        return (img != null) && (resolution >= 0) && (resolution < img.getNumLevels());
+    }
+
+    @Override
+    public Object getPixels(int series, int resolution, Rectangle rectangle, int z, int t, int c)
+            throws UnsupportedFormatException, IOException, InterruptedException
+    {
+        final ChunkedImage img = image;
+
+        // no image currently opened
+        if ((img == null) || (series != 0))
+            return null;
+        if ((z < 0) || (z >= img.getSizeZ()) || (t < 0) || (t >= img.getSizeT()) || (c < 0) || (c >= img.getSizeC()))
+            return null;
+
+        final Rectangle region;
+
+        if (rectangle == null)
+            region = new Rectangle(img.getSizeX(), img.getSizeY());
+        else
+            region = rectangle.intersection(new Rectangle(img.getSizeX(), img.getSizeY()));
+
+        if (region.isEmpty())
+            return null;
+
+        // use the closest stored resolution level
+        final int level = Math.min(resolution, img.getNumLevels() - 1);
+        final Rectangle levelRegion = new Rectangle(region.x >> level, region.y >> level, region.width >> level,
+                region.height >> level);
+
+        Object result = img.readRegion(level, levelRegion, z, t, c, getChunkReaderProcessor());
+
+        // compute remaining levels
+        int w = levelRegion.width;
+        int h = levelRegion.height;
+        for (int i = level; i < resolution; i++)
+        {
+            result = IcyBufferedImageUtil.downscaleBy2(result, w, h, img.getDataType().isSigned(), true);
+            w /= 2;
+            h /= 2;
+        }
+
+        return result;
+    }
+
+    @Override
+    public IcyBufferedImage getImage(int series, int resolution, Rectangle rectangle, int z, int t, int c)
+            throws UnsupportedFormatException, IOException, InterruptedException
+    {
+        final ChunkedImage img = image;
+
+        // no image currently opened
+        if ((img == null) || (series != 0))
+            return null;
+
+        final Rectangle region;
+
+        if (rectangle == null)
+            region = new Rectangle(img.getSizeX(), img.getSizeY());
+        else
+            region = rectangle.intersection(new Rectangle(img.getSizeX(), img.getSizeY()));
+
+        if (region.isEmpty())
+            return null;
+
+        final int w = region.width >> resolution;
+        final int h = region.height >> resolution;
+
+        if (c == -1)
+        {
+            final Object[] data = new Object[img.getSizeC()];
+
+            for (int ch = 0; ch < img.getSizeC(); ch++)
+                data[ch] = getPixels(series, resolution, region, z, t, ch);
+
+            return new IcyBufferedImage(w, h, data, img.getDataType().isSigned());
+        }
+
+        return new IcyBufferedImage(w, h, getPixels(series, resolution, region, z, t, c),
+                img.getDataType().isSigned());
+    }
+}
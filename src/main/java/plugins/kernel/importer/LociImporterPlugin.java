@@ -13,6 +13,13 @@ import java.nio.channels.ClosedByInterruptException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Stack;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.swing.filechooser.FileFilter;
 
@@ -21,9 +28,11 @@ import icy.common.listener.ProgressListener;
 import icy.file.FileUtil;
 import icy.file.Loader;
 import icy.gui.dialog.LoaderDialog.AllImagesFileFilter;
+import icy.image.AsyncImageProviderAdapter;
 import icy.image.IcyBufferedImage;
 import icy.image.IcyBufferedImageUtil;
 import icy.image.IcyBufferedImageUtil.FilterType;
+import icy.image.ImageRequest;
 import icy.image.ImageUtil;
 import icy.image.colormap.IcyColorMap;
 import icy.image.colormap.LinearColorMap;
@@ -236,82 +245,22 @@ public class LociImporterPlugin extends PluginSequenceFileImporter
             if (th <= 0)
                 th = 512;
 
-            final int numThread = Math.max(1, SystemUtil.getNumberOfCPUs() - 1);
+            // one working buffer per tile reader thread
+            final int numThread = getTileReaderProcessor().getMaximumPoolSize();
 
             buffers = new Stack<TilePixelsWorkBuffer>();
             for (int i = 0; i < numThread; i++)
                 buffers.push(new TilePixelsWorkBuffer(tw, th, rgbChannelCount, type));
 
-            // create processor
-            final Processor readerProcessor = new Processor(numThread);
-            readerProcessor.setThreadName("Pixels tile reader");
-
             // get all required tiles
             final List<Rectangle> tiles = ImageUtil.getTileList(adjRegion, tw, th);
+            final List<Runnable> workers = new ArrayList<Runnable>(tiles.size());
 
-            // submit all tasks
             for (Rectangle tile : tiles)
-            {
-                // wait a bit if the process queue is full
-                while (readerProcessor.isFull())
-                {
-                    try
-                    {
-                        Thread.sleep(0);
-                    }
-                    catch (InterruptedException e)
-                    {
-                        // interrupt all processes
-                        readerProcessor.shutdownNow();
-                        break;
-                    }
-                }
+                workers.add(new TilePixelsReaderWorker(tile.intersection(adjRegion)));
 
-                // submit next task
-                readerProcessor.submit(new TilePixelsReaderWorker(tile.intersection(adjRegion)));
-
-                // display progression
-                if (listener != null)
-                {
-                    // process cancel requested ?
-                    if (!listener.notifyProgress(readerProcessor.getCompletedTaskCount(), tiles.size()))
-                    {
-                        // interrupt processes
-                        readerProcessor.shutdownNow();
-                        break;
-                    }
-                }
-            }
-
-            // wait for completion
-            while (readerProcessor.isProcessing())
-            {
-                try
-                {
-                    Thread.sleep(1);
-                }
-                catch (InterruptedException e)
-                {
-                    // interrupt all processes
-                    readerProcessor.shutdownNow();
-                    break;
-                }
-
-                // display progression
-                if (listener != null)
-                {
-                    // process cancel requested ?
-                    if (!listener.notifyProgress(readerProcessor.getCompletedTaskCount(), tiles.size()))
-                    {
-                        // interrupt processes
-                        readerProcessor.shutdownNow();
-                        break;
-                    }
-                }
-            }
-
-            // last wait for completion just in case we were interrupted
-            readerProcessor.waitAll();
+            // read all tiles
+            readTiles(workers, numThread, listener);
 
             // faster memory release
             buffers.clear();
@@ -489,17 +438,13 @@ public class LociImporterPlugin extends PluginSequenceFileImporter
             if (th <= 0)
                 th = 512;
 
-            final int numThread = Math.max(1, SystemUtil.getNumberOfCPUs() - 1);
+            // one working buffer per tile reader thread
+            final int numThread = getTileReaderProcessor().getMaximumPoolSize();
 
             buffers = new Stack<TileImageWorkBuffer>();
             for (int i = 0; i < numThread; i++)
                 buffers.push(new TileImageWorkBuffer(tw, th, sizeC, rgbChannelCount, type));
 
-            // create processor
-            final Processor readerProcessor = new Processor(numThread);
-
-            readerProcessor.setThreadName("Image tile reader");
-
             // force working in RAM as we will do many write operations (too slow with cache)
             result.setVolatile(false);
             // to avoid multiple update
@@ -509,70 +454,13 @@ public class LociImporterPlugin extends PluginSequenceFileImporter
             {
                 // get all required tiles
                 final List<Rectangle> tiles = ImageUtil.getTileList(adjRegion, tw, th);
+                final List<Runnable> workers = new ArrayList<Runnable>(tiles.size());
 
-                // submit all tasks
                 for (Rectangle tile : tiles)
-                {
-                    // wait a bit if the process queue is full
-                    while (readerProcessor.isFull())
-                    {
-                        try
-                        {
-                            Thread.sleep(0);
-                        }
-                        catch (InterruptedException e)
-                        {
-                            // interrupt all processes
-                            readerProcessor.shutdownNow();
-                            break;
-                        }
-                    }
-
-                    // submit next task
-                    readerProcessor.submit(new TileImageReaderWorker(tile.intersection(adjRegion)));
-
-                    // display progression
-                    if (listener != null)
-                    {
-                        // process cancel requested ?
-                        if (!listener.notifyProgress(readerProcessor.getCompletedTaskCount(), tiles.size()))
-                        {
-                            // interrupt processes
-                            readerProcessor.shutdownNow();
-                            break;
-                        }
-                    }
-                }
+                    workers.add(new TileImageReaderWorker(tile.intersection(adjRegion)));
 
-                // wait for completion
-                while (readerProcessor.isProcessing())
-                {
-                    try
-                    {
-                        Thread.sleep(1);
-                    }
-                    catch (InterruptedException e)
-                    {
-                        // interrupt all processes
-                        readerProcessor.shutdownNow();
-                        break;
-                    }
-
-                    // display progression
-                    if (listener != null)
-                    {
-                        // process cancel requested ?
-                        if (!listener.notifyProgress(readerProcessor.getCompletedTaskCount(), tiles.size()))
-                        {
-                            // interrupt processes
-                            readerProcessor.shutdownNow();
-                            break;
-                        }
-                    }
-                }
-
-                // last wait for completion just in case we were interrupted
-                readerProcessor.waitAll();
+                // read all tiles
+                readTiles(workers, numThread, listener);
             }
             finally
             {
@@ -612,6 +500,14 @@ public class LociImporterPlugin extends PluginSequenceFileImporter
      * Shared readers for multi threading
      */
     protected final List<IFormatReader> readersPool;
+    /**
+     * Tile reader processor (kept while the image is opened so successive region reads reuse threads and readers)
+     */
+    protected Processor tileReaderProcessor;
+    /**
+     * Asynchronous image reader processor (read operations are scheduled by the importer itself)
+     */
+    protected Processor asyncReaderProcessor;
 
     /**
      * Metadata options
@@ -648,6 +544,8 @@ public class LociImporterPlugin extends PluginSequenceFileImporter
         internalReader = null;
         acceptReader = null;
         readersPool = new ArrayList<IFormatReader>();
+        tileReaderProcessor = null;
+        asyncReaderProcessor = null;
 
         options = new DynamicMetadataOptions();
 
@@ -934,6 +832,22 @@ public class LociImporterPlugin extends PluginSequenceFileImporter
         {
             openedPath = null;
 
+            synchronized (this)
+            {
+                // cancel pending asynchronous reads
+                if (asyncReaderProcessor != null)
+                {
+                    AsyncImageProviderAdapter.shutdown(asyncReaderProcessor);
+                    asyncReaderProcessor = null;
+                }
+                // stop tile reader threads
+                if (tileReaderProcessor != null)
+                {
+                    tileReaderProcessor.shutdownNow();
+                    tileReaderProcessor = null;
+                }
+            }
+
             synchronized (readersPool)
             {
                 // close all readers
@@ -1039,17 +953,19 @@ public class LociImporterPlugin extends PluginSequenceFileImporter
     {
         try
         {
-            final IFormatReader result;
+            IFormatReader result = null;
 
             synchronized (readersPool)
             {
-                if (readersPool.isEmpty())
-                    result = cloneReader();
                 // allocate last reader (faster)
-                else
+                if (!readersPool.isEmpty())
                     result = readersPool.remove(readersPool.size() - 1);
             }
 
+            // no more available reader --> create a new one (done outside lock as opening can take sometime)
+            if (result == null)
+                result = cloneReader();
+
             final int s = reader.getSeries();
             final int r = reader.getResolution();
 
@@ -1073,6 +989,179 @@ public class LociImporterPlugin extends PluginSequenceFileImporter
         }
     }
 
+    /**
+     * Returns the processor used for multi threaded tile reading (created on first call and kept until
+     * {@link #close()}).
+     */
+    protected synchronized Processor getTileReaderProcessor()
+    {
+        if (tileReaderProcessor == null)
+        {
+            // unbounded waiting queue, backpressure is done by the tile read request (see readTiles(..))
+            tileReaderProcessor = new Processor(-1, Math.max(1, SystemUtil.getNumberOfCPUs() - 1));
+            tileReaderProcessor.setThreadName("Tile reader");
+        }
+
+        return tileReaderProcessor;
+    }
+
+    /**
+     * Returns the processor used for asynchronous image reading (created on first call and kept until
+     * {@link #close()}).<br>
+     * Each running read uses its own reader from the pool so we limit the number of thread to avoid too many reader
+     * instances.
+     */
+    protected synchronized Processor getAsyncReaderProcessor()
+    {
+        if (asyncReaderProcessor == null)
+        {
+            asyncReaderProcessor = new Processor(-1, Math.max(1, SystemUtil.getNumberOfCPUs() / 2));
+            asyncReaderProcessor.setThreadName("Async image reader");
+        }
+
+        return asyncReaderProcessor;
+    }
+
+    @Override
+    public CompletableFuture<Object> getPixelsAsync(int series, int resolution, Rectangle region, int z, int t, int c)
+    {
+        return AsyncImageProviderAdapter.getPixelsAsync(this, getAsyncReaderProcessor(), series, resolution, region, z,
+                t, c);
+    }
+
+    @Override
+    public CompletableFuture<IcyBufferedImage> getImageAsync(int series, int resolution, Rectangle region, int z, int t,
+            int c)
+    {
+        return AsyncImageProviderAdapter.getImageAsync(this, getAsyncReaderProcessor(), series, resolution, region, z,
+                t, c);
+    }
+
+    @Override
+    public List<CompletableFuture<IcyBufferedImage>> getImagesAsync(List<ImageRequest> requests)
+    {
+        // read in plane order (limit seek and series / resolution switch)
+        return AsyncImageProviderAdapter.getImagesAsync(this, getAsyncReaderProcessor(), requests,
+                ImageRequest.LOCALITY_ORDER);
+    }
+
+    /**
+     * Execute the given tile reading tasks in parallel and wait for their completion.<br>
+     * At most <code>maxPending</code> tasks are submitted at once (submission blocks until a task completes) so
+     * several concurrent region reads equally share the tile reader threads.
+     * 
+     * @param listener
+     *        progression listener (can be <code>null</code>), remaining tasks are canceled if it returns
+     *        <code>false</code>
+     */
+    protected void readTiles(List<Runnable> tasks, int maxPending, ProgressListener listener)
+    {
+        final Processor processor = getTileReaderProcessor();
+        final int numTask = tasks.size();
+        final Semaphore slots = new Semaphore(Math.max(1, maxPending));
+        final CountDownLatch remaining = new CountDownLatch(numTask);
+        final List<Future<?>> futures = new ArrayList<Future<?>>(numTask);
+        // started state of each task (a task is either started by the processor or dropped on cancel, never both)
+        final List<AtomicBoolean> starteds = new ArrayList<AtomicBoolean>(numTask);
+        boolean canceled = false;
+
+        try
+        {
+            // submit all tasks
+            for (final Runnable task : tasks)
+            {
+                // wait for a free slot
+                slots.acquire();
+
+                final AtomicBoolean started = new AtomicBoolean(false);
+
+                starteds.add(started);
+                futures.add(processor.submit(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        // dropped in between
+                        if (!started.compareAndSet(false, true))
+                            return;
+
+                        try
+                        {
+                            task.run();
+                        }
+                        finally
+                        {
+                            slots.release();
+                            remaining.countDown();
+                        }
+                    }
+                }));
+
+                // process cancel requested ?
+                if ((listener != null) && !listener.notifyProgress(numTask - remaining.getCount(), numTask))
+                {
+                    canceled = true;
+                    break;
+                }
+            }
+
+            // wait for completion
+            while (!canceled && !remaining.await(100, TimeUnit.MILLISECONDS))
+            {
+                // process cancel requested ?
+                if ((listener != null) && !listener.notifyProgress(numTask - remaining.getCount(), numTask))
+                    canceled = true;
+            }
+        }
+        catch (InterruptedException e)
+        {
+            canceled = true;
+            // keep interrupted state
+            Thread.currentThread().interrupt();
+        }
+        catch (RejectedExecutionException e)
+        {
+            // importer closed in between (last task was not submitted)
+            starteds.remove(starteds.size() - 1);
+            canceled = true;
+        }
+
+        if (canceled)
+        {
+            // drop tasks not yet started (don't interrupt running ones as it could close the pooled reader)
+            for (int i = 0; i < starteds.size(); i++)
+            {
+                if (starteds.get(i).compareAndSet(false, true))
+                {
+                    futures.get(i).cancel(false);
+                    remaining.countDown();
+                }
+            }
+
+            // tasks never submitted
+            for (int i = starteds.size(); i < numTask; i++)
+                remaining.countDown();
+        }
+
+        // last wait for completion of started tasks (we don't want to return while tiles are still being copied)
+        boolean interrupted = false;
+        while (true)
+        {
+            try
+            {
+                remaining.await();
+                break;
+            }
+            catch (InterruptedException e)
+            {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
     /**
      * Release the reader obtained through {@link #getReader()} to the reader pool.
      * 
@@ -0,0 +1,1720 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package plugins.kernel.importer;
+
+import java.awt.Rectangle;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.swing.filechooser.FileFilter;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import icy.common.exception.UnsupportedFormatException;
+import icy.file.FileUtil;
+import icy.file.Loader;
+import icy.image.IcyBufferedImage;
+import icy.image.IcyBufferedImageUtil;
+import icy.plugin.abstract_.PluginSequenceFileImporter;
+import icy.sequence.MetaDataUtil;
+import icy.type.DataType;
+import icy.type.collection.array.Array1DUtil;
+import icy.util.OMEUtil;
+import icy.util.StringUtil;
+import icy.util.XMLUtil;
+import loci.common.services.ServiceException;
+import loci.formats.gui.ExtensionFileFilter;
+import loci.formats.ome.OMEXMLMetadataImpl;
+import ome.xml.meta.OMEXMLMetadata;
+
+/**
+ * Memory mapped importer for uncompressed TIFF / BigTIFF / OME-TIFF and raw MetaImage (.mhd / .mha) files.<br>
+ * Image data is never decoded: strip and tile offsets are parsed once then pixels are directly copied from the mapped
+ * file into the destination typed array (bulk copy when samples are contiguous).<br>
+ * Only files which can be served this way are accepted (no compression, no predictor, no palette, one series...),
+ * anything else is left to the Bio-Formats importer.
+ * 
+ * @author Stephane
+ */
+public class MappedImporterPlugin extends PluginSequenceFileImporter
+{
+    protected static final String[] TIFF_EXTENSIONS = new String[] {"tif", "tiff", "btf", "tf2", "tf8"};
+    protected static final String[] MHD_EXTENSIONS = new String[] {"mhd", "mha"};
+
+    /**
+     * Size of a mapped window (a file can be larger than what a single {@link MappedByteBuffer} can address)
+     */
+    protected static final long MAP_WINDOW_SIZE = 1L << 30;
+    /**
+     * Overlap between consecutive mapped windows so a segment smaller than the overlap always fits in a single window
+     */
+    protected static final long MAP_WINDOW_OVERLAP = 64L << 20;
+    protected static final long MAP_WINDOW_STEP = MAP_WINDOW_SIZE - MAP_WINDOW_OVERLAP;
+
+    /**
+     * Maximum number of IFD we accept to parse
+     */
+    protected static final int MAX_IFD = 1 << 20;
+
+    // TIFF tags we are interested in
+    protected static final int TAG_NEW_SUBFILE_TYPE = 254;
+    protected static final int TAG_IMAGE_WIDTH = 256;
+    protected static final int TAG_IMAGE_LENGTH = 257;
+    protected static final int TAG_BITS_PER_SAMPLE = 258;
+    protected static final int TAG_COMPRESSION = 259;
+    protected static final int TAG_PHOTOMETRIC = 262;
+    protected static final int TAG_FILL_ORDER = 266;
+    protected static final int TAG_IMAGE_DESCRIPTION = 270;
+    protected static final int TAG_STRIP_OFFSETS = 273;
+    protected static final int TAG_SAMPLES_PER_PIXEL = 277;
+    protected static final int TAG_ROWS_PER_STRIP = 278;
+    protected static final int TAG_STRIP_BYTE_COUNTS = 279;
+    protected static final int TAG_X_RESOLUTION = 282;
+    protected static final int TAG_Y_RESOLUTION = 283;
+    protected static final int TAG_PLANAR_CONFIG = 284;
+    protected static final int TAG_RESOLUTION_UNIT = 296;
+    protected static final int TAG_PREDICTOR = 317;
+    protected static final int TAG_TILE_WIDTH = 322;
+    protected static final int TAG_TILE_LENGTH = 323;
+    protected static final int TAG_TILE_OFFSETS = 324;
+    protected static final int TAG_TILE_BYTE_COUNTS = 325;
+    protected static final int TAG_SAMPLE_FORMAT = 339;
+
+    protected static final Set<Integer> TIFF_TAGS = new HashSet<Integer>(Arrays.asList(Integer.valueOf(TAG_NEW_SUBFILE_TYPE),
+            Integer.valueOf(TAG_IMAGE_WIDTH), Integer.valueOf(TAG_IMAGE_LENGTH), Integer.valueOf(TAG_BITS_PER_SAMPLE),
+            Integer.valueOf(TAG_COMPRESSION), Integer.valueOf(TAG_PHOTOMETRIC), Integer.valueOf(TAG_FILL_ORDER),
+            Integer.valueOf(TAG_IMAGE_DESCRIPTION), Integer.valueOf(TAG_STRIP_OFFSETS), Integer.valueOf(TAG_SAMPLES_PER_PIXEL),
+            Integer.valueOf(TAG_ROWS_PER_STRIP), Integer.valueOf(TAG_STRIP_BYTE_COUNTS), Integer.valueOf(TAG_X_RESOLUTION),
+            Integer.valueOf(TAG_Y_RESOLUTION), Integer.valueOf(TAG_PLANAR_CONFIG), Integer.valueOf(TAG_RESOLUTION_UNIT),
+            Integer.valueOf(TAG_PREDICTOR), Integer.valueOf(TAG_TILE_WIDTH), Integer.valueOf(TAG_TILE_LENGTH),
+            Integer.valueOf(TAG_TILE_OFFSETS), Integer.valueOf(TAG_TILE_BYTE_COUNTS), Integer.valueOf(TAG_SAMPLE_FORMAT)));
+
+    /**
+     * Data of a single plane (one channel at a given Z, T position)
+     */
+    protected static class Plane
+    {
+        /**
+         * File offset of each block (strip or tile) of the plane, row major order
+         */
+        final long[] offsets;
+        /**
+         * Index of the sample in the (interleaved) pixel
+         */
+        final int sampleOffset;
+
+        Plane(long[] offsets, int sampleOffset)
+        {
+            super();
+
+            this.offsets = offsets;
+            this.sampleOffset = sampleOffset;
+        }
+    }
+
+    /**
+     * Layout of the image data in the file
+     */
+    protected static class Layout
+    {
+        String path;
+        String dataPath;
+        ByteOrder order;
+        DataType dataType;
+        int sizeX;
+        int sizeY;
+        int sizeC;
+        int sizeZ;
+        int sizeT;
+        /**
+         * Block (strip or tile) dimension
+         */
+        int blockW;
+        int blockH;
+        boolean tiled;
+        /**
+         * Number of samples per pixel in a block (sample are interleaved when &gt; 1)
+         */
+        int pixelStride;
+        /**
+         * Planes indexed by <code>c + (z * sizeC) + (t * sizeC * sizeZ)</code>
+         */
+        Plane[] planes;
+        double pixelSizeX = Double.NaN;
+        double pixelSizeY = Double.NaN;
+        double pixelSizeZ = Double.NaN;
+        double timeInterval = Double.NaN;
+
+        Plane getPlane(int z, int t, int c)
+        {
+            return planes[c + (z * sizeC) + (t * sizeC * sizeZ)];
+        }
+
+        int getBlocksPerRow()
+        {
+            return (sizeX + (blockW - 1)) / blockW;
+        }
+
+        int getBlocksPerColumn()
+        {
+            return (sizeY + (blockH - 1)) / blockH;
+        }
+
+        /**
+         * Returns the number of bytes stored for the specified block row (last strip can be shorter)
+         */
+        long getBlockBytes(int blockRow)
+        {
+            final int h = tiled ? blockH : Math.min(blockH, sizeY - (blockRow * blockH));
+            return (long) blockW * h * pixelStride * dataType.getSize();
+        }
+    }
+
+    /**
+     * Lazily mapped file (mapped by windows of {@link MappedImporterPlugin#MAP_WINDOW_SIZE} bytes)
+     */
+    protected static class MappedFile
+    {
+        final FileChannel channel;
+        final long size;
+        final MappedByteBuffer[] windows;
+
+        MappedFile(String path) throws IOException
+        {
+            super();
+
+            channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+            size = channel.size();
+            windows = new MappedByteBuffer[(int) Math.max(1L, ((size - MAP_WINDOW_OVERLAP) + (MAP_WINDOW_STEP - 1))
+                    / MAP_WINDOW_STEP)];
+        }
+
+        synchronized MappedByteBuffer getWindow(int index) throws IOException
+        {
+            MappedByteBuffer result = windows[index];
+
+            if (result == null)
+            {
+                final long start = index * MAP_WINDOW_STEP;
+
+                result = channel.map(MapMode.READ_ONLY, start, Math.min(MAP_WINDOW_SIZE, size - start));
+                windows[index] = result;
+            }
+
+            return result;
+        }
+
+        /**
+         * Returns a buffer (positioned at 0) containing the <code>len</code> bytes located at <code>pos</code>.<br>
+         * The buffer is a view on the mapped file when possible, segments crossing a window boundary are read.
+         */
+        ByteBuffer getBuffer(long pos, int len, ByteOrder order) throws IOException
+        {
+            if ((pos + len) > size)
+                throw new EOFException("Unexpected end of file (offset " + (pos + len) + " > " + size + ")");
+
+            final int index = (int) Math.min(pos / MAP_WINDOW_STEP, windows.length - 1);
+            final long start = index * MAP_WINDOW_STEP;
+
+            // fit in mapped window ?
+            if ((pos + len) <= (start + Math.min(MAP_WINDOW_SIZE, size - start)))
+            {
+                final ByteBuffer result = getWindow(index).duplicate();
+
+                result.position((int) (pos - start));
+                result.limit((int) ((pos - start) + len));
+
+                return result.slice().order(order);
+            }
+
+            return read(channel, pos, len, order);
+        }
+
+        void close() throws IOException
+        {
+            // mapped buffers are released by the GC
+            Arrays.fill(windows, null);
+            channel.close();
+        }
+    }
+
+    /**
+     * Parsed TIFF IFD (only tags of interest are kept)
+     */
+    protected static class TiffIfd
+    {
+        final Map<Integer, long[]> values = new HashMap<Integer, long[]>();
+        final Map<Integer, String> strings = new HashMap<Integer, String>();
+
+        boolean has(int tag)
+        {
+            return values.containsKey(Integer.valueOf(tag));
+        }
+
+        long[] get(int tag)
+        {
+            return values.get(Integer.valueOf(tag));
+        }
+
+        long get(int tag, long def)
+        {
+            final long[] v = get(tag);
+
+            if ((v == null) || (v.length == 0))
+                return def;
+
+            return v[0];
+        }
+
+        double getRational(int tag)
+        {
+            final long[] v = get(tag);
+
+            if ((v == null) || (v.length < 2) || (v[1] == 0))
+                return 0d;
+
+            return (double) v[0] / (double) v[1];
+        }
+
+        String getString(int tag)
+        {
+            return strings.get(Integer.valueOf(tag));
+        }
+    }
+
+    protected Layout layout;
+    protected MappedFile mappedFile;
+    protected OMEXMLMetadata metadata;
+    protected String openedPath;
+    protected int openFlags;
+
+    /**
+     * layout parsed in {@link #acceptFile(String)}, reused on {@link #open(String, int)}
+     */
+    protected Layout acceptedLayout;
+
+    public MappedImporterPlugin()
+    {
+        super();
+
+        layout = null;
+        mappedFile = null;
+        metadata = null;
+        openedPath = null;
+        openFlags = 0;
+        acceptedLayout = null;
+    }
+
+    @Override
+    public List<FileFilter> getFileFilters()
+    {
+        final List<FileFilter> result = new ArrayList<FileFilter>();
+
+        result.add(new ExtensionFileFilter(TIFF_EXTENSIONS, "Uncompressed TIFF images (memory mapped)"));
+        result.add(new ExtensionFileFilter(MHD_EXTENSIONS, "MetaImage raw images (memory mapped)"));
+
+        return result;
+    }
+
+    @Override
+    public boolean acceptFile(String path)
+    {
+        // easy discard
+        if (Loader.canDiscardImageFile(path))
+            return false;
+        if (!hasExtension(path, TIFF_EXTENSIONS) && !hasExtension(path, MHD_EXTENSIONS))
+            return false;
+
+        try
+        {
+            final Layout result = parseLayout(path);
+
+            synchronized (this)
+            {
+                acceptedLayout = result;
+            }
+
+            return result != null;
+        }
+        catch (IOException e)
+        {
+            return false;
+        }
+    }
+
+    @Override
+    public String getOpened()
+    {
+        return openedPath;
+    }
+
+    @Override
+    public boolean open(String path, int flags) throws UnsupportedFormatException, IOException
+    {
+        final String adjPath = FileUtil.getGenericPath(path);
+
+        // already opened ?
+        if (StringUtil.equals(openedPath, adjPath))
+            return true;
+
+        // close first
+        close();
+
+        Layout l;
+
+        synchronized (this)
+        {
+            l = acceptedLayout;
+            acceptedLayout = null;
+        }
+
+        // not the file we accepted --> parse again
+        if ((l == null) || !StringUtil.equals(l.path, adjPath))
+            l = parseLayout(adjPath);
+        if (l == null)
+            throw new UnsupportedFormatException(path + " is not a raw or uncompressed TIFF image file.");
+
+        // TIFF file: Bio-Formats is used as metadata source (channel names and colors, time stamps, positions,
+        // original metadata...), only pixel reads are served from the mapped file
+        OMEXMLMetadata meta = hasExtension(adjPath, TIFF_EXTENSIONS) ? getBioFormatsMetaData(l, adjPath, flags) : null;
+
+        // not available (or raw MetaImage) --> build metadata from the header informations
+        if (meta == null)
+        {
+            try
+            {
+                meta = MetaDataUtil.generateMetaData(l.sizeX, l.sizeY, l.sizeC, l.sizeZ, l.sizeT, l.dataType, true);
+            }
+            catch (ServiceException e)
+            {
+                throw new UnsupportedFormatException("Cannot create metadata for " + path, e);
+            }
+
+            MetaDataUtil.setName(meta, 0, FileUtil.getFileName(adjPath, false));
+            if (l.pixelSizeX > 0d)
+                MetaDataUtil.setPixelSizeX(meta, 0, l.pixelSizeX);
+            if (l.pixelSizeY > 0d)
+                MetaDataUtil.setPixelSizeY(meta, 0, l.pixelSizeY);
+            if (l.pixelSizeZ > 0d)
+                MetaDataUtil.setPixelSizeZ(meta, 0, l.pixelSizeZ);
+            if (l.timeInterval > 0d)
+                MetaDataUtil.setTimeInterval(meta, 0, l.timeInterval);
+        }
+
+        metadata = meta;
+
+        mappedFile = new MappedFile(l.dataPath);
+        layout = l;
+        openedPath = adjPath;
+        openFlags = flags;
+
+        return true;
+    }
+
+    /**
+     * Returns the metadata read by Bio-Formats for the specified file if it describes the same image as the mapped
+     * layout (single series, same dimensions and data type), <code>null</code> otherwise.
+     */
+    protected static OMEXMLMetadata getBioFormatsMetaData(Layout layout, String path, int flags)
+    {
+        final LociImporterPlugin importer = new LociImporterPlugin();
+
+        try
+        {
+            if (!importer.open(path, flags))
+                return null;
+
+            try
+            {
+                final OMEXMLMetadata meta = importer.getOMEXMLMetaData();
+
+                if ((meta != null) && (MetaDataUtil.getNumSeries(meta) == 1)
+                        && (MetaDataUtil.getSizeX(meta, 0) == layout.sizeX)
+                        && (MetaDataUtil.getSizeY(meta, 0) == layout.sizeY)
+                        && (MetaDataUtil.getSizeC(meta, 0) == layout.sizeC)
+                        && (MetaDataUtil.getSizeZ(meta, 0) == layout.sizeZ)
+                        && (MetaDataUtil.getSizeT(meta, 0) == layout.sizeT)
+                        && (MetaDataUtil.getDataType(meta, 0) == layout.dataType))
+                    // copy it as reader is closed right after
+                    return OMEUtil.createOMEXMLMetadata(meta);
+            }
+            finally
+            {
+                importer.close();
+            }
+        }
+        catch (Exception e)
+        {
+            // Bio-Formats cannot read it --> use header informations only
+        }
+
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        final MappedFile mf = mappedFile;
+
+        layout = null;
+        mappedFile = null;
+        metadata = null;
+        openedPath = null;
+
+        if (mf != null)
+            mf.close();
+    }
+
+    @Override
+    public OMEXMLMetadata getOMEXMLMetaData() throws UnsupportedFormatException, IOException
+    {
+        return metadata;
+    }
+
+    @Deprecated
+    @Override
+    public OMEXMLMetadataImpl getMetaData() throws UnsupportedFormatException, IOException
+    {
+        return (OMEXMLMetadataImpl) getOMEXMLMetaData();
+    }
+
+    @Override
+    public int getTileWidth(int series) throws UnsupportedFormatException, IOException
+    {
+        final Layout l = layout;
+
+        if (l == null)
+            return 0;
+
+        return l.tiled ? l.blockW : l.sizeX;
+    }
+
+    @Override
+    public int getTileHeight(int series) throws UnsupportedFormatException, IOException
+    {
+        final Layout l = layout;
+
+        if (l == null)
+            return 0;
+        if (l.tiled)
+            return l.blockH;
+
+        // use strip height but avoid too small tiles
+        return Math.min(l.sizeY, Math.max(l.blockH, (1024 * 1024) / l.sizeX));
+    }
+
+    @Override
+    public Object getPixels(int series, int resolution, Rectangle rectangle, int z, int t, int c)
+            throws UnsupportedFormatException, IOException
+    {
+        final Layout l = layout;
+        final MappedFile mf = mappedFile;
+
+        // no image currently opened
+        if ((l == null) || (mf == null) || (series != 0))
+            return null;
+        if ((z < 0) || (z >= l.sizeZ) || (t < 0) || (t >= l.sizeT) || (c < 0) || (c >= l.sizeC))
+            return null;
+
+        final Rectangle region;
+
+        if (rectangle == null)
+            region = new Rectangle(l.sizeX, l.sizeY);
+        else
+            region = rectangle.intersection(new Rectangle(l.sizeX, l.sizeY));
+
+        if (region.isEmpty())
+            return null;
+
+        Object result = readPixels(mf, l, l.getPlane(z, t, c), region);
+
+        // sub resolution are computed from full resolution data (no pyramid here)
+        int w = region.width;
+        int h = region.height;
+        for (int i = 0; i < resolution; i++)
+        {
+            result = IcyBufferedImageUtil.downscaleBy2(result, w, h, l.dataType.isSigned(), true);
+            w /= 2;
+            h /= 2;
+        }
+
+        return result;
+    }
+
+    @Override
+    public IcyBufferedImage getImage(int series, int resolution, Rectangle rectangle, int z, int t, int c)
+            throws UnsupportedFormatException, IOException
+    {
+        final Layout l = layout;
+
+        // no image currently opened
+        if ((l == null) || (series != 0))
+            return null;
+
+        final Rectangle region;
+
+        if (rectangle == null)
+            region = new Rectangle(l.sizeX, l.sizeY);
+        else
+            region = rectangle.intersection(new Rectangle(l.sizeX, l.sizeY));
+
+        if (region.isEmpty())
+            return null;
+
+        final int w = region.width >> resolution;
+        final int h = region.height >> resolution;
+
+        if (c == -1)
+        {
+            final Object[] data = new Object[l.sizeC];
+
+            for (int ch = 0; ch < l.sizeC; ch++)
+                data[ch] = getPixels(series, resolution, region, z, t, ch);
+
+            return new IcyBufferedImage(w, h, data, l.dataType.isSigned());
+        }
+
+        return new IcyBufferedImage(w, h, getPixels(series, resolution, region, z, t, c), l.dataType.isSigned());
+    }
+
+    /**
+     * Copy the specified region of a plane into a new typed array.
+     */
+    protected static Object readPixels(MappedFile mf, Layout l, Plane plane, Rectangle region) throws IOException
+    {
+        final Object result = Array1DUtil.createArray(l.dataType, region.width * region.height);
+        final int blocksPerRow = l.getBlocksPerRow();
+        final int bpp = l.dataType.getSize();
+        final int stride = l.pixelStride;
+        final long rowBytes = (long) l.blockW * stride * bpp;
+        final int minBX = region.x / l.blockW;
+        final int maxBX = (region.x + region.width - 1) / l.blockW;
+        final int minBY = region.y / l.blockH;
+        final int maxBY = (region.y + region.height - 1) / l.blockH;
+
+        for (int by = minBY; by <= maxBY; by++)
+        {
+            final int blockY = by * l.blockH;
+            final int startY = Math.max(region.y, blockY);
+            final int endY = Math.min(region.y + region.height, Math.min(blockY + l.blockH, l.sizeY));
+
+            for (int bx = minBX; bx <= maxBX; bx++)
+            {
+                final int blockX = bx * l.blockW;
+                final int startX = Math.max(region.x, blockX);
+                final int endX = Math.min(region.x + region.width, Math.min(blockX + l.blockW, l.sizeX));
+                final int len = endX - startX;
+                final long blockOffset = plane.offsets[bx + (by * blocksPerRow)];
+                final long firstPos = blockOffset + ((startY - blockY) * rowBytes)
+                        + ((long) (startX - blockX) * stride * bpp) + ((long) plane.sampleOffset * bpp);
+                int dstOff = ((startY - region.y) * region.width) + (startX - region.x);
+
+                // full block rows, contiguous samples --> single bulk copy for the whole block
+                if ((stride == 1) && (len == l.blockW) && (len == region.width)
+                        && (((endY - startY) * rowBytes) <= MAP_WINDOW_OVERLAP))
+                {
+                    final int n = len * (endY - startY);
+
+                    copy(mf.getBuffer(firstPos, n * bpp, l.order), l.dataType, result, dstOff, n, 1);
+                }
+                else
+                {
+                    final int segLen = (((len - 1) * stride) + 1) * bpp;
+
+                    for (int y = startY; y < endY; y++)
+                    {
+                        copy(mf.getBuffer(firstPos + ((y - startY) * rowBytes), segLen, l.order), l.dataType, result,
+                                dstOff, len, stride);
+                        dstOff += region.width;
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Copy <code>len</code> samples (taken every <code>stride</code> samples) from <code>src</code> into
+     * <code>dst</code> at <code>dstOff</code>.
+     */
+    protected static void copy(ByteBuffer src, DataType dataType, Object dst, int dstOff, int len, int stride)
+    {
+        switch (dataType.getJavaType())
+        {
+            case BYTE:
+            {
+                final byte[] d = (byte[]) dst;
+
+                if (stride == 1)
+                    src.get(d, dstOff, len);
+                else
+                    for (int i = 0, s = 0; i < len; i++, s += stride)
+                        d[dstOff + i] = src.get(s);
+                break;
+            }
+
+            case SHORT:
+            {
+                final short[] d = (short[]) dst;
+
+                if (stride == 1)
+                    src.asShortBuffer().get(d, dstOff, len);
+                else
+                    for (int i = 0, s = 0; i < len; i++, s += stride)
+                        d[dstOff + i] = src.getShort(s * 2);
+                break;
+            }
+
+            case INT:
+            {
+                final int[] d = (int[]) dst;
+
+                if (stride == 1)
+                    src.asIntBuffer().get(d, dstOff, len);
+                else
+                    for (int i = 0, s = 0; i < len; i++, s += stride)
+                        d[dstOff + i] = src.getInt(s * 4);
+                break;
+            }
+
+            case FLOAT:
+            {
+                final float[] d = (float[]) dst;
+
+                if (stride == 1)
+                    src.asFloatBuffer().get(d, dstOff, len);
+                else
+                    for (int i = 0, s = 0; i < len; i++, s += stride)
+                        d[dstOff + i] = src.getFloat(s * 4);
+                break;
+            }
+
+            case DOUBLE:
+            {
+                final double[] d = (double[]) dst;
+
+                if (stride == 1)
+                    src.asDoubleBuffer().get(d, dstOff, len);
+                else
+                    for (int i = 0, s = 0; i < len; i++, s += stride)
+                        d[dstOff + i] = src.getDouble(s * 8);
+                break;
+            }
+
+            default:
+                throw new IllegalArgumentException("Unsupported data type: " + dataType);
+        }
+    }
+
+    /**
+     * Parse the layout of the specified file, returns <code>null</code> if the file cannot be served by this importer.
+     */
+    protected static Layout parseLayout(String path) throws IOException
+    {
+        final String adjPath = FileUtil.getGenericPath(path);
+        final Layout result;
+
+        if (hasExtension(adjPath, MHD_EXTENSIONS))
+            result = parseMetaImage(adjPath);
+        else
+            result = parseTiff(adjPath);
+
+        if (result != null)
+            result.path = adjPath;
+
+        return result;
+    }
+
+    protected static boolean hasExtension(String path, String[] extensions)
+    {
+        final String ext = FileUtil.getFileExtension(path, false).toLowerCase();
+
+        for (String e : extensions)
+            if (ext.equals(e))
+                return true;
+
+        return false;
+    }
+
+    /**
+     * Read <code>len</code> bytes at <code>pos</code>.
+     */
+    protected static ByteBuffer read(FileChannel channel, long pos, int len, ByteOrder order) throws IOException
+    {
+        final ByteBuffer result = ByteBuffer.allocate(len).order(order);
+
+        while (result.hasRemaining())
+            if (channel.read(result, pos + result.position()) < 0)
+                throw new EOFException();
+
+        result.flip();
+
+        return result;
+    }
+
+    /**
+     * Parse an uncompressed TIFF, BigTIFF, OME-TIFF or ImageJ TIFF file.
+     */
+    protected static Layout parseTiff(String path) throws IOException
+    {
+        final FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+
+        try
+        {
+            final long fileSize = channel.size();
+
+            if (fileSize < 16)
+                return null;
+
+            final ByteBuffer header = read(channel, 0, 16, ByteOrder.LITTLE_ENDIAN);
+            final ByteOrder order;
+
+            if ((header.get(0) == 'I') && (header.get(1) == 'I'))
+                order = ByteOrder.LITTLE_ENDIAN;
+            else if ((header.get(0) == 'M') && (header.get(1) == 'M'))
+                order = ByteOrder.BIG_ENDIAN;
+            else
+                return null;
+
+            header.order(order);
+
+            final int magic = header.getShort(2) & 0xFFFF;
+            final boolean big;
+            long ifdOffset;
+
+            if (magic == 42)
+            {
+                big = false;
+                ifdOffset = header.getInt(4) & 0xFFFFFFFFL;
+            }
+            else if (magic == 43)
+            {
+                // BigTIFF
+                if ((header.getShort(4) != 8) || (header.getShort(6) != 0))
+                    return null;
+
+                big = true;
+                ifdOffset = header.getLong(8);
+            }
+            else
+                return null;
+
+            // read all main IFD
+            final List<TiffIfd> ifds = new ArrayList<TiffIfd>();
+            final Set<Long> visited = new HashSet<Long>();
+
+            while ((ifdOffset > 0) && (ifdOffset < fileSize) && visited.add(Long.valueOf(ifdOffset)))
+            {
+                if (visited.size() > MAX_IFD)
+                    return null;
+
+                final long[] next = new long[1];
+                final TiffIfd ifd = readIfd(channel, order, big, ifdOffset, next);
+
+                // ignore reduced resolution images (thumbnail, pyramid)
+                if ((ifd.get(TAG_NEW_SUBFILE_TYPE, 0) & 1) == 0)
+                    ifds.add(ifd);
+
+                ifdOffset = next[0];
+            }
+
+            if (ifds.isEmpty())
+                return null;
+
+            return buildTiffLayout(path, fileSize, order, ifds);
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+
+    protected static TiffIfd readIfd(FileChannel channel, ByteOrder order, boolean big, long offset, long[] next)
+            throws IOException
+    {
+        final TiffIfd result = new TiffIfd();
+        final int countSize = big ? 8 : 2;
+        final int entrySize = big ? 20 : 12;
+        final int inlineSize = big ? 8 : 4;
+        final long count = big ? read(channel, offset, 8, order).getLong(0)
+                : (read(channel, offset, 2, order).getShort(0) & 0xFFFF);
+
+        if ((count <= 0) || (count > 65535))
+            throw new IOException("Invalid TIFF IFD entry count: " + count);
+
+        final ByteBuffer entries = read(channel, offset + countSize, (int) (count * entrySize) + inlineSize, order);
+
+        for (int i = 0; i < count; i++)
+        {
+            final int pos = i * entrySize;
+            final int tag = entries.getShort(pos) & 0xFFFF;
+
+            if (!TIFF_TAGS.contains(Integer.valueOf(tag)))
+                continue;
+
+            final int type = entries.getShort(pos + 2) & 0xFFFF;
+            final long num = big ? entries.getLong(pos + 4) : (entries.getInt(pos + 4) & 0xFFFFFFFFL);
+            final int typeSize = getTiffTypeSize(type);
+
+            if ((typeSize == 0) || (num <= 0) || (num > (Integer.MAX_VALUE / 16)))
+                continue;
+
+            final long len = num * typeSize;
+            final ByteBuffer data;
+
+            // value stored in the entry itself ?
+            if (len <= inlineSize)
+            {
+                final ByteBuffer dup = entries.duplicate();
+                dup.position(pos + (big ? 12 : 8));
+                data = dup.slice().order(order);
+            }
+            else
+            {
+                final long valueOffset = big ? entries.getLong(pos + 12) : (entries.getInt(pos + 8) & 0xFFFFFFFFL);
+                data = read(channel, valueOffset, (int) len, order);
+            }
+
+            if (type == 2)
+            {
+                final byte[] bytes = new byte[(int) len];
+                data.get(bytes);
+
+                // remove ending null characters
+                int end = bytes.length;
+                while ((end > 0) && (bytes[end - 1] == 0))
+                    end--;
+
+                result.strings.put(Integer.valueOf(tag), new String(bytes, 0, end, Charset.forName("UTF-8")));
+            }
+            else
+            {
+                final long[] values = readTiffValues(data, type, (int) num);
+
+                if (values != null)
+                    result.values.put(Integer.valueOf(tag), values);
+            }
+        }
+
+        next[0] = big ? entries.getLong((int) (count * entrySize)) : (entries.getInt((int) (count * entrySize)) & 0xFFFFFFFFL);
+
+        return result;
+    }
+
+    protected static int getTiffTypeSize(int type)
+    {
+        switch (type)
+        {
+            case 1: // BYTE
+            case 2: // ASCII
+            case 6: // SBYTE
+            case 7: // UNDEFINED
+                return 1;
+            case 3: // SHORT
+            case 8: // SSHORT
+                return 2;
+            case 4: // LONG
+            case 9: // SLONG
+            case 13: // IFD
+                return 4;
+            case 5: // RATIONAL
+            case 10: // SRATIONAL
+            case 16: // LONG8
+            case 17: // SLONG8
+            case 18: // IFD8
+                return 8;
+            default:
+                // float values are not used for tags we are interested in
+                return 0;
+        }
+    }
+
+    /**
+     * Decode integer TIFF values (rational are returned as numerator / denominator pairs)
+     */
+    protected static long[] readTiffValues(ByteBuffer data, int type, int num)
+    {
+        final long[] result;
+
+        switch (type)
+        {
+            case 1:
+            case 7:
+                result = new long[num];
+                for (int i = 0; i < num; i++)
+                    result[i] = data.get(i) & 0xFF;
+                return result;
+            case 6:
+                result = new long[num];
+                for (int i = 0; i < num; i++)
+                    result[i] = data.get(i);
+                return result;
+            case 3:
+                result = new long[num];
+                for (int i = 0; i < num; i++)
+                    result[i] = data.getShort(i * 2) & 0xFFFF;
+                return result;
+            case 8:
+                result = new long[num];
+                for (int i = 0; i < num; i++)
+                    result[i] = data.getShort(i * 2);
+                return result;
+            case 4:
+            case 13:
+                result = new long[num];
+                for (int i = 0; i < num; i++)
+                    result[i] = data.getInt(i * 4) & 0xFFFFFFFFL;
+                return result;
+            case 9:
+                result = new long[num];
+                for (int i = 0; i < num; i++)
+                    result[i] = data.getInt(i * 4);
+                return result;
+            case 5:
+                result = new long[num * 2];
+                for (int i = 0; i < (num * 2); i++)
+                    result[i] = data.getInt(i * 4) & 0xFFFFFFFFL;
+                return result;
+            case 10:
+                result = new long[num * 2];
+                for (int i = 0; i < (num * 2); i++)
+                    result[i] = data.getInt(i * 4);
+                return result;
+            case 16:
+            case 17:
+            case 18:
+                result = new long[num];
+                for (int i = 0; i < num; i++)
+                    result[i] = data.getLong(i * 8);
+                return result;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Returns the key values which should be identical for all IFD of the image
+     */
+    protected static long[] getTiffSignature(TiffIfd ifd)
+    {
+        final long[] bits = ifd.get(TAG_BITS_PER_SAMPLE);
+
+        return new long[] {ifd.get(TAG_IMAGE_WIDTH, 0), ifd.get(TAG_IMAGE_LENGTH, 0), (bits == null) ? 1 : bits[0],
+                ifd.get(TAG_COMPRESSION, 1), ifd.get(TAG_PHOTOMETRIC, 1), ifd.get(TAG_FILL_ORDER, 1),
+                ifd.get(TAG_SAMPLES_PER_PIXEL, 1), ifd.get(TAG_ROWS_PER_STRIP, Integer.MAX_VALUE),
+                ifd.get(TAG_PLANAR_CONFIG, 1), ifd.get(TAG_PREDICTOR, 1), ifd.get(TAG_TILE_WIDTH, 0),
+                ifd.get(TAG_TILE_LENGTH, 0), ifd.get(TAG_SAMPLE_FORMAT, 1)};
+    }
+
+    protected static Layout buildTiffLayout(String path, long fileSize, ByteOrder order, List<TiffIfd> ifds)
+    {
+        final TiffIfd first = ifds.get(0);
+        final long[] signature = getTiffSignature(first);
+
+        // all images should share the same properties
+        for (TiffIfd ifd : ifds)
+            if (!Arrays.equals(signature, getTiffSignature(ifd)))
+                return null;
+
+        final int sizeX = (int) first.get(TAG_IMAGE_WIDTH, 0);
+        final int sizeY = (int) first.get(TAG_IMAGE_LENGTH, 0);
+        final int spp = (int) first.get(TAG_SAMPLES_PER_PIXEL, 1);
+        final int planar = (int) first.get(TAG_PLANAR_CONFIG, 1);
+        final long photometric = first.get(TAG_PHOTOMETRIC, 1);
+        final boolean tiled = first.has(TAG_TILE_WIDTH);
+
+        if ((sizeX <= 0) || (sizeY <= 0) || (spp <= 0))
+            return null;
+        // encoded data (we don't decode anything here)
+        if ((first.get(TAG_COMPRESSION, 1) != 1) || (first.get(TAG_PREDICTOR, 1) != 1)
+                || (first.get(TAG_FILL_ORDER, 1) != 1))
+            return null;
+        // only gray and RGB (palette, inverted and others need conversion)
+        if ((photometric != 1) && (photometric != 2))
+            return null;
+
+        // all samples should have the same size
+        final long[] bits = first.get(TAG_BITS_PER_SAMPLE);
+        final int bitSize = (bits == null) ? 1 : (int) bits[0];
+        if (bits != null)
+            for (long b : bits)
+                if (b != bitSize)
+                    return null;
+
+        final DataType dataType = getTiffDataType(bitSize, (int) first.get(TAG_SAMPLE_FORMAT, 1));
+        if (dataType == null)
+            return null;
+
+        final Layout result = new Layout();
+
+        result.dataPath = path;
+        result.order = order;
+        result.dataType = dataType;
+        result.sizeX = sizeX;
+        result.sizeY = sizeY;
+        result.tiled = tiled;
+        result.pixelStride = (planar == 2) ? 1 : spp;
+
+        if (tiled)
+        {
+            result.blockW = (int) first.get(TAG_TILE_WIDTH, 0);
+            result.blockH = (int) first.get(TAG_TILE_LENGTH, 0);
+        }
+        else
+        {
+            result.blockW = sizeX;
+            result.blockH = (int) Math.min(sizeY, Math.max(1L, first.get(TAG_ROWS_PER_STRIP, sizeY)));
+        }
+
+        if ((result.blockW <= 0) || (result.blockH <= 0))
+            return null;
+
+        final int blocksPerRow = result.getBlocksPerRow();
+        final int blocksPerColumn = result.getBlocksPerColumn();
+        final int blocksPerPlane = blocksPerRow * blocksPerColumn;
+        final int offsetTag = tiled ? TAG_TILE_OFFSETS : TAG_STRIP_OFFSETS;
+
+        // planes for each IFD and sample
+        final Plane[][] ifdPlanes = new Plane[ifds.size()][spp];
+        boolean contiguous = !tiled && (blocksPerColumn > 1);
+
+        for (int i = 0; i < ifds.size(); i++)
+        {
+            final long[] offsets = ifds.get(i).get(offsetTag);
+
+            if ((offsets == null) || (offsets.length != (blocksPerPlane * ((planar == 2) ? spp : 1))))
+                return null;
+
+            for (int s = 0; s < spp; s++)
+            {
+                final Plane plane;
+
+                if (planar == 2)
+                    plane = new Plane(Arrays.copyOfRange(offsets, s * blocksPerPlane, (s + 1) * blocksPerPlane), 0);
+                else
+                    plane = new Plane(offsets, s);
+
+                // check data is really present
+                for (int b = 0; b < blocksPerPlane; b++)
+                {
+                    final long bytes = result.getBlockBytes(b / blocksPerRow);
+
+                    if ((plane.offsets[b] <= 0) || ((plane.offsets[b] + bytes) > fileSize))
+                        return null;
+                    if (contiguous && (b > 0) && (plane.offsets[b] != (plane.offsets[b - 1] + bytes)))
+                        contiguous = false;
+                }
+
+                ifdPlanes[i][s] = plane;
+            }
+        }
+
+        // all strips are contiguous --> use a single block per plane (allow bulk copy of several rows)
+        if (contiguous)
+        {
+            result.blockH = sizeY;
+
+            for (int i = 0; i < ifdPlanes.length; i++)
+                for (int s = 0; s < spp; s++)
+                    ifdPlanes[i][s] = new Plane(new long[] {ifdPlanes[i][s].offsets[0]}, ifdPlanes[i][s].sampleOffset);
+        }
+
+        final String description = first.getString(TAG_IMAGE_DESCRIPTION);
+        final Plane[][] planes;
+
+        // define dimensions from description
+        if ((description != null) && description.trim().startsWith("<") && description.contains("OME"))
+            planes = setOMEDimensions(result, description, ifdPlanes, spp, FileUtil.getFileName(path));
+        else if ((description != null) && description.startsWith("ImageJ="))
+            planes = setImageJDimensions(result, description, ifdPlanes, spp, fileSize);
+        else
+        {
+            // same as Bio-Formats: pages are considered as frames
+            result.sizeC = spp;
+            result.sizeZ = 1;
+            result.sizeT = ifdPlanes.length;
+            planes = ifdPlanes;
+        }
+
+        if (planes == null)
+            return null;
+
+        // build final plane array
+        final int effSizeC = result.sizeC / spp;
+        result.planes = new Plane[result.sizeC * result.sizeZ * result.sizeT];
+
+        for (int i = 0; i < planes.length; i++)
+        {
+            final int ce = i % effSizeC;
+            final int z = (i / effSizeC) % result.sizeZ;
+            final int t = i / (effSizeC * result.sizeZ);
+
+            for (int s = 0; s < spp; s++)
+                result.planes[((ce * spp) + s) + (z * result.sizeC) + (t * result.sizeC * result.sizeZ)] = planes[i][s];
+        }
+
+        // pixel size from resolution tags when not defined in description
+        if (Double.isNaN(result.pixelSizeX) && (first.get(TAG_RESOLUTION_UNIT, 2) == 3))
+        {
+            final double rx = first.getRational(TAG_X_RESOLUTION);
+            final double ry = first.getRational(TAG_Y_RESOLUTION);
+
+            // pixel per centimeter
+            if (rx > 0d)
+                result.pixelSizeX = 10000d / rx;
+            if (ry > 0d)
+                result.pixelSizeY = 10000d / ry;
+        }
+
+        return result;
+    }
+
+    protected static DataType getTiffDataType(int bitSize, int sampleFormat)
+    {
+        switch (sampleFormat)
+        {
+            case 1: // unsigned integer
+                if (bitSize == 8)
+                    return DataType.UBYTE;
+                if (bitSize == 16)
+                    return DataType.USHORT;
+                if (bitSize == 32)
+                    return DataType.UINT;
+                return null;
+            case 2: // signed integer
+                if (bitSize == 8)
+                    return DataType.BYTE;
+                if (bitSize == 16)
+                    return DataType.SHORT;
+                if (bitSize == 32)
+                    return DataType.INT;
+                return null;
+            case 3: // float
+                if (bitSize == 32)
+                    return DataType.FLOAT;
+                if (bitSize == 64)
+                    return DataType.DOUBLE;
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Set dimensions from the ImageJ description and return planes in XYCZT order.
+     */
+    protected static Plane[][] setImageJDimensions(Layout layout, String description, Plane[][] ifdPlanes, int spp,
+            long fileSize)
+    {
+        final Map<String, String> values = new HashMap<String, String>();
+
+        for (String line : description.split("\n"))
+        {
+            final int ind = line.indexOf('=');
+
+            if (ind > 0)
+                values.put(line.substring(0, ind).trim(), line.substring(ind + 1).trim());
+        }
+
+        final int images = StringUtil.parseInt(values.get("images"), ifdPlanes.length);
+        final int channels = StringUtil.parseInt(values.get("channels"), 1);
+        final int slices = StringUtil.parseInt(values.get("slices"), 1);
+        int frames = StringUtil.parseInt(values.get("frames"), 1);
+
+        if ((images <= 0) || (channels <= 0) || (slices <= 0) || (frames <= 0))
+            return null;
+        // RGB hyperstack not supported
+        if ((spp > 1) && (channels > 1))
+            return null;
+        // frames not specified
+        if ((channels * slices * frames) != images)
+            frames = images / (channels * slices);
+        if ((channels * slices * frames) != images)
+            return null;
+
+        final Plane[][] result;
+
+        if (images == ifdPlanes.length)
+            result = ifdPlanes;
+        // large ImageJ stack: only first IFD is written and images are stored contiguously
+        else if ((ifdPlanes.length == 1) && (layout.blockH == layout.sizeY) && (layout.blockW == layout.sizeX))
+        {
+            final long planeBytes = layout.getBlockBytes(0);
+            final long start = ifdPlanes[0][0].offsets[0];
+
+            if ((start + (images * planeBytes)) > fileSize)
+                return null;
+
+            result = new Plane[images][spp];
+            for (int i = 0; i < images; i++)
+                for (int s = 0; s < spp; s++)
+                    result[i][s] = new Plane(new long[] {start + (i * planeBytes)}, ifdPlanes[0][s].sampleOffset);
+        }
+        else
+            return null;
+
+        layout.sizeC = channels * spp;
+        layout.sizeZ = slices;
+        layout.sizeT = frames;
+
+        final double unitScale = getUnitScale(values.get("unit"));
+
+        if (!Double.isNaN(unitScale))
+        {
+            final double spacing = StringUtil.parseDouble(values.get("spacing"), 0d);
+
+            if (spacing > 0d)
+                layout.pixelSizeZ = spacing * unitScale;
+        }
+
+        final double interval = StringUtil.parseDouble(values.get("finterval"), 0d);
+        if (interval > 0d)
+            layout.timeInterval = interval;
+
+        return result;
+    }
+
+    /**
+     * Set dimensions from the OME-XML description and return planes in XYCZT order (<code>null</code> if the
+     * OME-TIFF dataset cannot be served from this single file).
+     */
+    protected static Plane[][] setOMEDimensions(Layout layout, String description, Plane[][] ifdPlanes, int spp,
+            String fileName)
+    {
+        final Document doc;
+
+        try
+        {
+            doc = XMLUtil.createDocument(description);
+        }
+        catch (Exception e)
+        {
+            return null;
+        }
+
+        if ((doc == null) || (doc.getDocumentElement() == null))
+            return null;
+
+        final List<Element> images = getChildren(doc.getDocumentElement(), "Image");
+
+        // only single image dataset
+        if (images.size() != 1)
+            return null;
+
+        final List<Element> pixelsList = getChildren(images.get(0), "Pixels");
+        if (pixelsList.size() != 1)
+            return null;
+
+        final Element pixels = pixelsList.get(0);
+
+        if ((XMLUtil.getAttributeIntValue(pixels, "SizeX", 0) != layout.sizeX)
+                || (XMLUtil.getAttributeIntValue(pixels, "SizeY", 0) != layout.sizeY))
+            return null;
+
+        final int sizeC = XMLUtil.getAttributeIntValue(pixels, "SizeC", 1);
+        final int sizeZ = XMLUtil.getAttributeIntValue(pixels, "SizeZ", 1);
+        final int sizeT = XMLUtil.getAttributeIntValue(pixels, "SizeT", 1);
+        final String dimOrder = XMLUtil.getAttributeValue(pixels, "DimensionOrder", "XYCZT");
+
+        if ((sizeC <= 0) || (sizeZ <= 0) || (sizeT <= 0) || ((sizeC % spp) != 0) || (dimOrder.length() != 5))
+            return null;
+
+        final int effSizeC = sizeC / spp;
+        final int numPlanes = effSizeC * sizeZ * sizeT;
+        // IFD index for each plane (XYCZT order)
+        final int[] ifdIndexes = new int[numPlanes];
+        final List<Element> tiffDatas = getChildren(pixels, "TiffData");
+
+        Arrays.fill(ifdIndexes, -1);
+
+        if (tiffDatas.isEmpty())
+        {
+            for (int i = 0; i < numPlanes; i++)
+                setOMEPlaneIfd(ifdIndexes, dimOrder, i, i, effSizeC, sizeZ, sizeT);
+        }
+        else
+        {
+            for (Element tiffData : tiffDatas)
+            {
+                // data stored in another file
+                for (Element uuid : getChildren(tiffData, "UUID"))
+                {
+                    final String uuidFileName = XMLUtil.getAttributeValue(uuid, "FileName", null);
+
+                    if ((uuidFileName == null) || !uuidFileName.equals(fileName))
+                        return null;
+                }
+
+                final boolean hasIfd = tiffData.hasAttribute("IFD");
+                final int ifd = XMLUtil.getAttributeIntValue(tiffData, "IFD", 0);
+                final int count = XMLUtil.getAttributeIntValue(tiffData, "PlaneCount", hasIfd ? 1 : numPlanes);
+                final int firstC = XMLUtil.getAttributeIntValue(tiffData, "FirstC", 0);
+                final int firstZ = XMLUtil.getAttributeIntValue(tiffData, "FirstZ", 0);
+                final int firstT = XMLUtil.getAttributeIntValue(tiffData, "FirstT", 0);
+                final int start = getOMERasterIndex(dimOrder, firstC, firstZ, firstT, effSizeC, sizeZ, sizeT);
+
+                for (int i = 0; i < count; i++)
+                    setOMEPlaneIfd(ifdIndexes, dimOrder, start + i, ifd + i, effSizeC, sizeZ, sizeT);
+            }
+        }
+
+        final Plane[][] result = new Plane[numPlanes][];
+
+        for (int i = 0; i < numPlanes; i++)
+        {
+            final int ifd = ifdIndexes[i];
+
+            // missing plane
+            if ((ifd < 0) || (ifd >= ifdPlanes.length))
+                return null;
+
+            result[i] = ifdPlanes[ifd];
+        }
+
+        layout.sizeC = sizeC;
+        layout.sizeZ = sizeZ;
+        layout.sizeT = sizeT;
+
+        double scale = getUnitScale(XMLUtil.getAttributeValue(pixels, "PhysicalSizeXUnit", "um"));
+        double value = XMLUtil.getAttributeDoubleValue(pixels, "PhysicalSizeX", 0d);
+        if ((value > 0d) && !Double.isNaN(scale))
+            layout.pixelSizeX = value * scale;
+        scale = getUnitScale(XMLUtil.getAttributeValue(pixels, "PhysicalSizeYUnit", "um"));
+        value = XMLUtil.getAttributeDoubleValue(pixels, "PhysicalSizeY", 0d);
+        if ((value > 0d) && !Double.isNaN(scale))
+            layout.pixelSizeY = value * scale;
+        scale = getUnitScale(XMLUtil.getAttributeValue(pixels, "PhysicalSizeZUnit", "um"));
+        value = XMLUtil.getAttributeDoubleValue(pixels, "PhysicalSizeZ", 0d);
+        if ((value > 0d) && !Double.isNaN(scale))
+            layout.pixelSizeZ = value * scale;
+        value = XMLUtil.getAttributeDoubleValue(pixels, "TimeIncrement", 0d);
+        if (value > 0d)
+            layout.timeInterval = value
+                    * ("ms".equals(XMLUtil.getAttributeValue(pixels, "TimeIncrementUnit", "s")) ? 0.001d : 1d);
+
+        return result;
+    }
+
+    /**
+     * Returns the raster index of the specified plane position in the given dimension order.
+     */
+    protected static int getOMERasterIndex(String dimOrder, int c, int z, int t, int sizeC, int sizeZ, int sizeT)
+    {
+        int result = 0;
+
+        for (int i = 4; i >= 2; i--)
+        {
+            switch (dimOrder.charAt(i))
+            {
+                case 'C':
+                    result = (result * sizeC) + c;
+                    break;
+                case 'Z':
+                    result = (result * sizeZ) + z;
+                    break;
+                default:
+                    result = (result * sizeT) + t;
+                    break;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Set the IFD index of the plane at the specified raster index (given dimension order) in
+     * <code>ifdIndexes</code> (XYCZT order).
+     */
+    protected static void setOMEPlaneIfd(int[] ifdIndexes, String dimOrder, int rasterIndex, int ifd, int sizeC,
+            int sizeZ, int sizeT)
+    {
+        if ((rasterIndex < 0) || (rasterIndex >= ifdIndexes.length))
+            return;
+
+        int remaining = rasterIndex;
+        int c = 0;
+        int z = 0;
+        int t = 0;
+
+        for (int i = 2; i < 5; i++)
+        {
+            switch (dimOrder.charAt(i))
+            {
+                case 'C':
+                    c = remaining % sizeC;
+                    remaining /= sizeC;
+                    break;
+                case 'Z':
+                    z = remaining % sizeZ;
+                    remaining /= sizeZ;
+                    break;
+                default:
+                    t = remaining % sizeT;
+                    remaining /= sizeT;
+                    break;
+            }
+        }
+
+        ifdIndexes[c + (z * sizeC) + (t * sizeC * sizeZ)] = ifd;
+    }
+
+    /**
+     * Returns child elements with the specified name (namespace prefix ignored)
+     */
+    protected static List<Element> getChildren(Node node, String name)
+    {
+        final List<Element> result = new ArrayList<Element>();
+
+        for (Element element : XMLUtil.getElements(node))
+        {
+            final String nodeName = element.getNodeName();
+
+            if (nodeName.equals(name) || nodeName.endsWith(":" + name))
+                result.add(element);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the scale factor to convert the specified length unit to micro meter (NaN if unknown)
+     */
+    protected static double getUnitScale(String unit)
+    {
+        if (unit == null)
+            return Double.NaN;
+
+        final String u = unit.trim().toLowerCase();
+
+        if (u.equals("\u00B5m") || u.equals("\u03BCm") || u.equals("um") || u.equals("micron")
+                || u.equals("microns"))
+            return 1d;
+        if (u.equals("nm"))
+            return 0.001d;
+        if (u.equals("mm"))
+            return 1000d;
+        if (u.equals("cm"))
+            return 10000d;
+
+        return Double.NaN;
+    }
+
+    /**
+     * Parse a MetaImage (.mhd header with separate raw data file or .mha with local data) file.
+     */
+    protected static Layout parseMetaImage(String path) throws IOException
+    {
+        final FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        final Map<String, String> values = new HashMap<String, String>();
+        long headerEnd = -1;
+
+        try
+        {
+            final ByteBuffer header = read(channel, 0, (int) Math.min(channel.size(), 65536), ByteOrder.LITTLE_ENDIAN);
+            final byte[] bytes = new byte[header.remaining()];
+            header.get(bytes);
+
+            int lineStart = 0;
+            for (int i = 0; i < bytes.length; i++)
+            {
+                if (bytes[i] == '\n')
+                {
+                    final String line = new String(bytes, lineStart, i - lineStart, Charset.forName("ISO-8859-1"));
+                    final int ind = line.indexOf('=');
+
+                    lineStart = i + 1;
+
+                    if (ind <= 0)
+                        continue;
+
+                    final String key = line.substring(0, ind).trim();
+
+                    values.put(key, line.substring(ind + 1).trim());
+
+                    // always the last header field
+                    if (key.equals("ElementDataFile"))
+                    {
+                        headerEnd = lineStart;
+                        break;
+                    }
+                }
+            }
+        }
+        finally
+        {
+            channel.close();
+        }
+
+        final String dataFile = values.get("ElementDataFile");
+
+        if ((dataFile == null) || (headerEnd < 0))
+            return null;
+        if ("True".equalsIgnoreCase(values.get("CompressedData")))
+            return null;
+        // file list or pattern not supported
+        if (dataFile.startsWith("LIST") || dataFile.contains("%"))
+            return null;
+
+        final DataType dataType = getMetaImageDataType(values.get("ElementType"));
+        if (dataType == null)
+            return null;
+
+        final int nDims = StringUtil.parseInt(values.get("NDims"), 0);
+        final String[] dimSizes = StringUtil.isEmpty(values.get("DimSize")) ? new String[0]
+                : values.get("DimSize").split("\\s+");
+
+        if ((nDims < 2) || (nDims > 4) || (dimSizes.length != nDims))
+            return null;
+
+        final int[] dims = new int[] {1, 1, 1, 1};
+        for (int i = 0; i < nDims; i++)
+        {
+            dims[i] = StringUtil.parseInt(dimSizes[i], 0);
+            if (dims[i] <= 0)
+                return null;
+        }
+
+        final int channels = StringUtil.parseInt(values.get("ElementNumberOfChannels"), 1);
+        if (channels <= 0)
+            return null;
+
+        final Layout result = new Layout();
+
+        result.dataType = dataType;
+        result.sizeX = dims[0];
+        result.sizeY = dims[1];
+        result.sizeZ = dims[2];
+        result.sizeT = dims[3];
+        result.sizeC = channels;
+        result.blockW = result.sizeX;
+        result.blockH = result.sizeY;
+        result.tiled = false;
+        result.pixelStride = channels;
+        result.order = "True".equalsIgnoreCase(values.get("BinaryDataByteOrderMSB"))
+                || "True".equalsIgnoreCase(values.get("ElementByteOrderMSB")) ? ByteOrder.BIG_ENDIAN
+                        : ByteOrder.LITTLE_ENDIAN;
+
+        final long planeBytes = result.getBlockBytes(0);
+        final long dataBytes = planeBytes * result.sizeZ * result.sizeT;
+        final long headerSize = StringUtil.parseInt(values.get("HeaderSize"), 0);
+        final long dataOffset;
+
+        if (dataFile.equals("LOCAL"))
+        {
+            result.dataPath = path;
+            dataOffset = headerEnd;
+        }
+        else
+        {
+            final File f = new File(dataFile);
+
+            if (f.isAbsolute())
+                result.dataPath = FileUtil.getGenericPath(f.getPath());
+            else
+                result.dataPath = FileUtil.getGenericPath(new File(FileUtil.getDirectory(path), dataFile).getPath());
+
+            final long size = new File(result.dataPath).length();
+
+            // -1 means data is at the end of the file
+            if (headerSize == -1)
+                dataOffset = size - dataBytes;
+            else
+                dataOffset = Math.max(0, headerSize);
+        }
+
+        if ((dataOffset < 0) || ((dataOffset + dataBytes) > new File(result.dataPath).length()))
+            return null;
+
+        result.planes = new Plane[result.sizeC * result.sizeZ * result.sizeT];
+        for (int t = 0; t < result.sizeT; t++)
+        {
+            for (int z = 0; z < result.sizeZ; z++)
+            {
+                final long offset = dataOffset + (((t * result.sizeZ) + z) * planeBytes);
+
+                for (int c = 0; c < channels; c++)
+                    result.planes[c + (z * result.sizeC) + (t * result.sizeC * result.sizeZ)] = new Plane(
+                            new long[] {offset}, c);
+            }
+        }
+
+        // element spacing (element size used as fallback)
+        String spacing = values.get("ElementSpacing");
+        if (StringUtil.isEmpty(spacing))
+            spacing = values.get("ElementSize");
+        if (!StringUtil.isEmpty(spacing))
+        {
+            final String[] sp = spacing.split("\\s+");
+
+            if (sp.length > 0)
+                result.pixelSizeX = StringUtil.parseDouble(sp[0], Double.NaN);
+            if (sp.length > 1)
+                result.pixelSizeY = StringUtil.parseDouble(sp[1], Double.NaN);
+            if (sp.length > 2)
+                result.pixelSizeZ = StringUtil.parseDouble(sp[2], Double.NaN);
+            if (sp.length > 3)
+                result.timeInterval = StringUtil.parseDouble(sp[3], Double.NaN);
+        }
+
+        return result;
+    }
+
+    protected static DataType getMetaImageDataType(String type)
+    {
+        if (type == null)
+            return null;
+        if (type.equals("MET_UCHAR"))
+            return DataType.UBYTE;
+        if (type.equals("MET_CHAR"))
+            return DataType.BYTE;
+        if (type.equals("MET_USHORT"))
+            return DataType.USHORT;
+        if (type.equals("MET_SHORT"))
+            return DataType.SHORT;
+        if (type.equals("MET_UINT"))
+            return DataType.UINT;
+        if (type.equals("MET_INT"))
+            return DataType.INT;
+        if (type.equals("MET_FLOAT"))
+            return DataType.FLOAT;
+        if (type.equals("MET_DOUBLE"))
+            return DataType.DOUBLE;
+
+        return null;
+    }
+}
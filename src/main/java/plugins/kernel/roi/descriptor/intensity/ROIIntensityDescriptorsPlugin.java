@@ -13,7 +13,6 @@ import icy.plugin.interface_.PluginROIDescriptor;
 import icy.roi.ROI;
 import icy.roi.ROIDescriptor;
 import icy.sequence.Sequence;
-import icy.sequence.SequenceDataIterator;
 
 /**
  * This {@link PluginROIDescriptor} implements the following "intensity" ROI descriptors:<br>
@@ -77,57 +76,14 @@ public class ROIIntensityDescriptorsPlugin extends Plugin implements PluginROIDe
                     "Not allowed to cannot compute intensity descriptor on a multi channel ROI (sizeC > 1).");
 
         final IntensityDescriptorInfos result = new IntensityDescriptorInfos();
-
-        long numPixels = 0;
-        double min = Double.MAX_VALUE;
-        double max = -Double.MAX_VALUE;
-        double sum = 0;
-        double sum2 = 0;
-
-        // FIXME: we were using interior pixels only, now we also use edge pixels so we can have intensities info
-        // for intersection only ROI --> see if that is a good idea...
-        final SequenceDataIterator it = new SequenceDataIterator(sequence, roi, true);
-
-        while (!it.done())
-        {
-            // check for interruption sometime
-            if (((numPixels & 0xFFFF) == 0) && Thread.interrupted())
-                throw new InterruptedException("ROI intensity descriptor computation interrupted.");
-
-            final double value = it.get();
-
-            if (min > value)
-                min = value;
-            if (max < value)
-                max = value;
-            sum += value;
-            sum2 += value * value;
-            numPixels++;
-
-            it.next();
-        }
-
-        if (numPixels > 0)
-        {
-            result.min = min;
-            result.max = max;
-            result.sum = sum;
-
-            final double mean = sum / numPixels;
-            final double x1 = (sum2 / numPixels);
-            final double x2 = mean * mean;
-
-            result.mean = mean;
-            result.deviation = Math.sqrt(x1 - x2);
-        }
-        else
-        {
-            result.min = 0d;
-            result.mean = 0d;
-            result.max = 0d;
-            result.sum = 0d;
-            result.deviation = 0d;
-        }
+        // single data pass shared by all intensity descriptors
+        final ROIIntensityStatistics stats = ROIIntensityStatistics.get(roi, sequence);
+
+        result.min = stats.getMin();
+        result.mean = stats.getMean();
+        result.max = stats.getMax();
+        result.sum = stats.sum;
+        result.deviation = stats.getStandardDeviation();
 
         return result;
     }
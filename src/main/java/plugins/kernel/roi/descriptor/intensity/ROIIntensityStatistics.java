@@ -0,0 +1,356 @@
+/**
+ * 
+ */
+package plugins.kernel.roi.descriptor.intensity;
+
+import java.awt.Rectangle;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import icy.image.IcyBufferedImage;
+import icy.roi.BooleanMask2D;
+import icy.roi.ROI;
+import icy.sequence.Sequence;
+import icy.type.collection.array.Array1DUtil;
+import icy.type.rectangle.Rectangle5D;
+
+/**
+ * Pixel intensity statistics of a ROI on a Sequence (number of pixels, minimum, maximum, sum and sum of squared
+ * intensity) computed in a single pass over the ROI mask spans.<br>
+ * All intensity descriptors can be derived from it so the Sequence data is read only once per ROI.<br>
+ * The last statistics computed for a ROI are kept (see {@link #get(ROI, Sequence)}) while the ROI and the Sequence data
+ * used for computation does not change so descriptors computed separately share the same data pass.
+ *
+ * @author Stephane
+ */
+public class ROIIntensityStatistics
+{
+    /**
+     * last computed statistics for each ROI
+     */
+    private static final Map<ROI, ROIIntensityStatistics> cache = new WeakHashMap<ROI, ROIIntensityStatistics>();
+
+    /**
+     * number of pixel
+     */
+    public long count;
+    public double min;
+    public double max;
+    public double sum;
+    /**
+     * sum of squared intensity
+     */
+    public double sum2;
+
+    // validation informations for cached statistics
+    private WeakReference<Sequence> sequenceRef;
+    private int roiModCount;
+    private long dataStamp;
+
+    public ROIIntensityStatistics()
+    {
+        super();
+
+        count = 0L;
+        min = Double.MAX_VALUE;
+        max = -Double.MAX_VALUE;
+        sum = 0d;
+        sum2 = 0d;
+
+        sequenceRef = null;
+        roiModCount = 0;
+        dataStamp = 0L;
+    }
+
+    /**
+     * Returns the minimum intensity (0 if no pixel)
+     */
+    public double getMin()
+    {
+        if (count == 0)
+            return 0d;
+
+        return min;
+    }
+
+    /**
+     * Returns the maximum intensity (0 if no pixel)
+     */
+    public double getMax()
+    {
+        if (count == 0)
+            return 0d;
+
+        return max;
+    }
+
+    /**
+     * Returns the mean intensity (0 if no pixel)
+     */
+    public double getMean()
+    {
+        if (count == 0)
+            return 0d;
+
+        return sum / count;
+    }
+
+    /**
+     * Returns the standard deviation of intensity (0 if no pixel)
+     */
+    public double getStandardDeviation()
+    {
+        if (count == 0)
+            return 0d;
+
+        final double mean = sum / count;
+        final double x1 = (sum2 / count);
+        final double x2 = mean * mean;
+
+        return Math.sqrt(x1 - x2);
+    }
+
+    /**
+     * Returns the intensity statistics of the specified ROI on the given Sequence.<br>
+     * The last computed statistics of the ROI are returned if the ROI and the Sequence data didn't changed in the
+     * meantime, otherwise they are computed (see {@link #compute(ROI, Sequence)}) and kept for next calls.<br>
+     * Returned object is shared and should not be modified.
+     *
+     * @throws InterruptedException
+     *         if the thread was interrupted during the computation
+     */
+    public static ROIIntensityStatistics get(ROI roi, Sequence sequence) throws InterruptedException
+    {
+        final ROIIntensityStatistics cached = getCached(roi, sequence);
+
+        if (cached != null)
+            return cached;
+
+        // get validation informations before computation so a change during computation invalidates result
+        final int roiModCount = roi.getDisplayModCount();
+        final long dataStamp = getDataStamp(roi, sequence);
+        final ROIIntensityStatistics result = compute(roi, sequence);
+
+        result.sequenceRef = new WeakReference<Sequence>(sequence);
+        result.roiModCount = roiModCount;
+        result.dataStamp = dataStamp;
+
+        synchronized (cache)
+        {
+            cache.put(roi, result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the last computed intensity statistics of the specified ROI on the given Sequence if they are still
+     * valid (ROI and Sequence data didn't changed since), <code>null</code> otherwise.<br>
+     * Returned object is shared and should not be modified.
+     */
+    public static ROIIntensityStatistics getCached(ROI roi, Sequence sequence)
+    {
+        if ((roi == null) || (sequence == null))
+            return null;
+
+        final ROIIntensityStatistics result;
+
+        synchronized (cache)
+        {
+            result = cache.get(roi);
+        }
+
+        if ((result == null) || (result.sequenceRef.get() != sequence)
+                || (result.roiModCount != roi.getDisplayModCount())
+                || (result.dataStamp != getDataStamp(roi, sequence)))
+            return null;
+
+        return result;
+    }
+
+    /**
+     * Computes the intensity statistics of the specified ROI on the given Sequence (interior and edge pixels are
+     * used).<br>
+     * Only the part of the ROI contained in the Sequence is considered.
+     *
+     * @throws InterruptedException
+     *         if the thread was interrupted during the computation
+     */
+    public static ROIIntensityStatistics compute(ROI roi, Sequence sequence) throws InterruptedException
+    {
+        final ROIIntensityStatistics result = new ROIIntensityStatistics();
+
+        if ((roi == null) || (sequence == null))
+            return result;
+
+        final Rectangle5D.Integer bounds = getComputeBounds(roi, sequence);
+        final int dim = roi.getDimension();
+        final boolean signed = sequence.getDataType_().isSigned();
+        double[] values = new double[0];
+
+        for (int t = bounds.t; t < bounds.t + bounds.sizeT; t++)
+        {
+            for (int z = bounds.z; z < bounds.z + bounds.sizeZ; z++)
+            {
+                final IcyBufferedImage image = sequence.getImage(t, z);
+
+                if (image == null)
+                    continue;
+
+                final Rectangle imageBounds = image.getBounds();
+                BooleanMask2D mask = null;
+
+                // retain data while we are iterating over image data
+                image.lockRaster();
+                try
+                {
+                    for (int c = bounds.c; c < bounds.c + bounds.sizeC; c++)
+                    {
+                        if (c >= image.getSizeC())
+                            break;
+
+                        // same mask for all channels if the ROI has no C dimension
+                        switch (dim)
+                        {
+                            case 2:
+                                if (mask == null)
+                                    mask = roi.getBooleanMask2D(-1, -1, -1, true);
+                                break;
+
+                            case 3:
+                                if (mask == null)
+                                    mask = roi.getBooleanMask2D(z, -1, -1, true);
+                                break;
+
+                            case 4:
+                                if (mask == null)
+                                    mask = roi.getBooleanMask2D(z, t, -1, true);
+                                break;
+
+                            // assume 5D
+                            default:
+                                mask = roi.getBooleanMask2D(z, t, c, true);
+                                break;
+                        }
+
+                        final Rectangle region = mask.bounds.intersection(imageBounds);
+
+                        if (region.isEmpty())
+                            continue;
+
+                        if (values.length < region.width)
+                            values = new double[region.width];
+
+                        result.addPlane(image.getDataXY(c), imageBounds.width, mask, region, signed, values);
+                    }
+                }
+                finally
+                {
+                    image.releaseRaster(false);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Accumulate mask spans of the given plane data
+     */
+    private void addPlane(Object data, int imageWidth, BooleanMask2D mask, Rectangle region, boolean signed,
+            double[] values) throws InterruptedException
+    {
+        final boolean[] maskData = mask.mask;
+        final int maskWidth = mask.bounds.width;
+        // plane accumulators
+        long planeCount = 0;
+        double planeSum = 0d;
+        double localMin = min;
+        double localMax = max;
+        double localSum2 = sum2;
+
+        for (int y = region.y; y < region.y + region.height; y++)
+        {
+            // check for interruption sometime
+            if (((y & 0xF) == 0xF) && Thread.interrupted())
+                throw new InterruptedException("ROI intensity statistics computation interrupted.");
+
+            final int maskOff = ((y - mask.bounds.y) * maskWidth) - mask.bounds.x;
+            final int imgOff = y * imageWidth;
+            int x = region.x;
+
+            while (x < region.x + region.width)
+            {
+                // search span start
+                if (!maskData[maskOff + x])
+                {
+                    x++;
+                    continue;
+                }
+
+                final int start = x;
+
+                // search span end
+                while ((x < region.x + region.width) && maskData[maskOff + x])
+                    x++;
+
+                final int len = x - start;
+
+                Array1DUtil.arrayToDoubleArray(data, imgOff + start, values, 0, len, signed);
+
+                for (int i = 0; i < len; i++)
+                {
+                    final double value = values[i];
+
+                    if (localMin > value)
+                        localMin = value;
+                    if (localMax < value)
+                        localMax = value;
+                    planeSum += value;
+                    localSum2 += value * value;
+                }
+
+                planeCount += len;
+            }
+        }
+
+        count += planeCount;
+        min = localMin;
+        max = localMax;
+        sum += planeSum;
+        sum2 = localSum2;
+    }
+
+    /**
+     * Returns the part of the ROI bounds contained in the Sequence
+     */
+    private static Rectangle5D.Integer getComputeBounds(ROI roi, Sequence sequence)
+    {
+        return (Rectangle5D.Integer) sequence.getBounds5D().createIntersection(roi.getBounds5D());
+    }
+
+    /**
+     * Returns a stamp of the Sequence images used to compute statistics of the ROI (changes when image data changes
+     * or when an image is replaced).
+     */
+    private static long getDataStamp(ROI roi, Sequence sequence)
+    {
+        final Rectangle5D.Integer bounds = getComputeBounds(roi, sequence);
+        long result = sequence.getSizeC();
+
+        for (int t = bounds.t; t < bounds.t + bounds.sizeT; t++)
+        {
+            for (int z = bounds.z; z < bounds.z + bounds.sizeZ; z++)
+            {
+                final IcyBufferedImage image = sequence.getImage(t, z);
+
+                result *= 31;
+                if (image != null)
+                    result += (((long) System.identityHashCode(image)) << 32) + image.getChannelHistogramsModCount();
+            }
+        }
+
+        return result;
+    }
+}
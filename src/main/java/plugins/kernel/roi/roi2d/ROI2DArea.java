@@ -48,6 +48,7 @@ import icy.image.ImageUtil;
 import icy.main.Icy;
 import icy.resource.ResourceUtil;
 import icy.roi.BooleanMask2D;
+import icy.roi.RLEMask2D;
 import icy.roi.ROI;
 import icy.roi.ROI2D;
 import icy.roi.ROIEvent;
@@ -75,6 +76,8 @@ import vtk.vtkProp;
 /**
  * ROI Area type.<br>
  * Use a bitmap mask internally for fast boolean mask operation.<br>
+ * Mask set programmatically (from boolean mask, XML or boolean operation) is stored in compact run length encoded
+ * form (see {@link RLEMask2D}) and the bitmap mask is only built when the ROI is edited.<br>
  * 
  * @author Stephane
  */
@@ -98,6 +101,8 @@ public class ROI2DArea extends ROI2D
 
         private static final float MIN_CURSOR_SIZE = 0.3f;
         private static final float MAX_CURSOR_SIZE = 500f;
+        // above this number of runs a compact mask is painted from image
+        private static final int MAX_PAINT_RUNS = 1 << 16;
 
         // VTK 3D objects
         protected vtkPolyData outline;
@@ -870,6 +875,56 @@ public class ROI2DArea extends ROI2D
             }
         }
 
+        /**
+         * Returns the compact mask if it can be painted directly from its runs, <code>null</code> otherwise.
+         */
+        protected RLEMask2D getRunsToPaint()
+        {
+            final RLEMask2D rle = rleMask;
+
+            if ((rle != null) && (rle.getNumberOfRuns() <= MAX_PAINT_RUNS))
+                return rle;
+
+            return null;
+        }
+
+        /**
+         * Draw the mask content (directly from runs for compact mask)
+         */
+        protected void drawMask(Graphics2D g2, Rectangle bnds)
+        {
+            final RLEMask2D rle = getRunsToPaint();
+
+            if (rle == null)
+            {
+                final BufferedImage image = imageMask;
+
+                if (image != null)
+                    g2.drawImage(image, null, bnds.x, bnds.y);
+
+                return;
+            }
+
+            final Rectangle clip = g2.getClipBounds();
+            int minY = bnds.y;
+            int maxY = bnds.y + bnds.height;
+
+            // only draw visible rows
+            if (clip != null)
+            {
+                minY = Math.max(minY, clip.y);
+                maxY = Math.min(maxY, clip.y + clip.height);
+            }
+
+            for (int y = minY; y < maxY; y++)
+            {
+                final int[] runs = rle.getRuns(y);
+
+                for (int i = 0; i < runs.length; i += 2)
+                    g2.fillRect(runs[i], y, runs[i + 1] - runs[i], 1);
+            }
+        }
+
         /**
          * Draw the ROI itself
          */
@@ -890,21 +945,38 @@ public class ROI2DArea extends ROI2D
                 {
                     final Graphics2D g2 = (Graphics2D) g.create();
                     final boolean small;
+                    final boolean tiny;
 
                     // disable LOD when creating the ROI
                     if (isCreating())
+                    {
                         small = false;
+                        tiny = false;
+                    }
                     else
                     {
                         final double scale = Math.max(Math.abs(canvas.getScaleX()), Math.abs(canvas.getScaleY()));
-                        small = Math.max(scale * bounds.getWidth(), scale * bounds.getHeight()) < LOD_SMALL;
+                        final double size = Math.max(scale * bounds.getWidth(), scale * bounds.getHeight());
+
+                        small = size < LOD_SMALL;
+                        tiny = size < LOD_TINY;
                     }
 
+                    // compact mask with too many runs to be drawn efficiently --> use image
+                    if (!tiny && (getRunsToPaint() == null))
+                        ensureDense();
+
+                    // bounding box only
+                    if (tiny)
+                    {
+                        g2.setColor(getDisplayColor());
+                        g2.fill(bounds);
+                    }
                     // simplified draw
-                    if (small)
+                    else if (small)
                     {
                         g2.setColor(getDisplayColor());
-                        g2.drawImage(imageMask, null, bounds.x, bounds.y);
+                        drawMask(g2, bounds);
                     }
                     // normal draw
                     else
@@ -918,7 +990,8 @@ public class ROI2DArea extends ROI2D
                         g2.setComposite(prevAlpha.derive(newAlpha));
 
                         // draw mask
-                        g2.drawImage(imageMask, null, bounds.x, bounds.y);
+                        g2.setColor(getDisplayColor());
+                        drawMask(g2, bounds);
 
                         // restore alpha
                         g2.setComposite(prevAlpha);
@@ -1099,6 +1172,10 @@ public class ROI2DArea extends ROI2D
     protected final byte[] blue;
     protected IndexColorModel colorModel;
     protected byte[] maskData; // 0 = false, 1 = true
+    /**
+     * compact (run length encoded) mask, when not null it replaces imageMask and maskData (which are then null)
+     */
+    protected RLEMask2D rleMask;
     protected double translateX, translateY;
     protected Color previousColor;
     protected boolean boundsNeedUpdate;
@@ -1210,13 +1287,32 @@ public class ROI2DArea extends ROI2D
 
         // classic 8 bits indexed with one transparent color (index = 0)
         colorModel = new IndexColorModel(8, 256, red, green, blue, 0);
-        imageMask = new BufferedImage(area.bounds.width, area.bounds.height, BufferedImage.TYPE_BYTE_INDEXED,
-                colorModel);
-        maskData = ((DataBufferByte) imageMask.getRaster().getDataBuffer()).getData();
 
-        System.arraycopy(area.maskData, 0, maskData, 0, maskData.length);
+        final RLEMask2D areaRleMask;
+        final byte[] areaMaskData;
+
+        synchronized (area)
+        {
+            areaRleMask = area.rleMask;
+            areaMaskData = area.maskData;
+            bounds.setBounds(area.bounds);
+        }
+
+        // source is compact --> keep compact
+        if (areaRleMask != null)
+        {
+            rleMask = (RLEMask2D) areaRleMask.clone();
+            // share bounds object so translation applies to both
+            rleMask.bounds = bounds;
+        }
+        else
+        {
+            imageMask = new BufferedImage(Math.max(1, bounds.width), Math.max(1, bounds.height),
+                    BufferedImage.TYPE_BYTE_INDEXED, colorModel);
+            maskData = ((DataBufferByte) imageMask.getRaster().getDataBuffer()).getData();
 
-        bounds.setBounds(area.bounds);
+            System.arraycopy(areaMaskData, 0, maskData, 0, Math.min(maskData.length, areaMaskData.length));
+        }
 
         // set icon (default name is defined by getDefaultName())
         setIcon(ResourceUtil.ICON_ROI_AREA);
@@ -1272,7 +1368,17 @@ public class ROI2DArea extends ROI2D
         if (bounds.isEmpty())
             return true;
 
-        final byte[] data = maskData;
+        final RLEMask2D rle;
+        final byte[] data;
+
+        synchronized (this)
+        {
+            rle = rleMask;
+            data = maskData;
+        }
+
+        if (rle != null)
+            return rle.isEmpty();
 
         for (byte b : data)
             if (b != 0)
@@ -1290,6 +1396,23 @@ public class ROI2DArea extends ROI2D
         // bounds are being updated
         boundsNeedUpdate = false;
 
+        // compact mask
+        synchronized (this)
+        {
+            final RLEMask2D rle = rleMask;
+
+            if (rle != null)
+            {
+                if (rle.getOptimizedBounds().equals(rle.bounds))
+                    return false;
+
+                rle.optimizeBounds();
+                bounds = rle.bounds;
+
+                return true;
+            }
+        }
+
         final byte[] data;
         final Rectangle bnds;
 
@@ -1367,7 +1490,7 @@ public class ROI2DArea extends ROI2D
             colorModel = new IndexColorModel(8, 256, red, green, blue, 0);
 
             // recreate image (so the new colormodel takes effect)
-            if (rebuildImage)
+            if (rebuildImage && (imageMask != null))
                 imageMask = ImageUtil.createIndexedImage(imageMask.getWidth(), imageMask.getHeight(), colorModel,
                         maskData);
 
@@ -1381,11 +1504,156 @@ public class ROI2DArea extends ROI2D
      */
     public BufferedImage getImageMask()
     {
+        ensureDense();
+
         return imageMask;
     }
 
+    /**
+     * Returns <code>true</code> if the mask is currently stored in compact run length encoded form.
+     * 
+     * @see #compact()
+     */
+    public boolean isCompact()
+    {
+        return rleMask != null;
+    }
+
+    /**
+     * Convert the mask to compact run length encoded form and release the bitmap mask.<br>
+     * The bitmap mask is automatically rebuilt when the ROI is edited.
+     */
+    public void compact()
+    {
+        synchronized (this)
+        {
+            if (rleMask != null)
+                return;
+
+            rleMask = new RLEMask2D(bounds, maskData);
+            imageMask = null;
+            maskData = null;
+        }
+    }
+
+    /**
+     * Returns the approximated memory used by the mask (in bytes).
+     */
+    public long getMaskMemorySize()
+    {
+        synchronized (this)
+        {
+            if (rleMask != null)
+                return rleMask.getMemorySize();
+
+            return maskData.length;
+        }
+    }
+
+    /**
+     * Returns the compact mask if the ROI is currently stored in compact form, <code>null</code> otherwise.
+     */
+    protected RLEMask2D getCompactMask()
+    {
+        synchronized (this)
+        {
+            return rleMask;
+        }
+    }
+
+    /**
+     * Build the bitmap mask from the compact mask if needed (before edition).
+     */
+    protected void ensureDense()
+    {
+        synchronized (this)
+        {
+            final RLEMask2D rle = rleMask;
+
+            if (rle == null)
+                return;
+
+            final BufferedImage newImageMask;
+
+            // use single pixel image for empty bounds to avoid NPE
+            if (bounds.isEmpty())
+                newImageMask = new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_INDEXED, colorModel);
+            else
+                newImageMask = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_BYTE_INDEXED,
+                        colorModel);
+
+            final byte[] newMaskData = ((DataBufferByte) newImageMask.getRaster().getDataBuffer()).getData();
+
+            if (!bounds.isEmpty())
+                rle.toByteArray(newMaskData);
+
+            imageMask = newImageMask;
+            maskData = newMaskData;
+            rleMask = null;
+        }
+    }
+
+    /**
+     * Returns the mask in run length encoded form.
+     */
+    public RLEMask2D getRLEMask()
+    {
+        synchronized (this)
+        {
+            if (rleMask != null)
+                return (RLEMask2D) rleMask.clone();
+
+            return new RLEMask2D(new Rectangle(bounds), maskData);
+        }
+    }
+
+    /**
+     * Set the mask from a run length encoded mask (ROI is then in compact form).
+     */
+    public void setAsRLEMask(RLEMask2D mask)
+    {
+        setAsRLEMask(mask, true);
+    }
+
+    /**
+     * Set the mask from a run length encoded mask (ROI is then in compact form).
+     * 
+     * @param mask
+     *        run length encoded mask
+     * @param doBoundsOptimization
+     *        boolean
+     */
+    protected void setAsRLEMask(RLEMask2D mask, boolean doBoundsOptimization)
+    {
+        final RLEMask2D rle = (RLEMask2D) mask.clone();
+        final boolean optimizeNow = doBoundsOptimization && !isUpdating();
+
+        if (optimizeNow)
+            rle.optimizeBounds();
+
+        synchronized (this)
+        {
+            rleMask = rle;
+            bounds = rle.bounds;
+            imageMask = null;
+            maskData = null;
+        }
+
+        if (optimizeNow)
+            boundsNeedUpdate = false;
+        // optimize bounds at end of update
+        else if (doBoundsOptimization)
+            boundsNeedUpdate = true;
+
+        // notify roi changed
+        roiChanged(true);
+    }
+
     boolean updateImage(Rectangle newBnd)
     {
+        // image is modified
+        ensureDense();
+
         final byte[] data;
         final Rectangle bnds;
 
@@ -1475,6 +1743,9 @@ public class ROI2DArea extends ROI2D
         final byte[] data;
         final Rectangle bnds;
 
+        // point edition is done on bitmap mask
+        ensureDense();
+
         if (value)
         {
             // set point in mask
@@ -1525,8 +1796,32 @@ public class ROI2DArea extends ROI2D
      */
     public void add(ROI2DArea roi)
     {
-        final Rectangle boundsToAdd = roi.getBounds();
-        final byte[] maskToAdd = roi.maskData;
+        final RLEMask2D rle = getCompactMask();
+
+        // compact mask --> work directly on runs
+        if (rle != null)
+        {
+            setAsRLEMask(RLEMask2D.getUnion(rle, roi.getRLEMask()));
+            return;
+        }
+
+        final Rectangle boundsToAdd;
+        final byte[] maskToAdd;
+        final RLEMask2D rleToAdd;
+
+        synchronized (roi)
+        {
+            boundsToAdd = roi.getBounds();
+            maskToAdd = roi.maskData;
+            rleToAdd = roi.rleMask;
+        }
+
+        // compact source
+        if (rleToAdd != null)
+        {
+            add(rleToAdd.toBooleanMask2D());
+            return;
+        }
 
         // update bounds (this update the image dimension if needed)
         addToBounds(boundsToAdd);
@@ -1537,6 +1832,8 @@ public class ROI2DArea extends ROI2D
 
         synchronized (this)
         {
+            // mask may have been compacted in the meantime
+            ensureDense();
             data = maskData;
             bnds = bounds;
         }
@@ -1563,6 +1860,15 @@ public class ROI2DArea extends ROI2D
      */
     public void add(BooleanMask2D mask)
     {
+        final RLEMask2D rle = getCompactMask();
+
+        // compact mask --> work directly on runs
+        if (rle != null)
+        {
+            setAsRLEMask(RLEMask2D.getUnion(rle, new RLEMask2D(mask)));
+            return;
+        }
+
         final Rectangle boundsToAdd = mask.bounds;
         final boolean[] maskToAdd = mask.mask;
 
@@ -1575,6 +1881,8 @@ public class ROI2DArea extends ROI2D
 
         synchronized (this)
         {
+            // mask may have been compacted in the meantime
+            ensureDense();
             data = maskData;
             bnds = bounds;
         }
@@ -1614,8 +1922,32 @@ public class ROI2DArea extends ROI2D
      */
     public void exclusiveAdd(ROI2DArea roi)
     {
-        final Rectangle boundsToXAdd = roi.getBounds();
-        final byte[] maskToXAdd = roi.maskData;
+        final RLEMask2D rle = getCompactMask();
+
+        // compact mask --> work directly on runs
+        if (rle != null)
+        {
+            setAsRLEMask(RLEMask2D.getExclusiveUnion(rle, roi.getRLEMask()));
+            return;
+        }
+
+        final Rectangle boundsToXAdd;
+        final byte[] maskToXAdd;
+        final RLEMask2D rleToXAdd;
+
+        synchronized (roi)
+        {
+            boundsToXAdd = roi.getBounds();
+            maskToXAdd = roi.maskData;
+            rleToXAdd = roi.rleMask;
+        }
+
+        // compact source
+        if (rleToXAdd != null)
+        {
+            exclusiveAdd(rleToXAdd.toBooleanMask2D());
+            return;
+        }
 
         // update bounds (this update the image dimension if needed)
         addToBounds(boundsToXAdd);
@@ -1626,6 +1958,8 @@ public class ROI2DArea extends ROI2D
 
         synchronized (this)
         {
+            // mask may have been compacted in the meantime
+            ensureDense();
             data = maskData;
             bnds = bounds;
         }
@@ -1671,6 +2005,15 @@ public class ROI2DArea extends ROI2D
      */
     public void exclusiveAdd(BooleanMask2D mask)
     {
+        final RLEMask2D rle = getCompactMask();
+
+        // compact mask --> work directly on runs
+        if (rle != null)
+        {
+            setAsRLEMask(RLEMask2D.getExclusiveUnion(rle, new RLEMask2D(mask)));
+            return;
+        }
+
         final Rectangle boundsToXAdd = mask.bounds;
         final boolean[] maskToXAdd = mask.mask;
 
@@ -1683,6 +2026,8 @@ public class ROI2DArea extends ROI2D
 
         synchronized (this)
         {
+            // mask may have been compacted in the meantime
+            ensureDense();
             data = maskData;
             bnds = bounds;
         }
@@ -1715,13 +2060,40 @@ public class ROI2DArea extends ROI2D
      */
     public void subtract(ROI2DArea roi)
     {
-        final Rectangle boundsToRemove = roi.getBounds();
-        final byte[] maskToRemove = roi.maskData;
+        final RLEMask2D rle = getCompactMask();
+
+        // compact mask --> work directly on runs
+        if (rle != null)
+        {
+            setAsRLEMask(RLEMask2D.getSubtraction(rle, roi.getRLEMask()));
+            return;
+        }
+
+        final Rectangle boundsToRemove;
+        final byte[] maskToRemove;
+        final RLEMask2D rleToRemove;
+
+        synchronized (roi)
+        {
+            boundsToRemove = roi.getBounds();
+            maskToRemove = roi.maskData;
+            rleToRemove = roi.rleMask;
+        }
+
+        // compact source
+        if (rleToRemove != null)
+        {
+            subtract(rleToRemove.toBooleanMask2D());
+            return;
+        }
+
         final byte[] data;
         final Rectangle bnds;
 
         synchronized (this)
         {
+            // mask may have been compacted in the meantime
+            ensureDense();
             data = maskData;
             bnds = bounds;
         }
@@ -1762,6 +2134,15 @@ public class ROI2DArea extends ROI2D
      */
     public void subtract(BooleanMask2D mask)
     {
+        final RLEMask2D rle = getCompactMask();
+
+        // compact mask --> work directly on runs
+        if (rle != null)
+        {
+            setAsRLEMask(RLEMask2D.getSubtraction(rle, new RLEMask2D(mask)));
+            return;
+        }
+
         final Rectangle boundsToRemove = mask.bounds;
         final boolean[] maskToRemove = mask.mask;
         final byte[] data;
@@ -1769,6 +2150,8 @@ public class ROI2DArea extends ROI2D
 
         synchronized (this)
         {
+            // mask may have been compacted in the meantime
+            ensureDense();
             data = maskData;
             bnds = bounds;
         }
@@ -1841,6 +2224,9 @@ public class ROI2DArea extends ROI2D
      */
     public void updateMask(Shape shape, boolean remove, boolean inclusive, boolean accurate, boolean immediateUpdate)
     {
+        // shape is drawn into the bitmap mask
+        ensureDense();
+
         if (remove)
         {
             // outside bounds ? --> nothing to remove so nothing to do...
@@ -2089,7 +2475,8 @@ public class ROI2DArea extends ROI2D
             {
                 if (roi2d instanceof ROI2DArea)
                     add((ROI2DArea) roi2d);
-                else if (roi2d instanceof ROI2DShape)
+                // compact mask is not converted back to bitmap to draw the shape
+                else if ((roi2d instanceof ROI2DShape) && !isCompact())
                     updateMask(((ROI2DShape) roi2d).getShape(), false, true, true, true);
                 else
                     add(roi2d.getBooleanMask(true));
@@ -2111,6 +2498,13 @@ public class ROI2DArea extends ROI2D
             // only if on same position
             if ((getZ() == roi2d.getZ()) && (getT() == roi2d.getT()) && (getC() == roi2d.getC()))
             {
+                // work directly on runs
+                if (roi2d instanceof ROI2DArea)
+                {
+                    setAsRLEMask(RLEMask2D.getIntersection(getRLEMask(), ((ROI2DArea) roi2d).getRLEMask()));
+                    return this;
+                }
+
                 final Rectangle intersection = getBounds().intersection(roi2d.getBounds());
                 final BooleanMask2D mask = new BooleanMask2D(intersection, getBooleanMask(intersection, true));
                 final BooleanMask2D roiMask = new BooleanMask2D(intersection, roi2d.getBooleanMask(intersection, true));
@@ -2158,7 +2552,8 @@ public class ROI2DArea extends ROI2D
             {
                 if (roi2d instanceof ROI2DArea)
                     subtract((ROI2DArea) roi2d);
-                else if (roi2d instanceof ROI2DShape)
+                // compact mask is not converted back to bitmap to draw the shape
+                else if ((roi2d instanceof ROI2DShape) && !isCompact())
                     updateMask(((ROI2DShape) roi2d).getShape(), true, true, true, true);
                 else
                     subtract(roi2d.getBooleanMask(true));
@@ -2183,6 +2578,18 @@ public class ROI2DArea extends ROI2D
      */
     public void clear()
     {
+        synchronized (this)
+        {
+            // compact mask --> just reset it
+            if (rleMask != null)
+            {
+                bounds = new Rectangle();
+                rleMask = new RLEMask2D();
+                rleMask.bounds = bounds;
+                return;
+            }
+        }
+
         // reset image with new rectangle
         updateImage(new Rectangle());
     }
@@ -2207,16 +2614,21 @@ public class ROI2DArea extends ROI2D
     {
         final byte[] data;
         final Rectangle bnds;
+        final RLEMask2D rle;
 
         synchronized (this)
         {
             data = maskData;
             bnds = bounds;
+            rle = rleMask;
         }
 
         // fast discard
         if (!bnds.contains(x, y))
             return false;
+        // compact mask
+        if (rle != null)
+            return rle.contains((int) x, (int) y);
 
         // replace to origin
         final int xi = (int) x - bnds.x;
@@ -2230,11 +2642,13 @@ public class ROI2DArea extends ROI2D
     {
         final byte[] data;
         final Rectangle bnds;
+        final RLEMask2D rle;
 
         synchronized (this)
         {
             data = maskData;
             bnds = bounds;
+            rle = rleMask;
         }
 
         // fast discard
@@ -2247,6 +2661,10 @@ public class ROI2DArea extends ROI2D
         final int wi = (int) (x + w) - (int) x;
         final int hi = (int) (y + h) - (int) y;
 
+        // compact mask
+        if (rle != null)
+            return (wi <= 0) || (hi <= 0) || rle.contains(new Rectangle((int) x, (int) y, wi, hi));
+
         // scan all pixels, can take sometime if mask is large
         int offset = (yi * bnds.width) + xi;
         for (int j = 0; j < hi; j++)
@@ -2284,11 +2702,13 @@ public class ROI2DArea extends ROI2D
     {
         final byte[] data;
         final Rectangle bnds;
+        final RLEMask2D rle;
 
         synchronized (this)
         {
             data = maskData;
             bnds = bounds;
+            rle = rleMask;
         }
 
         // fast discard
@@ -2301,6 +2721,10 @@ public class ROI2DArea extends ROI2D
         int wi = (int) (x + w) - (int) x;
         int hi = (int) (y + h) - (int) y;
 
+        // compact mask
+        if (rle != null)
+            return rle.intersects(new Rectangle((int) x, (int) y, wi, hi));
+
         // adjust box to mask size
         if (xi < 0)
         {
@@ -2334,16 +2758,23 @@ public class ROI2DArea extends ROI2D
     @Override
     public boolean[] getBooleanMask(int x, int y, int w, int h, boolean inclusive) throws InterruptedException
     {
-        final boolean[] result = new boolean[Math.max(0, w) * Math.max(0, h)];
         final byte[] data;
         final Rectangle bnds;
+        final RLEMask2D rle;
 
         synchronized (this)
         {
             data = maskData;
             bnds = bounds;
+            rle = rleMask;
         }
 
+        // compact mask
+        if (rle != null)
+            return rle.toBooleanArray(new Rectangle(x, y, w, h));
+
+        final boolean[] result = new boolean[Math.max(0, w) * Math.max(0, h)];
+
         // calculate intersection
         final Rectangle intersect = bnds.intersection(new Rectangle(x, y, w, h));
 
@@ -2385,9 +2816,21 @@ public class ROI2DArea extends ROI2D
     @Override
     public double computeNumberOfPoints()
     {
+        final RLEMask2D rle;
+        final byte[] data;
+
+        synchronized (this)
+        {
+            rle = rleMask;
+            data = maskData;
+        }
+
+        // compact mask
+        if (rle != null)
+            return rle.getNumberOfPoints();
+
         // just count the number of point contained in the mask
         double result = 0d;
-        final byte[] data = maskData;
 
         for (int i = 0; i < data.length; i++)
             if (data[i] != 0)
@@ -2431,7 +2874,13 @@ public class ROI2DArea extends ROI2D
     @Override
     public void setPosition2D(Point2D newPosition)
     {
-        bounds = new Rectangle((int) newPosition.getX(), (int) newPosition.getY(), bounds.width, bounds.height);
+        synchronized (this)
+        {
+            bounds = new Rectangle((int) newPosition.getX(), (int) newPosition.getY(), bounds.width, bounds.height);
+            // compact mask shares bounds
+            if (rleMask != null)
+                rleMask.bounds = bounds;
+        }
 
         roiChanged(false);
     }
@@ -2463,22 +2912,8 @@ public class ROI2DArea extends ROI2D
      */
     protected void setAsByteMask(Rectangle r, byte[] mask, boolean doBoundsOptimization)
     {
-        // reset image with new rectangle
-        updateImage(r);
-
-        System.arraycopy(mask, 0, maskData, 0, r.width * r.height);
-
-        if (doBoundsOptimization)
-        {
-            // optimize bounds
-            if (isUpdating())
-                boundsNeedUpdate = true;
-            else
-                optimizeBounds();
-        }
-
-        // notify roi changed
-        roiChanged(true);
+        // store in compact form
+        setAsRLEMask(new RLEMask2D(r, mask), doBoundsOptimization);
     }
 
     /**
@@ -2490,25 +2925,8 @@ public class ROI2DArea extends ROI2D
      */
     protected void setAsBooleanMask(Rectangle r, boolean[] booleanMask, boolean doBoundsOptimization)
     {
-        // reset image with new rectangle
-        updateImage(r);
-
-        final byte[] data = maskData;
-
-        for (int i = 0; i < data.length; i++)
-            data[i] = (byte) (booleanMask[i] ? 1 : 0);
-
-        if (doBoundsOptimization)
-        {
-            // optimize bounds
-            if (isUpdating())
-                boundsNeedUpdate = true;
-            else
-                optimizeBounds();
-        }
-
-        // notify roi changed
-        roiChanged(true);
+        // store in compact form
+        setAsRLEMask(new RLEMask2D(r, booleanMask), doBoundsOptimization);
     }
 
     /**
@@ -2658,10 +3076,13 @@ public class ROI2DArea extends ROI2D
         final byte[] data;
         final Rectangle bnds;
 
-        synchronized (maskData)
+        synchronized (this)
         {
             // need to duplicate to avoid array change during XML saving (ZIP packing don't like that)
-            data = maskData.clone();
+            if (rleMask != null)
+                data = rleMask.toByteArray();
+            else
+                data = maskData.clone();
             bnds = new Rectangle(bounds);
         }
 
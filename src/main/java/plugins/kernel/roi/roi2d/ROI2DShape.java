@@ -23,7 +23,6 @@ import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Rectangle;
-import java.awt.RenderingHints;
 import java.awt.Shape;
 import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
@@ -32,8 +31,6 @@ import java.awt.geom.AffineTransform;
 import java.awt.geom.PathIterator;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
-import java.awt.image.BufferedImage;
-import java.awt.image.DataBufferByte;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -56,6 +53,7 @@ import icy.painter.PathAnchor2D;
 import icy.roi.ROI;
 import icy.roi.ROI2D;
 import icy.roi.ROIEvent;
+import icy.roi.ShapeRasterizer;
 import icy.roi.edit.Point2DAddedROIEdit;
 import icy.roi.edit.Point2DMovedROIEdit;
 import icy.roi.edit.Point2DRemovedROIEdit;
@@ -103,6 +101,10 @@ public abstract class ROI2DShape extends ROI2D implements Shape
         protected WeakReference<VtkCanvas> canvas3d;
         protected Set<Anchor2D> actorsToAdd;
         protected Set<Anchor2D> actorsToRemove;
+        // simplified shape cache (LOD drawing)
+        protected Shape simplifiedShape;
+        protected double simplifiedScale;
+        protected int simplifiedModCount;
 
         public ROI2DShapePainter()
         {
@@ -763,8 +765,11 @@ public abstract class ROI2DShape extends ROI2D implements Shape
                     final boolean small = isSmall(bounds, g, canvas);
                     final boolean tiny = isTiny(bounds, g, canvas);
 
-                    // draw shape
-                    drawShape(g, sequence, canvas, small);
+                    // draw shape (only bounding box when tiny)
+                    if (tiny)
+                        drawShape(g, sequence, canvas, shape.getBounds2D(), true);
+                    else
+                        drawShape(g, sequence, canvas, small);
 
                     // draw control points (only if not tiny)
                     if (!tiny && isSelected() && !isReadOnly())
@@ -848,7 +853,40 @@ public abstract class ROI2DShape extends ROI2D implements Shape
          */
         protected void drawShape(Graphics2D g, Sequence sequence, IcyCanvas canvas, boolean simplified)
         {
-            drawShape(g, sequence, canvas, shape, simplified);
+            // use simplified shape for simplified draw
+            if (simplified)
+                drawShape(g, sequence, canvas, getSimplifiedShape(canvas), true);
+            else
+                drawShape(g, sequence, canvas, shape, false);
+        }
+
+        /**
+         * Returns a simplified version of the shape (polyline with about one pixel precision) for the specified canvas
+         * resolution.<br>
+         * The simplified shape is cached per zoom level (power of 2) so it is only rebuilt when zoom level or ROI
+         * changed.
+         */
+        protected Shape getSimplifiedShape(IcyCanvas canvas)
+        {
+            final double scale = Math.max(Math.abs(canvas.getScaleX()), Math.abs(canvas.getScaleY()));
+
+            // invalid scale
+            if (!(scale > 0d) || Double.isInfinite(scale))
+                return shape;
+
+            // zoom level
+            final double bucket = Math.pow(2d, Math.floor(Math.log(scale) / Math.log(2d)));
+            final int modCount = getDisplayModCount();
+
+            if ((simplifiedShape == null) || (simplifiedScale != bucket) || (simplifiedModCount != modCount))
+            {
+                // one pixel precision at current zoom level
+                simplifiedShape = ShapeUtil.getSimplifiedPath(shape, 1d / bucket);
+                simplifiedScale = bucket;
+                simplifiedModCount = modCount;
+            }
+
+            return simplifiedShape;
         }
 
         /**
@@ -1725,41 +1763,8 @@ public abstract class ROI2DShape extends ROI2D implements Shape
             }
         }
 
-        final BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
-        final byte[] buffer = ((DataBufferByte) img.getRaster().getDataBuffer()).getData();
-        final Graphics2D g = img.createGraphics();
-
-        // we want accurate rendering as we use the image for the mask
-        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
-        g.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
-
-        // translate back to origin and pixel center
-        g.translate(-(x - 0.5d), -(y - 0.5d));
-
-        // fill content
-        g.setColor(Color.white);
-        // only fill closed shapes
-        g.fill(ShapeUtil.getClosedPath(shape));
-        // we want edge as well
-        if (inclusive)
-            g.draw(shape);
-        // TODO: do we really need that ??
-        else
-        {
-            // remove edge from content as fill operation may be a bit off
-            g.setColor(Color.black);
-            g.draw(shape);
-        }
-
-        g.dispose();
-
-        final boolean[] result = new boolean[width * height];
-
-        // compute mask from image
-        for (int i = 0; i < result.length; i++)
-            result[i] = (buffer[i] != 0);
-
-        return result;
+        // scan line rasterization (exact edge rules and no Java2D rendering)
+        return ShapeRasterizer.getBooleanMask(shape, x, y, width, height, inclusive);
     }
 
     @Override
@@ -1011,6 +1011,39 @@ public class ROI3DArea extends ROI3DStack<ROI2DArea>
         return true;
     }
 
+    /**
+     * Slice masks are directly retrieved from the 2D area ROI so they don't need to be cached (it would only
+     * duplicate them in memory).
+     */
+    @Override
+    protected boolean isMaskCacheEnabled()
+    {
+        return false;
+    }
+
+    /**
+     * Convert all slices to compact run length encoded form (see {@link ROI2DArea#compact()}).<br>
+     * Slices built from boolean mask are already compact, this is mainly useful after interactive edition.
+     */
+    public void compact()
+    {
+        for (ROI2DArea area : slices.values())
+            area.compact();
+    }
+
+    /**
+     * @return Returns the approximated memory used by the slice masks (in bytes).
+     */
+    public long getMaskMemorySize()
+    {
+        long result = 0L;
+
+        for (ROI2DArea area : slices.values())
+            result += area.getMaskMemorySize();
+
+        return result;
+    }
+
     /**
      * @deprecated Use {@link #getBooleanMask(boolean)} and {@link BooleanMask3D#getContourPoints()} instead.
      * @return array of 3D points
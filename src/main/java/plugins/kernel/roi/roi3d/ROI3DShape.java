@@ -1603,6 +1603,15 @@ public class ROI3DShape extends ROI3D implements Shape3D
         }
     }
 
+    /**
+     * Shape masks are rasterized on each call so we cache them.
+     */
+    @Override
+    protected boolean isMaskCacheEnabled()
+    {
+        return true;
+    }
+
     /**
      * @param object
      *        roi changed
@@ -1287,6 +1287,15 @@ public class ROI3DStack<R extends ROI2D> extends ROI3D implements ROIListener, O
         }
     }
 
+    /**
+     * Slice masks are computed from 2D ROI on each call so we cache them.
+     */
+    @Override
+    protected boolean isMaskCacheEnabled()
+    {
+        return true;
+    }
+
     @Override
     public boolean[] getBooleanMask2D(int x, int y, int width, int height, int z, boolean inclusive) throws InterruptedException
     {